@@ -2,6 +2,7 @@ import model.Member;
 import model.Relationship;
 import repository.MemberRepository;
 import repository.RelationshipRepository;
+import service.FamilyGraphStore;
 import service.MemberService;
 import service.RelationshipService;
 import org.apache.logging.log4j.LogManager;
@@ -14,9 +15,10 @@ public class ConsoleApplication {
     private static final Logger logger = LogManager.getLogger(ConsoleApplication.class);
     private static final Scanner scanner = new Scanner(System.in);
     private static final MemberRepository memberRepository = new MemberRepository();
-    private static final MemberService memberService = new MemberService(memberRepository);
     private static final RelationshipRepository relationshipRepository = new RelationshipRepository(memberRepository);
-    private static final RelationshipService relationshipService = new RelationshipService(relationshipRepository, memberRepository);
+    private static final FamilyGraphStore graphStore = new FamilyGraphStore(memberRepository, relationshipRepository);
+    private static final MemberService memberService = new MemberService(memberRepository, graphStore);
+    private static final RelationshipService relationshipService = new RelationshipService(relationshipRepository, memberRepository, graphStore);
 
     public static void main(String[] args) {
         while (true) {
@@ -0,0 +1,152 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import model.Change;
+import model.Member;
+import model.Relationship;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+import service.ChangeService;
+import service.DataVersion;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * 增量同步：GET /changes?since=N[&limit=M]。
+ * 不带 since 时只返回当前序号 next，客户端先取序号、再全量加载 /member 与 /relationship，之后用 since=next 轮询。
+ * since 超过日志中的最新序号（数据库被替换）或早于最近一次整库重建时返回 410，客户端应全量重新加载。
+ */
+public class ChangeController implements HttpHandler {
+    private static final Logger logger = LogManager.getLogger(ChangeController.class);
+    static final int DEFAULT_LIMIT = 1000;
+    static final int MAX_LIMIT = 10000;
+    private final ChangeService changeService;
+    private final DataVersion dataVersion;
+    private final int maxQueryLength;
+
+    public ChangeController(ChangeService changeService, DataVersion dataVersion, int maxQueryLength) {
+        this.changeService = changeService;
+        this.dataVersion = dataVersion;
+        this.maxQueryLength = maxQueryLength;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, createErrorResponse("Method Not Allowed"), "no-store");
+                return;
+            }
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null && query.length() > maxQueryLength) {
+                sendResponse(exchange, 400, createErrorResponse("Query is too long"), "no-store");
+                return;
+            }
+            Map<String, String> params = PageRequest.parse(query);
+            long since;
+            int limit;
+            try {
+                since = params.containsKey("since") ? Long.parseLong(params.get("since").trim()) : -1;
+                limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit").trim()) : DEFAULT_LIMIT;
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, 400, createErrorResponse("Invalid since or limit format"), "no-store");
+                return;
+            }
+            if (params.containsKey("since") && since < 0) {
+                sendResponse(exchange, 400, createErrorResponse("since must be a non-negative integer"), "no-store");
+                return;
+            }
+            if (limit < 1 || limit > MAX_LIMIT) {
+                sendResponse(exchange, 400, createErrorResponse("limit must be between 1 and " + MAX_LIMIT), "no-store");
+                return;
+            }
+
+            String etag = ConditionalGet.etag(dataVersion, exchange);
+            if (ConditionalGet.notModified(exchange, etag)) {
+                return;
+            }
+            if (since < 0) {
+                JSONObject json = new JSONObject();
+                json.put("next", changeService.getLatestSeq());
+                exchange.getResponseHeaders().add("ETag", etag);
+                sendResponse(exchange, 200, json.toString(), ConditionalGet.CACHE_CONTROL);
+                return;
+            }
+            ChangeService.ChangeSet changes = changeService.getChangesSince(since, limit);
+            if (changes == null) {
+                sendResponse(exchange, 410, createErrorResponse("Change sequence is no longer valid, reload all data"), "no-store");
+                return;
+            }
+
+            exchange.getResponseHeaders().add("ETag", etag);
+            addResponseHeaders(exchange, ConditionalGet.CACHE_CONTROL);
+            ResponseWriter.stream(exchange, 200, json -> writeChanges(json, changes));
+        } catch (Exception e) {
+            logger.error("Error in handle: {}", e.getMessage());
+            sendResponse(exchange, 500, createErrorResponse("Internal Server Error"), "no-store");
+        }
+    }
+
+    /** 成员与关系的数据字段与 /member、/relationship 的列表项相同，删除时不带 data；/events 的 changes 消息使用同一格式 */
+    static void writeChanges(JsonStreamWriter json, ChangeService.ChangeSet changes) throws IOException {
+        json.beginObject()
+                .field("since", changes.getSince())
+                .field("next", changes.getNext())
+                .field("hasMore", changes.hasMore())
+                .name("changes").beginArray();
+        for (ChangeService.ChangeEntry entry : changes.getEntries()) {
+            json.beginObject()
+                    .field("seq", entry.getSeq())
+                    .field("type", Change.entityName(entry.getEntity()))
+                    .field("op", Change.opName(entry.getOp()))
+                    .field("id", entry.getId());
+            if (entry.getMember() != null) {
+                Member member = entry.getMember();
+                json.name("data").beginObject()
+                        .field("id", member.getMemberID())
+                        .field("name", member.getName())
+                        .field("generation", member.getGeneration())
+                        .field("gender", member.getGender())
+                        .field("genderText", member.getGender() == 0 ? "Male" : "Female")
+                        .field("remark", member.getRemark())
+                        .endObject();
+            } else if (entry.getRelationship() != null) {
+                Relationship relationship = entry.getRelationship();
+                json.name("data").beginObject()
+                        .field("relationID", relationship.getRelationID())
+                        .field("member1", relationship.getMember1())
+                        .field("member1Name", relationship.getMember1Name())
+                        .field("member2", relationship.getMember2())
+                        .field("member2Name", relationship.getMember2Name())
+                        .field("relation", relationship.getRelation())
+                        .field("description", relationship.getRelationshipDescription())
+                        .endObject();
+            }
+            json.endObject();
+        }
+        json.endArray().endObject();
+    }
+
+    private void addResponseHeaders(HttpExchange exchange, String cacheControl) {
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().add("X-Content-Type-Options", "nosniff");
+        exchange.getResponseHeaders().add("X-Frame-Options", "DENY");
+        exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+    }
+
+    private void sendResponse(HttpExchange exchange, int statusCode, String response, String cacheControl) throws IOException {
+        addResponseHeaders(exchange, cacheControl);
+        byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+        ResponseWriter.send(exchange, statusCode, responseBytes);
+    }
+
+    private String createErrorResponse(String message) {
+        JSONObject json = new JSONObject();
+        json.put("error", message);
+        return json.toString();
+    }
+}
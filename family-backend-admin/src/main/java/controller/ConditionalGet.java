@@ -0,0 +1,53 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import service.DataVersion;
+
+import java.io.IOException;
+
+/**
+ * 基于全局数据版本的条件 GET：ETag 由数据版本与请求 URI 组成，
+ * If-None-Match 命中时直接返回 304，不访问数据库也不序列化 JSON。
+ */
+final class ConditionalGet {
+    /** 带 ETag 的响应每次使用前都向服务端验证，数据未变时只需一次 304 往返 */
+    static final String CACHE_CONTROL = "public, no-cache";
+
+    private ConditionalGet() {
+    }
+
+    /** 弱 ETag：同一版本的响应语义相同，但压缩等传输编码可能不同 */
+    static String etag(DataVersion dataVersion, HttpExchange exchange) {
+        String uri = exchange.getRequestURI().toString();
+        return "W/\"" + dataVersion.tag() + "-" + Integer.toHexString(uri.hashCode()) + "\"";
+    }
+
+    /** If-None-Match 与 etag 匹配时写出 304 并返回 true */
+    static boolean notModified(HttpExchange exchange, String etag) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null || !matches(ifNoneMatch, etag)) {
+            return false;
+        }
+        exchange.getResponseHeaders().add("ETag", etag);
+        exchange.getResponseHeaders().add("Cache-Control", CACHE_CONTROL);
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return true;
+    }
+
+    /** 按弱比较规则匹配逗号分隔的 ETag 列表，"*" 匹配任意 */
+    static boolean matches(String ifNoneMatch, String etag) {
+        String expected = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || opaque(trimmed).equals(expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -1,6 +1,10 @@
 // DatabaseConnection.java
 package controller;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import repository.UnitOfWork;
+
 import java.io.File;
 import java.io.InputStream;
 import java.net.URL;
@@ -9,12 +13,60 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
 
 public class DatabaseConnection {
+    private static final Logger logger = LogManager.getLogger(DatabaseConnection.class);
     private static final String DB_URL = "jdbc:sqlite:family.db";
 
+    private static final Set<String> JOURNAL_MODES = Set.of("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    private static final Set<String> SYNCHRONOUS_MODES = Set.of("OFF", "NORMAL", "FULL", "EXTRA");
+    /** SQLite 的 SQLITE_OPEN_READONLY 打开标志 */
+    private static final int SQLITE_OPEN_READONLY = 0x01;
+
+    private static int poolSize = 4;
+    private static int writerPoolSize = 1;
+    private static long acquireTimeoutMillis = 5000;
+    private static int busyTimeoutMillis = 5000;
+    private static String journalMode = "WAL";
+    private static String synchronous = "NORMAL";
+    private static boolean readOnly;
+    private static volatile ConnectionPool pool;
+    private static volatile ConnectionPool writerPool;
+    private static volatile String url;
+
+    /**
+     * 从 application.properties 读取数据库与连接池配置，需在首次 getConnection() 之前调用。
+     * db.readOnly 未配置时沿用 security.readOnly，只读部署不建表、不迁移，也不开写连接。
+     */
+    public static synchronized void configure(Properties prop) {
+        poolSize = Integer.parseInt(prop.getProperty("db.pool.size", String.valueOf(poolSize)));
+        writerPoolSize = Integer.parseInt(prop.getProperty("db.pool.writerSize", String.valueOf(writerPoolSize)));
+        acquireTimeoutMillis = Long.parseLong(prop.getProperty("db.pool.acquireTimeoutMillis", String.valueOf(acquireTimeoutMillis)));
+        busyTimeoutMillis = Integer.parseInt(prop.getProperty("db.busyTimeoutMillis", String.valueOf(busyTimeoutMillis)));
+        journalMode = pragmaValue(prop.getProperty("db.journalMode", journalMode), JOURNAL_MODES, "db.journalMode");
+        synchronous = pragmaValue(prop.getProperty("db.synchronous", synchronous), SYNCHRONOUS_MODES, "db.synchronous");
+        readOnly = Boolean.parseBoolean(prop.getProperty("db.readOnly",
+                prop.getProperty("security.readOnly", String.valueOf(readOnly))));
+    }
+
+    private static String pragmaValue(String value, Set<String> allowed, String name) {
+        String normalized = value.trim().toUpperCase(Locale.ROOT);
+        if (!allowed.contains(normalized)) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value + ", expected one of " + allowed);
+        }
+        return normalized;
+    }
+
+    public static boolean isReadOnly() {
+        return readOnly;
+    }
+
     private static String resolveFixedDatabasePath() {
         String override = System.getProperty("family.db.path");
         if (override == null || override.trim().isEmpty()) {
@@ -78,14 +130,138 @@ public class DatabaseConnection {
         return DB_URL;
     }
 
-public static Connection getConnection() throws SQLException {
-        String url = getCorrectDatabaseFile();
-        System.out.println("Using database: " + url); // Log the DB path
-        Connection conn = DriverManager.getConnection(url);
-        // 设置UTF-8编码
-        conn.createStatement().execute("PRAGMA encoding = 'UTF-8'");
-        initializeDatabase(conn);
-        return conn;
+    /**
+     * 借出连接：在工作单元内时返回工作单元的写连接，与其余仓储调用共享事务；
+     * 否则从只读连接池借出，WAL 模式下读取不会等待写事务。
+     */
+    public static Connection getConnection() throws SQLException {
+        UnitOfWork unit = UnitOfWork.current();
+        return unit != null ? unit.connection() : acquireReader();
+    }
+
+    /** 从只读连接池借出连接；数据库路径与表结构仅在首次调用时解析和初始化 */
+    public static Connection acquireReader() throws SQLException {
+        ConnectionPool current = pool;
+        if (current == null) {
+            current = initialize();
+        }
+        return current.acquire();
+    }
+
+    /** 打开一个不经连接池的只读连接，供需要长期持有同一连接的调用方使用，由调用方关闭 */
+    public static Connection openReader() throws SQLException {
+        if (pool == null) {
+            initialize();
+        }
+        return DriverManager.getConnection(url, readerProperties());
+    }
+
+    /** 从写连接池借出连接，供工作单元使用；只读部署中没有写连接 */
+    public static Connection acquireWriter() throws SQLException {
+        if (pool == null) {
+            initialize();
+        }
+        ConnectionPool current = writerPool;
+        if (current == null) {
+            throw new SQLException("Database is opened read-only");
+        }
+        return current.acquire();
+    }
+
+    /** 只读连接池的指标 */
+    public static ConnectionPool.PoolStats getPoolStats() {
+        ConnectionPool current = pool;
+        return current != null ? current.getStats() : null;
+    }
+
+    /** 写连接池的指标，只读部署或尚未初始化时为 null */
+    public static ConnectionPool.PoolStats getWriterPoolStats() {
+        ConnectionPool current = writerPool;
+        return current != null ? current.getStats() : null;
+    }
+
+    /** 关闭连接池，下次 getConnection() 会重新解析路径并建池 */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        if (writerPool != null) {
+            writerPool.close();
+            writerPool = null;
+        }
+    }
+
+    /**
+     * 解析数据库路径并建立读、写两组连接池；启动时调用一次即可。
+     * 可写部署先设置日志模式（WAL 会持久记录在库文件中，同库的其他进程随之生效）并初始化表结构；
+     * 只读部署直接以 SQLITE_OPEN_READONLY 打开，沿用写入方设置的日志模式。
+     */
+    public static synchronized ConnectionPool initialize() throws SQLException {
+        if (pool == null) {
+            url = getCorrectDatabaseFile();
+            logger.info("Using database: {}{}", url, readOnly ? " (read-only)" : "");
+            String mode;
+            if (readOnly) {
+                try (Connection conn = DriverManager.getConnection(url, readerProperties());
+                     Statement stmt = conn.createStatement()) {
+                    mode = queryString(stmt, "PRAGMA journal_mode");
+                }
+            } else {
+                try (Connection conn = DriverManager.getConnection(url, writerProperties());
+                     Statement stmt = conn.createStatement()) {
+                    // 设置UTF-8编码
+                    stmt.execute("PRAGMA encoding = 'UTF-8'");
+                    mode = applyJournalMode(stmt);
+                    initializeDatabase(conn);
+                }
+                writerPool = new ConnectionPool(url, writerProperties(), writerPoolSize, acquireTimeoutMillis);
+            }
+            pool = new ConnectionPool(url, readerProperties(), poolSize, acquireTimeoutMillis);
+            logger.info("Connection pools ready: {} readers, {} writers, journal_mode={}, synchronous={}, busy timeout {} ms",
+                    poolSize, readOnly ? 0 : writerPoolSize, mode, synchronous, busyTimeoutMillis);
+        }
+        return pool;
+    }
+
+    /** 切换日志模式；其他进程正占用数据库时可能无法切换，此时保留当前模式继续运行 */
+    private static String applyJournalMode(Statement stmt) throws SQLException {
+        try {
+            String mode = queryString(stmt, "PRAGMA journal_mode = " + journalMode);
+            if (!journalMode.equalsIgnoreCase(mode)) {
+                logger.warn("Requested journal_mode={} but database is using {}", journalMode, mode);
+            }
+            return mode;
+        } catch (SQLException e) {
+            logger.warn("Failed to set journal_mode={}: {}", journalMode, e.getMessage());
+            return queryString(stmt, "PRAGMA journal_mode");
+        }
+    }
+
+    private static String queryString(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    /**
+     * 写连接的驱动参数：数据库被其他进程（如同库的 admin/user 服务）锁住时最多等待 busy_timeout 毫秒而不是立即报 SQLITE_BUSY；
+     * 事务以 BEGIN IMMEDIATE 开始，写事务一开始就拿到写锁，避免读锁升级为写锁时无法靠等待解开的死锁。
+     */
+    private static Properties writerProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("busy_timeout", String.valueOf(busyTimeoutMillis));
+        properties.setProperty("transaction_mode", "IMMEDIATE");
+        properties.setProperty("synchronous", synchronous);
+        return properties;
+    }
+
+    /** 读连接以 SQLITE_OPEN_READONLY 打开，误写会直接报错；非 WAL 模式下读取仍可能等待写锁，同样设置 busy_timeout */
+    private static Properties readerProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("busy_timeout", String.valueOf(busyTimeoutMillis));
+        properties.setProperty("open_mode", String.valueOf(SQLITE_OPEN_READONLY));
+        return properties;
     }
 
     private static void initializeDatabase(Connection conn) throws SQLException {
@@ -113,6 +289,58 @@ public static Connection getConnection() throws SQLException {
                 stmt.execute("ALTER TABLE Members ADD COLUMN Remark TEXT");
             } catch (SQLException ignored) {
             }
+            migrateRelationshipIndexes(conn, stmt);
+            createChangeLog(stmt);
+        }
+    }
+
+    /**
+     * 追加写入的变更日志：由触发器在同一事务内为 Members 与 Relationships 的每次插入、修改、删除追加一行，
+     * Seq 单调递增（AUTOINCREMENT 不复用），只记实体与主键，数据按需从原表读取。
+     * 实体与操作的取值见 model.Change；触发器同样覆盖直接改库的维护工具。
+     */
+    private static void createChangeLog(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS ChangeLog (" +
+                "Seq INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "Entity INTEGER NOT NULL," +
+                "EntityID INTEGER NOT NULL," +
+                "Op INTEGER NOT NULL)");
+        String[][] tables = {{"Members", "MemberID", "1"}, {"Relationships", "RelationID", "2"}};
+        String[][] events = {{"INSERT", "NEW", "1"}, {"UPDATE", "NEW", "2"}, {"DELETE", "OLD", "3"}};
+        for (String[] table : tables) {
+            for (String[] event : events) {
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS trg_changelog_" + table[0].toLowerCase(Locale.ROOT) + "_"
+                        + event[0].toLowerCase(Locale.ROOT) + " AFTER " + event[0] + " ON " + table[0]
+                        + " BEGIN INSERT INTO ChangeLog (Entity, EntityID, Op) VALUES ("
+                        + table[2] + ", " + event[1] + "." + table[1] + ", " + event[2] + "); END");
+            }
+        }
+    }
+
+    /** 为 Relationships 建立查询索引与 (member1, member2, relation) 唯一约束；旧库先清理重复行再建唯一索引 */
+    private static void migrateRelationshipIndexes(Connection conn, Statement stmt) throws SQLException {
+        boolean hasUniqueIndex;
+        try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'index' AND name = 'idx_relationships_unique'")) {
+            hasUniqueIndex = rs.next();
+        }
+        if (!hasUniqueIndex) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                int removed = stmt.executeUpdate("DELETE FROM Relationships WHERE RelationID NOT IN (" +
+                        "SELECT MIN(RelationID) FROM Relationships GROUP BY member1, member2, relation)");
+                stmt.execute("CREATE UNIQUE INDEX idx_relationships_unique ON Relationships(member1, member2, relation)");
+                conn.commit();
+                logger.info("Created unique relationship index, removed {} duplicate rows", removed);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
         }
+        // member1 的查询由唯一索引的最左前缀覆盖
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_relationships_member2 ON Relationships(member2)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_relationships_relation ON Relationships(relation)");
     }
 }
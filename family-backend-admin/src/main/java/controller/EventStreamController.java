@@ -0,0 +1,92 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * 变更推送：GET /events[?since=N]，以 Server-Sent Events 持续输出成员与关系的增量。
+ * 续传位置取 Last-Event-ID 请求头（浏览器重连时自动带上），没有时取 since 参数，都没有时从当前开始。
+ * 消息：changes（格式同 GET /changes 的响应）、ready（补发完成）、reset（需全量重新加载），空闲时发送注释行作心跳。
+ * 处理方法设置好响应头后即返回，连接由 ChangeFeed 的发送线程持有，不占用 HTTP 工作线程。
+ */
+public class EventStreamController implements HttpHandler {
+    private static final Logger logger = LogManager.getLogger(EventStreamController.class);
+    private final ChangeFeed changeFeed;
+    private final int maxQueryLength;
+
+    public EventStreamController(ChangeFeed changeFeed, int maxQueryLength) {
+        this.changeFeed = changeFeed;
+        this.maxQueryLength = maxQueryLength;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, createErrorResponse("Method Not Allowed"));
+                return;
+            }
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null && query.length() > maxQueryLength) {
+                sendResponse(exchange, 400, createErrorResponse("Query is too long"));
+                return;
+            }
+            Map<String, String> params = PageRequest.parse(query);
+            String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+            String position = lastEventId != null && !lastEventId.isBlank() ? lastEventId : params.get("since");
+            long since;
+            try {
+                since = position != null ? Long.parseLong(position.trim()) : -1;
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, 400, createErrorResponse("Invalid since or Last-Event-ID format"));
+                return;
+            }
+            if (position != null && since < 0) {
+                sendResponse(exchange, 400, createErrorResponse("since must be a non-negative integer"));
+                return;
+            }
+
+            ChangeFeed.Subscription subscription = changeFeed.subscribe(since);
+            if (subscription == null) {
+                exchange.getResponseHeaders().add("Retry-After", "5");
+                sendResponse(exchange, 503, createErrorResponse("Too many event subscribers"));
+                return;
+            }
+            try {
+                exchange.getResponseHeaders().add("Content-Type", "text/event-stream; charset=utf-8");
+                exchange.getResponseHeaders().add("Cache-Control", "no-store");
+                exchange.getResponseHeaders().add("X-Content-Type-Options", "nosniff");
+                // 反向代理不缓冲，消息即时到达客户端
+                exchange.getResponseHeaders().add("X-Accel-Buffering", "no");
+                exchange.sendResponseHeaders(200, 0);
+            } catch (IOException | RuntimeException e) {
+                subscription.close();
+                throw e;
+            }
+            subscription.start(exchange.getResponseBody());
+        } catch (Exception e) {
+            logger.error("Error in handle: {}", e.getMessage());
+            exchange.close();
+        }
+    }
+
+    private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().add("X-Content-Type-Options", "nosniff");
+        exchange.getResponseHeaders().add("Cache-Control", "no-store");
+        ResponseWriter.send(exchange, statusCode, response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String createErrorResponse(String message) {
+        JSONObject json = new JSONObject();
+        json.put("error", message);
+        return json.toString();
+    }
+}
@@ -0,0 +1,217 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+
+/**
+ * 直接以 UTF-8 写出 JSON 的流式编码器，内部只有一个固定大小的字节缓冲，内存占用与结果规模无关。
+ * 字符串转义规则与 org.json 的 JSONObject.quote 相同；与 JSONObject.put 一致，值为 null 的字段不输出。
+ */
+public final class JsonStreamWriter implements Closeable {
+    private static final int MAX_DEPTH = 64;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    /** 每层容器是否已写出过元素，决定下一个元素前是否需要逗号 */
+    private final boolean[] hasElements = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public JsonStreamWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public JsonStreamWriter beginObject() throws IOException {
+        return openContainer('{');
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        return closeContainer('}');
+    }
+
+    public JsonStreamWriter beginArray() throws IOException {
+        return openContainer('[');
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        return closeContainer(']');
+    }
+
+    public JsonStreamWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonStreamWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonStreamWriter value(long value) throws IOException {
+        separate();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(boolean value) throws IOException {
+        separate();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    /** 值为 null 时整个字段不输出 */
+    public JsonStreamWriter field(String name, String value) throws IOException {
+        return value == null ? this : name(name).value(value);
+    }
+
+    public JsonStreamWriter field(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonStreamWriter field(String name, boolean value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+        out.close();
+    }
+
+    private JsonStreamWriter openContainer(char bracket) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nesting is deeper than " + MAX_DEPTH);
+        }
+        separate();
+        writeByte(bracket);
+        hasElements[depth++] = false;
+        return this;
+    }
+
+    private JsonStreamWriter closeContainer(char bracket) throws IOException {
+        depth--;
+        writeByte(bracket);
+        return this;
+    }
+
+    /** 容器内第二个及以后的元素前写逗号；紧跟在字段名之后的值不需要 */
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasElements[depth - 1]) {
+                writeByte(',');
+            }
+            hasElements[depth - 1] = true;
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        writeByte('"');
+        char previous = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    writeByte('\\');
+                    writeByte(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        writeByte('\\');
+                    }
+                    writeByte(c);
+                    break;
+                case '\b':
+                    writeAscii("\\b");
+                    break;
+                case '\t':
+                    writeAscii("\\t");
+                    break;
+                case '\n':
+                    writeAscii("\\n");
+                    break;
+                case '\f':
+                    writeAscii("\\f");
+                    break;
+                case '\r':
+                    writeAscii("\\r");
+                    break;
+                default:
+                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                        writeAscii("\\u");
+                        writeByte(HEX[(c >> 12) & 0xf]);
+                        writeByte(HEX[(c >> 8) & 0xf]);
+                        writeByte(HEX[(c >> 4) & 0xf]);
+                        writeByte(HEX[c & 0xf]);
+                    } else if (c < 0x80) {
+                        writeByte(c);
+                    } else if (c < 0x800) {
+                        writeByte(0xc0 | (c >> 6));
+                        writeByte(0x80 | (c & 0x3f));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        writeByte(0xf0 | (cp >> 18));
+                        writeByte(0x80 | ((cp >> 12) & 0x3f));
+                        writeByte(0x80 | ((cp >> 6) & 0x3f));
+                        writeByte(0x80 | (cp & 0x3f));
+                    } else if (Character.isSurrogate(c)) {
+                        // 不成对的代理字符与 String.getBytes(UTF_8) 一样替换为 '?'
+                        writeByte('?');
+                    } else {
+                        writeByte(0xe0 | (c >> 12));
+                        writeByte(0x80 | ((c >> 6) & 0x3f));
+                        writeByte(0x80 | (c & 0x3f));
+                    }
+            }
+            previous = c;
+        }
+        writeByte('"');
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            writeByte(s.charAt(i));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /** 向编码器写出一份响应体，可边读游标边写 */
+    @FunctionalInterface
+    public interface Body {
+        void writeTo(JsonStreamWriter json) throws IOException, SQLException;
+    }
+}
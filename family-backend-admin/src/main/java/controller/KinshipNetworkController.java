@@ -4,22 +4,23 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONArray;
 import org.json.JSONObject;
+import service.DataVersion;
 import service.RelationshipService;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 
 public class KinshipNetworkController implements HttpHandler {
     private static final Logger logger = LogManager.getLogger(KinshipNetworkController.class);
     private final RelationshipService relationshipService;
+    private final DataVersion dataVersion;
     private final int maxQueryLength;
 
-    public KinshipNetworkController(RelationshipService relationshipService, int maxQueryLength) {
+    public KinshipNetworkController(RelationshipService relationshipService, DataVersion dataVersion, int maxQueryLength) {
         this.relationshipService = relationshipService;
+        this.dataVersion = dataVersion;
         this.maxQueryLength = maxQueryLength;
     }
 
@@ -30,6 +31,10 @@ public class KinshipNetworkController implements HttpHandler {
                 sendResponse(exchange, 405, createErrorResponse("Method Not Allowed"), "no-store");
                 return;
             }
+            String etag = ConditionalGet.etag(dataVersion, exchange);
+            if (ConditionalGet.notModified(exchange, etag)) {
+                return;
+            }
 
             String query = exchange.getRequestURI().getRawQuery();
             if (query == null || query.isBlank()) {
@@ -78,54 +83,55 @@ public class KinshipNetworkController implements HttpHandler {
                 return;
             }
 
-            sendResponse(exchange, 200, kinshipNetworkToJson(result).toString(), "public, max-age=60");
+            exchange.getResponseHeaders().add("ETag", etag);
+            addResponseHeaders(exchange, ConditionalGet.CACHE_CONTROL);
+            ResponseWriter.stream(exchange, 200, json -> writeKinshipNetwork(json, result));
         } catch (Exception e) {
             logger.error("Error in handle: {}", e.getMessage());
             sendResponse(exchange, 500, createErrorResponse("Internal Server Error"), "no-store");
         }
     }
 
-    private JSONObject kinshipNetworkToJson(RelationshipService.KinshipNetworkResult result) {
-        JSONObject json = new JSONObject();
-        json.put("centerId", result.getCenterId());
-        json.put("generations", result.getGenerations());
-        json.put("centerGeneration", result.getCenterGeneration());
-        json.put("hiddenRelationsCount", result.getHiddenRelationsCount());
-        JSONArray nodesArr = new JSONArray();
+    private void writeKinshipNetwork(JsonStreamWriter json, RelationshipService.KinshipNetworkResult result) throws IOException {
+        json.beginObject()
+                .field("centerId", result.getCenterId())
+                .field("generations", result.getGenerations())
+                .field("centerGeneration", result.getCenterGeneration())
+                .field("hiddenRelationsCount", result.getHiddenRelationsCount())
+                .name("nodes").beginArray();
         for (RelationshipService.KinshipNetworkNode node : result.getNodes()) {
-            JSONObject obj = new JSONObject();
-            obj.put("id", node.getId());
-            obj.put("name", node.getName());
-            obj.put("gender", node.getGender());
-            obj.put("generation", node.getGeneration());
-            obj.put("level", node.getLevel());
-            nodesArr.put(obj);
+            json.beginObject()
+                    .field("id", node.getId())
+                    .field("name", node.getName())
+                    .field("gender", node.getGender())
+                    .field("generation", node.getGeneration())
+                    .field("level", node.getLevel())
+                    .endObject();
         }
-        json.put("nodes", nodesArr);
-        JSONArray edgesArr = new JSONArray();
+        json.endArray().name("edges").beginArray();
         for (RelationshipService.KinshipNetworkEdge edge : result.getEdges()) {
-            JSONObject obj = new JSONObject();
-            obj.put("fromId", edge.getFromId());
-            obj.put("toId", edge.getToId());
-            obj.put("relationType", edge.getRelationType());
-            obj.put("description", edge.getDescription());
-            obj.put("edgeType", edge.getEdgeType());
-            edgesArr.put(obj);
+            json.beginObject()
+                    .field("fromId", edge.getFromId())
+                    .field("toId", edge.getToId())
+                    .field("relationType", edge.getRelationType())
+                    .field("description", edge.getDescription())
+                    .field("edgeType", edge.getEdgeType())
+                    .endObject();
         }
-        json.put("edges", edgesArr);
-        return json;
+        json.endArray().endObject();
     }
 
-    private void sendResponse(HttpExchange exchange, int statusCode, String response, String cacheControl) throws IOException {
+    private void addResponseHeaders(HttpExchange exchange, String cacheControl) {
         exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
         exchange.getResponseHeaders().add("X-Content-Type-Options", "nosniff");
         exchange.getResponseHeaders().add("X-Frame-Options", "DENY");
         exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+    }
+
+    private void sendResponse(HttpExchange exchange, int statusCode, String response, String cacheControl) throws IOException {
+        addResponseHeaders(exchange, cacheControl);
         byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, responseBytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(responseBytes);
-        }
+        ResponseWriter.send(exchange, statusCode, responseBytes);
     }
 
     private String createErrorResponse(String message) {
@@ -3,6 +3,7 @@ package controller;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import model.Member;
+import service.DataVersion;
 import service.MemberService;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -10,25 +11,40 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MemberController implements HttpHandler {
     private static final Logger logger = LogManager.getLogger(MemberController.class);
+    private static final String BATCH_PATH = "/member/batch";
+    /** 列表可投影的字段，顺序即输出顺序 */
+    private static final List<String> MEMBER_FIELDS = List.of("id", "name", "generation", "gender", "genderText", "remark");
     private MemberService memberService;
+    private final DataVersion dataVersion;
+    private final ResponseCache responseCache;
     private final int maxBodyBytes;
     private final int maxQueryLength;
     private final int maxNameLength;
     private final int maxGeneration;
+    private final int maxBatchSize;
 
-    public MemberController(MemberService memberService, int maxBodyBytes, int maxQueryLength, int maxNameLength, int maxGeneration) {
+    public MemberController(MemberService memberService, DataVersion dataVersion, ResponseCache responseCache,
+                            int maxBodyBytes, int maxQueryLength, int maxNameLength, int maxGeneration, int maxBatchSize) {
         this.memberService = memberService;
+        this.dataVersion = dataVersion;
+        this.responseCache = responseCache;
         this.maxBodyBytes = maxBodyBytes;
         this.maxQueryLength = maxQueryLength;
         this.maxNameLength = maxNameLength;
         this.maxGeneration = maxGeneration;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
@@ -40,7 +56,11 @@ public class MemberController implements HttpHandler {
                     handleGet(exchange);
                     break;
                 case "POST":
-                    handlePost(exchange);
+                    if (BATCH_PATH.equals(exchange.getRequestURI().getPath())) {
+                        handlePostBatch(exchange);
+                    } else {
+                        handlePost(exchange);
+                    }
                     break;
                 case "PUT":
                     handlePut(exchange);
@@ -59,12 +79,20 @@ public class MemberController implements HttpHandler {
 
     private void handleGet(HttpExchange exchange) throws IOException {
         try {
+            String etag = ConditionalGet.etag(dataVersion, exchange);
+            if (ConditionalGet.notModified(exchange, etag)) {
+                return;
+            }
             String query = exchange.getRequestURI().getQuery();
             if (query != null) {
                 if (query.length() > maxQueryLength) {
                     sendResponse(exchange, 400, createErrorResponse("Query is too long"), "no-store");
                     return;
                 }
+                if (PageRequest.isPaged(query)) {
+                    handlePage(exchange, query, etag);
+                    return;
+                }
                 if (query.startsWith("name=")) {
                     String name = URLDecoder.decode(query.substring(5), StandardCharsets.UTF_8);
                     if (name.trim().isEmpty()) {
@@ -77,7 +105,7 @@ public class MemberController implements HttpHandler {
                     }
                     Member member = memberService.findMemberByName(name);
                     if (member != null) {
-                        sendResponse(exchange, 200, memberToJson(member).toString(), "public, max-age=60");
+                        sendCacheable(exchange, memberToJson(member).toString(), etag);
                     } else {
                         sendResponse(exchange, 404, createErrorResponse("Member not found"), "no-store");
                     }
@@ -85,12 +113,11 @@ public class MemberController implements HttpHandler {
                     sendResponse(exchange, 400, createErrorResponse("Invalid query parameter"), "no-store");
                 }
             } else {
-                List<Member> members = memberService.getAllMembers();
-                JSONArray jsonArray = new JSONArray();
-                for (Member member : members) {
-                    jsonArray.put(memberToJson(member));
-                }
-                sendResponse(exchange, 200, jsonArray.toString(), "public, max-age=60");
+                serveCached(exchange, "/member", etag, json -> {
+                    json.beginArray();
+                    memberService.forEachMember(member -> writeMember(json, member, MEMBER_FIELDS));
+                    json.endArray();
+                });
             }
         } catch (Exception e) {
             logger.error("Error in handleGet: {}", e.getMessage());
@@ -98,6 +125,49 @@ public class MemberController implements HttpHandler {
         }
     }
 
+    /**
+     * 分页列表：GET /member?limit=50&cursor=120&fields=id,name，返回 {"items":[...],"nextCursor":"170"}。
+     * 只查询所选字段对应的列，最后一页不含 nextCursor。
+     */
+    private void handlePage(HttpExchange exchange, String query, String etag) throws IOException, SQLException {
+        Map<String, String> params = PageRequest.parse(query);
+        PageRequest page;
+        try {
+            page = PageRequest.from(params, MEMBER_FIELDS);
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, createErrorResponse(e.getMessage()), "no-store");
+            return;
+        }
+        if (!params.isEmpty()) {
+            sendResponse(exchange, 400, createErrorResponse("Invalid query parameter"), "no-store");
+            return;
+        }
+        Set<String> columns = new HashSet<>();
+        if (page.includes("name")) {
+            columns.add("Name");
+        }
+        if (page.includes("generation")) {
+            columns.add("Generation");
+        }
+        if (page.includes("gender") || page.includes("genderText")) {
+            columns.add("Gender");
+        }
+        if (page.includes("remark")) {
+            columns.add("Remark");
+        }
+        streamCacheable(exchange, etag, json -> {
+            json.beginObject().name("items").beginArray();
+            memberService.forEachMemberPage(page.after(), page.fetchSize(), columns, member -> {
+                if (page.accept(member.getMemberID())) {
+                    writeMember(json, member, page.fields());
+                }
+            });
+            json.endArray()
+                    .field("nextCursor", page.nextCursor())
+                    .endObject();
+        });
+    }
+
     private void handlePost(HttpExchange exchange) throws IOException {
         try {
             String requestBody = readRequestBody(exchange);
@@ -121,69 +191,141 @@ public class MemberController implements HttpHandler {
                 return;
             }
 
-            // 验证必需字段存在
-            if (!json.has("name") || !json.has("generation") || !json.has("gender")) {
-                sendResponse(exchange, 400, createErrorResponse("Missing required fields: name, generation, and gender are required"), "no-store");
+            Member draft;
+            try {
+                draft = parseMember(json);
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, 400, createErrorResponse(e.getMessage()), "no-store");
                 return;
             }
 
-            // 验证字段值
-            String name = json.getString("name");
-            if (name == null || name.trim().isEmpty()) {
-                sendResponse(exchange, 400, createErrorResponse("Name cannot be empty"), "no-store");
-                return;
+            // 添加成员
+            Member newMember = memberService.addMember(draft.getName(), draft.getGeneration(), draft.getGender(), draft.getRemark());
+            if (newMember != null) {
+                sendResponse(exchange, 201, memberToJson(newMember).toString(), "no-store");
+            } else {
+                sendResponse(exchange, 400, createErrorResponse("Failed to add member"), "no-store");
             }
-            if (name.length() > maxNameLength || containsControlChars(name)) {
-                sendResponse(exchange, 400, createErrorResponse("Name is invalid"), "no-store");
-                return;
+        } catch (Exception e) {
+            logger.error("Error in handlePost: {}", e.getMessage());
+            sendResponse(exchange, 500, createErrorResponse("Internal Server Error"), "no-store");
+        }
+    }
+
+    /** 校验新成员的字段，返回 ID 为 0 的成员；不合法时抛出带错误信息的 IllegalArgumentException */
+    private Member parseMember(JSONObject json) {
+        // 验证必需字段存在
+        if (!json.has("name") || !json.has("generation") || !json.has("gender")) {
+            throw new IllegalArgumentException("Missing required fields: name, generation, and gender are required");
+        }
+
+        // 验证字段值
+        Object nameValue = json.get("name");
+        if (!(nameValue instanceof String) || ((String) nameValue).trim().isEmpty()) {
+            throw new IllegalArgumentException("Name cannot be empty");
+        }
+        String name = (String) nameValue;
+        if (name.length() > maxNameLength || containsControlChars(name)) {
+            throw new IllegalArgumentException("Name is invalid");
+        }
+
+        int generation;
+        try {
+            generation = json.getInt("generation");
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Generation must be a valid integer");
+        }
+        if (generation < 0 || generation > maxGeneration) {
+            throw new IllegalArgumentException("Generation is out of range");
+        }
+
+        int gender;
+        try {
+            gender = json.getInt("gender");
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Gender must be a valid integer (0 or 1)");
+        }
+        if (gender != 0 && gender != 1) {
+            throw new IllegalArgumentException("Gender must be 0 (Male) or 1 (Female)");
+        }
+
+        String remark = null;
+        if (json.has("remark") && !json.isNull("remark")) {
+            remark = json.optString("remark", null);
+            if (remark != null && remark.length() > maxQueryLength) {
+                throw new IllegalArgumentException("Remark is too long");
+            }
+            if (remark != null && containsControlChars(remark)) {
+                throw new IllegalArgumentException("Remark is invalid");
             }
+        }
+        return new Member(0, name, generation, gender, remark);
+    }
 
-            int generation;
-            try {
-                generation = json.getInt("generation");
-                if (generation < 0 || generation > maxGeneration) {
-                    sendResponse(exchange, 400, createErrorResponse("Generation is out of range"), "no-store");
-                    return;
-                }
-            } catch (Exception e) {
-                sendResponse(exchange, 400, createErrorResponse("Generation must be a valid integer"), "no-store");
+    /**
+     * 批量添加成员：请求体为 {"members":[{"name":"...","generation":3,"gender":0}, ...]}。
+     * 先校验全部条目，任一无效时返回 400 与各条目的结果且不写入；全部有效时在一个事务内添加，返回 201 与新成员。
+     */
+    private void handlePostBatch(HttpExchange exchange) throws IOException {
+        try {
+            String requestBody = readRequestBody(exchange);
+            if (requestBody == null) {
+                sendResponse(exchange, 413, createErrorResponse("Request body too large"), "no-store");
                 return;
             }
-
-            int gender;
+            JSONArray itemsJson;
             try {
-                gender = json.getInt("gender");
-                if (gender != 0 && gender != 1) {
-                    sendResponse(exchange, 400, createErrorResponse("Gender must be 0 (Male) or 1 (Female)"), "no-store");
-                    return;
-                }
+                itemsJson = new JSONObject(requestBody).getJSONArray("members");
             } catch (Exception e) {
-                sendResponse(exchange, 400, createErrorResponse("Gender must be a valid integer (0 or 1)"), "no-store");
+                sendResponse(exchange, 400, createErrorResponse("Request body must be {\"members\": [...]}"), "no-store");
+                return;
+            }
+            if (itemsJson.isEmpty()) {
+                sendResponse(exchange, 400, createErrorResponse("members cannot be empty"), "no-store");
+                return;
+            }
+            if (itemsJson.length() > maxBatchSize) {
+                sendResponse(exchange, 400, createErrorResponse("At most " + maxBatchSize + " members per batch"), "no-store");
                 return;
             }
 
-            String remark = null;
-            if (json.has("remark") && !json.isNull("remark")) {
-                remark = json.optString("remark", null);
-                if (remark != null && remark.length() > maxQueryLength) {
-                    sendResponse(exchange, 400, createErrorResponse("Remark is too long"), "no-store");
-                    return;
-                }
-                if (remark != null && containsControlChars(remark)) {
-                    sendResponse(exchange, 400, createErrorResponse("Remark is invalid"), "no-store");
-                    return;
+            List<Member> drafts = new ArrayList<>(itemsJson.length());
+            JSONArray checks = new JSONArray();
+            boolean valid = true;
+            for (int i = 0; i < itemsJson.length(); i++) {
+                JSONObject check = new JSONObject().put("index", i);
+                try {
+                    JSONObject itemJson = itemsJson.optJSONObject(i);
+                    if (itemJson == null) {
+                        throw new IllegalArgumentException("Each item must be an object");
+                    }
+                    drafts.add(parseMember(itemJson));
+                    check.put("status", "valid");
+                } catch (IllegalArgumentException e) {
+                    check.put("error", e.getMessage());
+                    valid = false;
                 }
+                checks.put(check);
+            }
+            JSONObject response = new JSONObject();
+            if (!valid) {
+                response.put("error", "Batch rejected, nothing was written");
+                response.put("results", checks);
+                response.put("count", checks.length());
+                sendResponse(exchange, 400, response.toString(), "no-store");
+                return;
             }
 
-            // 添加成员
-            Member newMember = memberService.addMember(name, generation, gender, remark);
-            if (newMember != null) {
-                sendResponse(exchange, 201, memberToJson(newMember).toString(), "no-store");
-            } else {
-                sendResponse(exchange, 400, createErrorResponse("Failed to add member"), "no-store");
+            List<Member> added = memberService.addMembers(drafts);
+            JSONArray results = new JSONArray();
+            for (int i = 0; i < added.size(); i++) {
+                results.put(memberToJson(added.get(i)).put("index", i));
             }
+            response.put("results", results);
+            response.put("count", results.length());
+            sendResponse(exchange, 201, response.toString(), "no-store");
         } catch (Exception e) {
-            logger.error("Error in handlePost: {}", e.getMessage());
+            logger.error("Error in handlePostBatch: {}", e.getMessage());
             sendResponse(exchange, 500, createErrorResponse("Internal Server Error"), "no-store");
         }
     }
@@ -327,16 +469,59 @@ public class MemberController implements HttpHandler {
         }
     }
 
-    private void sendResponse(HttpExchange exchange, int statusCode, String response, String cacheControl) throws IOException {
+    private void sendCacheable(HttpExchange exchange, String response, String etag) throws IOException {
+        exchange.getResponseHeaders().add("ETag", etag);
+        sendResponse(exchange, 200, response, ConditionalGet.CACHE_CONTROL);
+    }
+
+    private void serveCached(HttpExchange exchange, String cacheKey, String etag, JsonStreamWriter.Body body)
+            throws IOException, SQLException {
+        exchange.getResponseHeaders().add("ETag", etag);
+        addResponseHeaders(exchange, ConditionalGet.CACHE_CONTROL);
+        responseCache.serve(exchange, cacheKey, body);
+    }
+
+    private void streamCacheable(HttpExchange exchange, String etag, JsonStreamWriter.Body body) throws IOException, SQLException {
+        exchange.getResponseHeaders().add("ETag", etag);
+        addResponseHeaders(exchange, ConditionalGet.CACHE_CONTROL);
+        ResponseWriter.stream(exchange, 200, body);
+    }
+
+    private void addResponseHeaders(HttpExchange exchange, String cacheControl) {
         exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
         exchange.getResponseHeaders().add("X-Content-Type-Options", "nosniff");
         exchange.getResponseHeaders().add("X-Frame-Options", "DENY");
         exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+    }
+
+    private void sendResponse(HttpExchange exchange, int statusCode, String response, String cacheControl) throws IOException {
+        addResponseHeaders(exchange, cacheControl);
         byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, responseBytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(responseBytes);
+        ResponseWriter.send(exchange, statusCode, responseBytes);
+    }
+
+    /** 只写出 fields 中的字段；全部字段时与 memberToJson 相同，remark 为 null 时同样省略 */
+    private void writeMember(JsonStreamWriter json, Member member, Collection<String> fields) throws IOException {
+        json.beginObject();
+        if (fields.contains("id")) {
+            json.field("id", member.getMemberID());
+        }
+        if (fields.contains("name")) {
+            json.field("name", member.getName());
+        }
+        if (fields.contains("generation")) {
+            json.field("generation", member.getGeneration());
+        }
+        if (fields.contains("gender")) {
+            json.field("gender", member.getGender());
+        }
+        if (fields.contains("genderText")) {
+            json.field("genderText", member.getGender() == 0 ? "Male" : "Female");
+        }
+        if (fields.contains("remark")) {
+            json.field("remark", member.getRemark());
         }
+        json.endObject();
     }
 
     private JSONObject memberToJson(Member member) {
@@ -0,0 +1,131 @@
+package controller;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 列表端点的分页与字段投影参数：limit、cursor 与 fields=a,b,c。
+ * 按主键递增做键集分页，游标是上一页最后一行的主键，翻到任何一页的代价都与页码无关。
+ * 每个请求新建一个实例，写出时用 accept 记录行数，最后由 nextCursor 给出下一页游标。
+ */
+final class PageRequest {
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+    private static final Set<String> PARAMS = Set.of("limit", "cursor", "fields");
+
+    private final int limit;
+    private final int after;
+    private final Set<String> fields;
+    private int count;
+    private int lastKey;
+
+    private PageRequest(int limit, int after, Set<String> fields) {
+        this.limit = limit;
+        this.after = after;
+        this.fields = fields;
+    }
+
+    /** 查询串中是否带有分页或投影参数 */
+    static boolean isPaged(String query) {
+        for (String name : parse(query).keySet()) {
+            if (PARAMS.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 解析查询串为参数表，同名参数以最后一个为准 */
+    static Map<String, String> parse(String query) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    /**
+     * 取出并校验 limit、cursor、fields，其余参数留在 params 中由调用方处理。
+     * fields 未指定时返回 allowedFields 的全部字段；参数不合法时抛出 IllegalArgumentException，消息可直接返回客户端。
+     */
+    static PageRequest from(Map<String, String> params, List<String> allowedFields) {
+        int limit = parseInt(params.remove("limit"), DEFAULT_LIMIT, "limit");
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        int after = parseInt(params.remove("cursor"), 0, "cursor");
+        if (after < 0) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        String fieldList = params.remove("fields");
+        Set<String> fields;
+        if (fieldList == null || fieldList.trim().isEmpty()) {
+            fields = new LinkedHashSet<>(allowedFields);
+        } else {
+            fields = new LinkedHashSet<>();
+            for (String field : fieldList.split(",")) {
+                String name = field.trim();
+                if (!allowedFields.contains(name)) {
+                    throw new IllegalArgumentException("Unknown field: " + name);
+                }
+                fields.add(name);
+            }
+        }
+        return new PageRequest(limit, after, Collections.unmodifiableSet(fields));
+    }
+
+    private static int parseInt(String value, int defaultValue, String name) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " format");
+        }
+    }
+
+    /** 只返回主键大于该值的行 */
+    int after() {
+        return after;
+    }
+
+    /** 向数据库多取一行，用来判断是否还有下一页 */
+    int fetchSize() {
+        return limit + 1;
+    }
+
+    Set<String> fields() {
+        return fields;
+    }
+
+    boolean includes(String field) {
+        return fields.contains(field);
+    }
+
+    /** 记录按主键顺序到来的一行；超出 limit 的那一行只说明还有下一页，返回 false 表示不输出 */
+    boolean accept(int key) {
+        if (count++ < limit) {
+            lastKey = key;
+            return true;
+        }
+        return false;
+    }
+
+    /** 还有下一页时返回其游标，否则为 null */
+    String nextCursor() {
+        return count > limit ? String.valueOf(lastKey) : null;
+    }
+}
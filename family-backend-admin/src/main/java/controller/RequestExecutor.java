@@ -0,0 +1,211 @@
+package controller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HttpServer 的请求执行器：同时执行 threads 个请求，另有 queueCapacity 个请求排队等待。
+ * 超出容量的请求交给拒绝执行器，由 isShedding() 告知处理链直接返回 503，而不是无限排队。
+ * 拒绝执行器不设上限（可用时为虚拟线程），慢客户端只占住自己的线程；线程也无法创建时在调用线程上返回 503。
+ * pool 模式使用固定大小的平台线程池；virtual 模式每个请求一个虚拟线程（需 JDK 21+），并发数由信号量限制。
+ */
+public class RequestExecutor implements Executor {
+    private static final Logger logger = LogManager.getLogger(RequestExecutor.class);
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+    /** 空闲的拒绝线程保留的时间 */
+    private static final long SHED_KEEP_ALIVE_SECONDS = 10;
+
+    private final String mode;
+    private final int threads;
+    private final int queueCapacity;
+    private final ExecutorService workers;
+    /** virtual 模式下限制同时运行的请求数；pool 模式由线程数限制，为 null */
+    private final Semaphore running;
+    private final ExecutorService shedder;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public RequestExecutor(String mode, int threads, int queueCapacity) {
+        if (threads <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Executor threads must be positive and queue capacity non-negative");
+        }
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        ExecutorService virtual = "pool".equals(mode) ? null : newVirtualThreadExecutor();
+        if ("virtual".equals(mode) && virtual == null) {
+            logger.warn("Virtual threads are not available on this JDK, falling back to a platform thread pool");
+        }
+        if (virtual != null) {
+            this.mode = "virtual";
+            this.workers = virtual;
+            this.running = new Semaphore(threads);
+        } else {
+            this.mode = "pool";
+            // 排队上限由准入计数控制，这里的队列不会超过 queueCapacity
+            this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), daemonThreads("http-worker"));
+            this.running = null;
+        }
+        ExecutorService virtualShedder = virtual != null ? newVirtualThreadExecutor() : null;
+        this.shedder = virtualShedder != null ? virtualShedder
+                : new ThreadPoolExecutor(0, Integer.MAX_VALUE, SHED_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                        new SynchronousQueue<>(), daemonThreads("http-shed"));
+    }
+
+    /** 从配置创建：server.executor=pool|virtual|auto，server.threads，server.queueCapacity */
+    public static RequestExecutor fromProperties(Properties prop) {
+        String mode = prop.getProperty("server.executor", "pool").trim().toLowerCase();
+        int threads = Integer.parseInt(prop.getProperty("server.threads",
+                String.valueOf(Math.max(4, Runtime.getRuntime().availableProcessors() * 2))));
+        int queueCapacity = Integer.parseInt(prop.getProperty("server.queueCapacity", String.valueOf(threads * 16)));
+        return new RequestExecutor(mode, threads, queueCapacity);
+    }
+
+    /** 当前线程是否正在处理一个因容量已满而被拒绝的请求 */
+    public static boolean isShedding() {
+        return Boolean.TRUE.equals(SHEDDING.get());
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (admitted.incrementAndGet() > threads + queueCapacity) {
+            admitted.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            // HttpServer 在 execute 抛异常时只会丢弃连接，因此仍交给线程执行，由处理链返回 503
+            try {
+                shedder.execute(() -> shed(task));
+            } catch (RejectedExecutionException | OutOfMemoryError e) {
+                logger.warn("Cannot start a shedding thread, answering 503 on the dispatcher thread: {}", e.toString());
+                shed(task);
+            }
+            return;
+        }
+        long enqueued = System.nanoTime();
+        try {
+            workers.execute(() -> run(task, enqueued));
+        } catch (RejectedExecutionException e) {
+            admitted.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private static void shed(Runnable task) {
+        SHEDDING.set(Boolean.TRUE);
+        try {
+            task.run();
+        } finally {
+            SHEDDING.remove();
+        }
+    }
+
+    private void run(Runnable task, long enqueued) {
+        boolean acquired = false;
+        try {
+            if (running != null) {
+                running.acquire();
+                acquired = true;
+            }
+            long waited = System.nanoTime() - enqueued;
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+                completedCount.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (acquired) {
+                running.release();
+            }
+            admitted.decrementAndGet();
+        }
+    }
+
+    public ExecutorStats getStats() {
+        int activeNow = active.get();
+        return new ExecutorStats(mode, threads, queueCapacity, activeNow, Math.max(0, admitted.get() - activeNow),
+                completedCount.get(), rejectedCount.get(), TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get()),
+                TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()));
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+        shedder.shutdown();
+    }
+
+    /** 构建目标为 Java 17，虚拟线程执行器通过反射获取，不可用时返回 null */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** 请求执行器运行指标快照 */
+    public static class ExecutorStats {
+        private final String mode;
+        private final int threads;
+        private final int queueCapacity;
+        private final int active;
+        private final int queued;
+        private final long completedCount;
+        private final long rejectedCount;
+        private final long totalWaitMicros;
+        private final long maxWaitMicros;
+
+        public ExecutorStats(String mode, int threads, int queueCapacity, int active, int queued, long completedCount,
+                             long rejectedCount, long totalWaitMicros, long maxWaitMicros) {
+            this.mode = mode;
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+            this.active = active;
+            this.queued = queued;
+            this.completedCount = completedCount;
+            this.rejectedCount = rejectedCount;
+            this.totalWaitMicros = totalWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+        }
+
+        public String getMode() { return mode; }
+        public int getThreads() { return threads; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public int getActive() { return active; }
+        public int getQueued() { return queued; }
+        public long getCompletedCount() { return completedCount; }
+        public long getRejectedCount() { return rejectedCount; }
+        public long getTotalWaitMicros() { return totalWaitMicros; }
+        public long getMaxWaitMicros() { return maxWaitMicros; }
+    }
+}
@@ -0,0 +1,400 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 各控制器共用的响应写出：按 Accept-Encoding 协商 gzip / deflate，响应体达到阈值才压缩。
+ * 两种编码共用同一份原始 deflate 数据，只在写出时加上各自的头尾，
+ * 因此缓存的响应压缩一次即可同时服务两种客户端。Deflater 实例放在池中复用。
+ */
+public final class ResponseWriter {
+    private static final Logger logger = LogManager.getLogger(ResponseWriter.class);
+    private static final int DEFLATER_POOL_SIZE = 32;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9c};
+    /** 流式响应在响应头发出前最多缓存的字节数，与 JsonStreamWriter 的缓冲区大小相同 */
+    private static final int STREAM_BUFFER_BYTES = 8192;
+
+    private static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(DEFLATER_POOL_SIZE);
+    private static final AtomicLong compressedCount = new AtomicLong();
+    private static final AtomicLong bytesIn = new AtomicLong();
+    private static final AtomicLong bytesOut = new AtomicLong();
+    private static volatile int minBytes = 1024;
+    private static volatile int level = Deflater.DEFAULT_COMPRESSION;
+
+    private ResponseWriter() {
+    }
+
+    /** 读取 server.compression.minBytes（小于 0 表示关闭压缩）与 server.compression.level */
+    public static void configure(Properties prop) {
+        minBytes = Integer.parseInt(prop.getProperty("server.compression.minBytes", String.valueOf(minBytes)));
+        level = Integer.parseInt(prop.getProperty("server.compression.level", String.valueOf(level)));
+    }
+
+    /** 写出完整响应；调用前须已设置 Content-Type 等其余响应头 */
+    public static void send(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        send(exchange, statusCode, body, isCompressible(body) ? compress(body) : null);
+    }
+
+    /** 写出完整响应，compressed 为预先压缩好的数据（可为 null） */
+    static void send(HttpExchange exchange, int statusCode, byte[] body, Compressed compressed) throws IOException {
+        Encoding encoding = Encoding.IDENTITY;
+        if (compressed != null) {
+            exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+            encoding = negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        }
+        if (encoding == Encoding.IDENTITY) {
+            exchange.sendResponseHeaders(statusCode, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Encoding", encoding.token);
+        exchange.sendResponseHeaders(statusCode, compressed.encodedLength(encoding));
+        try (OutputStream os = exchange.getResponseBody()) {
+            compressed.writeTo(os, encoding);
+        }
+        compressedCount.incrementAndGet();
+        bytesIn.addAndGet(body.length);
+        bytesOut.addAndGet(compressed.encodedLength(encoding));
+    }
+
+    /** 以分块传输开始响应，返回的流按协商结果压缩；关闭流即结束响应。调用方已确认响应体达到压缩阈值 */
+    static OutputStream openStream(HttpExchange exchange, int statusCode) throws IOException {
+        Encoding encoding = minBytes >= 0 ? negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding")) : Encoding.IDENTITY;
+        exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+        if (encoding != Encoding.IDENTITY) {
+            exchange.getResponseHeaders().add("Content-Encoding", encoding.token);
+        }
+        exchange.sendResponseHeaders(statusCode, 0);
+        OutputStream body = exchange.getResponseBody();
+        if (encoding == Encoding.IDENTITY) {
+            return body;
+        }
+        compressedCount.incrementAndGet();
+        return new FramedDeflaterStream(body, encoding);
+    }
+
+    /**
+     * 以分块传输流式写出 JSON，内存占用与结果规模无关。编码器缓冲区第一次写满前不发送响应头，
+     * 此前出错时异常照常抛给调用方返回错误状态码；响应头发出后出错只能记录日志并中断连接。
+     * 整个响应体不超过一个缓冲区时按完整响应发送，是否压缩与 send 一样取决于阈值。
+     * 无论成败都归还压缩流借用的 Deflater。
+     */
+    static void stream(HttpExchange exchange, int statusCode, JsonStreamWriter.Body body) throws IOException, SQLException {
+        DeferredStream out = new DeferredStream(exchange, statusCode);
+        try {
+            JsonStreamWriter json = new JsonStreamWriter(out);
+            try {
+                body.writeTo(json);
+            } catch (IOException | SQLException | RuntimeException e) {
+                if (exchange.getResponseCode() == -1) {
+                    throw e;
+                }
+                logger.error("Error streaming response for {}: {}", exchange.getRequestURI(), e.getMessage());
+                exchange.close();
+                return;
+            }
+            json.close();
+        } finally {
+            out.release();
+        }
+    }
+
+    static boolean isCompressible(byte[] body) {
+        return minBytes >= 0 && body.length >= minBytes;
+    }
+
+    /** 压缩为原始 deflate 数据并记录两种编码尾部所需的校验值 */
+    static Compressed compress(byte[] body) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4 + 64);
+        Deflater deflater = borrowDeflater();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(buffer, deflater, 8192)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory compression failed", e);
+        } finally {
+            returnDeflater(deflater);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        Adler32 adler = new Adler32();
+        adler.update(body);
+        return new Compressed(buffer.toByteArray(), body.length, (int) crc.getValue(), (int) adler.getValue());
+    }
+
+    /** 按 q 值选择编码，相同时优先 gzip；q=0 表示拒绝，"*" 适用于未单独列出的编码 */
+    static Encoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return Encoding.IDENTITY;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            String coding = parts[0].trim().toLowerCase();
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals("deflate")) {
+                deflate = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        gzip = gzip >= 0 ? gzip : any;
+        deflate = deflate >= 0 ? deflate : any;
+        if (gzip > 0 && gzip >= deflate) {
+            return Encoding.GZIP;
+        }
+        return deflate > 0 ? Encoding.DEFLATE : Encoding.IDENTITY;
+    }
+
+    public static CompressionStats getStats() {
+        return new CompressionStats(minBytes, compressedCount.get(), bytesIn.get(), bytesOut.get(), deflaters.size());
+    }
+
+    private static Deflater borrowDeflater() {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            return new Deflater(level, true);
+        }
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    private static void returnDeflater(Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    enum Encoding {
+        IDENTITY(null), GZIP("gzip"), DEFLATE("deflate");
+
+        private final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+    }
+
+    /** 一份响应体的原始 deflate 数据，写出时按编码加上 gzip 或 zlib 的头尾 */
+    static final class Compressed {
+        private final byte[] deflated;
+        private final int length;
+        private final int crc32;
+        private final int adler32;
+
+        Compressed(byte[] deflated, int length, int crc32, int adler32) {
+            this.deflated = deflated;
+            this.length = length;
+            this.crc32 = crc32;
+            this.adler32 = adler32;
+        }
+
+        int size() {
+            return deflated.length;
+        }
+
+        int encodedLength(Encoding encoding) {
+            return deflated.length + (encoding == Encoding.GZIP ? GZIP_HEADER.length + 8 : ZLIB_HEADER.length + 4);
+        }
+
+        void writeTo(OutputStream out, Encoding encoding) throws IOException {
+            if (encoding == Encoding.GZIP) {
+                out.write(GZIP_HEADER);
+                out.write(deflated);
+                out.write(gzipTrailer(crc32, length));
+            } else {
+                out.write(ZLIB_HEADER);
+                out.write(deflated);
+                out.write(zlibTrailer(adler32));
+            }
+        }
+    }
+
+    /** 流式压缩：写出时更新校验值，关闭时补上尾部并归还 Deflater；中途放弃时由 release 归还 */
+    private static final class FramedDeflaterStream extends DeflaterOutputStream {
+        private final Encoding encoding;
+        private final CRC32 crc = new CRC32();
+        private final Adler32 adler = new Adler32();
+        private long length;
+        private boolean closed;
+        private boolean released;
+
+        FramedDeflaterStream(OutputStream out, Encoding encoding) throws IOException {
+            super(out, borrowDeflater(), 8192);
+            this.encoding = encoding;
+            out.write(encoding == Encoding.GZIP ? GZIP_HEADER : ZLIB_HEADER);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            if (encoding == Encoding.GZIP) {
+                crc.update(b, off, len);
+            } else {
+                adler.update(b, off, len);
+            }
+            length += len;
+            bytesIn.addAndGet(len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                finish();
+                out.write(encoding == Encoding.GZIP
+                        ? gzipTrailer((int) crc.getValue(), (int) length)
+                        : zlibTrailer((int) adler.getValue()));
+                bytesOut.addAndGet(def.getBytesWritten() + (encoding == Encoding.GZIP ? 18 : 6));
+                out.close();
+            } finally {
+                release();
+            }
+        }
+
+        /** 归还 Deflater，只归还一次，不写尾部 */
+        void release() {
+            if (!released) {
+                released = true;
+                closed = true;
+                returnDeflater(def);
+            }
+        }
+    }
+
+    /**
+     * 缓存响应体，超过一个缓冲区（且不小于压缩阈值）时才发送响应头并打开（可能压缩的）分块响应流；
+     * 关闭时仍未打开说明整个响应体都在缓存中，按完整响应发送，由 isCompressible 决定是否压缩。
+     */
+    private static final class DeferredStream extends OutputStream {
+        private final HttpExchange exchange;
+        private final int statusCode;
+        private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private OutputStream target;
+
+        DeferredStream(HttpExchange exchange, int statusCode) {
+            this.exchange = exchange;
+            this.statusCode = statusCode;
+        }
+
+        private OutputStream target() throws IOException {
+            if (target == null) {
+                target = openStream(exchange, statusCode);
+                pending.writeTo(target);
+                pending = null;
+            }
+            return target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (target != null) {
+                target.write(b, off, len);
+                return;
+            }
+            pending.write(b, off, len);
+            if (pending.size() >= Math.max(STREAM_BUFFER_BYTES, minBytes)) {
+                target();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (target == null) {
+                if (pending == null) {
+                    return;
+                }
+                byte[] body = pending.toByteArray();
+                pending = null;
+                send(exchange, statusCode, body);
+                return;
+            }
+            target.close();
+        }
+
+        /** 归还压缩流借用的 Deflater；已正常关闭时不做任何事 */
+        void release() {
+            if (target instanceof FramedDeflaterStream) {
+                ((FramedDeflaterStream) target).release();
+            }
+        }
+    }
+
+    private static byte[] gzipTrailer(int crc32, int length) {
+        return new byte[]{
+                (byte) crc32, (byte) (crc32 >>> 8), (byte) (crc32 >>> 16), (byte) (crc32 >>> 24),
+                (byte) length, (byte) (length >>> 8), (byte) (length >>> 16), (byte) (length >>> 24)};
+    }
+
+    private static byte[] zlibTrailer(int adler32) {
+        return new byte[]{(byte) (adler32 >>> 24), (byte) (adler32 >>> 16), (byte) (adler32 >>> 8), (byte) adler32};
+    }
+
+    /** 响应压缩运行指标快照 */
+    public static class CompressionStats {
+        private final int minBytes;
+        private final long compressedCount;
+        private final long bytesIn;
+        private final long bytesOut;
+        private final int pooledDeflaters;
+
+        public CompressionStats(int minBytes, long compressedCount, long bytesIn, long bytesOut, int pooledDeflaters) {
+            this.minBytes = minBytes;
+            this.compressedCount = compressedCount;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.pooledDeflaters = pooledDeflaters;
+        }
+
+        public int getMinBytes() { return minBytes; }
+        public long getCompressedCount() { return compressedCount; }
+        public long getBytesIn() { return bytesIn; }
+        public long getBytesOut() { return bytesOut; }
+        public int getPooledDeflaters() { return pooledDeflaters; }
+    }
+}
@@ -1,17 +1,27 @@
 // MemberRepository.java
 package repository;
 
+import model.IdSummary;
 import model.Member;
 import controller.DatabaseConnection;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MemberRepository {
     private static final Logger logger = LogManager.getLogger(MemberRepository.class);
+    /** 分页查询可投影的列 */
+    public static final List<String> PAGE_COLUMNS = List.of("Name", "Generation", "Gender", "Remark");
 
     public Member addMember(String name, int generation, int gender) throws SQLException {
         return addMember(name, generation, gender, null);
@@ -66,6 +76,37 @@ public class MemberRepository {
         return null;
     }
 
+    /** 一次查出多个成员，不存在的 ID 不出现在结果中 */
+    public Map<Integer, Member> findMembersByIds(Collection<Integer> memberIds) throws SQLException {
+        Map<Integer, Member> members = new HashMap<>();
+        if (memberIds.isEmpty()) {
+            return members;
+        }
+        String sql = "SELECT * FROM Members WHERE MemberID IN (" + String.join(", ", Collections.nCopies(memberIds.size(), "?")) + ")";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (int memberId : memberIds) {
+                pstmt.setInt(index++, memberId);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Member member = new Member(
+                            rs.getInt("MemberID"),
+                            rs.getString("Name"),
+                            rs.getInt("Generation"),
+                            rs.getInt("Gender"),
+                            rs.getString("Remark")
+                    );
+                    members.put(member.getMemberID(), member);
+                }
+            }
+        }
+        return members;
+    }
+
     public Member findMemberByName(String name) throws SQLException {
         String sql = "SELECT * FROM Members WHERE Name LIKE ? COLLATE NOCASE";
 
@@ -90,6 +131,30 @@ public class MemberRepository {
 
     public List<Member> getAllMembers() throws SQLException {
         List<Member> members = new ArrayList<>();
+        try {
+            forEachMember(members::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return members;
+    }
+
+    /** 成员主键的行数、最大值与总和 */
+    public IdSummary getIdSummary() throws SQLException {
+        return summarizeIds("SELECT COUNT(*), COALESCE(MAX(MemberID), 0), COALESCE(SUM(MemberID), 0) FROM Members");
+    }
+
+    static IdSummary summarizeIds(String sql) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return new IdSummary(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+        }
+    }
+
+    /** 按表内顺序逐个处理全部成员，结果集不在内存中整体保存 */
+    public void forEachMember(RowHandler<Member> handler) throws SQLException, IOException {
         String sql = "SELECT * FROM Members";
 
         try (Connection conn = DatabaseConnection.getConnection();
@@ -97,7 +162,7 @@ public class MemberRepository {
              ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
-                members.add(new Member(
+                handler.handle(new Member(
                         rs.getInt("MemberID"),
                         rs.getString("Name"),
                         rs.getInt("Generation"),
@@ -106,7 +171,42 @@ public class MemberRepository {
                 ));
             }
         }
-        return members;
+    }
+
+    /**
+     * 键集分页：按 MemberID 升序处理 MemberID 大于 afterID 的至多 limit 个成员。
+     * columns 为需要查询的列（MemberID 总会查询），未查询的属性在 Member 中保持默认值。
+     */
+    public void forEachMemberPage(int afterID, int limit, Set<String> columns, RowHandler<Member> handler)
+            throws SQLException, IOException {
+        if (!PAGE_COLUMNS.containsAll(columns)) {
+            throw new IllegalArgumentException("Unknown member column in " + columns);
+        }
+        StringBuilder sql = new StringBuilder("SELECT MemberID");
+        for (String column : PAGE_COLUMNS) {
+            if (columns.contains(column)) {
+                sql.append(", ").append(column);
+            }
+        }
+        sql.append(" FROM Members WHERE MemberID > ? ORDER BY MemberID LIMIT ?");
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            pstmt.setInt(1, afterID);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(new Member(
+                            rs.getInt("MemberID"),
+                            columns.contains("Name") ? rs.getString("Name") : null,
+                            columns.contains("Generation") ? rs.getInt("Generation") : 0,
+                            columns.contains("Gender") ? rs.getInt("Gender") : 0,
+                            columns.contains("Remark") ? rs.getString("Remark") : null
+                    ));
+                }
+            }
+        }
     }
 
     public boolean updateMember(int memberId, String name, int gender, String remark) throws SQLException {
@@ -1,30 +1,46 @@
 package repository;
 
-import model.Member;
+import model.IdSummary;
 import model.Relationship;
 import controller.DatabaseConnection;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class RelationshipRepository {
     private static final Logger logger = LogManager.getLogger(RelationshipRepository.class);
+    /** 关系行连同双方姓名一次查出，避免逐行再查 Members */
+    private static final String SELECT_WITH_NAMES = "SELECT r.RelationID, r.member1, r.member2, r.relation, " +
+            "m1.Name AS member1Name, m2.Name AS member2Name " +
+            "FROM Relationships r " +
+            "LEFT JOIN Members m1 ON m1.MemberID = r.member1 " +
+            "LEFT JOIN Members m2 ON m2.MemberID = r.member2";
+    /** 分页查询可投影的列，姓名列来自 Members */
+    public static final List<String> PAGE_COLUMNS = List.of("member1", "member2", "relation", "member1Name", "member2Name");
     private final MemberRepository memberRepository;
 
     public RelationshipRepository(MemberRepository memberRepository) {
         this.memberRepository = memberRepository;
     }
 
+    /** 幂等插入：(member1, member2, relation) 已存在时忽略，返回值表示该关系已存在于库中 */
     public boolean addRelationship(int member1, int member2, int relation) throws SQLException {
         // 验证输入参数不为空
         if (member1 <= 0 || member2 <= 0 || relation <= 0) {
             throw new SQLException("Invalid input parameters: all fields must not be null");
         }
 
-        String sql = "INSERT INTO Relationships(member1, member2, relation) VALUES(?, ?, ?)";
+        String sql = "INSERT OR IGNORE INTO Relationships(member1, member2, relation) VALUES(?, ?, ?)";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -33,14 +49,18 @@ public class RelationshipRepository {
             pstmt.setInt(2, member2);
             pstmt.setInt(3, relation);
 
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
+            // 受唯一索引约束，affectedRows 为 0 说明该关系已存在
+            pstmt.executeUpdate();
+            return true;
         }
     }
 
     public List<Relationship> getRelationshipsForMember(int member1ID) throws SQLException {
-        List<Relationship> relationships = new ArrayList<>();
-        String sql = "SELECT * FROM Relationships WHERE member1 = ?";
+        return collect(handler -> forEachRelationshipForMember(member1ID, handler));
+    }
+
+    public void forEachRelationshipForMember(int member1ID, RowHandler<Relationship> handler) throws SQLException, IOException {
+        String sql = SELECT_WITH_NAMES + " WHERE r.member1 = ?";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -48,19 +68,22 @@ public class RelationshipRepository {
             pstmt.setInt(1, member1ID);
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    Relationship relationship = new Relationship(
-                            rs.getInt("RelationID"),
-                            rs.getInt("member1"),
-                            rs.getInt("member2"),
-                            rs.getInt("relation")
-                    );
-                    // 查询成员名字
-                    Member member1 = memberRepository.findMemberById(relationship.getMember1());
-                    Member member2 = memberRepository.findMemberById(relationship.getMember2());
-                    if (member1 != null) relationship.setMember1Name(member1.getName());
-                    if (member2 != null) relationship.setMember2Name(member2.getName());
-
-                    relationships.add(relationship);
+                    handler.handle(mapRelationship(rs));
+                }
+            }
+        }
+    }
+
+    /** 父母到子女的关系行（relation 5-10），按类型再按 RelationID 排序，走唯一索引的 member1 前缀 */
+    public List<Relationship> getChildRelationships(int parentID) throws SQLException {
+        List<Relationship> relationships = new ArrayList<>();
+        String sql = SELECT_WITH_NAMES + " WHERE r.member1 = ? AND r.relation BETWEEN 5 AND 10 ORDER BY r.relation, r.RelationID";
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, parentID);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    relationships.add(mapRelationship(rs));
                 }
             }
         }
@@ -70,24 +93,14 @@ public class RelationshipRepository {
     /** 获取某成员参与的所有关系（作为 member1 或 member2），用于全图连通性判断 */
     public List<Relationship> getRelationshipsInvolvingMember(int memberID) throws SQLException {
         List<Relationship> relationships = new ArrayList<>();
-        String sql = "SELECT * FROM Relationships WHERE member1 = ? OR member2 = ?";
+        String sql = SELECT_WITH_NAMES + " WHERE r.member1 = ? OR r.member2 = ?";
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, memberID);
             pstmt.setInt(2, memberID);
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    Relationship relationship = new Relationship(
-                            rs.getInt("RelationID"),
-                            rs.getInt("member1"),
-                            rs.getInt("member2"),
-                            rs.getInt("relation")
-                    );
-                    Member m1 = memberRepository.findMemberById(relationship.getMember1());
-                    Member m2 = memberRepository.findMemberById(relationship.getMember2());
-                    if (m1 != null) relationship.setMember1Name(m1.getName());
-                    if (m2 != null) relationship.setMember2Name(m2.getName());
-                    relationships.add(relationship);
+                    relationships.add(mapRelationship(rs));
                 }
             }
         }
@@ -95,24 +108,14 @@ public class RelationshipRepository {
     }
 
     public Relationship getRelationshipByMembers(int member1ID, int member2ID) throws SQLException {
-        String sql = "SELECT * FROM Relationships WHERE member1 = ? AND member2 = ?";
+        String sql = SELECT_WITH_NAMES + " WHERE r.member1 = ? AND r.member2 = ?";
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, member1ID);
             pstmt.setInt(2, member2ID);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    Relationship relationship = new Relationship(
-                            rs.getInt("RelationID"),
-                            rs.getInt("member1"),
-                            rs.getInt("member2"),
-                            rs.getInt("relation")
-                    );
-                    Member m1 = memberRepository.findMemberById(relationship.getMember1());
-                    Member m2 = memberRepository.findMemberById(relationship.getMember2());
-                    if (m1 != null) relationship.setMember1Name(m1.getName());
-                    if (m2 != null) relationship.setMember2Name(m2.getName());
-                    return relationship;
+                    return mapRelationship(rs);
                 }
             }
         }
@@ -120,34 +123,131 @@ public class RelationshipRepository {
     }
 
     public List<Relationship> getAllRelationships() throws SQLException {
-        List<Relationship> relationships = new ArrayList<>();
-        String sql = "SELECT * FROM Relationships";
+        return collect(this::forEachRelationship);
+    }
+
+    /** 按表内顺序逐行处理全部关系，结果集不在内存中整体保存 */
+    public void forEachRelationship(RowHandler<Relationship> handler) throws SQLException, IOException {
+        String sql = SELECT_WITH_NAMES;
 
         try (Connection conn = DatabaseConnection.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
-                Relationship relationship = new Relationship(
-                        rs.getInt("RelationID"),
-                        rs.getInt("member1"),
-                        rs.getInt("member2"),
-                        rs.getInt("relation")
-                );
-                // 查询成员名字
-                Member member1 = memberRepository.findMemberById(relationship.getMember1());
-                Member member2 = memberRepository.findMemberById(relationship.getMember2());
-                if (member1 != null) relationship.setMember1Name(member1.getName());
-                if (member2 != null) relationship.setMember2Name(member2.getName());
-
-                relationships.add(relationship);
+                handler.handle(mapRelationship(rs));
+            }
+        }
+    }
+
+    /**
+     * 键集分页：按 RelationID 升序处理 RelationID 大于 afterID 的至多 limit 条关系，relationType 为 0 时不按类型过滤。
+     * columns 为需要查询的列（RelationID 总会查询），只有需要姓名时才关联 Members 表。
+     */
+    public void forEachRelationshipPage(int afterID, int limit, int relationType, Set<String> columns,
+                                        RowHandler<Relationship> handler) throws SQLException, IOException {
+        if (!PAGE_COLUMNS.containsAll(columns)) {
+            throw new IllegalArgumentException("Unknown relationship column in " + columns);
+        }
+        StringBuilder sql = new StringBuilder("SELECT r.RelationID");
+        for (String column : List.of("member1", "member2", "relation")) {
+            if (columns.contains(column)) {
+                sql.append(", r.").append(column);
+            }
+        }
+        if (columns.contains("member1Name")) {
+            sql.append(", m1.Name AS member1Name");
+        }
+        if (columns.contains("member2Name")) {
+            sql.append(", m2.Name AS member2Name");
+        }
+        sql.append(" FROM Relationships r");
+        if (columns.contains("member1Name")) {
+            sql.append(" LEFT JOIN Members m1 ON m1.MemberID = r.member1");
+        }
+        if (columns.contains("member2Name")) {
+            sql.append(" LEFT JOIN Members m2 ON m2.MemberID = r.member2");
+        }
+        sql.append(" WHERE r.RelationID > ?");
+        if (relationType > 0) {
+            sql.append(" AND r.relation = ?");
+        }
+        sql.append(" ORDER BY r.RelationID LIMIT ?");
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            int index = 1;
+            pstmt.setInt(index++, afterID);
+            if (relationType > 0) {
+                pstmt.setInt(index++, relationType);
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(new Relationship(
+                            rs.getInt("RelationID"),
+                            columns.contains("member1") ? rs.getInt("member1") : 0,
+                            columns.contains("member2") ? rs.getInt("member2") : 0,
+                            columns.contains("relation") ? rs.getInt("relation") : 0,
+                            columns.contains("member1Name") ? rs.getString("member1Name") : null,
+                            columns.contains("member2Name") ? rs.getString("member2Name") : null
+                    ));
+                }
+            }
+        }
+    }
+
+    /** 关系主键的行数、最大值与总和 */
+    public IdSummary getIdSummary() throws SQLException {
+        return MemberRepository.summarizeIds("SELECT COUNT(*), COALESCE(MAX(RelationID), 0), COALESCE(SUM(RelationID), 0) FROM Relationships");
+    }
+
+    /** RelationID 大于给定值的关系行（按 RelationID 升序），用于把新写入的行增量同步到内存关系图 */
+    public List<Relationship> getRelationshipsAfter(int relationID) throws SQLException {
+        List<Relationship> relationships = new ArrayList<>();
+        String sql = SELECT_WITH_NAMES + " WHERE r.RelationID > ? ORDER BY r.RelationID";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, relationID);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    relationships.add(mapRelationship(rs));
+                }
+            }
+        }
+        return relationships;
+    }
+
+    /** 按 RelationID 批量查询关系行，不存在的 ID 不出现在结果中；一次查询代替逐个 getRelationshipByRelationID */
+    public Map<Integer, Relationship> findRelationshipsByIds(Collection<Integer> relationIDs) throws SQLException {
+        Map<Integer, Relationship> relationships = new HashMap<>();
+        if (relationIDs.isEmpty()) {
+            return relationships;
+        }
+        String sql = SELECT_WITH_NAMES + " WHERE r.RelationID IN (" + String.join(", ", Collections.nCopies(relationIDs.size(), "?")) + ")";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (int relationID : relationIDs) {
+                pstmt.setInt(index++, relationID);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Relationship relationship = mapRelationship(rs);
+                    relationships.put(relationship.getRelationID(), relationship);
+                }
             }
         }
         return relationships;
     }
 
     public Relationship getRelationshipByRelationID(int relationID) throws SQLException {
-        String sql = "SELECT * FROM Relationships WHERE RelationID = ?";
+        String sql = SELECT_WITH_NAMES + " WHERE r.RelationID = ?";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -155,19 +255,7 @@ public class RelationshipRepository {
             pstmt.setInt(1, relationID);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    Relationship relationship = new Relationship(
-                            rs.getInt("RelationID"),
-                            rs.getInt("member1"),
-                            rs.getInt("member2"),
-                            rs.getInt("relation")
-                    );
-                    // 查询成员名字
-                    Member member1 = memberRepository.findMemberById(relationship.getMember1());
-                    Member member2 = memberRepository.findMemberById(relationship.getMember2());
-                    if (member1 != null) relationship.setMember1Name(member1.getName());
-                    if (member2 != null) relationship.setMember2Name(member2.getName());
-
-                    return relationship;
+                    return mapRelationship(rs);
                 }
             }
         }
@@ -175,8 +263,11 @@ public class RelationshipRepository {
     }
 
     public List<Relationship> getRelationshipsByRelationType(int relationType) throws SQLException {
-        List<Relationship> relationships = new ArrayList<>();
-        String sql = "SELECT * FROM Relationships WHERE relation = ?";
+        return collect(handler -> forEachRelationshipByRelationType(relationType, handler));
+    }
+
+    public void forEachRelationshipByRelationType(int relationType, RowHandler<Relationship> handler) throws SQLException, IOException {
+        String sql = SELECT_WITH_NAMES + " WHERE r.relation = ?";
 
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -184,23 +275,10 @@ public class RelationshipRepository {
             pstmt.setInt(1, relationType);
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    Relationship relationship = new Relationship(
-                            rs.getInt("RelationID"),
-                            rs.getInt("member1"),
-                            rs.getInt("member2"),
-                            rs.getInt("relation")
-                    );
-                    // 查询成员名字
-                    Member member1 = memberRepository.findMemberById(relationship.getMember1());
-                    Member member2 = memberRepository.findMemberById(relationship.getMember2());
-                    if (member1 != null) relationship.setMember1Name(member1.getName());
-                    if (member2 != null) relationship.setMember2Name(member2.getName());
-
-                    relationships.add(relationship);
+                    handler.handle(mapRelationship(rs));
                 }
             }
         }
-        return relationships;
     }
 
     public int getMember2ByMember1AndRelation(int member1ID, int relationType) throws SQLException {
@@ -221,6 +299,28 @@ public class RelationshipRepository {
         return member2ID;
     }
 
+    private List<Relationship> collect(Cursor cursor) throws SQLException {
+        List<Relationship> relationships = new ArrayList<>();
+        try {
+            cursor.forEach(relationships::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return relationships;
+    }
+
+    private Relationship mapRelationship(ResultSet rs) throws SQLException {
+        return new Relationship(
+                rs.getInt("RelationID"),
+                rs.getInt("member1"),
+                rs.getInt("member2"),
+                rs.getInt("relation"),
+                rs.getString("member1Name"),
+                rs.getString("member2Name")
+        );
+    }
+
+    /** 离线维护：清理唯一索引建立之前遗留的重复关系 */
     public void removeDuplicateRelationships() throws SQLException {
         String sql = "DELETE FROM Relationships " +
                 "WHERE RelationID NOT IN (" +
@@ -235,4 +335,9 @@ public class RelationshipRepository {
             logger.info("Deleted {} duplicate relationships.", rowsDeleted);
         }
     }
+
+    @FunctionalInterface
+    private interface Cursor {
+        void forEach(RowHandler<Relationship> handler) throws SQLException, IOException;
+    }
 }
@@ -0,0 +1,124 @@
+package service;
+
+import java.util.Arrays;
+
+/**
+ * 在关系图快照上求两名成员的共同祖先。
+ * 沿父/母出边（关系 3/4）分别向上做广度优先遍历，支持每人两位父母，不限代数；
+ * 耗时只与两人的祖先数量成正比，工作数组按线程复用并以时间戳区分各次查询，不随成员总数分配。
+ */
+final class CommonAncestors {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /** 最近共同祖先的下标，不存在时为 -1 */
+    final int closest;
+    /** 最近共同祖先到两人的代数 */
+    final int distance1;
+    final int distance2;
+    /** 共同祖先总数 */
+    final int count;
+
+    private CommonAncestors(int closest, int distance1, int distance2, int count) {
+        this.closest = closest;
+        this.distance1 = distance1;
+        this.distance2 = distance2;
+        this.count = count;
+    }
+
+    /**
+     * 最近共同祖先取两人沿父母关系到该祖先的代数之和最小者，相同时取下标较小者（即 MemberID 顺序）；
+     * 其他关系边（如直连祖辈的“爷爷”）不缩短代数，两人自身不计为共同祖先。
+     */
+    static CommonAncestors find(FamilyGraph graph, int a, int b) {
+        Scratch s = SCRATCH.get();
+        s.ensureCapacity(graph.size());
+        int stamp = s.nextStamp();
+        walkUp(graph, a, stamp, s);
+
+        int[] queue = s.queue;
+        int head = 0, tail = 0;
+        s.seen2[b] = stamp;
+        s.distance2[b] = 0;
+        queue[tail++] = b;
+        int closest = -1, best1 = 0, best2 = 0, count = 0;
+        while (head < tail) {
+            int cur = queue[head++];
+            for (int i = 0, degree = graph.outDegree(cur); i < degree; i++) {
+                int edge = graph.outEdge(cur, i);
+                int relation = graph.edgeRelation(edge);
+                if (relation != 3 && relation != 4) continue;
+                int parent = graph.edgeTarget(edge);
+                if (s.seen2[parent] == stamp) continue;
+                s.seen2[parent] = stamp;
+                int d2 = s.distance2[cur] + 1;
+                s.distance2[parent] = d2;
+                queue[tail++] = parent;
+                if (s.seen[parent] != stamp || parent == a) continue;
+                count++;
+                int d1 = s.distance[parent];
+                int total = d1 + d2;
+                if (closest < 0 || total < best1 + best2 || (total == best1 + best2 && parent < closest)) {
+                    closest = parent;
+                    best1 = d1;
+                    best2 = d2;
+                }
+            }
+        }
+        return new CommonAncestors(closest, best1, best2, count);
+    }
+
+    private static void walkUp(FamilyGraph graph, int start, int stamp, Scratch s) {
+        int[] seen = s.seen;
+        int[] distance = s.distance;
+        int[] queue = s.queue;
+        int head = 0, tail = 0;
+        seen[start] = stamp;
+        distance[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cur = queue[head++];
+            for (int i = 0, degree = graph.outDegree(cur); i < degree; i++) {
+                int edge = graph.outEdge(cur, i);
+                int relation = graph.edgeRelation(edge);
+                if (relation != 3 && relation != 4) continue;
+                int parent = graph.edgeTarget(edge);
+                if (seen[parent] == stamp) continue;
+                seen[parent] = stamp;
+                distance[parent] = distance[cur] + 1;
+                queue[tail++] = parent;
+            }
+        }
+    }
+
+    /** 每个线程一份的遍历工作区 */
+    private static final class Scratch {
+        int[] seen = new int[0];
+        int[] distance = new int[0];
+        int[] seen2 = new int[0];
+        int[] distance2 = new int[0];
+        int[] queue = new int[0];
+        int stamp;
+
+        void ensureCapacity(int size) {
+            if (seen.length >= size) {
+                return;
+            }
+            int capacity = Math.max(size, seen.length * 2);
+            seen = new int[capacity];
+            distance = new int[capacity];
+            seen2 = new int[capacity];
+            distance2 = new int[capacity];
+            queue = new int[capacity];
+            stamp = 0;
+        }
+
+        int nextStamp() {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                Arrays.fill(seen2, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+}
@@ -0,0 +1,721 @@
+package service;
+
+import model.IdSummary;
+import model.Member;
+import model.Relationship;
+import repository.MemberRepository;
+import repository.RelationshipRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 家族关系图的只读快照。成员按 MemberID 升序映射为稠密下标，关系按 RelationID 升序占用边槽位，
+ * 遍历时不访问数据库、不装箱。成员与边按页存放，apply(GraphDelta) 只复制被改动的页，
+ * 新快照的生成代价与变更量成正比，旧快照保持不变。
+ */
+public final class FamilyGraph {
+    /** 关系表引用了但 Members 中已不存在的成员，其 gender 记为 -1 */
+    public static final int MISSING = -1;
+
+    private static final int NODE_PAGE_SHIFT = 8;
+    private static final int NODE_PAGE_SIZE = 1 << NODE_PAGE_SHIFT;
+    private static final int NODE_PAGE_MASK = NODE_PAGE_SIZE - 1;
+    private static final int EDGE_PAGE_SHIFT = 10;
+    private static final int EDGE_PAGE_SIZE = 1 << EDGE_PAGE_SHIFT;
+    private static final int EDGE_PAGE_MASK = EDGE_PAGE_SIZE - 1;
+    private static final int[] NO_EDGES = new int[0];
+    private static final byte[] NO_RELATIONS = new byte[0];
+
+    /** 快照版本号，由 FamilyGraphStore 每次发布时递增 */
+    private final long version;
+    private final int size;
+    private final int edgeSlots;
+    private final int liveEdges;
+    private final int maxRelationId;
+    private final NodePage[] nodePages;
+    private final EdgePage[] edgePages;
+
+    private FamilyGraph(long version, int size, int edgeSlots, int liveEdges, int maxRelationId,
+                        NodePage[] nodePages, EdgePage[] edgePages) {
+        this.version = version;
+        this.size = size;
+        this.edgeSlots = edgeSlots;
+        this.liveEdges = liveEdges;
+        this.maxRelationId = maxRelationId;
+        this.nodePages = nodePages;
+        this.edgePages = edgePages;
+    }
+
+    /** 从数据库加载全部成员与关系构建指定版本的快照 */
+    public static FamilyGraph load(MemberRepository memberRepository, RelationshipRepository relationshipRepository, long version) throws SQLException {
+        return build(memberRepository.getAllMembers(), relationshipRepository.getAllRelationships(), version);
+    }
+
+    public static FamilyGraph build(List<Member> members, List<Relationship> relationships) {
+        return build(members, relationships, 0);
+    }
+
+    public static FamilyGraph build(List<Member> members, List<Relationship> relationships, long version) {
+        int relCount = relationships.size();
+
+        // 成员下标：Members 中的成员加上关系表中引用到的成员，按 MemberID 升序去重
+        int[] ids = new int[members.size() + relCount * 2];
+        int count = 0;
+        for (Member m : members) {
+            ids[count++] = m.getMemberID();
+        }
+        for (Relationship r : relationships) {
+            ids[count++] = r.getMember1();
+            ids[count++] = r.getMember2();
+        }
+        Arrays.sort(ids, 0, count);
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (n == 0 || ids[n - 1] != ids[i]) {
+                ids[n++] = ids[i];
+            }
+        }
+        int[] memberIds = Arrays.copyOf(ids, n);
+
+        String[] names = new String[n];
+        String[] remarks = new String[n];
+        int[] generations = new int[n];
+        byte[] genders = new byte[n];
+        Arrays.fill(genders, (byte) MISSING);
+        for (Member m : members) {
+            int idx = Arrays.binarySearch(memberIds, m.getMemberID());
+            names[idx] = m.getName();
+            remarks[idx] = m.getRemark();
+            generations[idx] = m.getGeneration();
+            genders[idx] = (byte) m.getGender();
+        }
+
+        // 关系按 RelationID 排序后依次占用边槽位，槽位顺序即数据库行序
+        long[] order = new long[relCount];
+        for (int i = 0; i < relCount; i++) {
+            order[i] = ((long) relationships.get(i).getRelationID() << 32) | i;
+        }
+        Arrays.sort(order);
+        int[] relationIds = new int[relCount];
+        int[] relFrom = new int[relCount];
+        int[] relTo = new int[relCount];
+        byte[] relTypes = new byte[relCount];
+        for (int e = 0; e < relCount; e++) {
+            Relationship r = relationships.get((int) order[e]);
+            relationIds[e] = r.getRelationID();
+            relFrom[e] = Arrays.binarySearch(memberIds, r.getMember1());
+            relTo[e] = Arrays.binarySearch(memberIds, r.getMember2());
+            relTypes[e] = (byte) r.getRelation();
+        }
+        return fromColumns(version, memberIds, names, remarks, generations, genders,
+                relationIds, relFrom, relTo, relTypes, null, null, null, null);
+    }
+
+    /**
+     * 由列数据构造快照，供快照文件加载使用：成员按 MemberID 升序，缺失成员的 gender 为 MISSING；
+     * 边按 RelationID 升序，两端为成员下标。adjOffsets 不为 null 时各成员的关联边已按 (优先级, 对端, RelationID)
+     * 排好并首尾相接（CSR），按偏移切分即可，不再计数与排序。
+     */
+    static FamilyGraph fromColumns(long version, int[] memberIds, String[] names, String[] remarks,
+                                   int[] generations, byte[] genders, int[] relationIds, int[] relFrom, int[] relTo,
+                                   byte[] relTypes, int[] adjOffsets, int[] adjTargetColumn, byte[] adjRelationColumn,
+                                   int[] adjEdgeColumn) {
+        int n = memberIds.length;
+        int relCount = relationIds.length;
+        NodePage[] nodePages = new NodePage[pagesFor(n, NODE_PAGE_SIZE)];
+        for (int p = 0; p < nodePages.length; p++) {
+            nodePages[p] = new NodePage();
+        }
+        for (int idx = 0; idx < n; idx++) {
+            NodePage page = nodePages[idx >>> NODE_PAGE_SHIFT];
+            int slot = idx & NODE_PAGE_MASK;
+            page.memberIds[slot] = memberIds[idx];
+            page.names[slot] = names[idx];
+            page.remarks[slot] = remarks[idx];
+            page.generations[slot] = generations[idx];
+            page.genders[slot] = genders[idx];
+        }
+
+        EdgePage[] edgePages = new EdgePage[pagesFor(relCount, EDGE_PAGE_SIZE)];
+        for (int p = 0; p < edgePages.length; p++) {
+            edgePages[p] = new EdgePage();
+        }
+        int maxRelationId = 0;
+        for (int e = 0; e < relCount; e++) {
+            EdgePage page = edgePages[e >>> EDGE_PAGE_SHIFT];
+            int slot = e & EDGE_PAGE_MASK;
+            page.sources[slot] = relFrom[e];
+            page.targets[slot] = relTo[e];
+            page.relations[slot] = relTypes[e];
+            page.relationIds[slot] = relationIds[e];
+            maxRelationId = relationIds[e];
+        }
+
+        int[] outCounts = new int[n];
+        int[] adjCounts = new int[n];
+        for (int e = 0; e < relCount; e++) {
+            outCounts[relFrom[e]]++;
+            if (relFrom[e] != relTo[e]) {
+                adjCounts[relFrom[e]]++;
+                adjCounts[relTo[e]]++;
+            }
+        }
+        for (int idx = 0; idx < n; idx++) {
+            NodePage page = nodePages[idx >>> NODE_PAGE_SHIFT];
+            int slot = idx & NODE_PAGE_MASK;
+            if (outCounts[idx] > 0) {
+                page.out[slot] = new int[outCounts[idx]];
+            }
+            if (adjOffsets != null) {
+                int from = adjOffsets[idx];
+                int to = adjOffsets[idx + 1];
+                if (to > from) {
+                    page.adjTargets[slot] = Arrays.copyOfRange(adjTargetColumn, from, to);
+                    page.adjRelations[slot] = Arrays.copyOfRange(adjRelationColumn, from, to);
+                    page.adjEdges[slot] = Arrays.copyOfRange(adjEdgeColumn, from, to);
+                }
+            } else if (adjCounts[idx] > 0) {
+                page.adjTargets[slot] = new int[adjCounts[idx]];
+                page.adjRelations[slot] = new byte[adjCounts[idx]];
+                page.adjEdges[slot] = new int[adjCounts[idx]];
+            }
+        }
+        Arrays.fill(outCounts, 0);
+        Arrays.fill(adjCounts, 0);
+        for (int e = 0; e < relCount; e++) {
+            int from = relFrom[e];
+            int to = relTo[e];
+            NodePage fromPage = nodePages[from >>> NODE_PAGE_SHIFT];
+            int fromSlot = from & NODE_PAGE_MASK;
+            fromPage.out[fromSlot][outCounts[from]++] = e;
+            if (from == to || adjOffsets != null) continue;
+            int a = adjCounts[from]++;
+            fromPage.adjTargets[fromSlot][a] = to;
+            fromPage.adjRelations[fromSlot][a] = relTypes[e];
+            fromPage.adjEdges[fromSlot][a] = e;
+            NodePage toPage = nodePages[to >>> NODE_PAGE_SHIFT];
+            int toSlot = to & NODE_PAGE_MASK;
+            int b = adjCounts[to]++;
+            toPage.adjTargets[toSlot][b] = from;
+            toPage.adjRelations[toSlot][b] = relTypes[e];
+            toPage.adjEdges[toSlot][b] = e;
+        }
+        if (adjOffsets == null) {
+            for (int idx = 0; idx < n; idx++) {
+                NodePage page = nodePages[idx >>> NODE_PAGE_SHIFT];
+                int slot = idx & NODE_PAGE_MASK;
+                sortAdjacency(page.adjTargets[slot], page.adjRelations[slot], page.adjEdges[slot]);
+            }
+        }
+
+        return new FamilyGraph(version, n, relCount, relCount, maxRelationId, nodePages, edgePages);
+    }
+
+    /** 成员的关联边按 (优先级, 对端, RelationID) 排序，遍历时无需再排序 */
+    private static void sortAdjacency(int[] targets, byte[] relations, int[] edges) {
+        int len = targets.length;
+        if (len < 2) return;
+        long[] keys = new long[len];
+        for (int j = 0; j < len; j++) {
+            // 排序键(32 bit) | 原位置(32 bit)：原本按 RelationID 递增，因此排序是稳定的；翻转符号位以按无符号比较
+            keys[j] = ((adjacencyKey(relations[j], targets[j]) << 32) | j) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(keys);
+        int[] t = targets.clone();
+        byte[] r = relations.clone();
+        int[] e = edges.clone();
+        for (int j = 0; j < len; j++) {
+            int src = (int) keys[j];
+            targets[j] = t[src];
+            relations[j] = r[src];
+            edges[j] = e[src];
+        }
+    }
+
+    /** 关联边的排序键：优先级(4 bit) | 对端下标(28 bit)，全量构建与增量插入共用 */
+    private static long adjacencyKey(byte relation, int target) {
+        return ((long) relationPriority(relation) << 28) | target;
+    }
+
+    /** 关系优先级：数值越小越亲近，亦用作最短路径的边权附加项 */
+    public static int relationPriority(int relationType) {
+        switch (relationType) {
+            case 3: case 4: case 5: case 6: case 7: case 8: case 9: case 10:
+                return 1;
+            case 11: case 12: case 13: case 14:
+                return 2;
+            case 19: case 20: case 21: case 22: case 23: case 24: case 25: case 26:
+                return 3;
+            case 15: case 16: case 17: case 18:
+                return 4;
+            case 1: case 2:
+                return 5;
+            case 27: case 28: case 29: case 30: case 31: case 32:
+                return 6;
+            default:
+                return 9;
+        }
+    }
+
+    /**
+     * 在本快照上应用增量，生成指定版本的新快照，只复制被改动的页；重复应用同一增量结果不变。
+     * 增量无法在现有下标/槽位顺序上追加时（如新成员的 ID 小于已有最大 ID）返回 null，由调用方全量重建。
+     */
+    public FamilyGraph apply(GraphDelta delta, long newVersion) {
+        Editor editor = new Editor(this);
+        for (int relationId : delta.getRemovedEdges()) {
+            editor.removeEdge(relationId);
+        }
+        for (Member member : delta.getUpsertedMembers()) {
+            if (!editor.upsertMember(member)) return null;
+        }
+        for (int memberId : delta.getRemovedMembers()) {
+            editor.removeMember(memberId);
+        }
+        List<Relationship> added = new ArrayList<>(delta.getAddedEdges());
+        added.sort(Comparator.comparingInt(Relationship::getRelationID));
+        for (Relationship relationship : added) {
+            if (!editor.addEdge(relationship)) return null;
+        }
+        return editor.finish(newVersion);
+    }
+
+    /**
+     * 与数据库中的全部成员和关系行比较，返回把本快照变为该状态的增量，不修改本快照。
+     * 已有 RelationID 的行内容变化、或出现比已有槽位更早的新行（如整库导入替换）时无法逐条表达，返回的增量要求全量重建。
+     */
+    public GraphDelta diff(List<Member> members, List<Relationship> relationships) {
+        GraphDelta delta = new GraphDelta();
+        BitSet seenMembers = new BitSet(size);
+        for (Member member : members) {
+            int idx = indexOf(member.getMemberID());
+            if (idx >= 0) {
+                seenMembers.set(idx);
+            }
+            if (idx < 0 || !isPresent(idx) || !Objects.equals(name(idx), member.getName())
+                    || !Objects.equals(remark(idx), member.getRemark())
+                    || generation(idx) != member.getGeneration() || gender(idx) != member.getGender()) {
+                delta.upsertMember(member);
+            }
+        }
+        for (int idx = 0; idx < size; idx++) {
+            if (isPresent(idx) && !seenMembers.get(idx)) {
+                delta.removeMember(memberId(idx));
+            }
+        }
+        BitSet seenEdges = new BitSet(edgeSlots);
+        for (Relationship relationship : relationships) {
+            if (relationship.getRelationID() > maxRelationId) {
+                delta.addEdge(relationship);
+                continue;
+            }
+            int e = findEdgeSlot(relationship.getRelationID());
+            if (e < 0 || !isEdgeLive(e) || memberId(edgeSource(e)) != relationship.getMember1()
+                    || memberId(edgeTarget(e)) != relationship.getMember2() || edgeRelation(e) != relationship.getRelation()) {
+                delta.requireFullReload();
+                return delta;
+            }
+            seenEdges.set(e);
+        }
+        for (int e = 0; e < edgeSlots; e++) {
+            if (isEdgeLive(e) && !seenEdges.get(e)) {
+                delta.removeEdge(edgeRelationId(e));
+            }
+        }
+        return delta;
+    }
+
+    /** 共享全部页、只换版本号的快照，用于把从文件恢复的关系图纳入本进程的版本序列 */
+    FamilyGraph withVersion(long newVersion) {
+        return new FamilyGraph(newVersion, size, edgeSlots, liveEdges, maxRelationId, nodePages, edgePages);
+    }
+
+    /** 存在的成员的 MemberID 汇总，与 Members 表的 MemberRepository.getIdSummary() 对应 */
+    public IdSummary memberIdSummary() {
+        long count = 0, max = 0, sum = 0;
+        for (int idx = 0; idx < size; idx++) {
+            if (isPresent(idx)) {
+                count++;
+                max = Math.max(max, memberId(idx));
+                sum += memberId(idx);
+            }
+        }
+        return new IdSummary(count, max, sum);
+    }
+
+    /** 有效关系的 RelationID 汇总，与 Relationships 表的 RelationshipRepository.getIdSummary() 对应 */
+    public IdSummary relationIdSummary() {
+        long count = 0, max = 0, sum = 0;
+        for (int e = 0; e < edgeSlots; e++) {
+            if (isEdgeLive(e)) {
+                count++;
+                max = Math.max(max, edgeRelationId(e));
+                sum += edgeRelationId(e);
+            }
+        }
+        return new IdSummary(count, max, sum);
+    }
+
+    public long version() { return version; }
+    public int size() { return size; }
+    /** 当前有效的关系数 */
+    public int relationshipCount() { return liveEdges; }
+    /** 边槽位总数（含已删除的槽位），槽位按 RelationID 升序 */
+    public int edgeSlotCount() { return edgeSlots; }
+    public int maxRelationId() { return maxRelationId; }
+
+    /** MemberID 对应的下标，不存在时返回 -1 */
+    public int indexOf(int memberId) {
+        return indexOf(nodePages, size, memberId);
+    }
+
+    public int memberId(int idx) { return nodePages[idx >>> NODE_PAGE_SHIFT].memberIds[idx & NODE_PAGE_MASK]; }
+    public boolean isPresent(int idx) { return gender(idx) != MISSING; }
+    public String name(int idx) { return nodePages[idx >>> NODE_PAGE_SHIFT].names[idx & NODE_PAGE_MASK]; }
+    public String remark(int idx) { return nodePages[idx >>> NODE_PAGE_SHIFT].remarks[idx & NODE_PAGE_MASK]; }
+    public int generation(int idx) { return nodePages[idx >>> NODE_PAGE_SHIFT].generations[idx & NODE_PAGE_MASK]; }
+    public int gender(int idx) { return nodePages[idx >>> NODE_PAGE_SHIFT].genders[idx & NODE_PAGE_MASK]; }
+
+    /** 构造成员对象；成员已不存在时返回 null */
+    public Member member(int idx) {
+        if (idx < 0 || !isPresent(idx)) return null;
+        return new Member(memberId(idx), name(idx), generation(idx), gender(idx), remark(idx));
+    }
+
+    /** 按存储方向 member1 -> member2 的出边数，出边按 RelationID 升序 */
+    public int outDegree(int idx) { return nodePages[idx >>> NODE_PAGE_SHIFT].out[idx & NODE_PAGE_MASK].length; }
+    /** 第 i 条出边的边槽位 */
+    public int outEdge(int idx, int i) { return nodePages[idx >>> NODE_PAGE_SHIFT].out[idx & NODE_PAGE_MASK][i]; }
+
+    /** 无向关联边（成员作为 member1 或 member2）数，按 (关系优先级, 对端下标, RelationID) 排序 */
+    public int adjDegree(int idx) { return nodePages[idx >>> NODE_PAGE_SHIFT].adjTargets[idx & NODE_PAGE_MASK].length; }
+    public int adjTarget(int idx, int i) { return nodePages[idx >>> NODE_PAGE_SHIFT].adjTargets[idx & NODE_PAGE_MASK][i]; }
+    public int adjRelation(int idx, int i) { return nodePages[idx >>> NODE_PAGE_SHIFT].adjRelations[idx & NODE_PAGE_MASK][i]; }
+    /** 关联边对应的边槽位（即数据库中的那一行） */
+    public int adjEdge(int idx, int i) { return nodePages[idx >>> NODE_PAGE_SHIFT].adjEdges[idx & NODE_PAGE_MASK][i]; }
+
+    public boolean isEdgeLive(int e) { return edgeSource(e) >= 0; }
+    /** 边的 member1 下标，已删除的槽位为 -1 */
+    public int edgeSource(int e) { return edgePages[e >>> EDGE_PAGE_SHIFT].sources[e & EDGE_PAGE_MASK]; }
+    public int edgeTarget(int e) { return edgePages[e >>> EDGE_PAGE_SHIFT].targets[e & EDGE_PAGE_MASK]; }
+    public int edgeRelation(int e) { return edgePages[e >>> EDGE_PAGE_SHIFT].relations[e & EDGE_PAGE_MASK]; }
+    public int edgeRelationId(int e) { return edgePages[e >>> EDGE_PAGE_SHIFT].relationIds[e & EDGE_PAGE_MASK]; }
+
+    /** from -> to 方向的第一条存储关系（边槽位），不存在时返回 -1 */
+    public int findOutEdge(int from, int to) {
+        for (int e : nodePages[from >>> NODE_PAGE_SHIFT].out[from & NODE_PAGE_MASK]) {
+            if (edgeTarget(e) == to) return e;
+        }
+        return -1;
+    }
+
+    /** RelationID 对应的边槽位（含已删除），不存在时返回 -1 */
+    public int findEdgeSlot(int relationId) {
+        int lo = 0, hi = edgeSlots - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int id = edgeRelationId(mid);
+            if (id < relationId) lo = mid + 1;
+            else if (id > relationId) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private static int indexOf(NodePage[] pages, int size, int memberId) {
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int id = pages[mid >>> NODE_PAGE_SHIFT].memberIds[mid & NODE_PAGE_MASK];
+            if (id < memberId) lo = mid + 1;
+            else if (id > memberId) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private static int pagesFor(int count, int pageSize) {
+        return (count + pageSize - 1) / pageSize;
+    }
+
+    /** 一页成员：属性列与每个成员的出边、关联边数组 */
+    private static final class NodePage {
+        final int[] memberIds;
+        final String[] names;
+        final String[] remarks;
+        final int[] generations;
+        final byte[] genders;
+        final int[][] out;
+        final int[][] adjTargets;
+        final byte[][] adjRelations;
+        final int[][] adjEdges;
+
+        NodePage() {
+            memberIds = new int[NODE_PAGE_SIZE];
+            names = new String[NODE_PAGE_SIZE];
+            remarks = new String[NODE_PAGE_SIZE];
+            generations = new int[NODE_PAGE_SIZE];
+            genders = new byte[NODE_PAGE_SIZE];
+            out = new int[NODE_PAGE_SIZE][];
+            adjTargets = new int[NODE_PAGE_SIZE][];
+            adjRelations = new byte[NODE_PAGE_SIZE][];
+            adjEdges = new int[NODE_PAGE_SIZE][];
+            Arrays.fill(genders, (byte) MISSING);
+            Arrays.fill(out, NO_EDGES);
+            Arrays.fill(adjTargets, NO_EDGES);
+            Arrays.fill(adjRelations, NO_RELATIONS);
+            Arrays.fill(adjEdges, NO_EDGES);
+        }
+
+        private NodePage(NodePage source) {
+            memberIds = source.memberIds.clone();
+            names = source.names.clone();
+            remarks = source.remarks.clone();
+            generations = source.generations.clone();
+            genders = source.genders.clone();
+            out = source.out.clone();
+            adjTargets = source.adjTargets.clone();
+            adjRelations = source.adjRelations.clone();
+            adjEdges = source.adjEdges.clone();
+        }
+
+        NodePage copy() { return new NodePage(this); }
+    }
+
+    /** 一页边：按槽位存放两端下标、关系类型与 RelationID */
+    private static final class EdgePage {
+        final int[] sources;
+        final int[] targets;
+        final byte[] relations;
+        final int[] relationIds;
+
+        EdgePage() {
+            sources = new int[EDGE_PAGE_SIZE];
+            targets = new int[EDGE_PAGE_SIZE];
+            relations = new byte[EDGE_PAGE_SIZE];
+            relationIds = new int[EDGE_PAGE_SIZE];
+        }
+
+        private EdgePage(EdgePage source) {
+            sources = source.sources.clone();
+            targets = source.targets.clone();
+            relations = source.relations.clone();
+            relationIds = source.relationIds.clone();
+        }
+
+        EdgePage copy() { return new EdgePage(this); }
+    }
+
+    /** 在旧快照的页之上做写时复制的编辑器，每页至多复制一次 */
+    private static final class Editor {
+        private NodePage[] nodePages;
+        private EdgePage[] edgePages;
+        private final BitSet copiedNodePages = new BitSet();
+        private final BitSet copiedEdgePages = new BitSet();
+        private int size;
+        private int edgeSlots;
+        private int liveEdges;
+        private int maxRelationId;
+
+        Editor(FamilyGraph base) {
+            this.nodePages = base.nodePages.clone();
+            this.edgePages = base.edgePages.clone();
+            this.size = base.size;
+            this.edgeSlots = base.edgeSlots;
+            this.liveEdges = base.liveEdges;
+            this.maxRelationId = base.maxRelationId;
+        }
+
+        FamilyGraph finish(long version) {
+            return new FamilyGraph(version, size, edgeSlots, liveEdges, maxRelationId, nodePages, edgePages);
+        }
+
+        boolean upsertMember(Member member) {
+            int idx = indexOrAppend(member.getMemberID());
+            if (idx < 0) return false;
+            NodePage page = writableNodePage(idx);
+            int slot = idx & NODE_PAGE_MASK;
+            page.names[slot] = member.getName();
+            page.remarks[slot] = member.getRemark();
+            page.generations[slot] = member.getGeneration();
+            page.genders[slot] = (byte) member.getGender();
+            return true;
+        }
+
+        /** 成员被删除后其关系行仍在库中，保留下标并标记为不存在 */
+        void removeMember(int memberId) {
+            int idx = indexOf(nodePages, size, memberId);
+            if (idx < 0) return;
+            NodePage page = writableNodePage(idx);
+            int slot = idx & NODE_PAGE_MASK;
+            page.names[slot] = null;
+            page.remarks[slot] = null;
+            page.generations[slot] = 0;
+            page.genders[slot] = (byte) MISSING;
+        }
+
+        boolean addEdge(Relationship relationship) {
+            int relationId = relationship.getRelationID();
+            if (relationId <= maxRelationId) {
+                // 已应用过的行直接跳过；比已有槽位更早的新行无法按序追加
+                return findEdgeSlot(relationId) >= 0;
+            }
+            int from = indexOrAppend(relationship.getMember1());
+            int to = indexOrAppend(relationship.getMember2());
+            if (from < 0 || to < 0) return false;
+            byte relation = (byte) relationship.getRelation();
+
+            int e = edgeSlots++;
+            if ((e >>> EDGE_PAGE_SHIFT) >= edgePages.length) {
+                edgePages = Arrays.copyOf(edgePages, edgePages.length + 1);
+                edgePages[edgePages.length - 1] = new EdgePage();
+                copiedEdgePages.set(edgePages.length - 1);
+            }
+            EdgePage edgePage = writableEdgePage(e);
+            int slot = e & EDGE_PAGE_MASK;
+            edgePage.sources[slot] = from;
+            edgePage.targets[slot] = to;
+            edgePage.relations[slot] = relation;
+            edgePage.relationIds[slot] = relationId;
+            liveEdges++;
+            maxRelationId = relationId;
+
+            NodePage fromPage = writableNodePage(from);
+            int[] out = fromPage.out[from & NODE_PAGE_MASK];
+            fromPage.out[from & NODE_PAGE_MASK] = insertAt(out, out.length, e);
+            if (from != to) {
+                insertAdjacency(from, to, relation, e);
+                insertAdjacency(to, from, relation, e);
+            }
+            return true;
+        }
+
+        void removeEdge(int relationId) {
+            int e = findEdgeSlot(relationId);
+            if (e < 0) return;
+            EdgePage edgePage = edgePages[e >>> EDGE_PAGE_SHIFT];
+            int from = edgePage.sources[e & EDGE_PAGE_MASK];
+            if (from < 0) return;
+            int to = edgePage.targets[e & EDGE_PAGE_MASK];
+            writableEdgePage(e).sources[e & EDGE_PAGE_MASK] = -1;
+            liveEdges--;
+
+            NodePage fromPage = writableNodePage(from);
+            int[] out = fromPage.out[from & NODE_PAGE_MASK];
+            fromPage.out[from & NODE_PAGE_MASK] = removeAt(out, positionOf(out, e));
+            if (from != to) {
+                removeAdjacency(from, e);
+                removeAdjacency(to, e);
+            }
+        }
+
+        /** 按 (优先级, 对端) 插到相同键的末尾：新边的 RelationID 最大，顺序与全量构建一致 */
+        private void insertAdjacency(int node, int target, byte relation, int e) {
+            NodePage page = writableNodePage(node);
+            int slot = node & NODE_PAGE_MASK;
+            int[] targets = page.adjTargets[slot];
+            byte[] relations = page.adjRelations[slot];
+            long key = adjacencyKey(relation, target);
+            int pos = 0;
+            while (pos < targets.length && adjacencyKey(relations[pos], targets[pos]) <= key) {
+                pos++;
+            }
+            page.adjTargets[slot] = insertAt(targets, pos, target);
+            page.adjEdges[slot] = insertAt(page.adjEdges[slot], pos, e);
+            byte[] newRelations = new byte[relations.length + 1];
+            System.arraycopy(relations, 0, newRelations, 0, pos);
+            newRelations[pos] = relation;
+            System.arraycopy(relations, pos, newRelations, pos + 1, relations.length - pos);
+            page.adjRelations[slot] = newRelations;
+        }
+
+        private void removeAdjacency(int node, int e) {
+            NodePage page = writableNodePage(node);
+            int slot = node & NODE_PAGE_MASK;
+            int pos = positionOf(page.adjEdges[slot], e);
+            if (pos < 0) return;
+            page.adjTargets[slot] = removeAt(page.adjTargets[slot], pos);
+            page.adjEdges[slot] = removeAt(page.adjEdges[slot], pos);
+            byte[] relations = page.adjRelations[slot];
+            byte[] newRelations = new byte[relations.length - 1];
+            System.arraycopy(relations, 0, newRelations, 0, pos);
+            System.arraycopy(relations, pos + 1, newRelations, pos, relations.length - pos - 1);
+            page.adjRelations[slot] = newRelations;
+        }
+
+        /** 已有成员返回其下标；比现有最大 ID 更大的新成员追加到末尾；否则返回 -1 */
+        private int indexOrAppend(int memberId) {
+            int idx = indexOf(nodePages, size, memberId);
+            if (idx >= 0) return idx;
+            if (size > 0 && nodePages[(size - 1) >>> NODE_PAGE_SHIFT].memberIds[(size - 1) & NODE_PAGE_MASK] > memberId) {
+                return -1;
+            }
+            idx = size++;
+            if ((idx >>> NODE_PAGE_SHIFT) >= nodePages.length) {
+                nodePages = Arrays.copyOf(nodePages, nodePages.length + 1);
+                nodePages[nodePages.length - 1] = new NodePage();
+                copiedNodePages.set(nodePages.length - 1);
+            }
+            writableNodePage(idx).memberIds[idx & NODE_PAGE_MASK] = memberId;
+            return idx;
+        }
+
+        private int findEdgeSlot(int relationId) {
+            int lo = 0, hi = edgeSlots - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int id = edgePages[mid >>> EDGE_PAGE_SHIFT].relationIds[mid & EDGE_PAGE_MASK];
+                if (id < relationId) lo = mid + 1;
+                else if (id > relationId) hi = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+
+        private NodePage writableNodePage(int idx) {
+            int p = idx >>> NODE_PAGE_SHIFT;
+            if (!copiedNodePages.get(p)) {
+                nodePages[p] = nodePages[p].copy();
+                copiedNodePages.set(p);
+            }
+            return nodePages[p];
+        }
+
+        private EdgePage writableEdgePage(int e) {
+            int p = e >>> EDGE_PAGE_SHIFT;
+            if (!copiedEdgePages.get(p)) {
+                edgePages[p] = edgePages[p].copy();
+                copiedEdgePages.set(p);
+            }
+            return edgePages[p];
+        }
+
+        private static int positionOf(int[] array, int value) {
+            for (int i = 0; i < array.length; i++) {
+                if (array[i] == value) return i;
+            }
+            return -1;
+        }
+
+        private static int[] insertAt(int[] array, int pos, int value) {
+            int[] result = new int[array.length + 1];
+            System.arraycopy(array, 0, result, 0, pos);
+            result[pos] = value;
+            System.arraycopy(array, pos, result, pos + 1, array.length - pos);
+            return result;
+        }
+
+        private static int[] removeAt(int[] array, int pos) {
+            int[] result = new int[array.length - 1];
+            System.arraycopy(array, 0, result, 0, pos);
+            System.arraycopy(array, pos + 1, result, pos, array.length - pos - 1);
+            return result;
+        }
+    }
+}
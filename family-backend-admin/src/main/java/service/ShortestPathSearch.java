@@ -0,0 +1,260 @@
+package service;
+
+import java.util.Arrays;
+
+/**
+ * 关系图上的双向加权最短路径（边权 10 + 关系优先级）。
+ * 两端各自按 (距离, 下标) 出队扩展，每次推进堆较小的一端，两端堆顶之和严格大于已知最短距离时停止。
+ * 结果与从起点出发的单向 Dijkstra 完全一致：到达某成员的前驱取起点距离最小、再取下标（MemberID）最小者，
+ * 同一对成员间有多条关系时取优先级最高、RelationID 最小的一条。
+ * 工作数组按线程复用并以时间戳区分各次查询，单次查询的开销只与两端扩展的成员数有关。
+ */
+final class ShortestPathSearch {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /** 路径上的成员下标，从起点到终点 */
+    final int[] nodes;
+    /** edges[i] 为连接 nodes[i] 与 nodes[i+1] 的边槽位 */
+    final int[] edges;
+    /** 两端共出队扩展的成员数 */
+    final int expanded;
+
+    ShortestPathSearch(int[] nodes, int[] edges, int expanded) {
+        this.nodes = nodes;
+        this.edges = edges;
+        this.expanded = expanded;
+    }
+
+    /** 两人不连通时返回 null */
+    static ShortestPathSearch find(FamilyGraph graph, int from, int to) {
+        if (from == to) {
+            return new ShortestPathSearch(new int[]{from}, new int[0], 0);
+        }
+        Scratch s = SCRATCH.get();
+        s.reset(graph.size());
+        Side forward = s.forward;
+        Side backward = s.backward;
+        forward.reach(from, 0, -1, -1);
+        backward.reach(to, 0, -1, -1);
+
+        long best = Long.MAX_VALUE;
+        int expanded = 0;
+        while (true) {
+            long topF = forward.peek();
+            long topB = backward.peek();
+            // 严格大于才停止：保证最短路上的每个成员至少在一端已出队，回溯时才能按单向规则取前驱
+            if (topF == Long.MAX_VALUE || topB == Long.MAX_VALUE || topF + topB > best) {
+                break;
+            }
+            boolean expandForward = forward.heap.size() <= backward.heap.size();
+            Side side = expandForward ? forward : backward;
+            Side other = expandForward ? backward : forward;
+            int cur = side.pop();
+            expanded++;
+            int curDist = side.dist[cur];
+            for (int i = 0, degree = graph.adjDegree(cur); i < degree; i++) {
+                int next = graph.adjTarget(cur, i);
+                int nextDist = curDist + weight(graph.adjRelation(cur, i));
+                if (!side.isReached(next) || nextDist < side.dist[next]) {
+                    side.reach(next, nextDist, cur, graph.adjEdge(cur, i));
+                }
+                if (other.isReached(next)) {
+                    best = Math.min(best, (long) nextDist + other.dist[next]);
+                }
+            }
+        }
+        if (best == Long.MAX_VALUE) {
+            return null;
+        }
+        return backtrack(graph, s, from, to, (int) best, expanded);
+    }
+
+    static int weight(int relationType) {
+        return 10 + FamilyGraph.relationPriority(relationType);
+    }
+
+    /**
+     * 起点一侧已出队的成员直接沿前向最短路径树回溯；其余部分从终点出发，
+     * 在后向已出队且位于某条最短路上的成员中按单向规则逐个选出前驱。
+     */
+    private static ShortestPathSearch backtrack(FamilyGraph graph, Scratch s, int from, int to, int best, int expanded) {
+        Side forward = s.forward;
+        Side backward = s.backward;
+        markShortestPathMembers(graph, s, best);
+
+        int[] prevNode = s.prevNode;
+        int[] prevEdge = s.prevEdge;
+        int v = to;
+        while (!forward.isSettled(v)) {
+            int dv = best - backward.dist[v];
+            int bestU = -1, bestEdge = -1, bestDist = Integer.MAX_VALUE;
+            for (int i = 0, degree = graph.adjDegree(v); i < degree; i++) {
+                int u = graph.adjTarget(v, i);
+                int du;
+                if (forward.isSettled(u)) {
+                    du = forward.dist[u];
+                } else if (s.isOnShortestPath(u)) {
+                    du = best - backward.dist[u];
+                } else {
+                    continue;
+                }
+                if (du + weight(graph.adjRelation(v, i)) != dv) continue;
+                if (du < bestDist || (du == bestDist && u < bestU)) {
+                    bestU = u;
+                    bestDist = du;
+                    bestEdge = graph.adjEdge(v, i);
+                }
+            }
+            if (bestU < 0) {
+                throw new IllegalStateException("No predecessor on shortest path for member index " + v);
+            }
+            prevNode[v] = bestU;
+            prevEdge[v] = bestEdge;
+            v = bestU;
+        }
+
+        int[] path = s.path;
+        int[] pathEdges = s.pathEdges;
+        int length = 0;
+        for (int cur = to; cur != from; length++) {
+            boolean forwardPart = forward.isSettled(cur);
+            path[length] = cur;
+            pathEdges[length] = forwardPart ? forward.prevEdge[cur] : prevEdge[cur];
+            cur = forwardPart ? forward.prev[cur] : prevNode[cur];
+        }
+        int[] nodes = new int[length + 1];
+        int[] edges = new int[length];
+        nodes[0] = from;
+        for (int k = 0; k < length; k++) {
+            nodes[length - k] = path[k];
+            edges[length - 1 - k] = pathEdges[k];
+        }
+        return new ShortestPathSearch(nodes, edges, expanded);
+    }
+
+    /** 按到终点距离从大到小标记后向已出队成员中位于某条最短路上者 */
+    private static void markShortestPathMembers(FamilyGraph graph, Scratch s, int best) {
+        Side forward = s.forward;
+        Side backward = s.backward;
+        for (int k = backward.settledCount - 1; k >= 0; k--) {
+            int u = backward.settledOrder[k];
+            int du = backward.dist[u];
+            boolean onPath;
+            if (forward.isSettled(u)) {
+                onPath = forward.dist[u] + du == best;
+            } else {
+                onPath = false;
+                for (int i = 0, degree = graph.adjDegree(u); i < degree && !onPath; i++) {
+                    int x = graph.adjTarget(u, i);
+                    int w = weight(graph.adjRelation(u, i));
+                    onPath = (forward.isSettled(x) && forward.dist[x] + w + du == best)
+                            || (s.isOnShortestPath(x) && backward.dist[x] == du + w);
+                }
+            }
+            if (onPath) {
+                s.onPath[u] = s.stamp;
+            }
+        }
+    }
+
+    /** 一端的搜索状态；dist/prev 仅在 reached 为本次时间戳时有效 */
+    private static final class Side {
+        final DistanceHeap heap = new DistanceHeap();
+        int[] dist = new int[0];
+        int[] prev = new int[0];
+        int[] prevEdge = new int[0];
+        int[] reached = new int[0];
+        int[] settled = new int[0];
+        int[] settledOrder = new int[0];
+        int settledCount;
+        int stamp;
+
+        void resize(int capacity) {
+            dist = new int[capacity];
+            prev = new int[capacity];
+            prevEdge = new int[capacity];
+            reached = new int[capacity];
+            settled = new int[capacity];
+            settledOrder = new int[capacity];
+        }
+
+        boolean isReached(int node) {
+            return reached[node] == stamp;
+        }
+
+        boolean isSettled(int node) {
+            return settled[node] == stamp;
+        }
+
+        void reach(int node, int distance, int from, int edge) {
+            reached[node] = stamp;
+            dist[node] = distance;
+            prev[node] = from;
+            prevEdge[node] = edge;
+            heap.push(distance, node);
+        }
+
+        /** 堆顶的有效距离，跳过已过期的条目；堆空时为 Long.MAX_VALUE */
+        long peek() {
+            while (!heap.isEmpty()) {
+                long top = heap.peek();
+                int node = DistanceHeap.node(top);
+                if (!isSettled(node) && DistanceHeap.distance(top) == dist[node]) {
+                    return DistanceHeap.distance(top);
+                }
+                heap.pop();
+            }
+            return Long.MAX_VALUE;
+        }
+
+        int pop() {
+            int node = DistanceHeap.node(heap.pop());
+            settled[node] = stamp;
+            settledOrder[settledCount++] = node;
+            return node;
+        }
+    }
+
+    /** 每个线程一份的搜索工作区 */
+    private static final class Scratch {
+        final Side forward = new Side();
+        final Side backward = new Side();
+        int[] prevNode = new int[0];
+        int[] prevEdge = new int[0];
+        int[] onPath = new int[0];
+        int[] path = new int[0];
+        int[] pathEdges = new int[0];
+        int stamp;
+
+        void reset(int size) {
+            if (onPath.length < size) {
+                int capacity = Math.max(size, onPath.length * 2);
+                forward.resize(capacity);
+                backward.resize(capacity);
+                prevNode = new int[capacity];
+                prevEdge = new int[capacity];
+                onPath = new int[capacity];
+                path = new int[capacity];
+                pathEdges = new int[capacity];
+                stamp = 0;
+            }
+            if (++stamp == Integer.MAX_VALUE) {
+                for (Side side : new Side[]{forward, backward}) {
+                    Arrays.fill(side.reached, 0);
+                    Arrays.fill(side.settled, 0);
+                }
+                Arrays.fill(onPath, 0);
+                stamp = 1;
+            }
+            for (Side side : new Side[]{forward, backward}) {
+                side.stamp = stamp;
+                side.settledCount = 0;
+                side.heap.clear();
+            }
+        }
+
+        boolean isOnShortestPath(int node) {
+            return onPath[node] == stamp;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package controller;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import repository.ChangeLogRepository;
+import repository.MemberRepository;
+import repository.RelationshipRepository;
+import repository.UnitOfWork;
+import service.ChangeService;
+import service.DataVersion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 变更广播测试：广播编码后的增量，按序号补发，序号无效时要求重新加载，慢速订阅者被断开而不影响其他订阅者，
+ * 不再读取的连接被断开后归还名额
+ */
+public class ChangeFeedTest {
+    @RegisterExtension
+    final TemporaryDatabase database = new TemporaryDatabase("family-events");
+    private MemberRepository memberRepository;
+    private ChangeFeed feed;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        memberRepository = new MemberRepository();
+        ChangeService changeService = new ChangeService(new ChangeLogRepository(), memberRepository,
+                new RelationshipRepository(memberRepository));
+        feed = new ChangeFeed(changeService, new DataVersion(), 4, 60_000, 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        feed.close();
+    }
+
+    @Test
+    public void testBroadcastAndReplayFromSequence() throws Exception {
+        addMember("Father");
+        feed.publish();
+
+        RecordingStream live = new RecordingStream();
+        feed.subscribe(-1).start(live);
+        feed.publish();
+        live.await("id: 1\nevent: ready\ndata: {\"next\":1}\n\n");
+
+        addMember("Son");
+        feed.publish();
+        live.await("id: 2\nevent: changes\ndata: {\"since\":1,\"next\":2,\"hasMore\":false,\"changes\":[{\"seq\":2,\"type\":\"member\",\"op\":\"insert\",\"id\":2,");
+
+        // 从序号 0 续传：补发两条插入后 ready
+        RecordingStream resumed = new RecordingStream();
+        feed.subscribe(0).start(resumed);
+        feed.publish();
+        resumed.await("id: 2\nevent: ready\ndata: {\"next\":2}\n\n");
+        String text = resumed.text();
+        assertTrue(text.startsWith("id: 2\nevent: changes\n"), text);
+        assertTrue(text.contains("\"name\":\"Father\""), text);
+        assertTrue(text.contains("\"name\":\"Son\""), text);
+
+        // 名额已满
+        assertNull(feed.subscribe(-1));
+        assertEquals(2, feed.getStats().getSubscribers());
+    }
+
+    @Test
+    public void testSequenceAheadOfLogRequestsReload() throws Exception {
+        feed.publish();
+        RecordingStream stream = new RecordingStream();
+        feed.subscribe(99).start(stream);
+        feed.publish();
+        stream.await("id: 0\nevent: reset\ndata: {\"next\":0}\n\n");
+        assertEquals(1, feed.getStats().getResetCount());
+    }
+
+    @Test
+    public void testSlowSubscriberIsDropped() throws Exception {
+        feed.publish();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        OutputStream stalled = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void flush() throws IOException {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        };
+        feed.subscribe(-1).start(stalled);
+        RecordingStream healthy = new RecordingStream();
+        feed.subscribe(-1).start(healthy);
+        feed.publish();
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // 发送线程卡在第一次写出，其余消息填满 4 条的队列后被断开；正常订阅者每条都及时发出
+        for (int i = 1; i <= 6; i++) {
+            addMember("M" + i);
+            feed.publish();
+            healthy.await("id: " + i + "\nevent: changes");
+        }
+        ChangeFeed.EventStats stats = feed.getStats();
+        assertEquals(1, stats.getDroppedCount());
+        assertEquals(1, stats.getSubscribers());
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (feed.getStats().getConnections() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, feed.getStats().getConnections());
+    }
+
+    @Test
+    public void testStalledConnectionIsClosedWhenDropped() throws Exception {
+        feed.start();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/events", new EventStreamController(feed, 1024));
+        server.start();
+        try (Socket client = new Socket()) {
+            // 客户端只发请求不读取，发送线程写满套接字缓冲后阻塞在写出上
+            client.setReceiveBufferSize(4096);
+            client.connect(server.getAddress());
+            client.getOutputStream().write("GET /events HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            String remark = "x".repeat(256 * 1024);
+            long deadline = System.currentTimeMillis() + 20_000;
+            while (feed.getStats().getDroppedCount() == 0 && System.currentTimeMillis() < deadline) {
+                UnitOfWork.run(() -> memberRepository.addMember("M", 1, 0, remark));
+                feed.publish();
+            }
+            assertEquals(1, feed.getStats().getDroppedCount());
+
+            deadline = System.currentTimeMillis() + 5000;
+            while (feed.getStats().getConnections() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, feed.getStats().getConnections());
+            assertNotNull(feed.subscribe(-1));
+            assertNotNull(feed.subscribe(-1));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private void addMember(String name) throws SQLException {
+        UnitOfWork.run(() -> memberRepository.addMember(name, 1, 0));
+    }
+
+    /** 记录写出的字节，供测试等待期望内容 */
+    private static final class RecordingStream extends OutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+        }
+
+        synchronized String text() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+
+        void await(String expected) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!text().contains(expected)) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Expected <" + expected + "> in <" + text() + ">");
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package controller;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式 JSON 编码器测试：输出须与 org.json 的结果等价
+ */
+public class JsonStreamWriterTest {
+
+    @Test
+    public void testEscapingMatchesOrgJson() throws Exception {
+        String[] values = {"张三", "a\"b\\c", "</script>", "tab\tline\nfeed\r", "\u0001\u0085 ", "😀", "\ud800x"};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonStreamWriter json = new JsonStreamWriter(out)) {
+            json.beginArray();
+            for (String value : values) {
+                json.value(value);
+            }
+            json.endArray();
+        }
+        String written = out.toString(StandardCharsets.UTF_8);
+        assertEquals(new String(new JSONArray(values).toString().getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), written);
+    }
+
+    @Test
+    public void testNestingAndNullFieldsMatchOrgJson() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonStreamWriter json = new JsonStreamWriter(out)) {
+            json.beginObject()
+                    .field("memberID", 7)
+                    .field("name", "李四")
+                    .field("remark", (String) null)
+                    .field("alive", true)
+                    .name("relatives").beginArray();
+            for (int i = 0; i < 2000; i++) {
+                json.beginObject().field("memberID", i).field("description", "堂兄弟").endObject();
+            }
+            json.endArray()
+                    .name("empty").beginArray().endArray()
+                    .field("count", 2000)
+                    .endObject();
+        }
+
+        JSONArray relatives = new JSONArray();
+        for (int i = 0; i < 2000; i++) {
+            relatives.put(new JSONObject().put("memberID", i).put("description", "堂兄弟"));
+        }
+        JSONObject expected = new JSONObject()
+                .put("memberID", 7)
+                .put("name", "李四")
+                .put("remark", (String) null)
+                .put("alive", true)
+                .put("relatives", relatives)
+                .put("empty", new JSONArray())
+                .put("count", 2000);
+        JSONObject actual = new JSONObject(out.toString(StandardCharsets.UTF_8));
+        assertTrue(expected.similar(actual));
+        assertFalse(actual.has("remark"));
+    }
+}
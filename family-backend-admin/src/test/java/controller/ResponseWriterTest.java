@@ -0,0 +1,168 @@
+package controller;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 响应压缩协商与编码测试；流式响应按大小决定是否压缩，中途出错时归还 Deflater
+ */
+public class ResponseWriterTest {
+
+    @Test
+    public void testNegotiatePrefersGzipAndHonoursQValues() {
+        assertEquals(ResponseWriter.Encoding.IDENTITY, ResponseWriter.negotiate(null));
+        assertEquals(ResponseWriter.Encoding.GZIP, ResponseWriter.negotiate("gzip, deflate, br"));
+        assertEquals(ResponseWriter.Encoding.GZIP, ResponseWriter.negotiate("deflate, gzip"));
+        assertEquals(ResponseWriter.Encoding.DEFLATE, ResponseWriter.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ResponseWriter.Encoding.DEFLATE, ResponseWriter.negotiate("gzip;q=0, *"));
+        assertEquals(ResponseWriter.Encoding.GZIP, ResponseWriter.negotiate("*"));
+        assertEquals(ResponseWriter.Encoding.IDENTITY, ResponseWriter.negotiate("br, identity"));
+    }
+
+    @Test
+    public void testOneCompressionServesBothEncodings() throws Exception {
+        String json = "[" + "{\"description\":\"堂/表兄弟姐妹\",\"member1Name\":\"张三\"},".repeat(200) + "{}]";
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        ResponseWriter.Compressed compressed = ResponseWriter.compress(body);
+        assertTrue(compressed.size() * 5 < body.length);
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        compressed.writeTo(gzip, ResponseWriter.Encoding.GZIP);
+        assertEquals(compressed.encodedLength(ResponseWriter.Encoding.GZIP), gzip.size());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.toByteArray()))) {
+            assertArrayEquals(body, in.readAllBytes());
+        }
+
+        ByteArrayOutputStream deflate = new ByteArrayOutputStream();
+        compressed.writeTo(deflate, ResponseWriter.Encoding.DEFLATE);
+        assertEquals(compressed.encodedLength(ResponseWriter.Encoding.DEFLATE), deflate.size());
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(deflate.toByteArray()))) {
+            assertArrayEquals(body, in.readAllBytes());
+        }
+
+        // 池中的 Deflater 复用后结果不变
+        assertArrayEquals(gzip.toByteArray(), writeGzip(ResponseWriter.compress(body)));
+    }
+
+    @Test
+    public void testStreamedResponsesHonourThreshold() throws Exception {
+        HttpServer server = startServer();
+        try {
+            // 小于阈值：完整响应，不压缩
+            HttpURLConnection small = get(server, "/items?count=3");
+            assertNull(small.getHeaderField("Content-Encoding"));
+            assertEquals(String.valueOf(items(3).length()), small.getHeaderField("Content-Length"));
+            assertEquals(items(3), new String(small.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+
+            // 达到阈值但不超过一个缓冲区：完整响应，压缩
+            HttpURLConnection medium = get(server, "/items?count=300");
+            assertEquals("gzip", medium.getHeaderField("Content-Encoding"));
+            assertNotNull(medium.getHeaderField("Content-Length"));
+            assertEquals(items(300), gunzip(medium.getInputStream()));
+
+            // 超过一个缓冲区：分块压缩
+            HttpURLConnection large = get(server, "/items?count=5000");
+            assertEquals("gzip", large.getHeaderField("Content-Encoding"));
+            assertNull(large.getHeaderField("Content-Length"));
+            assertEquals(items(5000), gunzip(large.getInputStream()));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testDeflaterIsReturnedWhenStreamFails() throws Exception {
+        HttpServer server = startServer();
+        try {
+            gunzip(get(server, "/items?count=5000").getInputStream());
+            // 客户端读完时服务端可能还没归还
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ResponseWriter.getStats().getPooledDeflaters() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            int pooled = ResponseWriter.getStats().getPooledDeflaters();
+            assertTrue(pooled > 0);
+
+            // 响应头发出后出错：连接被中断，Deflater 仍归还到池中
+            HttpURLConnection failed = get(server, "/items?count=5000&fail=true");
+            assertEquals("gzip", failed.getHeaderField("Content-Encoding"));
+            assertThrows(IOException.class, () -> gunzip(failed.getInputStream()));
+            deadline = System.currentTimeMillis() + 5000;
+            while (ResponseWriter.getStats().getPooledDeflaters() < pooled && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(pooled, ResponseWriter.getStats().getPooledDeflaters());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /** /items?count=N 流式输出 N 个元素的数组；fail=true 时写完后抛出异常 */
+    private static HttpServer startServer() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/items", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            int count = Integer.parseInt(query.replaceAll(".*count=(\\d+).*", "$1"));
+            boolean fail = query.contains("fail=true");
+            try {
+                ResponseWriter.stream(exchange, 200, json -> {
+                    json.beginArray();
+                    for (int i = 0; i < count; i++) {
+                        json.value("item" + i);
+                    }
+                    if (fail) {
+                        throw new IllegalStateException("cursor failed");
+                    }
+                    json.endArray();
+                });
+            } catch (Exception e) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static HttpURLConnection get(HttpServer server, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:"
+                + server.getAddress().getPort() + path).openConnection();
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setReadTimeout(5000);
+        assertEquals(200, connection.getResponseCode());
+        return connection;
+    }
+
+    private static String items(int count) {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            text.append(i > 0 ? "," : "").append("\"item").append(i).append('"');
+        }
+        return text.append(']').toString();
+    }
+
+    private static String gunzip(InputStream in) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(in)) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] writeGzip(ResponseWriter.Compressed compressed) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compressed.writeTo(out, ResponseWriter.Encoding.GZIP);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,89 @@
+package service;
+
+import controller.TemporaryDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import model.Member;
+import repository.ChangeLogRepository;
+import repository.MemberRepository;
+import repository.RelationshipRepository;
+import repository.UnitOfWork;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 跨进程变更检测测试：另一个连接（模拟另一个进程）提交后，检测到变化并刷新关系图与数据版本
+ */
+public class ExternalChangeWatcherTest {
+    @RegisterExtension
+    final TemporaryDatabase database = new TemporaryDatabase("family-watch");
+
+    @Test
+    public void testExternalCommitRefreshesGraph() throws SQLException {
+        MemberRepository memberRepository = new MemberRepository();
+        FamilyGraphStore store = new FamilyGraphStore(memberRepository, new RelationshipRepository(memberRepository));
+        assertEquals(0, store.current().size());
+
+        try (ExternalChangeWatcher watcher = new ExternalChangeWatcher(store, 1000)) {
+            assertFalse(watcher.check());
+            assertFalse(watcher.check());
+            long version = store.getDataVersion().current();
+
+            try (Connection other = DriverManager.getConnection(database.url());
+                 Statement stmt = other.createStatement()) {
+                stmt.execute("INSERT INTO Members (MemberID, Name, Generation, Gender) VALUES (1, 'Father', 1, 0)");
+                stmt.execute("INSERT INTO Members (MemberID, Name, Generation, Gender) VALUES (2, 'Son', 2, 0)");
+                stmt.execute("INSERT INTO Relationships (member1, member2, relation) VALUES (2, 1, 3)");
+            }
+
+            assertTrue(watcher.check());
+            assertEquals(version + 1, store.getDataVersion().current());
+            FamilyGraph graph = store.current();
+            assertEquals(2, graph.size());
+            assertEquals(2, graph.version());
+            assertTrue(graph.findOutEdge(graph.indexOf(2), graph.indexOf(1)) >= 0);
+
+            assertFalse(watcher.check());
+            assertEquals(1, watcher.getChangeCount());
+        }
+    }
+
+    @Test
+    public void testRefreshReadsOnlyLoggedChanges() throws SQLException {
+        AtomicInteger fullScans = new AtomicInteger();
+        MemberRepository memberRepository = new MemberRepository() {
+            @Override
+            public List<Member> getAllMembers() throws SQLException {
+                fullScans.incrementAndGet();
+                return super.getAllMembers();
+            }
+        };
+        RelationshipRepository relationshipRepository = new RelationshipRepository(memberRepository);
+        UnitOfWork.run(() -> memberRepository.addMember("Father", 1, 0));
+        FamilyGraphStore store = new FamilyGraphStore(memberRepository, relationshipRepository, new ChangeLogRepository());
+        assertEquals(1, store.current().size());
+        assertEquals(1, fullScans.get());
+
+        try (Connection other = DriverManager.getConnection(database.url());
+             Statement stmt = other.createStatement()) {
+            stmt.execute("INSERT INTO Members (MemberID, Name, Generation, Gender) VALUES (2, 'Son', 2, 0)");
+            stmt.execute("INSERT INTO Relationships (member1, member2, relation) VALUES (2, 1, 3)");
+            stmt.execute("UPDATE Members SET Name = 'Dad' WHERE MemberID = 1");
+        }
+
+        assertTrue(store.refresh());
+        assertEquals(1, fullScans.get());
+        FamilyGraph graph = store.current();
+        assertEquals(2, graph.size());
+        assertEquals("Dad", graph.name(graph.indexOf(1)));
+        assertTrue(graph.findOutEdge(graph.indexOf(2), graph.indexOf(1)) >= 0);
+        assertFalse(store.refresh());
+    }
+}
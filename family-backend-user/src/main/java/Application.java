@@ -1,25 +1,51 @@
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import controller.ChangeController;
+import controller.ChangeFeed;
+import controller.DatabaseConnection;
+import controller.EventStreamController;
 import controller.KinshipNetworkController;
 import controller.MemberController;
+import controller.MetricsController;
 import controller.RelationshipController;
+import controller.RequestExecutor;
+import controller.ResponseCache;
+import controller.ResponseWriter;
+import repository.ChangeLogRepository;
 import repository.MemberRepository;
 import repository.RelationshipRepository;
+import repository.SnapshotMemberRepository;
+import repository.SnapshotRelationshipRepository;
+import service.ChangeService;
+import service.ExternalChangeWatcher;
+import service.FamilyGraphStore;
+import service.GraphSnapshot;
 import service.MemberService;
 import service.RelationshipService;
+import service.SnapshotPublisher;
+import service.SnapshotReplica;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Properties;
 
 public class Application {
@@ -28,6 +54,7 @@ public class Application {
     private static int rateLimitPerMinute = 300;
     private static Set<String> apiKeys = Set.of();
     private static boolean readOnly = false;
+    private static final Set<String> READ_ONLY_POST_PATHS = Set.of("/relationship/distant-relative/batch");
     private static Set<String> allowedOrigins = Set.of("*");
 
     private static HttpHandler withSecurity(HttpHandler handler) {
@@ -41,8 +68,18 @@ public class Application {
                 exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
             }
             exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-            exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Accept, X-Requested-With, X-API-Key");
+            exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Accept, X-Requested-With, X-API-Key, If-None-Match");
+            exchange.getResponseHeaders().add("Access-Control-Expose-Headers", "ETag");
             exchange.getResponseHeaders().add("Access-Control-Max-Age", "3600");
+            if (RequestExecutor.isShedding()) {
+                byte[] payload = "{\"error\":\"Service Unavailable\"}".getBytes();
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(503, payload.length);
+                exchange.getResponseBody().write(payload);
+                exchange.close();
+                return;
+            }
             if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
                 exchange.sendResponseHeaders(204, -1);
                 exchange.close();
@@ -59,7 +96,9 @@ public class Application {
                     return;
                 }
             }
-            if (readOnly && !"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            // 批量远亲查询用 POST 携带请求体，但只读不写，只读模式下同样放行
+            if (readOnly && !"GET".equalsIgnoreCase(exchange.getRequestMethod())
+                    && !READ_ONLY_POST_PATHS.contains(exchange.getRequestURI().getPath())) {
                 byte[] payload = "{\"error\":\"Forbidden\"}".getBytes();
                 exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
                 exchange.sendResponseHeaders(403, payload.length);
@@ -106,29 +145,135 @@ public class Application {
             int maxQueryLength = Integer.parseInt(prop.getProperty("security.maxQueryLength", "512"));
             int maxNameLength = Integer.parseInt(prop.getProperty("security.maxNameLength", "50"));
             int maxGeneration = Integer.parseInt(prop.getProperty("security.maxGeneration", "100"));
+            int maxBatchSize = Integer.parseInt(prop.getProperty("security.maxBatchSize", "200"));
+            int kinshipThreads = Integer.parseInt(prop.getProperty("kinship.batch.threads",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+            // 只读副本：配置了 snapshot.sourceDir 时只从 admin 发布的关系图快照提供读取，不打开 SQLite
+            String snapshotSourceDir = prop.getProperty("snapshot.sourceDir", "").trim();
+            SnapshotReplica snapshotReplica = null;
+            if (!snapshotSourceDir.isEmpty()) {
+                snapshotReplica = new SnapshotReplica(Paths.get(snapshotSourceDir),
+                        Long.parseLong(prop.getProperty("snapshot.pollMillis", "500")));
+                snapshotReplica.loadLatest();
+            } else {
+                // 启动时一次性解析数据库路径、初始化表结构并预热连接池
+                DatabaseConnection.configure(prop);
+                DatabaseConnection.initialize();
+            }
+            ResponseWriter.configure(prop);
 
             HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
 
             // 设置依赖关系
-            MemberRepository memberRepository = new MemberRepository();
-            MemberService memberService = new MemberService(memberRepository);
+            MemberRepository memberRepository;
+            RelationshipRepository relationshipRepository;
+            ChangeLogRepository changeLogRepository;
+            if (snapshotReplica != null) {
+                memberRepository = new SnapshotMemberRepository(snapshotReplica::graph);
+                relationshipRepository = new SnapshotRelationshipRepository(memberRepository, snapshotReplica::graph);
+                changeLogRepository = null;
+            } else {
+                memberRepository = new MemberRepository();
+                relationshipRepository = new RelationshipRepository(memberRepository);
+                changeLogRepository = new ChangeLogRepository();
+            }
+            // 成员与关系服务共享同一份内存关系图，写入串行执行并发布新版本快照
+            FamilyGraphStore graphStore = new FamilyGraphStore(memberRepository, relationshipRepository, changeLogRepository);
+            // 所有写入交给单个写线程，排队中的变更合并为一次提交；只读部署没有写连接，不启动写线程
+            if (snapshotReplica == null && !DatabaseConnection.isReadOnly()) {
+                graphStore.startWriter(Integer.parseInt(prop.getProperty("db.writer.maxGroupSize", "64")),
+                        Integer.parseInt(prop.getProperty("db.writer.queueCapacity", "1024")));
+            }
 
-            RelationshipRepository relationshipRepository = new RelationshipRepository(memberRepository);
-            RelationshipService relationshipService = new RelationshipService(relationshipRepository, memberRepository);
+            MemberService memberService = new MemberService(memberRepository, graphStore);
+            // 批量远亲查询的有界线程池：队列满时由请求线程自己计算，形成背压
+            ExecutorService kinshipExecutor = new ThreadPoolExecutor(kinshipThreads, kinshipThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(kinshipThreads * 16), daemonThreads("kinship-batch"), new ThreadPoolExecutor.CallerRunsPolicy());
+            RelationshipService relationshipService = new RelationshipService(relationshipRepository, memberRepository, graphStore, kinshipExecutor);
+
+            // 热点列表端点的响应缓存，按数据版本失效
+            ResponseCache responseCache = new ResponseCache(graphStore.getDataVersion(),
+                    Integer.parseInt(prop.getProperty("cache.response.maxEntries", "64")));
 
             // 设置控制器（包装 CORS，允许前端跨域访问）
-            server.createContext("/member", withSecurity(new MemberController(memberService, maxBodyBytes, maxQueryLength, maxNameLength, maxGeneration)));
-            server.createContext("/relationship", withSecurity(new RelationshipController(relationshipService, maxBodyBytes, maxQueryLength)));
-            server.createContext("/kinship-network", withSecurity(new KinshipNetworkController(relationshipService, maxQueryLength)));
+            server.createContext("/member", withSecurity(new MemberController(memberService, graphStore.getDataVersion(), responseCache, maxBodyBytes, maxQueryLength, maxNameLength, maxGeneration, maxBatchSize)));
+            server.createContext("/relationship", withSecurity(new RelationshipController(relationshipService, graphStore.getDataVersion(), responseCache, maxBodyBytes, maxQueryLength, maxBatchSize)));
+            // 增量同步与变更推送依赖 SQLite 中的变更日志，只读副本不提供
+            ChangeFeed changeFeed = null;
+            if (changeLogRepository != null) {
+                ChangeService changeService = new ChangeService(changeLogRepository, memberRepository, relationshipRepository);
+                server.createContext("/changes", withSecurity(new ChangeController(changeService, graphStore.getDataVersion(), maxQueryLength)));
+                // 变更推送：家谱与亲属网络页面订阅 /events 接收增量，不再在每次编辑后重新拉取完整列表
+                changeFeed = new ChangeFeed(changeService, graphStore.getDataVersion(),
+                        Integer.parseInt(prop.getProperty("events.bufferEvents", "64")),
+                        Long.parseLong(prop.getProperty("events.heartbeatMillis", "15000")),
+                        Integer.parseInt(prop.getProperty("events.maxSubscribers", "256")));
+                changeFeed.start();
+                server.createContext("/events", withSecurity(new EventStreamController(changeFeed, maxQueryLength)));
+            }
+            server.createContext("/kinship-network", withSecurity(new KinshipNetworkController(relationshipService, graphStore.getDataVersion(), maxQueryLength)));
+            // 请求执行器：固定并发 + 有界排队，超出容量直接返回 503
+            RequestExecutor requestExecutor = RequestExecutor.fromProperties(prop);
+            // 其他进程写入同一数据库时刷新关系图并让缓存失效；只读部署默认开启
+            long changePollMillis = Long.parseLong(prop.getProperty("db.changePollMillis",
+                    DatabaseConnection.isReadOnly() ? "500" : "0"));
+            ExternalChangeWatcher changeWatcher = null;
+            if (snapshotReplica != null) {
+                // 只读副本改为检查快照目录，新快照加载后与关系图对账并让缓存失效
+                snapshotReplica.start(graphStore);
+            } else if (changePollMillis > 0) {
+                changeWatcher = new ExternalChangeWatcher(graphStore, changePollMillis);
+                changeWatcher.start();
+            }
+            // 把内存关系图发布为快照文件，供只读副本加载；只读部署不发布，避免与可写实例争用同一目录的序号
+            String snapshotPublishDir = prop.getProperty("snapshot.publishDir", "").trim();
+            SnapshotPublisher snapshotPublisher = null;
+            if (snapshotReplica == null && !DatabaseConnection.isReadOnly() && !snapshotPublishDir.isEmpty()) {
+                // 启动时先映射最近发布的快照恢复关系图，格式、校验和或变更序号对不上时照常从 SQLite 重建
+                restoreGraph(graphStore, Paths.get(snapshotPublishDir));
+                snapshotPublisher = new SnapshotPublisher(graphStore, Paths.get(snapshotPublishDir),
+                        Long.parseLong(prop.getProperty("snapshot.publishIntervalMillis", "1000")),
+                        Integer.parseInt(prop.getProperty("snapshot.keep", "3")));
+                snapshotPublisher.start();
+            }
+            server.createContext("/metrics", withSecurity(new MetricsController(graphStore, requestExecutor, responseCache,
+                    changeWatcher, changeFeed, snapshotPublisher, snapshotReplica)));
 
-            server.setExecutor(null);
+            server.setExecutor(requestExecutor);
             server.start();
-            logger.info("Server started on port {}", port);
-        } catch (IOException e) {
+            RequestExecutor.ExecutorStats executorStats = requestExecutor.getStats();
+            logger.info("Server started on port {} with {} executor ({} threads, queue {})", port,
+                    executorStats.getMode(), executorStats.getThreads(), executorStats.getQueueCapacity());
+        } catch (IOException | SQLException e) {
             logger.error("Error starting server: {}", e.getMessage());
         }
     }
 
+    private static void restoreGraph(FamilyGraphStore graphStore, Path directory) {
+        try {
+            Path latest = GraphSnapshot.latestFile(directory);
+            if (latest == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            GraphSnapshot snapshot = GraphSnapshot.map(latest);
+            logger.info("Mapped graph snapshot {} in {} ms", latest.getFileName(), (System.nanoTime() - start) / 1_000_000);
+            graphStore.restore(snapshot);
+        } catch (IOException | SQLException e) {
+            logger.warn("Cannot restore family graph from snapshot, rebuilding from SQLite: {}", e.getMessage());
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     private static Properties loadProperties() {
         Properties prop = new Properties();
         try (InputStream input = Application.class.getClassLoader().getResourceAsStream("application.properties")) {
@@ -1,5 +1,7 @@
+import controller.DatabaseConnection;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import repository.ChangeLogRepository;
 import repository.MemberRepository;
 import repository.RelationshipRepository;
 import service.RelationshipService;
@@ -16,6 +18,7 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 
 public class DataExportImport {
@@ -24,6 +27,7 @@ public class DataExportImport {
             System.out.println("Usage:");
             System.out.println("  export [dbPath] [outDir]");
             System.out.println("  rebuild [dbPath] [membersFile] [relationshipsFile]");
+            System.out.println("  dedupe [dbPath]");
             System.exit(1);
         }
         String command = args[0].toLowerCase();
@@ -46,6 +50,12 @@ public class DataExportImport {
             return;
         }
 
+        if ("dedupe".equals(command)) {
+            Path dbPath = args.length > 1 ? Paths.get(args[1]) : defaultDb;
+            removeDuplicateRelationships(dbPath);
+            return;
+        }
+
         System.out.println("Unknown command: " + command);
         System.exit(1);
     }
@@ -106,8 +116,10 @@ public class DataExportImport {
         JSONArray members = new JSONArray(membersText);
         JSONArray relationships = new JSONArray(relationshipsText);
 
-        resetDatabase(dbPath);
-        insertMembers(dbPath, members);
+        // 关系经由仓储写入，仓储与本工具使用同一个库；初始化同时补齐表结构、索引与变更日志触发器
+        System.setProperty("family.db.path", dbPath.toAbsolutePath().toString());
+        DatabaseConnection.initialize();
+        replaceMembers(dbPath, members);
 
         MemberRepository memberRepository = new MemberRepository();
         RelationshipRepository relationshipRepository = new RelationshipRepository(memberRepository);
@@ -170,48 +182,52 @@ public class DataExportImport {
         return result;
     }
 
-    private static void resetDatabase(Path dbPath) throws Exception {
+    private static void removeDuplicateRelationships(Path dbPath) throws Exception {
         try (Connection conn = openConnection(dbPath);
              Statement stmt = conn.createStatement()) {
-            stmt.execute("DROP TABLE IF EXISTS Members");
-            stmt.execute("DROP TABLE IF EXISTS Relationships");
-            stmt.execute("CREATE TABLE IF NOT EXISTS Members (MemberID INTEGER PRIMARY KEY AUTOINCREMENT, Name TEXT NOT NULL, Generation INTEGER NOT NULL, Gender INTEGER NOT NULL, Remark TEXT)");
-            stmt.execute("CREATE TABLE IF NOT EXISTS Relationships (RelationID INTEGER PRIMARY KEY AUTOINCREMENT, member1 INTEGER NOT NULL, member2 INTEGER NOT NULL, relation INTEGER NOT NULL, FOREIGN KEY(member1) REFERENCES Members(MemberID), FOREIGN KEY(member2) REFERENCES Members(MemberID))");
+            int removed = stmt.executeUpdate("DELETE FROM Relationships WHERE RelationID NOT IN (" +
+                    "SELECT MIN(RelationID) FROM Relationships GROUP BY member1, member2, relation)");
+            System.out.println("Duplicate relationships removed: " + removed);
         }
     }
 
-    private static void insertMembers(Path dbPath, JSONArray members) throws Exception {
-        try (Connection conn = openConnection(dbPath);
-             PreparedStatement stmt = conn.prepareStatement("INSERT INTO Members(MemberID, Name, Generation, Gender, Remark) VALUES(?, ?, ?, ?, ?)")) {
-            for (int i = 0; i < members.length(); i++) {
-                JSONObject m = members.getJSONObject(i);
-                stmt.setInt(1, m.getInt("id"));
-                stmt.setString(2, m.getString("name"));
-                stmt.setInt(3, m.getInt("generation"));
-            stmt.setInt(4, m.getInt("gender"));
-            stmt.setString(5, m.optString("remark", null));
-                stmt.addBatch();
-            }
-            stmt.executeBatch();
-        }
-
-        int maxId = 0;
-        for (int i = 0; i < members.length(); i++) {
-            int id = members.getJSONObject(i).getInt("id");
-            if (id > maxId) {
-                maxId = id;
+    /**
+     * 在一个事务内清空成员与关系并写入导入的成员。先在变更日志中写入重建标记，早于它的 /changes 序号返回 410，
+     * /events 订阅者收到 reset；删除与插入仍由触发器记录。不删表，自增序号保留（显式 ID 只会推高序号），新关系不会复用旧 RelationID。
+     */
+    private static void replaceMembers(Path dbPath, JSONArray members) throws Exception {
+        try (Connection conn = openConnection(dbPath)) {
+            conn.setAutoCommit(false);
+            try {
+                long rebuildSeq = ChangeLogRepository.markRebuild(conn);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DELETE FROM Relationships");
+                    stmt.execute("DELETE FROM Members");
+                }
+                try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO Members(MemberID, Name, Generation, Gender, Remark) VALUES(?, ?, ?, ?, ?)")) {
+                    for (int i = 0; i < members.length(); i++) {
+                        JSONObject m = members.getJSONObject(i);
+                        stmt.setInt(1, m.getInt("id"));
+                        stmt.setString(2, m.getString("name"));
+                        stmt.setInt(3, m.getInt("generation"));
+                        stmt.setInt(4, m.getInt("gender"));
+                        stmt.setString(5, m.optString("remark", null));
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                conn.commit();
+                System.out.println("Change log reset at seq " + rebuildSeq);
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
             }
         }
-
-        try (Connection conn = openConnection(dbPath);
-             Statement stmt = conn.createStatement()) {
-            stmt.execute("DELETE FROM sqlite_sequence WHERE name='Members'");
-            stmt.execute("INSERT INTO sqlite_sequence(name, seq) VALUES('Members', " + maxId + ")");
-        } catch (Exception ignored) {
-        }
     }
 
     private static Connection openConnection(Path dbPath) throws Exception {
-        return DriverManager.getConnection("jdbc:sqlite:" + dbPath.toAbsolutePath());
+        Properties properties = new Properties();
+        properties.setProperty("busy_timeout", "5000");
+        return DriverManager.getConnection("jdbc:sqlite:" + dbPath.toAbsolutePath(), properties);
     }
 }
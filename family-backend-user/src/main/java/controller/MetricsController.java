@@ -0,0 +1,242 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+import service.ExternalChangeWatcher;
+import service.FamilyGraph;
+import service.FamilyGraphStore;
+import service.GraphSnapshot;
+import service.SnapshotPublisher;
+import service.SnapshotReplica;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** 运行指标：GET /metrics */
+public class MetricsController implements HttpHandler {
+    private static final Logger logger = LogManager.getLogger(MetricsController.class);
+    private final FamilyGraphStore graphStore;
+    private final RequestExecutor requestExecutor;
+    private final ResponseCache responseCache;
+    private final ExternalChangeWatcher changeWatcher;
+    private final ChangeFeed changeFeed;
+    private final SnapshotPublisher snapshotPublisher;
+    private final SnapshotReplica snapshotReplica;
+
+    public MetricsController(FamilyGraphStore graphStore) {
+        this(graphStore, null, null);
+    }
+
+    public MetricsController(FamilyGraphStore graphStore, RequestExecutor requestExecutor, ResponseCache responseCache) {
+        this(graphStore, requestExecutor, responseCache, null);
+    }
+
+    public MetricsController(FamilyGraphStore graphStore, RequestExecutor requestExecutor, ResponseCache responseCache,
+                             ExternalChangeWatcher changeWatcher) {
+        this(graphStore, requestExecutor, responseCache, changeWatcher, null);
+    }
+
+    public MetricsController(FamilyGraphStore graphStore, RequestExecutor requestExecutor, ResponseCache responseCache,
+                             ExternalChangeWatcher changeWatcher, ChangeFeed changeFeed) {
+        this(graphStore, requestExecutor, responseCache, changeWatcher, changeFeed, null, null);
+    }
+
+    public MetricsController(FamilyGraphStore graphStore, RequestExecutor requestExecutor, ResponseCache responseCache,
+                             ExternalChangeWatcher changeWatcher, ChangeFeed changeFeed,
+                             SnapshotPublisher snapshotPublisher, SnapshotReplica snapshotReplica) {
+        this.graphStore = graphStore;
+        this.requestExecutor = requestExecutor;
+        this.responseCache = responseCache;
+        this.changeWatcher = changeWatcher;
+        this.changeFeed = changeFeed;
+        this.snapshotPublisher = snapshotPublisher;
+        this.snapshotReplica = snapshotReplica;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, createErrorResponse("Method Not Allowed"));
+                return;
+            }
+            JSONObject json = new JSONObject();
+            json.put("dbPool", poolStatsToJson(DatabaseConnection.getPoolStats()));
+            json.put("dbWriterPool", poolStatsToJson(DatabaseConnection.getWriterPoolStats()));
+            json.put("graph", graphToJson(graphStore.peek()));
+            FamilyGraphStore.WriterStats writerStats = graphStore.getWriterStats();
+            if (writerStats != null) {
+                json.put("writer", writerStatsToJson(writerStats));
+            }
+            if (requestExecutor != null) {
+                json.put("executor", executorStatsToJson(requestExecutor.getStats()));
+            }
+            json.put("compression", compressionStatsToJson(ResponseWriter.getStats()));
+            if (changeWatcher != null) {
+                json.put("externalChanges", changeWatcherToJson(changeWatcher));
+            }
+            if (changeFeed != null) {
+                json.put("events", eventStatsToJson(changeFeed.getStats()));
+            }
+            if (snapshotPublisher != null) {
+                json.put("snapshotPublisher", snapshotPublisherToJson(snapshotPublisher));
+            }
+            if (snapshotReplica != null) {
+                json.put("snapshotReplica", snapshotReplicaToJson(snapshotReplica));
+            }
+            if (responseCache != null) {
+                json.put("responseCache", cacheStatsToJson(responseCache.getStats()));
+            }
+            sendResponse(exchange, 200, json.toString());
+        } catch (Exception e) {
+            logger.error("Error in handle: {}", e.getMessage());
+            sendResponse(exchange, 500, createErrorResponse("Internal Server Error"));
+        }
+    }
+
+    private JSONObject poolStatsToJson(ConnectionPool.PoolStats stats) {
+        JSONObject json = new JSONObject();
+        if (stats == null) {
+            json.put("initialized", false);
+            return json;
+        }
+        json.put("initialized", true);
+        json.put("maxSize", stats.getMaxSize());
+        json.put("total", stats.getTotal());
+        json.put("active", stats.getActive());
+        json.put("idle", stats.getIdle());
+        json.put("acquireCount", stats.getAcquireCount());
+        json.put("waitCount", stats.getWaitCount());
+        json.put("timeoutCount", stats.getTimeoutCount());
+        json.put("totalWaitMicros", stats.getTotalWaitMicros());
+        json.put("maxWaitMicros", stats.getMaxWaitMicros());
+        return json;
+    }
+
+    private JSONObject executorStatsToJson(RequestExecutor.ExecutorStats stats) {
+        JSONObject json = new JSONObject();
+        json.put("mode", stats.getMode());
+        json.put("threads", stats.getThreads());
+        json.put("queueCapacity", stats.getQueueCapacity());
+        json.put("active", stats.getActive());
+        json.put("queued", stats.getQueued());
+        json.put("completedCount", stats.getCompletedCount());
+        json.put("rejectedCount", stats.getRejectedCount());
+        json.put("totalWaitMicros", stats.getTotalWaitMicros());
+        json.put("maxWaitMicros", stats.getMaxWaitMicros());
+        return json;
+    }
+
+    private JSONObject writerStatsToJson(FamilyGraphStore.WriterStats stats) {
+        JSONObject json = new JSONObject();
+        json.put("maxGroupSize", stats.getMaxGroupSize());
+        json.put("queued", stats.getQueued());
+        json.put("queueCapacity", stats.getQueueCapacity());
+        json.put("groupCount", stats.getGroupCount());
+        json.put("writeCount", stats.getWriteCount());
+        json.put("largestGroup", stats.getLargestGroup());
+        return json;
+    }
+
+    private JSONObject changeWatcherToJson(ExternalChangeWatcher watcher) {
+        JSONObject json = new JSONObject();
+        json.put("intervalMillis", watcher.getIntervalMillis());
+        json.put("checkCount", watcher.getCheckCount());
+        json.put("changeCount", watcher.getChangeCount());
+        json.put("lastRefreshMillis", watcher.getLastRefreshMillis());
+        return json;
+    }
+
+    private JSONObject eventStatsToJson(ChangeFeed.EventStats stats) {
+        JSONObject json = new JSONObject();
+        json.put("seq", stats.getSeq());
+        json.put("subscribers", stats.getSubscribers());
+        json.put("connections", stats.getConnections());
+        json.put("maxSubscribers", stats.getMaxSubscribers());
+        json.put("bufferEvents", stats.getBufferEvents());
+        json.put("messageCount", stats.getMessageCount());
+        json.put("droppedCount", stats.getDroppedCount());
+        json.put("resetCount", stats.getResetCount());
+        return json;
+    }
+
+    private JSONObject snapshotPublisherToJson(SnapshotPublisher publisher) {
+        JSONObject json = new JSONObject();
+        json.put("directory", publisher.getDirectory().toString());
+        json.put("seq", publisher.getSeq());
+        json.put("publishCount", publisher.getPublishCount());
+        json.put("failureCount", publisher.getFailureCount());
+        json.put("lastBytes", publisher.getLastBytes());
+        json.put("lastPublishMillis", publisher.getLastPublishMillis());
+        return json;
+    }
+
+    private JSONObject snapshotReplicaToJson(SnapshotReplica replica) {
+        JSONObject json = new JSONObject();
+        GraphSnapshot snapshot = replica.getSnapshot();
+        json.put("directory", replica.getDirectory().toString());
+        json.put("pollMillis", replica.getPollMillis());
+        json.put("seq", snapshot != null ? snapshot.getSeq() : -1);
+        json.put("sourceVersion", snapshot != null ? snapshot.getSourceVersion() : -1);
+        json.put("ageMillis", snapshot != null ? System.currentTimeMillis() - snapshot.getCreatedAtMillis() : -1);
+        json.put("loadCount", replica.getLoadCount());
+        json.put("failureCount", replica.getFailureCount());
+        json.put("lastLoadMillis", replica.getLastLoadMillis());
+        return json;
+    }
+
+    private JSONObject cacheStatsToJson(ResponseCache.CacheStats stats) {
+        JSONObject json = new JSONObject();
+        long lookups = stats.getHitCount() + stats.getMissCount();
+        json.put("maxEntries", stats.getMaxEntries());
+        json.put("entries", stats.getEntries());
+        json.put("hitCount", stats.getHitCount());
+        json.put("missCount", stats.getMissCount());
+        json.put("hitRate", lookups > 0 ? (double) stats.getHitCount() / lookups : 0.0);
+        json.put("bytes", stats.getBytes());
+        json.put("compressedBytes", stats.getCompressedBytes());
+        return json;
+    }
+
+    private JSONObject compressionStatsToJson(ResponseWriter.CompressionStats stats) {
+        JSONObject json = new JSONObject();
+        json.put("minBytes", stats.getMinBytes());
+        json.put("compressedCount", stats.getCompressedCount());
+        json.put("bytesIn", stats.getBytesIn());
+        json.put("bytesOut", stats.getBytesOut());
+        json.put("pooledDeflaters", stats.getPooledDeflaters());
+        return json;
+    }
+
+    private JSONObject graphToJson(FamilyGraph graph) {
+        JSONObject json = new JSONObject();
+        if (graph == null) {
+            json.put("loaded", false);
+            return json;
+        }
+        json.put("loaded", true);
+        json.put("version", graph.version());
+        json.put("members", graph.size());
+        json.put("relationships", graph.relationshipCount());
+        json.put("lastLoadMillis", graphStore.getLastLoadMillis());
+        json.put("lastApplyMicros", graphStore.getLastApplyMicros());
+        return json;
+    }
+
+    private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().add("X-Content-Type-Options", "nosniff");
+        exchange.getResponseHeaders().add("Cache-Control", "no-store");
+        byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+        ResponseWriter.send(exchange, statusCode, responseBytes);
+    }
+
+    private String createErrorResponse(String message) {
+        JSONObject json = new JSONObject();
+        json.put("error", message);
+        return json.toString();
+    }
+}
@@ -0,0 +1,56 @@
+package model;
+
+/** 变更日志中的一行：某个成员或关系行的一次插入、修改或删除 */
+public class Change {
+    /** 整库重建标记：日志在此之前的序号全部失效，Entity 与 Op 均为 0 */
+    public static final int ENTITY_REBUILD = 0;
+    public static final int ENTITY_MEMBER = 1;
+    public static final int ENTITY_RELATIONSHIP = 2;
+    public static final int OP_INSERT = 1;
+    public static final int OP_UPDATE = 2;
+    public static final int OP_DELETE = 3;
+
+    private final long seq;
+    private final int entity;
+    private final int entityID;
+    private final int op;
+
+    public Change(long seq, int entity, int entityID, int op) {
+        this.seq = seq;
+        this.entity = entity;
+        this.entityID = entityID;
+        this.op = op;
+    }
+
+    public long getSeq() { return seq; }
+    public int getEntity() { return entity; }
+    public int getEntityID() { return entityID; }
+    public int getOp() { return op; }
+
+    public static String entityName(int entity) {
+        switch (entity) {
+            case ENTITY_MEMBER:
+                return "member";
+            case ENTITY_RELATIONSHIP:
+                return "relationship";
+            default:
+                return "rebuild";
+        }
+    }
+
+    public static String opName(int op) {
+        switch (op) {
+            case OP_INSERT:
+                return "insert";
+            case OP_UPDATE:
+                return "update";
+            default:
+                return "delete";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Change{seq=" + seq + ", " + entityName(entity) + " " + entityID + " " + opName(op) + "}";
+    }
+}
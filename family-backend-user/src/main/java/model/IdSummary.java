@@ -0,0 +1,36 @@
+package model;
+
+/** 一张表主键的行数、最大值与总和，用于低成本核对两份数据（如快照与数据库）是否一致 */
+public class IdSummary {
+    private final long count;
+    private final long maxId;
+    private final long idSum;
+
+    public IdSummary(long count, long maxId, long idSum) {
+        this.count = count;
+        this.maxId = maxId;
+        this.idSum = idSum;
+    }
+
+    public long getCount() { return count; }
+    public long getMaxId() { return maxId; }
+    public long getIdSum() { return idSum; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IdSummary)) return false;
+        IdSummary other = (IdSummary) o;
+        return count == other.count && maxId == other.maxId && idSum == other.idSum;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(count) * 31 * 31 + Long.hashCode(maxId) * 31 + Long.hashCode(idSum);
+    }
+
+    @Override
+    public String toString() {
+        return "{count=" + count + ", max=" + maxId + ", sum=" + idSum + "}";
+    }
+}
@@ -0,0 +1,71 @@
+package repository;
+
+import controller.DatabaseConnection;
+import model.Change;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/** 读取触发器写入的 ChangeLog；日志行由触发器追加，整库重建时由导入工具清空并写入重建标记 */
+public class ChangeLogRepository {
+
+    /** 最新的变更序号，日志为空时为 0 */
+    public long getLatestSeq() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(Seq), 0) FROM ChangeLog")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * 最近一次整库重建的序号：重建会清空日志并以重建标记作为第一行，早于它的序号已无法增量同步。
+     * 没有重建过时为 0。
+     */
+    public long getRebuildSeq() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT Seq, Entity FROM ChangeLog ORDER BY Seq LIMIT 1")) {
+            return rs.next() && rs.getInt("Entity") == Change.ENTITY_REBUILD ? rs.getLong("Seq") : 0;
+        }
+    }
+
+    /**
+     * 在 conn 的事务中清空日志并写入重建标记，供绕过仓储整库重写数据的工具在改写前调用。
+     * 序号不复用（AUTOINCREMENT），标记之后的改写照常由触发器记录。返回标记的序号。
+     */
+    public static long markRebuild(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM ChangeLog");
+            stmt.execute("INSERT INTO ChangeLog (Entity, EntityID, Op) VALUES (" + Change.ENTITY_REBUILD + ", 0, 0)");
+            try (ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /** 序号在 (afterSeq, untilSeq] 内的变更，按序号升序，最多 limit 条 */
+    public List<Change> getChanges(long afterSeq, long untilSeq, int limit) throws SQLException {
+        List<Change> changes = new ArrayList<>();
+        String sql = "SELECT Seq, Entity, EntityID, Op FROM ChangeLog WHERE Seq > ? AND Seq <= ? ORDER BY Seq LIMIT ?";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, afterSeq);
+            pstmt.setLong(2, untilSeq);
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(new Change(rs.getLong("Seq"), rs.getInt("Entity"), rs.getInt("EntityID"), rs.getInt("Op")));
+                }
+            }
+        }
+        return changes;
+    }
+}
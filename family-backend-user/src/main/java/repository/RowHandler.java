@@ -0,0 +1,9 @@
+package repository;
+
+import java.io.IOException;
+
+/** 逐行处理查询结果，游标打开期间对每一行调用一次；可直接把行写到响应流 */
+@FunctionalInterface
+public interface RowHandler<T> {
+    void handle(T row) throws IOException;
+}
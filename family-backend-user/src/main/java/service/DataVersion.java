@@ -0,0 +1,40 @@
+package service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局数据版本：每次写入后递增，用于生成 GET 响应的 ETag。
+ * 标签带上进程启动时间，重启后计数从头开始也不会与重启前发出的 ETag 冲突。
+ */
+public class DataVersion {
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong counter = new AtomicLong();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    public long current() {
+        return counter.get();
+    }
+
+    public void increment() {
+        counter.incrementAndGet();
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /** 登记每次递增后调用的回调；回调在写入线程上执行（可能持有写锁），只能做唤醒之类的轻量操作 */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /** 形如 "lq3k2x1a-42" 的版本标签 */
+    public String tag() {
+        return epoch + "-" + counter.get();
+    }
+}
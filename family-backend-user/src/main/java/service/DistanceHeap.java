@@ -0,0 +1,49 @@
+package service;
+
+import java.util.Arrays;
+
+/** 以 (距离, 下标) 打包成 long 的二叉小顶堆，避免 PriorityQueue 的装箱与比较器开销 */
+final class DistanceHeap {
+    private long[] heap = new long[64];
+    private int size;
+
+    static int distance(long key) { return (int) (key >>> 32); }
+    static int node(long key) { return (int) key; }
+
+    boolean isEmpty() { return size == 0; }
+
+    int size() { return size; }
+
+    void clear() { size = 0; }
+
+    long peek() { return heap[0]; }
+
+    void push(int distance, int node) {
+        if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+        long key = ((long) distance << 32) | node;
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= key) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = key;
+    }
+
+    long pop() {
+        long top = heap[0];
+        long last = heap[--size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+            if (last <= heap[child]) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
@@ -0,0 +1,142 @@
+package service;
+
+import controller.DatabaseConnection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 检测其他进程对同一数据库文件的写入（如 admin 服务写、只读 user 服务读）。
+ * 定时在一个专用只读连接上查询 PRAGMA data_version：该值只在其他连接提交后变化，查询本身不读表，开销可以忽略。
+ * 变化时让 FamilyGraphStore 与数据库对账并递增数据版本，内存关系图、响应缓存与 ETag 随之更新。
+ * 本进程自己的提交同样会改变该值，可写部署开启后每次写入都会多做一次对账。
+ */
+public class ExternalChangeWatcher implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ExternalChangeWatcher.class);
+
+    private final FamilyGraphStore graphStore;
+    private final long intervalMillis;
+    private ScheduledExecutorService scheduler;
+    private Connection connection;
+    private long lastDataVersion;
+    private boolean baselined;
+    private boolean refreshPending;
+    private volatile long checkCount;
+    private volatile long changeCount;
+    private volatile long lastRefreshMillis;
+
+    public ExternalChangeWatcher(FamilyGraphStore graphStore, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive");
+        }
+        this.graphStore = graphStore;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /** 启动后台轮询线程 */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-change-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Watching database for external changes every {} ms", intervalMillis);
+    }
+
+    /**
+     * 检查一次，数据有变化时对账并返回 true。data_version 只在同一连接上可比：首次打开连接时只记下当前值；
+     * 查询失败时关闭连接，重新打开后无法得知其间是否有写入，按有变化处理，宁可多对账一次。
+     */
+    public synchronized boolean check() throws SQLException {
+        checkCount++;
+        boolean changed;
+        try {
+            if (connection == null) {
+                connection = DatabaseConnection.openReader();
+                lastDataVersion = queryDataVersion(connection);
+                changed = baselined;
+                baselined = true;
+            } else {
+                long current = queryDataVersion(connection);
+                changed = current != lastDataVersion;
+                lastDataVersion = current;
+            }
+        } catch (SQLException e) {
+            closeConnection();
+            throw e;
+        }
+        if (!changed && !refreshPending) {
+            return false;
+        }
+        // 对账失败时下次检查重试，即使 data_version 没有再变
+        refreshPending = true;
+        changeCount++;
+        long start = System.nanoTime();
+        graphStore.refresh();
+        refreshPending = false;
+        lastRefreshMillis = (System.nanoTime() - start) / 1_000_000;
+        return true;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public long getCheckCount() {
+        return checkCount;
+    }
+
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    public long getLastRefreshMillis() {
+        return lastRefreshMillis;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        closeConnection();
+    }
+
+    private void poll() {
+        try {
+            check();
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("External change check failed: {}", e.getMessage());
+        }
+    }
+
+    private static long queryDataVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA data_version")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+        connection = null;
+    }
+}
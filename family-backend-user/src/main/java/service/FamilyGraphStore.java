@@ -0,0 +1,568 @@
+package service;
+
+import model.Change;
+import model.IdSummary;
+import model.Member;
+import model.Relationship;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import repository.ChangeLogRepository;
+import repository.MemberRepository;
+import repository.RelationshipRepository;
+import repository.UnitOfWork;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 持有当前发布的 FamilyGraph 快照（写时复制）。
+ * 读取方无锁地拿到一个不可变快照并在整个请求内使用；写入方串行执行，
+ * 每次变更把 GraphDelta 应用到当前快照并以更大的版本号原子发布，旧快照仍可被正在进行的读取使用。
+ * 启动单写线程后，所有变更经队列交给写线程按组提交，进程内只有这一个线程写库。
+ */
+public class FamilyGraphStore {
+    private static final Logger logger = LogManager.getLogger(FamilyGraphStore.class);
+    /** 待同步的变更超过该条数时，全表对账比逐条读取更省 */
+    private static final int MAX_LOGGED_CHANGES = 10000;
+
+    private final MemberRepository memberRepository;
+    private final RelationshipRepository relationshipRepository;
+    private final ChangeLogRepository changeLogRepository;
+    private final AtomicReference<FamilyGraph> published = new AtomicReference<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final DataVersion dataVersion = new DataVersion();
+    private long lastVersion;
+    /** 当前快照已反映到的变更日志序号，-1 表示未知 */
+    private long changeSeq = -1;
+    private volatile long lastLoadMillis;
+    private volatile long lastApplyMicros;
+    private volatile BlockingQueue<PendingWrite<?>> writeQueue;
+    private int maxGroupSize;
+    private volatile long groupCount;
+    private volatile long groupedWriteCount;
+    private volatile int largestGroup;
+
+    public FamilyGraphStore(MemberRepository memberRepository, RelationshipRepository relationshipRepository) {
+        this(memberRepository, relationshipRepository, null);
+    }
+
+    /** changeLogRepository 不为 null 时，refresh() 只读取变更日志中的新变更，而不是全表对账 */
+    public FamilyGraphStore(MemberRepository memberRepository, RelationshipRepository relationshipRepository,
+                            ChangeLogRepository changeLogRepository) {
+        this.memberRepository = memberRepository;
+        this.relationshipRepository = relationshipRepository;
+        this.changeLogRepository = changeLogRepository;
+    }
+
+    /** 当前快照；仅在尚未加载（或上次重建失败）时加锁加载一次 */
+    public FamilyGraph current() throws SQLException {
+        FamilyGraph graph = published.get();
+        return graph != null ? graph : initialize();
+    }
+
+    /** 当前已发布快照的版本号，尚未加载时为 0 */
+    public long version() {
+        FamilyGraph graph = published.get();
+        return graph != null ? graph.version() : 0;
+    }
+
+    /** 每次写入后递增的数据版本，不依赖快照是否已加载 */
+    public DataVersion getDataVersion() {
+        return dataVersion;
+    }
+
+    public long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    public long getLastApplyMicros() {
+        return lastApplyMicros;
+    }
+
+    /** 当前已发布的快照，不触发加载 */
+    public FamilyGraph peek() {
+        return published.get();
+    }
+
+    /** 单写线程的运行指标，未启动时为 null */
+    public WriterStats getWriterStats() {
+        BlockingQueue<PendingWrite<?>> queue = writeQueue;
+        if (queue == null) {
+            return null;
+        }
+        return new WriterStats(maxGroupSize, queue.size(), queue.remainingCapacity() + queue.size(),
+                groupCount, groupedWriteCount, largestGroup);
+    }
+
+    /**
+     * 启动单写线程（组提交）：此后 write() 把变更放入容量为 queueCapacity 的队列（队满时阻塞调用方）并等待结果。
+     * 写线程每次取出最多 maxGroupSize 个排队的变更，在同一个工作单元内逐个执行，每个变更各占一个保存点，
+     * 失败只回滚它自己；整组只提交一次、发布一次快照，提交后再让各调用方返回。只能启动一次。
+     */
+    public synchronized void startWriter(int maxGroupSize, int queueCapacity) {
+        if (writeQueue != null) {
+            throw new IllegalStateException("Graph writer already started");
+        }
+        if (maxGroupSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Writer group size and queue capacity must be positive");
+        }
+        this.maxGroupSize = maxGroupSize;
+        BlockingQueue<PendingWrite<?>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Thread writer = new Thread(() -> drain(queue), "graph-writer");
+        writer.setDaemon(true);
+        writer.start();
+        writeQueue = queue;
+        logger.info("Graph writer started (group size {}, queue {})", maxGroupSize, queueCapacity);
+    }
+
+    /**
+     * 执行一次数据变更：变更中的全部语句共用一个事务；抛出异常时整体回滚且不发布，异常原样抛给调用方。
+     * 提交后把增量应用到当前快照并发布，返回前数据版本已递增。
+     * 变更只需登记成员的增删改，新插入的关系行由本类按 RelationID 高水位补齐。
+     * 启动了单写线程时交给写线程与其他排队的变更一起提交；未启动或已在工作单元中（嵌套调用）时在本线程执行。
+     */
+    public <T> T write(Mutation<T> mutation) throws SQLException {
+        BlockingQueue<PendingWrite<?>> queue = writeQueue;
+        if (queue == null || UnitOfWork.current() != null) {
+            return writeInline(mutation);
+        }
+        PendingWrite<T> pending = new PendingWrite<>(mutation);
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while queueing a write", e);
+        }
+        return pending.await();
+    }
+
+    /**
+     * 在写锁内以一个工作单元执行变更，只提交一次；嵌套在外层工作单元中时随外层提交一起发布。
+     * 无论成败都递增数据版本，宁可让缓存多失效一次。
+     */
+    private <T> T writeInline(Mutation<T> mutation) throws SQLException {
+        writeLock.lock();
+        try {
+            return UnitOfWork.run(() -> {
+                GraphDelta delta = new GraphDelta();
+                T result = mutation.apply(delta);
+                UnitOfWork.afterCommit(() -> publish(delta));
+                return result;
+            });
+        } finally {
+            dataVersion.increment();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 与数据库对账，在其他进程写入后调用。有变更日志时只读取快照之后的日志条目及其涉及的行，代价与变更数成正比；
+     * 没有日志、日志序号倒退（数据库被替换）或变更过多时，读取全部成员与关系行与当前快照比较。
+     * 差异作为增量应用并发布，无法逐条应用时全量重建。尚无读取方加载过快照时不读库。
+     * 无论有无差异都递增数据版本，返回是否发布了新快照。
+     */
+    public boolean refresh() throws SQLException {
+        writeLock.lock();
+        try {
+            FamilyGraph graph = published.get();
+            if (graph == null) {
+                return false;
+            }
+            long start = System.nanoTime();
+            long seq = readChangeSeq();
+            GraphDelta delta = changeSeq >= 0 && seq >= changeSeq ? deltaFromChangeLog(graph, changeSeq, seq) : null;
+            List<Member> members = null;
+            List<Relationship> relationships = null;
+            if (delta == null) {
+                members = memberRepository.getAllMembers();
+                relationships = relationshipRepository.getAllRelationships();
+                delta = graph.diff(members, relationships);
+            }
+            if (delta.isEmpty()) {
+                changeSeq = seq;
+                return false;
+            }
+            FamilyGraph next = delta.isFullReload() ? null : graph.apply(delta, lastVersion + 1);
+            if (next == null) {
+                next = members != null ? FamilyGraph.build(members, relationships, lastVersion + 1) : loadNextVersion();
+            }
+            lastVersion = next.version();
+            changeSeq = seq;
+            published.set(next);
+            logger.info("Family graph v{} refreshed from {} in {} ms: {}", next.version(),
+                    members == null ? "change log" : "full table scan", (System.nanoTime() - start) / 1_000_000, delta);
+            return true;
+        } finally {
+            dataVersion.increment();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 由 (fromSeq, toSeq] 内的日志构造增量：成员按最后一次操作读取当前行或删除；关系行只增删不改，
+     * 删除按 RelationID 移除，新增行按高水位补齐，快照中已有的行（本进程写入的）跳过。
+     * 变更过多返回 null；遇到整库重建标记、关系行被修改或以低于高水位的新 ID 插入时要求全量重建。
+     */
+    private GraphDelta deltaFromChangeLog(FamilyGraph graph, long fromSeq, long toSeq) throws SQLException {
+        List<Change> changes = changeLogRepository.getChanges(fromSeq, toSeq, MAX_LOGGED_CHANGES + 1);
+        if (changes.size() > MAX_LOGGED_CHANGES) {
+            return null;
+        }
+        GraphDelta delta = new GraphDelta();
+        Map<Integer, Integer> memberOps = new HashMap<>();
+        for (Change change : changes) {
+            if (change.getEntity() == Change.ENTITY_REBUILD) {
+                delta.requireFullReload();
+                return delta;
+            } else if (change.getEntity() == Change.ENTITY_MEMBER) {
+                memberOps.put(change.getEntityID(), change.getOp());
+            } else if (change.getOp() == Change.OP_DELETE) {
+                delta.removeEdge(change.getEntityID());
+            } else if (change.getOp() == Change.OP_UPDATE
+                    || (change.getEntityID() <= graph.maxRelationId() && graph.findEdgeSlot(change.getEntityID()) < 0)) {
+                delta.requireFullReload();
+                return delta;
+            }
+        }
+        List<Integer> live = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : memberOps.entrySet()) {
+            if (entry.getValue() == Change.OP_DELETE) {
+                delta.removeMember(entry.getKey());
+            } else {
+                live.add(entry.getKey());
+            }
+        }
+        Map<Integer, Member> members = memberRepository.findMembersByIds(live);
+        for (int memberId : live) {
+            Member member = members.get(memberId);
+            if (member != null) {
+                delta.upsertMember(member);
+            } else {
+                delta.removeMember(memberId);
+            }
+        }
+        delta.addEdges(relationshipRepository.getRelationshipsAfter(graph.maxRelationId()));
+        return delta;
+    }
+
+    /** 变更日志的最新序号；没有日志（未配置或表不存在）时为 -1 */
+    private long readChangeSeq() {
+        if (changeLogRepository == null) {
+            return -1;
+        }
+        try {
+            return changeLogRepository.getLatestSeq();
+        } catch (SQLException e) {
+            logger.warn("Change log unavailable, falling back to full table scans: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    /** 最近一次整库重建的变更日志序号；没有日志时为 -1 */
+    private long readRebuildSeq() {
+        if (changeLogRepository == null) {
+            return -1;
+        }
+        try {
+            return changeLogRepository.getRebuildSeq();
+        } catch (SQLException e) {
+            logger.warn("Change log unavailable: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    /** 写线程主循环：阻塞等待第一个变更，再顺带取走已排队的变更凑成一组 */
+    private void drain(BlockingQueue<PendingWrite<?>> queue) {
+        List<PendingWrite<?>> group = new ArrayList<>(maxGroupSize);
+        while (true) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                // 排队的调用方仍在等待结果，写线程不因中断退出
+                continue;
+            }
+            queue.drainTo(group, maxGroupSize - 1);
+            commitGroup(group);
+            group.clear();
+        }
+    }
+
+    private void commitGroup(List<PendingWrite<?>> group) {
+        Throwable groupFailure = null;
+        writeLock.lock();
+        try {
+            UnitOfWork.run(() -> {
+                UnitOfWork unit = UnitOfWork.current();
+                GraphDelta delta = new GraphDelta();
+                for (PendingWrite<?> pending : group) {
+                    pending.execute(unit, delta);
+                }
+                UnitOfWork.afterCommit(() -> publishLocked(delta));
+                return null;
+            });
+        } catch (Throwable e) {
+            // 提交失败时整组回滚，每个调用方都收到同一个异常
+            groupFailure = e;
+            logger.error("Group commit of {} writes failed: {}", group.size(), e.getMessage());
+        } finally {
+            dataVersion.increment();
+            writeLock.unlock();
+        }
+        groupCount++;
+        groupedWriteCount += group.size();
+        largestGroup = Math.max(largestGroup, group.size());
+        for (PendingWrite<?> pending : group) {
+            pending.complete(groupFailure);
+        }
+    }
+
+    /**
+     * 用快照文件恢复关系图，代替启动时从 SQLite 逐行重建。快照与数据库的整库重建序号相同、变更日志序号不大于数据库当前序号时，
+     * 发布快照并按变更日志追上之后的写入，再用两张表主键的行数、最大值与总和核对；任一条件不满足（快照来自另一份数据、
+     * 数据库被替换或回退）、没有变更日志或已加载过时不使用快照，返回 false，由首次读取从 SQLite 重建。
+     */
+    public boolean restore(GraphSnapshot snapshot) throws SQLException {
+        writeLock.lock();
+        try {
+            if (published.get() != null) {
+                return false;
+            }
+            long seq = readChangeSeq();
+            long rebuildSeq = readRebuildSeq();
+            if (seq < 0 || snapshot.getChangeSeq() < 0 || snapshot.getChangeSeq() > seq
+                    || snapshot.getRebuildSeq() != rebuildSeq) {
+                logger.warn("Graph snapshot {} does not match the database (change log at {} rebuilt at {}, snapshot at {} rebuilt at {}), "
+                                + "rebuilding from SQLite", snapshot.getSeq(), seq, rebuildSeq, snapshot.getChangeSeq(),
+                        snapshot.getRebuildSeq());
+                return false;
+            }
+            FamilyGraph graph = snapshot.getGraph().withVersion(lastVersion + 1);
+            lastVersion = graph.version();
+            changeSeq = snapshot.getChangeSeq();
+            published.set(graph);
+            logger.info("Family graph v{} restored from snapshot {}: {} members, {} relationships, {} changes behind",
+                    graph.version(), snapshot.getSeq(), graph.size(), graph.relationshipCount(), seq - changeSeq);
+            String mismatch;
+            try {
+                refresh();
+                mismatch = verify(published.get());
+            } catch (SQLException | RuntimeException e) {
+                mismatch = e.getMessage();
+            }
+            if (mismatch != null) {
+                // 追不上或对不上就撤下，下次读取时从 SQLite 重建
+                published.set(null);
+                logger.warn("Graph snapshot {} cannot be trusted, rebuilding from SQLite: {}", snapshot.getSeq(), mismatch);
+                return false;
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** 关系图与数据库的成员、关系主键汇总不一致时返回差异描述，一致时返回 null */
+    private String verify(FamilyGraph graph) throws SQLException {
+        if (graph == null) {
+            return "graph was unloaded while catching up";
+        }
+        IdSummary members = memberRepository.getIdSummary();
+        IdSummary relationships = relationshipRepository.getIdSummary();
+        if (!members.equals(graph.memberIdSummary()) || !relationships.equals(graph.relationIdSummary())) {
+            return "members " + graph.memberIdSummary() + " vs " + members + ", relationships "
+                    + graph.relationIdSummary() + " vs " + relationships;
+        }
+        return null;
+    }
+
+    /**
+     * 当前快照及其已包含的变更日志序号，尚未加载时先加载。序号是下界：本进程之后的写入也已在快照中，
+     * 用它恢复时重放这部分日志不改变结果。同时记下最近一次整库重建的序号，快照早于该次重建时恢复会因重放遇到重建标记而全量重建。
+     */
+    public Checkpoint checkpoint() throws SQLException {
+        writeLock.lock();
+        try {
+            FamilyGraph graph = published.get();
+            return new Checkpoint(graph != null ? graph : initialize(), changeSeq, readRebuildSeq());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private FamilyGraph initialize() throws SQLException {
+        writeLock.lock();
+        try {
+            FamilyGraph graph = published.get();
+            if (graph == null) {
+                graph = loadNextVersion();
+                published.set(graph);
+            }
+            return graph;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** 尚无读取方加载过快照时无需处理，留给首次读取 */
+    private void publish(GraphDelta delta) {
+        writeLock.lock();
+        try {
+            publishLocked(delta);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void publishLocked(GraphDelta delta) {
+        FamilyGraph graph = published.get();
+        if (graph == null) {
+            return;
+        }
+        try {
+            if (!delta.isFullReload()) {
+                delta.addEdges(relationshipRepository.getRelationshipsAfter(graph.maxRelationId()));
+                if (delta.isEmpty()) {
+                    return;
+                }
+                long start = System.nanoTime();
+                FamilyGraph next = graph.apply(delta, lastVersion + 1);
+                if (next != null) {
+                    lastVersion = next.version();
+                    lastApplyMicros = (System.nanoTime() - start) / 1_000;
+                    published.set(next);
+                    logger.debug("Family graph v{} published from {} in {} us", next.version(), delta, lastApplyMicros);
+                    return;
+                }
+                logger.info("Graph delta cannot be applied incrementally, rebuilding: {}", delta);
+            }
+            published.set(loadNextVersion());
+        } catch (SQLException e) {
+            // 数据已提交但快照重建失败：撤下旧快照，下次读取时重新加载
+            published.set(null);
+            logger.error("Failed to rebuild family graph, will reload on next read: {}", e.getMessage());
+        }
+    }
+
+    /** 先记下日志序号再加载：其间发生的变更会在下次 refresh 时重复应用，应用是幂等的 */
+    private FamilyGraph loadNextVersion() throws SQLException {
+        long seq = readChangeSeq();
+        long start = System.nanoTime();
+        FamilyGraph graph = FamilyGraph.load(memberRepository, relationshipRepository, lastVersion + 1);
+        lastVersion = graph.version();
+        changeSeq = seq;
+        lastLoadMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("Family graph v{} published: {} members, {} relationships in {} ms",
+                graph.version(), graph.size(), graph.relationshipCount(), lastLoadMillis);
+        return graph;
+    }
+
+    /** 在写锁内执行的数据变更 */
+    @FunctionalInterface
+    public interface Mutation<T> {
+        T apply(GraphDelta delta) throws SQLException;
+    }
+
+    /** 排队等待写线程执行的一个变更；结果在整组提交后才交给调用方 */
+    private static final class PendingWrite<T> {
+        private final Mutation<T> mutation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Exception failure;
+
+        private PendingWrite(Mutation<T> mutation) {
+            this.mutation = mutation;
+        }
+
+        /** 在保存点内执行，成功时把增量并入整组的增量，失败时只回滚本变更 */
+        private void execute(UnitOfWork unit, GraphDelta group) {
+            GraphDelta delta = new GraphDelta();
+            try {
+                result = unit.savepoint(() -> mutation.apply(delta));
+                group.merge(delta);
+            } catch (SQLException | RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        private void complete(Throwable groupFailure) {
+            if (groupFailure != null) {
+                future.completeExceptionally(groupFailure);
+            } else if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+
+        /** 等待写线程的结果；调用方线程被中断也会等到结果，因为变更可能已经提交 */
+        private T await() throws SQLException {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    throw (SQLException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new SQLException(cause);
+            }
+        }
+    }
+
+    /** 单写线程运行指标快照 */
+    public static class WriterStats {
+        private final int maxGroupSize;
+        private final int queued;
+        private final int queueCapacity;
+        private final long groupCount;
+        private final long writeCount;
+        private final int largestGroup;
+
+        public WriterStats(int maxGroupSize, int queued, int queueCapacity, long groupCount, long writeCount, int largestGroup) {
+            this.maxGroupSize = maxGroupSize;
+            this.queued = queued;
+            this.queueCapacity = queueCapacity;
+            this.groupCount = groupCount;
+            this.writeCount = writeCount;
+            this.largestGroup = largestGroup;
+        }
+
+        public int getMaxGroupSize() { return maxGroupSize; }
+        public int getQueued() { return queued; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public long getGroupCount() { return groupCount; }
+        public long getWriteCount() { return writeCount; }
+        public int getLargestGroup() { return largestGroup; }
+    }
+
+    /** 关系图快照、它已包含的变更日志序号与最近一次整库重建的序号（-1 表示没有变更日志） */
+    public static class Checkpoint {
+        private final FamilyGraph graph;
+        private final long changeSeq;
+        private final long rebuildSeq;
+
+        public Checkpoint(FamilyGraph graph, long changeSeq, long rebuildSeq) {
+            this.graph = graph;
+            this.changeSeq = changeSeq;
+            this.rebuildSeq = rebuildSeq;
+        }
+
+        public FamilyGraph getGraph() { return graph; }
+        public long getChangeSeq() { return changeSeq; }
+        public long getRebuildSeq() { return rebuildSeq; }
+    }
+}
@@ -0,0 +1,99 @@
+package service;
+
+import model.Member;
+import model.Relationship;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** 一次写入对关系图造成的变更：新增/删除的关系行与新增、修改、删除的成员 */
+public class GraphDelta {
+    private final List<Relationship> addedEdges = new ArrayList<>();
+    private final Set<Integer> removedEdges = new LinkedHashSet<>();
+    private final Map<Integer, Member> upsertedMembers = new LinkedHashMap<>();
+    private final Set<Integer> removedMembers = new LinkedHashSet<>();
+    private boolean fullReload;
+
+    /** 新增的关系行，须带 RelationID */
+    public void addEdge(Relationship relationship) {
+        addedEdges.add(relationship);
+    }
+
+    public void addEdges(Collection<Relationship> relationships) {
+        addedEdges.addAll(relationships);
+    }
+
+    public void removeEdge(int relationId) {
+        removedEdges.add(relationId);
+    }
+
+    /** 新增或修改的成员，以最终状态为准 */
+    public void upsertMember(Member member) {
+        if (member == null) {
+            return;
+        }
+        removedMembers.remove(member.getMemberID());
+        upsertedMembers.put(member.getMemberID(), member);
+    }
+
+    public void removeMember(int memberId) {
+        upsertedMembers.remove(memberId);
+        removedMembers.add(memberId);
+    }
+
+    /** 把之后发生的另一次变更并入本增量，同一成员以较晚的变更为准 */
+    public void merge(GraphDelta later) {
+        addedEdges.addAll(later.addedEdges);
+        removedEdges.addAll(later.removedEdges);
+        for (Member member : later.upsertedMembers.values()) {
+            upsertMember(member);
+        }
+        for (int memberId : later.removedMembers) {
+            removeMember(memberId);
+        }
+        fullReload |= later.fullReload;
+    }
+
+    /** 变更无法逐条描述（如批量清理）时，要求全量重建关系图 */
+    public void requireFullReload() {
+        fullReload = true;
+    }
+
+    public boolean isFullReload() {
+        return fullReload;
+    }
+
+    public boolean isEmpty() {
+        return !fullReload && addedEdges.isEmpty() && removedEdges.isEmpty()
+                && upsertedMembers.isEmpty() && removedMembers.isEmpty();
+    }
+
+    public List<Relationship> getAddedEdges() {
+        return Collections.unmodifiableList(addedEdges);
+    }
+
+    public Set<Integer> getRemovedEdges() {
+        return Collections.unmodifiableSet(removedEdges);
+    }
+
+    public Collection<Member> getUpsertedMembers() {
+        return Collections.unmodifiableCollection(upsertedMembers.values());
+    }
+
+    public Set<Integer> getRemovedMembers() {
+        return Collections.unmodifiableSet(removedMembers);
+    }
+
+    @Override
+    public String toString() {
+        return "GraphDelta{addedEdges=" + addedEdges.size() + ", removedEdges=" + removedEdges.size()
+                + ", upsertedMembers=" + upsertedMembers.size() + ", removedMembers=" + removedMembers.size()
+                + ", fullReload=" + fullReload + "}";
+    }
+}
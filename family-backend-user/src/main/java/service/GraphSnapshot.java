@@ -0,0 +1,391 @@
+package service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * 关系图快照文件：admin 把已发布的内存关系图写成不可变的二进制文件，只读副本加载后直接提供读取，启动时也可代替从 SQLite 逐行重建。
+ * 文件名 family-<序号>.snap，序号在快照目录内单调递增，与进程重启无关；写入临时文件后原子改名，读取方不会看到写了一半的文件。
+ * 格式（大端）：固定长度的文件头（魔数、格式版本、序号、来源关系图版本、生成时间、变更日志序号、最近一次整库重建的日志序号、各段计数、正文长度与 CRC32C），
+ * 正文依次为字符串表（偏移数组加 UTF-8 字节，姓名与备注去重后按编号引用）、成员列（MemberID 差值、姓名、备注、代数、性别，均为 varint）、
+ * 边列（RelationID 差值、两端成员下标、关系类型，均为 varint）、关联边 CSR（每个成员的偏移，以及定长的对端下标、关系类型、边号三列）。
+ * 成员含关系引用到的已删除成员，关联边已按遍历顺序排好，加载时映射文件、校验后按列解码，不再逐行查库、计数或排序。
+ */
+public final class GraphSnapshot {
+    static final String FILE_PREFIX = "family-";
+    static final String FILE_SUFFIX = ".snap";
+    /** 文件格式版本，布局变化时递增，旧版本的文件不再加载 */
+    static final int FORMAT_VERSION = 3;
+    private static final byte[] MAGIC = "FAMGRAPH".getBytes(StandardCharsets.US_ASCII);
+    /** 魔数 8、格式版本 4、序号/来源版本/生成时间/变更序号/重建序号各 8、成员/边/字符串/关联边计数各 4、正文长度 8、校验和 4 */
+    static final int HEADER_BYTES = 8 + 4 + 8 * 5 + 4 * 4 + 8 + 4;
+
+    private final long seq;
+    private final long sourceVersion;
+    private final long createdAtMillis;
+    private final long changeSeq;
+    private final long rebuildSeq;
+    private final FamilyGraph graph;
+
+    private GraphSnapshot(long seq, long sourceVersion, long createdAtMillis, long changeSeq, long rebuildSeq,
+                          FamilyGraph graph) {
+        this.seq = seq;
+        this.sourceVersion = sourceVersion;
+        this.createdAtMillis = createdAtMillis;
+        this.changeSeq = changeSeq;
+        this.rebuildSeq = rebuildSeq;
+        this.graph = graph;
+    }
+
+    /** 快照序号 */
+    public long getSeq() { return seq; }
+    /** 生成快照时 admin 内存关系图的版本 */
+    public long getSourceVersion() { return sourceVersion; }
+    public long getCreatedAtMillis() { return createdAtMillis; }
+    /** 快照至少已包含的变更日志序号，-1 表示来源没有变更日志 */
+    public long getChangeSeq() { return changeSeq; }
+    /** 生成快照时数据库最近一次整库重建的日志序号，用来识别快照是否来自同一份数据，-1 表示来源没有变更日志 */
+    public long getRebuildSeq() { return rebuildSeq; }
+    /** 由快照重建的关系图，版本号即快照序号 */
+    public FamilyGraph getGraph() { return graph; }
+
+    public static void write(FamilyGraph graph, long seq, long changeSeq, long rebuildSeq, OutputStream out) throws IOException {
+        int n = graph.size();
+        // 字符串表：姓名与备注去重，引用 0 表示 null
+        Map<String, Integer> stringRefs = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[] nameRefs = new int[n];
+        int[] remarkRefs = new int[n];
+        for (int idx = 0; idx < n; idx++) {
+            nameRefs[idx] = stringRef(graph.name(idx), stringRefs, strings);
+            remarkRefs[idx] = stringRef(graph.remark(idx), stringRefs, strings);
+        }
+        // 已删除的边槽位不写出，关联边中的边号改为写出后的编号
+        int[] edgeNumbers = new int[graph.edgeSlotCount()];
+        int edges = 0;
+        for (int e = 0; e < graph.edgeSlotCount(); e++) {
+            edgeNumbers[e] = graph.isEdgeLive(e) ? edges++ : -1;
+        }
+        int adjCount = 0;
+        for (int idx = 0; idx < n; idx++) {
+            adjCount += graph.adjDegree(idx);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream body = new DataOutputStream(bytes);
+        int offset = 0;
+        body.writeInt(offset);
+        for (byte[] string : strings) {
+            offset += string.length;
+            body.writeInt(offset);
+        }
+        for (byte[] string : strings) {
+            body.write(string);
+        }
+        int previousId = 0;
+        for (int idx = 0; idx < n; idx++) {
+            writeVarint(body, graph.memberId(idx) - previousId);
+            previousId = graph.memberId(idx);
+        }
+        for (int idx = 0; idx < n; idx++) writeVarint(body, nameRefs[idx]);
+        for (int idx = 0; idx < n; idx++) writeVarint(body, remarkRefs[idx]);
+        for (int idx = 0; idx < n; idx++) writeVarint(body, zigzag(graph.generation(idx)));
+        for (int idx = 0; idx < n; idx++) writeVarint(body, graph.gender(idx) - FamilyGraph.MISSING);
+        int previousRelationId = 0;
+        for (int e = 0; e < graph.edgeSlotCount(); e++) {
+            if (!graph.isEdgeLive(e)) continue;
+            writeVarint(body, graph.edgeRelationId(e) - previousRelationId);
+            previousRelationId = graph.edgeRelationId(e);
+        }
+        for (int e = 0; e < graph.edgeSlotCount(); e++) {
+            if (graph.isEdgeLive(e)) writeVarint(body, graph.edgeSource(e));
+        }
+        for (int e = 0; e < graph.edgeSlotCount(); e++) {
+            if (graph.isEdgeLive(e)) writeVarint(body, graph.edgeTarget(e));
+        }
+        for (int e = 0; e < graph.edgeSlotCount(); e++) {
+            if (graph.isEdgeLive(e)) writeVarint(body, graph.edgeRelation(e));
+        }
+        int adjOffset = 0;
+        body.writeInt(adjOffset);
+        for (int idx = 0; idx < n; idx++) {
+            adjOffset += graph.adjDegree(idx);
+            body.writeInt(adjOffset);
+        }
+        for (int idx = 0; idx < n; idx++) {
+            for (int i = 0; i < graph.adjDegree(idx); i++) body.writeInt(graph.adjTarget(idx, i));
+        }
+        for (int idx = 0; idx < n; idx++) {
+            for (int i = 0; i < graph.adjDegree(idx); i++) body.writeByte(graph.adjRelation(idx, i));
+        }
+        for (int idx = 0; idx < n; idx++) {
+            for (int i = 0; i < graph.adjDegree(idx); i++) body.writeInt(edgeNumbers[graph.adjEdge(idx, i)]);
+        }
+        body.flush();
+
+        byte[] payload = bytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.put(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putLong(seq);
+        header.putLong(graph.version());
+        header.putLong(System.currentTimeMillis());
+        header.putLong(changeSeq);
+        header.putLong(rebuildSeq);
+        header.putInt(n);
+        header.putInt(edges);
+        header.putInt(strings.size());
+        header.putInt(adjCount);
+        header.putLong(payload.length);
+        header.putInt((int) crc.getValue());
+        out.write(header.array());
+        out.write(payload);
+        out.flush();
+    }
+
+    /** 只读映射快照文件并加载 */
+    public static GraphSnapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** 校验文件头与校验和后按列解码；魔数或格式版本不符、长度异常、校验和不一致时抛出 IOException */
+    public static GraphSnapshot read(ByteBuffer source) throws IOException {
+        ByteBuffer buffer = source.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES) {
+            throw new IOException("Truncated snapshot header");
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a family graph snapshot");
+        }
+        int format = buffer.getInt();
+        if (format != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot format " + format + ", expected " + FORMAT_VERSION);
+        }
+        long seq = buffer.getLong();
+        long sourceVersion = buffer.getLong();
+        long createdAtMillis = buffer.getLong();
+        long changeSeq = buffer.getLong();
+        long rebuildSeq = buffer.getLong();
+        int n = buffer.getInt();
+        int edges = buffer.getInt();
+        int stringCount = buffer.getInt();
+        int adjCount = buffer.getInt();
+        long bodyLength = buffer.getLong();
+        int checksum = buffer.getInt();
+        if (bodyLength != buffer.remaining()) {
+            throw new IOException("Snapshot body is " + buffer.remaining() + " bytes, header says " + bodyLength);
+        }
+        // 每个成员、边与字符串至少占正文 1 字节，关联边至少 9 字节，计数不可能超过正文长度
+        if (n < 0 || edges < 0 || stringCount < 0 || adjCount < 0
+                || (long) n + edges + stringCount + adjCount * 9L > bodyLength) {
+            throw new IOException("Corrupt snapshot: invalid section counts");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+        try {
+            FamilyGraph graph = decode(buffer, seq, n, edges, stringCount, adjCount);
+            return new GraphSnapshot(seq, sourceVersion, createdAtMillis, changeSeq, rebuildSeq, graph);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt snapshot: " + e, e);
+        }
+    }
+
+    private static FamilyGraph decode(ByteBuffer buffer, long seq, int n, int edges, int stringCount, int adjCount)
+            throws IOException {
+        int[] stringOffsets = readInts(buffer, stringCount + 1);
+        if (stringOffsets[0] != 0 || stringOffsets[stringCount] < 0 || stringOffsets[stringCount] > buffer.remaining()) {
+            throw new IOException("Corrupt snapshot: string table");
+        }
+        byte[] stringBytes = new byte[stringOffsets[stringCount]];
+        buffer.get(stringBytes);
+        String[] strings = new String[stringCount + 1];
+        for (int i = 0; i < stringCount; i++) {
+            strings[i + 1] = new String(stringBytes, stringOffsets[i], stringOffsets[i + 1] - stringOffsets[i], StandardCharsets.UTF_8);
+        }
+
+        int[] memberIds = new int[n];
+        int previousId = 0;
+        for (int idx = 0; idx < n; idx++) {
+            int delta = readVarint(buffer);
+            if (delta <= 0 && idx > 0) {
+                throw new IOException("Corrupt snapshot: member ids not ascending");
+            }
+            memberIds[idx] = previousId += delta;
+        }
+        String[] names = new String[n];
+        String[] remarks = new String[n];
+        int[] generations = new int[n];
+        byte[] genders = new byte[n];
+        for (int idx = 0; idx < n; idx++) names[idx] = strings[readVarint(buffer)];
+        for (int idx = 0; idx < n; idx++) remarks[idx] = strings[readVarint(buffer)];
+        for (int idx = 0; idx < n; idx++) generations[idx] = unzigzag(readVarint(buffer));
+        for (int idx = 0; idx < n; idx++) genders[idx] = (byte) (readVarint(buffer) + FamilyGraph.MISSING);
+
+        int[] relationIds = new int[edges];
+        int previousRelationId = 0;
+        for (int e = 0; e < edges; e++) {
+            int delta = readVarint(buffer);
+            if (delta <= 0) {
+                throw new IOException("Corrupt snapshot: relation ids not ascending");
+            }
+            relationIds[e] = previousRelationId += delta;
+        }
+        int[] sources = readIndexes(buffer, edges, n);
+        int[] targets = readIndexes(buffer, edges, n);
+        byte[] relations = new byte[edges];
+        for (int e = 0; e < edges; e++) relations[e] = (byte) readVarint(buffer);
+
+        int[] adjOffsets = readInts(buffer, n + 1);
+        if (adjOffsets[0] != 0 || adjOffsets[n] != adjCount) {
+            throw new IOException("Corrupt snapshot: adjacency offsets");
+        }
+        for (int idx = 0; idx < n; idx++) {
+            if (adjOffsets[idx + 1] < adjOffsets[idx]) {
+                throw new IOException("Corrupt snapshot: adjacency offsets");
+            }
+        }
+        int[] adjTargets = readInts(buffer, adjCount);
+        byte[] adjRelations = new byte[adjCount];
+        buffer.get(adjRelations);
+        int[] adjEdges = readInts(buffer, adjCount);
+        for (int i = 0; i < adjCount; i++) {
+            if (adjTargets[i] < 0 || adjTargets[i] >= n || adjEdges[i] < 0 || adjEdges[i] >= edges) {
+                throw new IOException("Corrupt snapshot: adjacency entry out of range");
+            }
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Unexpected data after snapshot end");
+        }
+        return FamilyGraph.fromColumns(seq, memberIds, names, remarks, generations, genders,
+                relationIds, sources, targets, relations, adjOffsets, adjTargets, adjRelations, adjEdges);
+    }
+
+    static String fileName(long seq) {
+        return String.format("%s%012d%s", FILE_PREFIX, seq, FILE_SUFFIX);
+    }
+
+    /** 文件名中的快照序号，不是快照文件时返回 -1 */
+    static long seqOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** 目录中按序号升序排列的快照文件 */
+    static List<Path> listFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : stream) {
+                if (seqOf(file) >= 0) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort((a, b) -> Long.compare(seqOf(a), seqOf(b)));
+        return files;
+    }
+
+    /** 目录中序号最大的快照，目录不存在或没有快照时返回 null */
+    public static Path latestFile(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        List<Path> files = listFiles(directory);
+        return files.isEmpty() ? null : files.get(files.size() - 1);
+    }
+
+    private static int stringRef(String value, Map<String, Integer> refs, List<byte[]> strings) {
+        if (value == null) {
+            return 0;
+        }
+        Integer ref = refs.get(value);
+        if (ref == null) {
+            strings.add(value.getBytes(StandardCharsets.UTF_8));
+            ref = strings.size();
+            refs.put(value, ref);
+        }
+        return ref;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static int[] readIndexes(ByteBuffer buffer, int count, int bound) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readVarint(buffer);
+            if (values[i] >= bound) {
+                throw new IOException("Corrupt snapshot: member index out of range");
+            }
+        }
+        return values;
+    }
+
+    /** 无符号 LEB128：每字节 7 位，最高位表示后面还有字节 */
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new IOException("Corrupt snapshot: varint out of range");
+                }
+                return value;
+            }
+        }
+        throw new IOException("Corrupt snapshot: varint too long");
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
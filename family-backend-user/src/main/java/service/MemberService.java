@@ -3,23 +3,39 @@ package service;
 
 import model.Member;
 import repository.MemberRepository;
+import repository.RelationshipRepository;
+import repository.RowHandler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class MemberService {
     private static final Logger logger = LogManager.getLogger(MemberService.class);
     private MemberRepository memberRepository;
+    private FamilyGraphStore graphStore;
 
     public MemberService(MemberRepository memberRepository) {
+        this(memberRepository, new FamilyGraphStore(memberRepository, new RelationshipRepository(memberRepository)));
+    }
+
+    /** 成员变更经由 graphStore 串行写入并发布新的关系图快照 */
+    public MemberService(MemberRepository memberRepository, FamilyGraphStore graphStore) {
         this.memberRepository = memberRepository;
+        this.graphStore = graphStore;
     }
 
     public Member addMember(String name, int generation, int gender) {
         try {
-            Member member = memberRepository.addMember(name, generation, gender);
+            Member member = graphStore.write(delta -> {
+                Member added = memberRepository.addMember(name, generation, gender);
+                delta.upsertMember(added);
+                return added;
+            });
             logger.info("Member added: {}", member);
             return member;
         } catch (SQLException e) {
@@ -30,7 +46,11 @@ public class MemberService {
 
     public Member addMember(String name, int generation, int gender, String remark) {
         try {
-            Member member = memberRepository.addMember(name, generation, gender, remark);
+            Member member = graphStore.write(delta -> {
+                Member added = memberRepository.addMember(name, generation, gender, remark);
+                delta.upsertMember(added);
+                return added;
+            });
             logger.info("Member added: {}", member);
             return member;
         } catch (SQLException e) {
@@ -39,6 +59,27 @@ public class MemberService {
         }
     }
 
+    /** 在同一事务内依次添加多个成员（忽略 drafts 中的 ID），返回带新 ID 的成员；任一失败时全部回滚 */
+    public List<Member> addMembers(List<Member> drafts) {
+        try {
+            long start = System.nanoTime();
+            List<Member> members = graphStore.write(delta -> {
+                List<Member> added = new ArrayList<>(drafts.size());
+                for (Member draft : drafts) {
+                    Member member = memberRepository.addMember(draft.getName(), draft.getGeneration(), draft.getGender(), draft.getRemark());
+                    delta.upsertMember(member);
+                    added.add(member);
+                }
+                return added;
+            });
+            logger.info("Member batch of {} added in {} ms", members.size(), (System.nanoTime() - start) / 1_000_000);
+            return members;
+        } catch (SQLException e) {
+            logger.error("Error adding members: {}", e.getMessage());
+            throw new RuntimeException("Error adding members", e);
+        }
+    }
+
     public Member findMemberById(int memberId) {
         try {
             Member member = memberRepository.findMemberById(memberId);
@@ -80,14 +121,31 @@ public class MemberService {
         }
     }
 
+    /** 逐个处理全部成员，供流式输出使用；出错时由调用方处理 */
+    public void forEachMember(RowHandler<Member> handler) throws SQLException, IOException {
+        memberRepository.forEachMember(handler);
+    }
+
+    /** 按 MemberID 键集分页，只查询 columns 中的列 */
+    public void forEachMemberPage(int afterID, int limit, Set<String> columns, RowHandler<Member> handler)
+            throws SQLException, IOException {
+        memberRepository.forEachMemberPage(afterID, limit, columns, handler);
+    }
+
     public Member updateMember(int memberId, String name, int gender, String remark) {
         try {
-            boolean updated = memberRepository.updateMember(memberId, name, gender, remark);
-            if (!updated) {
+            Member member = graphStore.write(delta -> {
+                if (!memberRepository.updateMember(memberId, name, gender, remark)) {
+                    return null;
+                }
+                Member updated = memberRepository.findMemberById(memberId);
+                delta.upsertMember(updated);
+                return updated;
+            });
+            if (member == null) {
                 logger.warn("Member not found for update with ID: {}", memberId);
                 return null;
             }
-            Member member = memberRepository.findMemberById(memberId);
             logger.info("Member updated: {}", member);
             return member;
         } catch (SQLException e) {
@@ -98,7 +156,13 @@ public class MemberService {
 
     public boolean deleteMember(int memberId) {
         try {
-            boolean deleted = memberRepository.deleteMember(memberId);
+            boolean deleted = graphStore.write(delta -> {
+                boolean removed = memberRepository.deleteMember(memberId);
+                if (removed) {
+                    delta.removeMember(memberId);
+                }
+                return removed;
+            });
             if (deleted) {
                 logger.info("Member deleted with ID: {}", memberId);
             } else {
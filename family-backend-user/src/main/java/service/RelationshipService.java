@@ -4,30 +4,45 @@ import model.Member;
 import model.Relationship;
 import repository.MemberRepository;
 import repository.RelationshipRepository;
+import repository.RowHandler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.sql.SQLException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 public class RelationshipService {
     private static final Logger logger = LogManager.getLogger(RelationshipService.class);
     private RelationshipRepository relationshipRepository;
     private MemberRepository memberRepository;
+    private FamilyGraphStore graphStore;
     private FamilyRelationshipCalculator familyRelationshipCalculator;
 
     public RelationshipService(RelationshipRepository relationshipRepository, MemberRepository memberRepository) {
+        this(relationshipRepository, memberRepository, new FamilyGraphStore(memberRepository, relationshipRepository));
+    }
+
+    public RelationshipService(RelationshipRepository relationshipRepository, MemberRepository memberRepository, FamilyGraphStore graphStore) {
+        this(relationshipRepository, memberRepository, graphStore, null);
+    }
+
+    /** kinshipExecutor 为批量远亲查询使用的有界线程池，为 null 时在请求线程上计算 */
+    public RelationshipService(RelationshipRepository relationshipRepository, MemberRepository memberRepository, FamilyGraphStore graphStore,
+                               ExecutorService kinshipExecutor) {
         this.relationshipRepository = relationshipRepository;
         this.memberRepository = memberRepository;
-        this.familyRelationshipCalculator = new FamilyRelationshipCalculator(memberRepository, relationshipRepository);
+        this.graphStore = graphStore;
+        this.familyRelationshipCalculator = new FamilyRelationshipCalculator(graphStore, kinshipExecutor);
     }
 
     public boolean addRelationship(int member1ID, int member2ID, int relationType) {
@@ -45,11 +60,16 @@ public class RelationshipService {
                 return false;
             }
 
-            boolean success = relationshipRepository.addRelationship(member1ID, member2ID, relationType);
+            // 主关系与推导关系在同一个工作单元内写入、一次提交，任何一步失败都整体回滚；提交后新插入的行作为增量发布到关系图
+            boolean success = graphStore.write(delta -> {
+                boolean added = relationshipRepository.addRelationship(member1ID, member2ID, relationType);
+                if (added) {
+                    addRecursiveRelationships(member1, member2, relationType);
+                }
+                return added;
+            });
             if (success) {
                 logger.info("Relationship added successfully. Member1ID: {}, Member2ID: {}, RelationType: {}", member1ID, member2ID, relationType);
-                addRecursiveRelationships(member1, member2, relationType);
-                removeDuplicateRelationships();
             } else {
                 logger.error("Failed to add relationship. Member1ID: {}, Member2ID: {}, RelationType: {}", member1ID, member2ID, relationType);
             }
@@ -60,6 +80,54 @@ public class RelationshipService {
         }
     }
 
+    /**
+     * 批量添加关系，items 每项为 {member1ID, member2ID, relationType}。先一次查出涉及的成员并校验全部条目，
+     * 返回与 items 等长的错误列表，有效条目为 null；存在任何错误时不写入。
+     * 全部有效时在同一事务内依次添加并推导，后面的条目能看到前面条目推导出的行，结果与逐条调用 addRelationship 相同。
+     */
+    public List<String> addRelationships(List<int[]> items) throws SQLException {
+        long start = System.nanoTime();
+        List<String> errors = graphStore.write(delta -> {
+            Set<Integer> memberIDs = new HashSet<>();
+            for (int[] item : items) {
+                memberIDs.add(item[0]);
+                memberIDs.add(item[1]);
+            }
+            Map<Integer, Member> members = memberRepository.findMembersByIds(memberIDs);
+            List<String> itemErrors = new ArrayList<>(items.size());
+            boolean valid = true;
+            for (int[] item : items) {
+                Member member1 = members.get(item[0]);
+                Member member2 = members.get(item[1]);
+                String error = null;
+                if (member1 == null || member2 == null) {
+                    error = "Member not found";
+                } else if (!validateRelationship(member1, member2, item[2])) {
+                    error = "Invalid relationship";
+                }
+                itemErrors.add(error);
+                valid &= error == null;
+            }
+            if (!valid) {
+                return itemErrors;
+            }
+            for (int[] item : items) {
+                Member member1 = members.get(item[0]);
+                Member member2 = members.get(item[1]);
+                if (relationshipRepository.addRelationship(item[0], item[1], item[2])) {
+                    addRecursiveRelationships(member1, member2, item[2]);
+                }
+            }
+            return itemErrors;
+        });
+        if (errors.stream().allMatch(Objects::isNull)) {
+            logger.info("Relationship batch of {} added in {} ms", items.size(), (System.nanoTime() - start) / 1_000_000);
+        } else {
+            logger.warn("Relationship batch of {} rejected: invalid items", items.size());
+        }
+        return errors;
+    }
+
     private boolean validateRelationship(Member member1, Member member2, int relationType) {
         switch (relationType) {
             case 1: // 丈夫
@@ -85,64 +153,58 @@ public class RelationshipService {
         }
     }
 
-    private void addRecursiveRelationships(Member member1, Member member2, int relationType) {
-        try {
-            int memberID1 = member1.getMemberID();
-            int memberID2 = member2.getMemberID();
-            int memberID0 = -1;
-            Member member0;
-            switch (relationType) {
-                case 1: // 丈夫
-                    relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 2);
-                    addParentInLawRelationships(memberID1, memberID2);
-                    break;
-                case 2: // 妻子
-                    relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 1);
-                    addParentInLawRelationships(memberID1, memberID2);
-                    break;
-                case 5: // 长子
-                case 6: // 次子
-                case 7: // 小子
-                case 8: // 长女
-                case 9: // 次女
-                case 10: // 小女
-                    if (member1.getGender() == 0) {
-                        memberID0 = relationshipRepository.getMember2ByMember1AndRelation(memberID1, 2);
-                        member0 = memberRepository.findMemberById(memberID0);
-                    } else {
-                        memberID0 = relationshipRepository.getMember2ByMember1AndRelation(memberID1, 1);
-                        member0 = memberRepository.findMemberById(memberID0);
-                    }
-                    addParentRelationships(member1, member2, relationType);
-                    addSiblingRelationships(member1, member2);
-                    addGrandparentRelationships(member1, member2);
-                    if (member0 != null) {
-                        addGrandparentRelationships(member0, member2);
-                    }
-                    break;
-                case 15: // 表哥
-                    relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 17);
-                    break;
-                case 16: // 表姐
-                    relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 18);
-                    break;
-                case 17: // 表弟
-                    relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 15);
-                    break;
-                case 18: // 表妹
-                    relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 16);
-                    break;
-            }
-        } catch (SQLException e) {
-            logger.error("Error adding recursive relationships: {}", e.getMessage());
+    private void addRecursiveRelationships(Member member1, Member member2, int relationType) throws SQLException {
+        int memberID1 = member1.getMemberID();
+        int memberID2 = member2.getMemberID();
+        int memberID0 = -1;
+        Member member0;
+        switch (relationType) {
+            case 1: // 丈夫
+                relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 2);
+                addParentInLawRelationships(memberID1, memberID2);
+                break;
+            case 2: // 妻子
+                relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 1);
+                addParentInLawRelationships(memberID1, memberID2);
+                break;
+            case 5: // 长子
+            case 6: // 次子
+            case 7: // 小子
+            case 8: // 长女
+            case 9: // 次女
+            case 10: // 小女
+                if (member1.getGender() == 0) {
+                    memberID0 = relationshipRepository.getMember2ByMember1AndRelation(memberID1, 2);
+                    member0 = memberRepository.findMemberById(memberID0);
+                } else {
+                    memberID0 = relationshipRepository.getMember2ByMember1AndRelation(memberID1, 1);
+                    member0 = memberRepository.findMemberById(memberID0);
+                }
+                addParentRelationships(member1, member2, relationType);
+                addSiblingRelationships(member1, member2);
+                addGrandparentRelationships(member1, member2);
+                if (member0 != null) {
+                    addGrandparentRelationships(member0, member2);
+                }
+                break;
+            case 15: // 表哥
+                relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 17);
+                break;
+            case 16: // 表姐
+                relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 18);
+                break;
+            case 17: // 表弟
+                relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 15);
+                break;
+            case 18: // 表妹
+                relationshipRepository.addRelationship(member2.getMemberID(), member1.getMemberID(), 16);
+                break;
         }
     }
 
     private void addSiblingRelationships(Member parent, Member newChild) throws SQLException {
-        List<Relationship> parentChildRelationships = new ArrayList<>();
-        for (int i = 5; i <= 10; i++) {
-            parentChildRelationships.addAll(relationshipRepository.getRelationshipsByRelationType(i));
-        }
+        // 只查该父母名下的子女，顺序与按类型逐个扫描全表时相同
+        List<Relationship> parentChildRelationships = relationshipRepository.getChildRelationships(parent.getMemberID());
 
         for (Relationship relationship : parentChildRelationships) {
             if (relationship.getMember1() == parent.getMemberID()) {
@@ -164,36 +226,37 @@ public class RelationshipService {
         }
     }
 
+    /** 离线维护命令使用；写入路径依赖唯一索引去重，不再调用 */
     public void removeDuplicateRelationships() {
         try {
-            relationshipRepository.removeDuplicateRelationships();
+            graphStore.write(delta -> {
+                relationshipRepository.removeDuplicateRelationships();
+                delta.requireFullReload();
+                return null;
+            });
         } catch (SQLException e) {
             logger.error("Error removing duplicate relationships: {}", e.getMessage());
         }
     }
 
-    private void addGrandparentRelationships(Member parent, Member child) {
-        try {
-            boolean isPaternal = parent.getGender() == 0;
-            List<Relationship> grandparentRelationships = relationshipRepository.getRelationshipsForMember(parent.getMemberID());
-            for (Relationship relationship : grandparentRelationships) {
-                if (relationship.getRelation() == 3 || relationship.getRelation() == 4) {
-                    Member grandparent = memberRepository.findMemberById(relationship.getMember2());
-                    if (isPaternal) {
-                        relationshipRepository.addRelationship(child.getMemberID(), grandparent.getMemberID(),
-                                grandparent.getGender() == 0 ? 19 : 20);
-                        relationshipRepository.addRelationship(grandparent.getMemberID(), child.getMemberID(),
-                                child.getGender() == 0 ? 23 : 24);
-                    } else {
-                        relationshipRepository.addRelationship(child.getMemberID(), grandparent.getMemberID(),
-                                grandparent.getGender() == 0 ? 22 : 21);
-                        relationshipRepository.addRelationship(grandparent.getMemberID(), child.getMemberID(),
-                                child.getGender() == 0 ? 25 : 26);
-                    }
+    private void addGrandparentRelationships(Member parent, Member child) throws SQLException {
+        boolean isPaternal = parent.getGender() == 0;
+        List<Relationship> grandparentRelationships = relationshipRepository.getRelationshipsForMember(parent.getMemberID());
+        for (Relationship relationship : grandparentRelationships) {
+            if (relationship.getRelation() == 3 || relationship.getRelation() == 4) {
+                Member grandparent = memberRepository.findMemberById(relationship.getMember2());
+                if (isPaternal) {
+                    relationshipRepository.addRelationship(child.getMemberID(), grandparent.getMemberID(),
+                            grandparent.getGender() == 0 ? 19 : 20);
+                    relationshipRepository.addRelationship(grandparent.getMemberID(), child.getMemberID(),
+                            child.getGender() == 0 ? 23 : 24);
+                } else {
+                    relationshipRepository.addRelationship(child.getMemberID(), grandparent.getMemberID(),
+                            grandparent.getGender() == 0 ? 22 : 21);
+                    relationshipRepository.addRelationship(grandparent.getMemberID(), child.getMemberID(),
+                            child.getGender() == 0 ? 25 : 26);
                 }
             }
-        } catch (SQLException e) {
-            logger.error("Error adding grandparent relationships: {}", e.getMessage());
         }
     }
 
@@ -218,35 +281,31 @@ public class RelationshipService {
         }
     }
 
-    private void addParentInLawRelationships(int member1, int member2) {
-        try {
-            if (memberRepository.findMemberById(member1).getGender() == 1) {
-                int temp = member1;
-                member1 = member2;
-                member2 = temp;
-            }
-            int father1 = relationshipRepository.getMember2ByMember1AndRelation(member1, 3);
-            if (father1 > 0) {
-                relationshipRepository.addRelationship(member2, father1, 29);
-                relationshipRepository.addRelationship(father1, member2, 31);
-            }
-            int mother1 = relationshipRepository.getMember2ByMember1AndRelation(member1, 4);
-            if (mother1 > 0) {
-                relationshipRepository.addRelationship(member2, mother1, 30);
-                relationshipRepository.addRelationship(mother1, member2, 31);
-            }
-            int father2 = relationshipRepository.getMember2ByMember1AndRelation(member2, 3);
-            if (father2 > 0) {
-                relationshipRepository.addRelationship(member1, father2, 27);
-                relationshipRepository.addRelationship(father2, member1, 32);
-            }
-            int mother2 = relationshipRepository.getMember2ByMember1AndRelation(member2, 4);
-            if (mother2 > 0) {
-                relationshipRepository.addRelationship(member1, mother2, 28);
-                relationshipRepository.addRelationship(mother2, member1, 32);
-            }
-        } catch (SQLException e) {
-            logger.error("Error adding parent-in-law relationships: {}", e.getMessage());
+    private void addParentInLawRelationships(int member1, int member2) throws SQLException {
+        if (memberRepository.findMemberById(member1).getGender() == 1) {
+            int temp = member1;
+            member1 = member2;
+            member2 = temp;
+        }
+        int father1 = relationshipRepository.getMember2ByMember1AndRelation(member1, 3);
+        if (father1 > 0) {
+            relationshipRepository.addRelationship(member2, father1, 29);
+            relationshipRepository.addRelationship(father1, member2, 31);
+        }
+        int mother1 = relationshipRepository.getMember2ByMember1AndRelation(member1, 4);
+        if (mother1 > 0) {
+            relationshipRepository.addRelationship(member2, mother1, 30);
+            relationshipRepository.addRelationship(mother1, member2, 31);
+        }
+        int father2 = relationshipRepository.getMember2ByMember1AndRelation(member2, 3);
+        if (father2 > 0) {
+            relationshipRepository.addRelationship(member1, father2, 27);
+            relationshipRepository.addRelationship(father2, member1, 32);
+        }
+        int mother2 = relationshipRepository.getMember2ByMember1AndRelation(member2, 4);
+        if (mother2 > 0) {
+            relationshipRepository.addRelationship(member1, mother2, 28);
+            relationshipRepository.addRelationship(mother2, member1, 32);
         }
     }
 
@@ -268,39 +327,54 @@ public class RelationshipService {
         }
     }
 
-    private void addParentRelationships(Member parent, Member child, int relationType) {
-        try {
-            int parentID = parent.getMemberID();
-            int childID = child.getMemberID();
-            int parentGender = parent.getGender();
-
-            if (parentGender == 0) {
-                relationshipRepository.addRelationship(childID, parentID, 3);
-                int motherID = relationshipRepository.getMember2ByMember1AndRelation(parentID, 2);
-                if (motherID != -1) {
-                    relationshipRepository.addRelationship(childID, motherID, 4);
-                    relationshipRepository.addRelationship(motherID, childID, relationType);
-                    Member mother = memberRepository.findMemberById(motherID);
-                    if (mother != null) {
-                        addInLawRelationshipsForChild(child, mother);
-                    }
+    /** 以下三个方法逐行处理查询结果，供流式输出使用；出错时由调用方处理 */
+    public void forEachRelationship(RowHandler<Relationship> handler) throws SQLException, IOException {
+        relationshipRepository.forEachRelationship(handler);
+    }
+
+    public void forEachRelationshipForMember(int memberID, RowHandler<Relationship> handler) throws SQLException, IOException {
+        relationshipRepository.forEachRelationshipForMember(memberID, handler);
+    }
+
+    public void forEachRelationshipByRelationType(int relationType, RowHandler<Relationship> handler) throws SQLException, IOException {
+        relationshipRepository.forEachRelationshipByRelationType(relationType, handler);
+    }
+
+    /** 按 RelationID 键集分页，relationType 为 0 时不过滤，只查询 columns 中的列 */
+    public void forEachRelationshipPage(int afterID, int limit, int relationType, Set<String> columns,
+                                        RowHandler<Relationship> handler) throws SQLException, IOException {
+        relationshipRepository.forEachRelationshipPage(afterID, limit, relationType, columns, handler);
+    }
+
+    private void addParentRelationships(Member parent, Member child, int relationType) throws SQLException {
+        int parentID = parent.getMemberID();
+        int childID = child.getMemberID();
+        int parentGender = parent.getGender();
+
+        if (parentGender == 0) {
+            relationshipRepository.addRelationship(childID, parentID, 3);
+            int motherID = relationshipRepository.getMember2ByMember1AndRelation(parentID, 2);
+            if (motherID != -1) {
+                relationshipRepository.addRelationship(childID, motherID, 4);
+                relationshipRepository.addRelationship(motherID, childID, relationType);
+                Member mother = memberRepository.findMemberById(motherID);
+                if (mother != null) {
+                    addInLawRelationshipsForChild(child, mother);
                 }
-                addInLawRelationshipsForChild(child, parent);
-            } else {
-                relationshipRepository.addRelationship(childID, parentID, 4);
-                int fatherID = relationshipRepository.getMember2ByMember1AndRelation(parentID, 1);
-                if (fatherID != -1) {
-                    relationshipRepository.addRelationship(childID, fatherID, 3);
-                    relationshipRepository.addRelationship(fatherID, childID, relationType);
-                    Member father = memberRepository.findMemberById(fatherID);
-                    if (father != null) {
-                        addInLawRelationshipsForChild(child, father);
-                    }
+            }
+            addInLawRelationshipsForChild(child, parent);
+        } else {
+            relationshipRepository.addRelationship(childID, parentID, 4);
+            int fatherID = relationshipRepository.getMember2ByMember1AndRelation(parentID, 1);
+            if (fatherID != -1) {
+                relationshipRepository.addRelationship(childID, fatherID, 3);
+                relationshipRepository.addRelationship(fatherID, childID, relationType);
+                Member father = memberRepository.findMemberById(fatherID);
+                if (father != null) {
+                    addInLawRelationshipsForChild(child, father);
                 }
-                addInLawRelationshipsForChild(child, parent);
             }
-        } catch (SQLException e) {
-            logger.error("Error adding parent relationships: {}", e.getMessage());
+            addInLawRelationshipsForChild(child, parent);
         }
     }
 
@@ -329,141 +403,138 @@ public class RelationshipService {
         return familyRelationshipCalculator.findDistantRelative(member1ID, member2ID);
     }
 
+    /**
+     * 批量查找多对成员的远亲关系，结果与请求顺序一致
+     */
+    public List<FamilyRelationshipCalculator.DistantRelativeResult> findDistantRelatives(List<int[]> pairs) throws SQLException {
+        return familyRelationshipCalculator.findDistantRelatives(pairs);
+    }
+
+    /**
+     * 查找某成员与所有可达成员的关系（单源），成员不存在时返回 null
+     */
+    public FamilyRelationshipCalculator.RelativesResult findAllRelatives(int memberID) throws SQLException {
+        return familyRelationshipCalculator.findAllRelatives(memberID);
+    }
+
     public KinshipNetworkResult getKinshipNetwork(int centerId, int generations) {
         try {
-            Member center = memberRepository.findMemberById(centerId);
-            if (center == null) {
+            FamilyGraph graph = graphStore.current();
+            int center = graph.indexOf(centerId);
+            if (center < 0 || !graph.isPresent(center)) {
                 return null;
             }
-            List<Relationship> relationships = relationshipRepository.getAllRelationships();
-            Set<Integer> memberIds = new HashSet<>();
-            memberIds.add(centerId);
-            for (Relationship rel : relationships) {
-                memberIds.add(rel.getMember1());
-                memberIds.add(rel.getMember2());
-            }
-            Map<Integer, Member> memberMap = new HashMap<>();
-            for (Integer id : memberIds) {
-                Member member = memberRepository.findMemberById(id);
-                if (member != null) {
-                    memberMap.put(id, member);
-                }
-            }
-
-            Map<Integer, List<Relationship>> adjacency = new HashMap<>();
-            for (Relationship rel : relationships) {
-                if (isBloodRelation(rel.getRelation())) {
-                    adjacency.computeIfAbsent(rel.getMember1(), k -> new ArrayList<>()).add(rel);
-                    adjacency.computeIfAbsent(rel.getMember2(), k -> new ArrayList<>()).add(rel);
-                }
-            }
-
-            Map<Integer, Integer> levelMap = new HashMap<>();
-            Set<Integer> bloodSelected = new HashSet<>();
-            Set<Integer> spouseSelected = new HashSet<>();
-            Set<Integer> frontier = new HashSet<>();
-            levelMap.put(centerId, 0);
-            bloodSelected.add(centerId);
-            frontier.add(centerId);
+            int n = graph.size();
+
+            // 婚姻关系按 RelationID 顺序处理，与逐行扫描关系表时一致
+            int[] marriageEdges = marriageEdgesInRowOrder(graph);
+
+            int[] levels = new int[n];
+            Arrays.fill(levels, -1);
+            boolean[] bloodSelected = new boolean[n];
+            boolean[] spouseSelected = new boolean[n];
+            int[] frontier = new int[n];
+            int[] nextFrontier = new int[n];
+            int frontierSize = 1;
+            levels[center] = 0;
+            bloodSelected[center] = true;
+            frontier[0] = center;
 
             for (int step = 1; step <= generations; step++) {
-                Set<Integer> nextFrontier = new HashSet<>();
-                for (Integer current : frontier) {
-                    List<Relationship> neighbors = adjacency.get(current);
-                    if (neighbors == null) {
-                        continue;
-                    }
-                    Member currentMember = memberMap.get(current);
-                    if (currentMember == null) {
-                        continue;
-                    }
-                    for (Relationship rel : neighbors) {
-                        int next = rel.getMember1() == current ? rel.getMember2() : rel.getMember1();
-                        if (bloodSelected.contains(next)) {
+                int nextSize = 0;
+                for (int i = 0; i < frontierSize; i++) {
+                    int current = frontier[i];
+                    int currentGeneration = graph.generation(current);
+                    for (int k = 0, degree = graph.adjDegree(current); k < degree; k++) {
+                        if (!isBloodRelation(graph.adjRelation(current, k))) {
                             continue;
                         }
-                        Member nextMember = memberMap.get(next);
-                        if (nextMember == null) {
+                        int next = graph.adjTarget(current, k);
+                        if (bloodSelected[next] || !graph.isPresent(next)) {
                             continue;
                         }
-                        int generationDiff = Math.abs(nextMember.getGeneration() - currentMember.getGeneration());
+                        int generationDiff = Math.abs(graph.generation(next) - currentGeneration);
                         if (generationDiff > 1) {
                             continue;
                         }
-                        bloodSelected.add(next);
-                        levelMap.put(next, step);
-                        nextFrontier.add(next);
+                        bloodSelected[next] = true;
+                        levels[next] = step;
+                        nextFrontier[nextSize++] = next;
                     }
                 }
 
-                for (Relationship rel : relationships) {
-                    if (!isMarriageRelation(rel.getRelation())) {
-                        continue;
+                for (int edge : marriageEdges) {
+                    int m1 = graph.edgeSource(edge);
+                    int m2 = graph.edgeTarget(edge);
+                    if (bloodSelected[m1] && !spouseSelected[m2]) {
+                        spouseSelected[m2] = true;
+                        if (levels[m2] < 0) levels[m2] = levels[m1] >= 0 ? levels[m1] : step;
                     }
-                    int m1 = rel.getMember1();
-                    int m2 = rel.getMember2();
-                    if (bloodSelected.contains(m1) && !spouseSelected.contains(m2)) {
-                        spouseSelected.add(m2);
-                        levelMap.putIfAbsent(m2, levelMap.getOrDefault(m1, step));
-                    }
-                    if (bloodSelected.contains(m2) && !spouseSelected.contains(m1)) {
-                        spouseSelected.add(m1);
-                        levelMap.putIfAbsent(m1, levelMap.getOrDefault(m2, step));
+                    if (bloodSelected[m2] && !spouseSelected[m1]) {
+                        spouseSelected[m1] = true;
+                        if (levels[m1] < 0) levels[m1] = levels[m2] >= 0 ? levels[m2] : step;
                     }
                 }
 
-                if (nextFrontier.isEmpty()) {
+                if (nextSize == 0) {
                     break;
                 }
+                int[] swap = frontier;
                 frontier = nextFrontier;
+                nextFrontier = swap;
+                frontierSize = nextSize;
             }
 
-            int centerGeneration = center.getGeneration();
-            Set<Integer> nodeIds = new HashSet<>(bloodSelected);
-            nodeIds.addAll(spouseSelected);
-
-            Set<Integer> filteredNodeIds = new HashSet<>();
-            for (Integer id : nodeIds) {
-                Member member = memberMap.get(id);
-                if (member == null) {
+            int centerGeneration = graph.generation(center);
+            boolean[] filtered = new boolean[n];
+            List<KinshipNetworkNode> nodes = new ArrayList<>();
+            Map<Integer, Member> memberMap = new HashMap<>();
+            // 下标按 MemberID 升序，节点天然有序
+            for (int idx = 0; idx < n; idx++) {
+                if (!(bloodSelected[idx] || spouseSelected[idx]) || !graph.isPresent(idx)) {
                     continue;
                 }
-                int steps = levelMap.getOrDefault(id, generations);
-                if (steps <= generations || id == centerId) {
-                    filteredNodeIds.add(id);
-                    memberMap.put(id, member);
+                int steps = levels[idx] >= 0 ? levels[idx] : generations;
+                if (steps <= generations || idx == center) {
+                    filtered[idx] = true;
+                    memberMap.put(graph.memberId(idx), graph.member(idx));
+                    nodes.add(new KinshipNetworkNode(graph.memberId(idx), graph.name(idx), graph.gender(idx),
+                            graph.generation(idx), steps));
                 }
             }
 
-            List<KinshipNetworkNode> nodes = new ArrayList<>();
-            for (Integer id : filteredNodeIds) {
-                Member member = memberMap.get(id);
-                if (member != null) {
-                    nodes.add(new KinshipNetworkNode(
-                            member.getMemberID(),
-                            member.getName(),
-                            member.getGender(),
-                            member.getGeneration(),
-                            levelMap.getOrDefault(id, generations)
-                    ));
+            // 同一对成员之间的关系合并为一条边，组内按 RelationID 排序，边按成员对排序
+            List<long[]> displayRows = new ArrayList<>();
+            int hiddenRelationsCount = 0;
+            for (int idx = 0; idx < n; idx++) {
+                if (!filtered[idx]) {
+                    continue;
                 }
-            }
-            nodes.sort(Comparator.comparingInt(KinshipNetworkNode::getId));
-
-            Map<String, List<Relationship>> edgeGroups = new HashMap<>();
-            for (Relationship rel : relationships) {
-                if (filteredNodeIds.contains(rel.getMember1()) && filteredNodeIds.contains(rel.getMember2()) && isDisplayRelation(rel.getRelation())) {
-                    int a = Math.min(rel.getMember1(), rel.getMember2());
-                    int b = Math.max(rel.getMember1(), rel.getMember2());
-                    String key = a + "-" + b;
-                    edgeGroups.computeIfAbsent(key, k -> new ArrayList<>()).add(rel);
+                for (int i = 0, degree = graph.outDegree(idx); i < degree; i++) {
+                    int k = graph.outEdge(idx, i);
+                    int target = graph.edgeTarget(k);
+                    if (!filtered[target]) {
+                        continue;
+                    }
+                    if (!isDisplayRelation(graph.edgeRelation(k))) {
+                        hiddenRelationsCount++;
+                        continue;
+                    }
+                    int a = Math.min(idx, target);
+                    int b = Math.max(idx, target);
+                    displayRows.add(new long[]{((long) a << 32) | b, graph.edgeRelationId(k), k});
                 }
             }
+            displayRows.sort(Comparator.<long[]>comparingLong(row -> row[0]).thenComparingLong(row -> row[1]));
 
             List<KinshipNetworkEdge> edges = new ArrayList<>();
-            for (List<Relationship> rels : edgeGroups.values()) {
-                if (rels.isEmpty()) {
-                    continue;
+            for (int i = 0; i < displayRows.size(); ) {
+                long pair = displayRows.get(i)[0];
+                List<Relationship> rels = new ArrayList<>();
+                for (; i < displayRows.size() && displayRows.get(i)[0] == pair; i++) {
+                    int k = (int) displayRows.get(i)[2];
+                    rels.add(new Relationship(graph.edgeRelationId(k), graph.memberId(graph.edgeSource(k)),
+                            graph.memberId(graph.edgeTarget(k)), graph.edgeRelation(k)));
                 }
                 Relationship first = rels.get(0);
                 int a = Math.min(first.getMember1(), first.getMember2());
@@ -473,13 +544,6 @@ public class RelationshipService {
                 edges.add(new KinshipNetworkEdge(a, b, first.getRelation(), label, edgeType));
             }
 
-            int hiddenRelationsCount = 0;
-            for (Relationship rel : relationships) {
-                if (filteredNodeIds.contains(rel.getMember1()) && filteredNodeIds.contains(rel.getMember2()) && !isDisplayRelation(rel.getRelation())) {
-                    hiddenRelationsCount++;
-                }
-            }
-
             return new KinshipNetworkResult(centerId, generations, centerGeneration, nodes, edges, hiddenRelationsCount);
         } catch (SQLException e) {
             logger.error("Error building kinship network: {}", e.getMessage());
@@ -487,6 +551,22 @@ public class RelationshipService {
         }
     }
 
+    /** 边槽位本身按 RelationID 升序，顺序收集即与逐行扫描关系表一致 */
+    private int[] marriageEdgesInRowOrder(FamilyGraph graph) {
+        int[] edges = new int[16];
+        int count = 0;
+        for (int e = 0, total = graph.edgeSlotCount(); e < total; e++) {
+            if (!graph.isEdgeLive(e) || !isMarriageRelation(graph.edgeRelation(e))) {
+                continue;
+            }
+            if (count == edges.length) {
+                edges = Arrays.copyOf(edges, count * 2);
+            }
+            edges[count++] = e;
+        }
+        return Arrays.copyOf(edges, count);
+    }
+
     private boolean isBloodRelation(int relationType) {
         return relationType >= 3 && relationType <= 26;
     }
@@ -0,0 +1,174 @@
+package service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * admin 端的快照发布：数据版本递增后由 snapshot-publisher 线程把当前内存关系图写入快照目录，
+ * 两次发布至少间隔 minIntervalMillis，其间的写入合并到下一个快照（为 0 时每组提交后都发布）。只保留最新的 keep 个文件。
+ * 快照直接由已发布的内存关系图序列化，不读取数据库；同时记录关系图已包含的变更日志序号，供重启时恢复后追赶。
+ */
+public class SnapshotPublisher implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(SnapshotPublisher.class);
+    private static final long RETRY_MILLIS = 1000;
+
+    private final FamilyGraphStore graphStore;
+    private final Path directory;
+    private final long minIntervalMillis;
+    private final int keep;
+    private final BlockingQueue<Boolean> wakeups = new ArrayBlockingQueue<>(1);
+    private final Runnable wakeup = () -> wakeups.offer(Boolean.TRUE);
+    private Thread thread;
+    private volatile boolean closed;
+    private volatile long seq = -1;
+    private long publishedVersion = -1;
+    private volatile long publishCount;
+    private volatile long failureCount;
+    private volatile long lastBytes;
+    private volatile long lastPublishMillis;
+
+    public SnapshotPublisher(FamilyGraphStore graphStore, Path directory, long minIntervalMillis, int keep) {
+        if (minIntervalMillis < 0 || keep < 1) {
+            throw new IllegalArgumentException("Snapshot interval must be non-negative and at least one snapshot must be kept");
+        }
+        this.graphStore = graphStore;
+        this.directory = directory;
+        this.minIntervalMillis = minIntervalMillis;
+        this.keep = keep;
+    }
+
+    /** 创建目录并启动发布线程，启动后立即发布一次 */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        graphStore.getDataVersion().addListener(wakeup);
+        thread = new Thread(this::run, "snapshot-publisher");
+        thread.setDaemon(true);
+        thread.start();
+        wakeup.run();
+        logger.info("Publishing graph snapshots to {} at most every {} ms, keeping {}", directory, minIntervalMillis, keep);
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                wakeups.take();
+                long pause = minIntervalMillis;
+                try {
+                    publish();
+                } catch (IOException | SQLException | RuntimeException e) {
+                    // 失败后稍后重试，不必等到下一次写入
+                    failureCount++;
+                    logger.error("Failed to publish graph snapshot: {}", e.getMessage());
+                    wakeup.run();
+                    pause = Math.max(pause, RETRY_MILLIS);
+                }
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 当前关系图与上次发布的版本不同时写出新快照，返回是否写出。
+     * 先写入同目录下的临时文件并刷到磁盘，再原子改名为正式文件名，最后删除多余的旧快照。
+     */
+    public synchronized boolean publish() throws IOException, SQLException {
+        FamilyGraphStore.Checkpoint checkpoint = graphStore.checkpoint();
+        FamilyGraph graph = checkpoint.getGraph();
+        if (graph.version() == publishedVersion) {
+            return false;
+        }
+        if (seq < 0) {
+            List<Path> existing = GraphSnapshot.listFiles(directory);
+            seq = existing.isEmpty() ? 0 : GraphSnapshot.seqOf(existing.get(existing.size() - 1));
+        }
+        long start = System.nanoTime();
+        long next = seq + 1;
+        Path target = directory.resolve(GraphSnapshot.fileName(next));
+        Path temp = directory.resolve("." + target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+                GraphSnapshot.write(graph, next, checkpoint.getChangeSeq(), checkpoint.getRebuildSeq(), out);
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        seq = next;
+        publishedVersion = graph.version();
+        publishCount++;
+        lastBytes = Files.size(target);
+        lastPublishMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("Published graph snapshot {} (graph v{}, {} members, {} relationships, {} bytes) in {} ms",
+                target.getFileName(), graph.version(), graph.size(), graph.relationshipCount(), lastBytes, lastPublishMillis);
+        prune();
+        return true;
+    }
+
+    private void prune() {
+        try {
+            List<Path> files = GraphSnapshot.listFiles(directory);
+            for (int i = 0; i < files.size() - keep; i++) {
+                Files.deleteIfExists(files.get(i));
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to remove old graph snapshots: {}", e.getMessage());
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public long getPublishCount() {
+        return publishCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public long getLastBytes() {
+        return lastBytes;
+    }
+
+    public long getLastPublishMillis() {
+        return lastPublishMillis;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        graphStore.getDataVersion().removeListener(wakeup);
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+}
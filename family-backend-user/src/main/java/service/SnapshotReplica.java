@@ -0,0 +1,157 @@
+package service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 只读副本的数据来源：从快照目录加载序号最大的快照，之后定时检查目录，出现新快照时加载并整体替换。
+ * 放入目录的文件即可触发加载（手工复制时应先写临时名再改名）；读取失败的文件只记录一次，改用次新的快照或继续使用已加载的快照。
+ * 替换后让 FamilyGraphStore 与新快照对账，差异以增量发布并递增数据版本，响应缓存与 ETag 随之失效。
+ */
+public class SnapshotReplica implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(SnapshotReplica.class);
+
+    private final Path directory;
+    private final long pollMillis;
+    private volatile GraphSnapshot current;
+    private ScheduledExecutorService scheduler;
+    /** 读取失败的文件及其大小，同一文件未变化时不再重试 */
+    private final Map<Path, Long> failedSizes = new HashMap<>();
+    private volatile long loadCount;
+    private volatile long failureCount;
+    private volatile long lastLoadMillis;
+
+    public SnapshotReplica(Path directory, long pollMillis) {
+        if (pollMillis <= 0) {
+            throw new IllegalArgumentException("Snapshot poll interval must be positive");
+        }
+        this.directory = directory;
+        this.pollMillis = pollMillis;
+    }
+
+    /** 当前快照重建的关系图；尚未加载任何快照时抛出 IllegalStateException */
+    public FamilyGraph graph() {
+        GraphSnapshot snapshot = current;
+        if (snapshot == null) {
+            throw new IllegalStateException("No graph snapshot loaded from " + directory);
+        }
+        return snapshot.getGraph();
+    }
+
+    public GraphSnapshot getSnapshot() {
+        return current;
+    }
+
+    /**
+     * 从序号最大的快照起依次尝试加载比当前更新的快照，读取失败的文件记录后改用次新的一份，返回是否替换了当前快照。
+     * 还没有加载过快照而目录中没有可用快照时抛出 IOException；没有替换且本次有文件读取失败时也抛出 IOException。
+     */
+    public synchronized boolean loadLatest() throws IOException {
+        List<Path> files = GraphSnapshot.listFiles(directory);
+        failedSizes.keySet().retainAll(files);
+        IOException failure = null;
+        for (int i = files.size() - 1; i >= 0; i--) {
+            Path file = files.get(i);
+            if (current != null && GraphSnapshot.seqOf(file) <= current.getSeq()) {
+                break;
+            }
+            long size = Files.size(file);
+            Long failedSize = failedSizes.get(file);
+            if (failedSize != null && failedSize == size) {
+                continue;
+            }
+            long start = System.nanoTime();
+            GraphSnapshot snapshot;
+            try {
+                snapshot = GraphSnapshot.map(file);
+            } catch (IOException e) {
+                failedSizes.put(file, size);
+                failureCount++;
+                if (failure == null) {
+                    failure = new IOException("Failed to load graph snapshot " + file.getFileName() + ": " + e.getMessage(), e);
+                }
+                continue;
+            }
+            if (failure != null) {
+                logger.warn("{}; falling back to {}", failure.getMessage(), file.getFileName());
+            }
+            current = snapshot;
+            loadCount++;
+            lastLoadMillis = (System.nanoTime() - start) / 1_000_000;
+            FamilyGraph graph = snapshot.getGraph();
+            logger.info("Loaded graph snapshot {} (source graph v{}, {} members, {} relationships) in {} ms",
+                    file.getFileName(), snapshot.getSourceVersion(), graph.size(), graph.relationshipCount(), lastLoadMillis);
+            return true;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (current == null) {
+            throw new IOException("No readable graph snapshot found in " + directory);
+        }
+        return false;
+    }
+
+    /** 启动后台检查线程，加载到新快照后刷新 graphStore */
+    public synchronized void start(FamilyGraphStore graphStore) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-replica");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> poll(graphStore), pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        logger.info("Watching {} for graph snapshots every {} ms", directory, pollMillis);
+    }
+
+    private void poll(FamilyGraphStore graphStore) {
+        try {
+            if (loadLatest()) {
+                graphStore.refresh();
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            logger.warn("Graph snapshot check failed: {}", e.getMessage());
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getPollMillis() {
+        return pollMillis;
+    }
+
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
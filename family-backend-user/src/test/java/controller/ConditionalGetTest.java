@@ -0,0 +1,33 @@
+package controller;
+
+import org.junit.jupiter.api.Test;
+import service.DataVersion;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 条件 GET 的 ETag 匹配测试
+ */
+public class ConditionalGetTest {
+
+    @Test
+    public void testIfNoneMatchUsesWeakComparison() {
+        String etag = "W/\"abc-3-1f\"";
+        assertTrue(ConditionalGet.matches(etag, etag));
+        assertTrue(ConditionalGet.matches("\"abc-3-1f\"", etag));
+        assertTrue(ConditionalGet.matches("\"x\", W/\"abc-3-1f\"", etag));
+        assertTrue(ConditionalGet.matches("*", etag));
+        assertFalse(ConditionalGet.matches("W/\"abc-2-1f\"", etag));
+        assertFalse(ConditionalGet.matches("", etag));
+    }
+
+    @Test
+    public void testDataVersionTagChangesOnIncrement() {
+        DataVersion version = new DataVersion();
+        String before = version.tag();
+        assertEquals(before, version.tag());
+        version.increment();
+        assertNotEquals(before, version.tag());
+        assertEquals(1, version.current());
+    }
+}
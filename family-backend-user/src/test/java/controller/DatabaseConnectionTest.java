@@ -0,0 +1,82 @@
+package controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import repository.MemberRepository;
+import repository.UnitOfWork;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 读写分离连接测试：WAL 下读连接不等待未提交的写事务，读连接与只读部署都拒绝写入
+ */
+public class DatabaseConnectionTest {
+    @RegisterExtension
+    final TemporaryDatabase database = new TemporaryDatabase("family-db");
+
+    @AfterEach
+    public void tearDown() {
+        DatabaseConnection.configure(config("false"));
+    }
+
+    @Test
+    public void testReadersDoNotWaitOnWriter() throws SQLException {
+        DatabaseConnection.configure(config("false"));
+        MemberRepository repository = new MemberRepository();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            assertEquals("wal", queryString(conn, "PRAGMA journal_mode"));
+            assertThrows(SQLException.class, () -> execute(conn, "INSERT INTO Members (Name, Generation, Gender) VALUES ('x', 1, 0)"));
+        }
+
+        UnitOfWork.run(() -> {
+            repository.addMember("A", 1, 0);
+            // 写事务尚未提交，读连接立即返回提交前的数据
+            long start = System.nanoTime();
+            try (Connection reader = DatabaseConnection.acquireReader()) {
+                assertEquals("0", queryString(reader, "SELECT COUNT(*) FROM Members"));
+            }
+            assertTrue(System.nanoTime() - start < 1_000_000_000L);
+            return null;
+        });
+        assertEquals(1, repository.getAllMembers().size());
+    }
+
+    @Test
+    public void testReadOnlyDeploymentHasNoWriter() throws SQLException {
+        DatabaseConnection.configure(config("false"));
+        new MemberRepository().getAllMembers();
+        DatabaseConnection.shutdown();
+
+        DatabaseConnection.configure(config("true"));
+        assertTrue(DatabaseConnection.isReadOnly());
+        assertTrue(new MemberRepository().getAllMembers().isEmpty());
+        assertNull(DatabaseConnection.getWriterPoolStats());
+        assertThrows(SQLException.class, () -> UnitOfWork.run(() -> new MemberRepository().addMember("A", 1, 0)));
+    }
+
+    private static Properties config(String readOnly) {
+        Properties prop = new Properties();
+        prop.setProperty("db.readOnly", readOnly);
+        return prop;
+    }
+
+    private static String queryString(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
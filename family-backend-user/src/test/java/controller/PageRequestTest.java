@@ -0,0 +1,53 @@
+package controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分页与字段投影参数解析测试
+ */
+public class PageRequestTest {
+    private static final List<String> FIELDS = List.of("id", "name", "generation");
+
+    @Test
+    public void testParseDefaultsAndValidation() {
+        assertTrue(PageRequest.isPaged("limit=10"));
+        assertTrue(PageRequest.isPaged("relationType=1&fields=id"));
+        assertFalse(PageRequest.isPaged("relationType=1"));
+        assertFalse(PageRequest.isPaged("name=limit%3D1"));
+
+        Map<String, String> params = PageRequest.parse("fields=name%2Cid&relationType=3");
+        PageRequest page = PageRequest.from(params, FIELDS);
+        assertEquals(Map.of("relationType", "3"), params);
+        assertEquals(0, page.after());
+        assertEquals(PageRequest.DEFAULT_LIMIT + 1, page.fetchSize());
+        assertEquals(List.of("name", "id"), List.copyOf(page.fields()));
+        assertFalse(page.includes("generation"));
+
+        assertEquals(List.copyOf(FIELDS), List.copyOf(PageRequest.from(PageRequest.parse("cursor=5"), FIELDS).fields()));
+        assertThrows(IllegalArgumentException.class, () -> PageRequest.from(PageRequest.parse("limit=0"), FIELDS));
+        assertThrows(IllegalArgumentException.class, () -> PageRequest.from(PageRequest.parse("limit=1001"), FIELDS));
+        assertThrows(IllegalArgumentException.class, () -> PageRequest.from(PageRequest.parse("cursor=abc"), FIELDS));
+        assertThrows(IllegalArgumentException.class, () -> PageRequest.from(PageRequest.parse("fields=id,remark"), FIELDS));
+    }
+
+    @Test
+    public void testNextCursorOnlyWhenAnotherPageExists() {
+        PageRequest page = PageRequest.from(PageRequest.parse("limit=2&cursor=10"), FIELDS);
+        assertEquals(10, page.after());
+        assertEquals(3, page.fetchSize());
+        assertTrue(page.accept(11));
+        assertTrue(page.accept(14));
+        assertNull(page.nextCursor());
+        assertFalse(page.accept(20));
+        assertEquals("14", page.nextCursor());
+
+        PageRequest last = PageRequest.from(PageRequest.parse("limit=2&cursor=14"), FIELDS);
+        assertTrue(last.accept(20));
+        assertNull(last.nextCursor());
+    }
+}
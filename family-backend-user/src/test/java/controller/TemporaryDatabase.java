@@ -0,0 +1,46 @@
+package controller;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * 测试用临时数据库：每个用例前建空库文件并让 DatabaseConnection 指向它，用例后关闭连接池并删除库文件及 WAL/SHM 文件。
+ * 以 {@code @RegisterExtension} 注册，先于测试类自己的 {@code @BeforeEach} 执行，晚于其 {@code @AfterEach} 清理。
+ */
+public class TemporaryDatabase implements BeforeEachCallback, AfterEachCallback {
+    private final String prefix;
+    private File file;
+
+    public TemporaryDatabase(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    /** 直连库文件的 JDBC URL，用于绕过连接池模拟其他进程 */
+    public String url() {
+        return "jdbc:sqlite:" + file.getAbsolutePath();
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) throws Exception {
+        file = Files.createTempFile(prefix, ".db").toFile();
+        DatabaseConnection.shutdown();
+        System.setProperty("family.db.path", file.getAbsolutePath());
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        DatabaseConnection.shutdown();
+        System.clearProperty("family.db.path");
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+        file.delete();
+    }
+}
@@ -0,0 +1,157 @@
+package repository;
+
+import controller.TemporaryDatabase;
+import model.Member;
+import model.Relationship;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import service.FamilyGraph;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 快照仓储测试：同一份数据上，各查询的结果与顺序与 SQLite 仓储一致，写入被拒绝
+ */
+public class SnapshotRepositoryTest {
+    @RegisterExtension
+    final TemporaryDatabase database = new TemporaryDatabase("family-snapshot-repo");
+    private MemberRepository members;
+    private RelationshipRepository relationships;
+    private MemberRepository snapshotMembers;
+    private RelationshipRepository snapshotRelationships;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        members = new MemberRepository();
+        relationships = new RelationshipRepository(members);
+        members.getAllMembers();
+        // 外键未开启的连接写入，制造关系引用已删除成员 6 的情况
+        try (Connection other = DriverManager.getConnection(database.url());
+             Statement stmt = other.createStatement()) {
+            stmt.execute("INSERT INTO Members (MemberID, Name, Generation, Gender, Remark) VALUES " +
+                    "(1, 'Father', 1, 0, NULL), (2, 'Mother', 1, 1, 'née Li'), (3, 'Son', 2, 0, NULL), " +
+                    "(4, 'Daughter', 2, 1, ''), (5, 'Younger Son', 2, 0, NULL), (8, 'Grandson', 3, 0, NULL)");
+            stmt.execute("INSERT INTO Relationships (member1, member2, relation) VALUES " +
+                    "(1, 5, 6), (1, 2, 1), (2, 1, 2), (1, 3, 5), (1, 4, 8), (3, 1, 3), (4, 1, 3), " +
+                    "(5, 1, 3), (3, 8, 5), (8, 3, 3), (6, 1, 3), (1, 6, 7), (2, 3, 5), (3, 2, 4)");
+            stmt.execute("DELETE FROM Relationships WHERE member1 = 4");
+        }
+        FamilyGraph graph = FamilyGraph.load(members, relationships, 1);
+        snapshotMembers = new SnapshotMemberRepository(() -> graph);
+        snapshotRelationships = new SnapshotRelationshipRepository(snapshotMembers, () -> graph);
+    }
+
+    @Test
+    public void testMemberQueriesMatchDatabase() throws SQLException, IOException {
+        assertEquals(describeMembers(members.getAllMembers()), describeMembers(snapshotMembers.getAllMembers()));
+        for (int id = 0; id <= 9; id++) {
+            assertEquals(describe(members.findMemberById(id)), describe(snapshotMembers.findMemberById(id)));
+        }
+        assertEquals(describeMembers(members.findMembersByIds(List.of(1, 6, 8, 9))),
+                describeMembers(snapshotMembers.findMembersByIds(List.of(1, 6, 8, 9))));
+        for (String name : List.of("son", "SON", "ther", "Y_u", "r%S", "nobody", "")) {
+            assertEquals(describe(members.findMemberByName(name)), describe(snapshotMembers.findMemberByName(name)), name);
+        }
+        for (Set<String> columns : List.of(Set.<String>of(), Set.of("Name", "Remark"), Set.copyOf(MemberRepository.PAGE_COLUMNS))) {
+            List<Member> expected = new ArrayList<>();
+            List<Member> actual = new ArrayList<>();
+            members.forEachMemberPage(2, 3, columns, expected::add);
+            snapshotMembers.forEachMemberPage(2, 3, columns, actual::add);
+            assertEquals(describeMembers(expected), describeMembers(actual));
+        }
+    }
+
+    @Test
+    public void testRelationshipQueriesMatchDatabase() throws Exception {
+        assertEquals(describeRelationships(relationships.getAllRelationships()),
+                describeRelationships(snapshotRelationships.getAllRelationships()));
+        for (int id = 0; id <= 9; id++) {
+            String message = "member " + id;
+            assertEquals(describeRelationships(relationships.getRelationshipsForMember(id)),
+                    describeRelationships(snapshotRelationships.getRelationshipsForMember(id)), message);
+            assertEquals(describeRelationships(relationships.getChildRelationships(id)),
+                    describeRelationships(snapshotRelationships.getChildRelationships(id)), message);
+            assertEquals(describeRelationships(relationships.getRelationshipsInvolvingMember(id)),
+                    describeRelationships(snapshotRelationships.getRelationshipsInvolvingMember(id)), message);
+            assertEquals(describe(relationships.getRelationshipByRelationID(id)),
+                    describe(snapshotRelationships.getRelationshipByRelationID(id)), message);
+            assertEquals(describeRelationships(relationships.getRelationshipsAfter(id)),
+                    describeRelationships(snapshotRelationships.getRelationshipsAfter(id)), message);
+            for (int other = 0; other <= 9; other++) {
+                assertEquals(describe(relationships.getRelationshipByMembers(id, other)),
+                        describe(snapshotRelationships.getRelationshipByMembers(id, other)), message + " -> " + other);
+            }
+            for (int relation = 1; relation <= 10; relation++) {
+                assertEquals(relationships.getMember2ByMember1AndRelation(id, relation),
+                        snapshotRelationships.getMember2ByMember1AndRelation(id, relation), message + " relation " + relation);
+            }
+        }
+        for (int relation = 1; relation <= 8; relation++) {
+            assertEquals(describeRelationships(relationships.getRelationshipsByRelationType(relation)),
+                    describeRelationships(snapshotRelationships.getRelationshipsByRelationType(relation)));
+        }
+        assertEquals(describeRelationships(new TreeMap<>(relationships.findRelationshipsByIds(List.of(1, 5, 12, 99))).values()),
+                describeRelationships(new TreeMap<>(snapshotRelationships.findRelationshipsByIds(List.of(1, 5, 12, 99))).values()));
+        for (int relationType : new int[]{0, 3}) {
+            for (Set<String> columns : List.of(Set.<String>of(), Set.of("member2", "member1Name"),
+                    Set.copyOf(RelationshipRepository.PAGE_COLUMNS))) {
+                List<Relationship> expected = new ArrayList<>();
+                List<Relationship> actual = new ArrayList<>();
+                relationships.forEachRelationshipPage(2, 4, relationType, columns, expected::add);
+                snapshotRelationships.forEachRelationshipPage(2, 4, relationType, columns, actual::add);
+                assertEquals(describeRelationships(expected), describeRelationships(actual));
+            }
+        }
+    }
+
+    @Test
+    public void testWritesAreRejected() {
+        assertThrows(SQLException.class, () -> snapshotMembers.addMember("New", 1, 0));
+        assertThrows(SQLException.class, () -> snapshotMembers.updateMember(1, "Dad", 0, null));
+        assertThrows(SQLException.class, () -> snapshotMembers.deleteMember(1));
+        assertThrows(SQLException.class, () -> snapshotRelationships.addRelationship(1, 3, 5));
+    }
+
+    private static String describeMembers(Map<Integer, Member> members) {
+        return describeMembers(new TreeMap<>(members).values());
+    }
+
+    private static String describeMembers(Iterable<Member> members) {
+        StringBuilder text = new StringBuilder();
+        for (Member member : members) {
+            text.append(describe(member)).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String describeRelationships(Iterable<Relationship> relationships) {
+        List<String> rows = new ArrayList<>();
+        for (Relationship relationship : relationships) {
+            rows.add(describe(relationship));
+        }
+        return String.join("\n", rows);
+    }
+
+    private static String describe(Member member) {
+        return member == null ? "null" : member.getMemberID() + "|" + member.getName() + "|" + member.getGeneration()
+                + "|" + member.getGender() + "|" + member.getRemark();
+    }
+
+    private static String describe(Relationship relationship) {
+        return relationship == null ? "null" : relationship.getRelationID() + "|" + relationship.getMember1() + "|"
+                + relationship.getMember2() + "|" + relationship.getRelation() + "|" + relationship.getMember1Name()
+                + "|" + relationship.getMember2Name();
+    }
+}
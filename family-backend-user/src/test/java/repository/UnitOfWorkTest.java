@@ -0,0 +1,72 @@
+package repository;
+
+import controller.DatabaseConnection;
+import controller.TemporaryDatabase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 工作单元测试：仓储调用共享同一事务，异常时整体回滚，提交后才执行回调，不访问数据库时不借连接
+ */
+public class UnitOfWorkTest {
+    @RegisterExtension
+    final TemporaryDatabase database = new TemporaryDatabase("family-uow");
+
+    @Test
+    public void testRepositoryCallsShareOneTransaction() throws SQLException {
+        MemberRepository repository = new MemberRepository();
+        List<String> events = new ArrayList<>();
+        assertThrows(IllegalStateException.class, () -> UnitOfWork.run(() -> {
+            repository.addMember("A", 1, 0);
+            // 加入外层工作单元而不是单独提交
+            UnitOfWork.run(() -> repository.addMember("B", 1, 1));
+            UnitOfWork.afterCommit(() -> events.add("rolled back"));
+            assertEquals(2, countMembers());
+            throw new IllegalStateException("abort");
+        }));
+        assertEquals(0, countMembers());
+        assertTrue(events.isEmpty());
+
+        UnitOfWork.run(() -> {
+            repository.addMember("A", 1, 0);
+            UnitOfWork.afterCommit(() -> events.add("committed"));
+            return repository.addMember("B", 1, 1);
+        });
+        assertEquals(List.of("committed"), events);
+        assertEquals(2, countMembers());
+        assertEquals(0, DatabaseConnection.getWriterPoolStats().getActive());
+    }
+
+    @Test
+    public void testConnectionIsAcquiredLazily() throws SQLException {
+        DatabaseConnection.initialize();
+        long acquired = DatabaseConnection.getWriterPoolStats().getAcquireCount();
+        assertEquals("done", UnitOfWork.run(() -> "done"));
+        assertEquals(acquired, DatabaseConnection.getWriterPoolStats().getAcquireCount());
+
+        UnitOfWork.run(() -> {
+            Connection first = DatabaseConnection.getConnection();
+            first.close();
+            assertSame(UnitOfWork.current().connection(), DatabaseConnection.getConnection());
+            return null;
+        });
+        assertEquals(acquired + 1, DatabaseConnection.getWriterPoolStats().getAcquireCount());
+    }
+
+    private static int countMembers() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM Members")) {
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package service;
+
+import controller.TemporaryDatabase;
+import model.Member;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import repository.ChangeLogRepository;
+import repository.MemberRepository;
+import repository.RelationshipRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 单写线程组提交测试：排队的写入合并为一次提交，单个写入失败只回滚它自己；
+ * 从快照文件恢复后按变更日志追上之后的写入，快照序号超前于数据库、来自另一份数据或早于整库重建时改为从 SQLite 重建
+ */
+public class FamilyGraphStoreTest {
+    @RegisterExtension
+    final TemporaryDatabase database = new TemporaryDatabase("family-writer");
+
+    @Test
+    public void testQueuedWritesShareOneCommit() throws Exception {
+        MemberRepository memberRepository = new MemberRepository();
+        FamilyGraphStore store = new FamilyGraphStore(memberRepository, new RelationshipRepository(memberRepository));
+        store.startWriter(16, 32);
+        assertEquals(0, store.current().size());
+        long versionBefore = store.getDataVersion().current();
+
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        try {
+            // 第一个写入占住写线程，其余写入在队列中排成一组
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Future<Member> first = callers.submit(() -> store.write(delta -> {
+                started.countDown();
+                await(release);
+                Member member = memberRepository.addMember("first", 1, 0);
+                delta.upsertMember(member);
+                return member;
+            }));
+            started.await();
+            List<Future<Member>> queued = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String name = "m" + i;
+                queued.add(callers.submit(() -> store.write(delta -> {
+                    Member member = memberRepository.addMember(name, 2, 1);
+                    delta.upsertMember(member);
+                    return member;
+                })));
+            }
+            Future<Member> failing = callers.submit(() -> store.write(delta -> {
+                memberRepository.addMember("rolled back", 2, 0);
+                throw new SQLException("rejected");
+            }));
+            while (store.getWriterStats().getQueued() < 5) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals("first", first.get().getName());
+            for (Future<Member> future : queued) {
+                assertTrue(future.get().getMemberID() > 0);
+            }
+            Exception failure = assertThrows(Exception.class, failing::get);
+            assertEquals("rejected", failure.getCause().getMessage());
+        } finally {
+            callers.shutdownNow();
+        }
+
+        FamilyGraphStore.WriterStats stats = store.getWriterStats();
+        assertEquals(2, stats.getGroupCount());
+        assertEquals(6, stats.getWriteCount());
+        assertEquals(5, stats.getLargestGroup());
+        assertEquals(versionBefore + 2, store.getDataVersion().current());
+        assertEquals(5, memberRepository.getAllMembers().size());
+        assertNull(memberRepository.findMemberByName("rolled back"));
+        assertEquals(5, store.current().size());
+    }
+
+    @Test
+    public void testRestoreFromSnapshotCatchesUpWithChangeLog() throws Exception {
+        MemberRepository memberRepository = new MemberRepository();
+        RelationshipRepository relationshipRepository = new RelationshipRepository(memberRepository);
+        FamilyGraphStore writer = new FamilyGraphStore(memberRepository, relationshipRepository, new ChangeLogRepository());
+        int father = addMember(writer, memberRepository, "Father", 1);
+        int son = addMember(writer, memberRepository, "Son", 2);
+        writer.write(delta -> relationshipRepository.addRelationship(son, father, 3));
+        writer.refresh();
+        FamilyGraphStore.Checkpoint checkpoint = writer.checkpoint();
+        GraphSnapshot snapshot = snapshotOf(checkpoint, checkpoint.getChangeSeq(), checkpoint.getRebuildSeq());
+
+        // 快照之后的写入：改名、新成员与新关系
+        writer.write(delta -> memberRepository.updateMember(father, "Dad", 0, null));
+        int daughter = addMember(writer, memberRepository, "Daughter", 2);
+        writer.write(delta -> relationshipRepository.addRelationship(daughter, father, 3));
+
+        FamilyGraphStore restored = new FamilyGraphStore(memberRepository, relationshipRepository, new ChangeLogRepository());
+        assertTrue(restored.restore(snapshot));
+        FamilyGraph graph = restored.current();
+        assertEquals(3, graph.size());
+        assertEquals(2, graph.relationshipCount());
+        assertEquals("Dad", graph.name(graph.indexOf(father)));
+        assertTrue(graph.findOutEdge(graph.indexOf(daughter), graph.indexOf(father)) >= 0);
+        assertFalse(restored.restore(snapshot));
+
+        // 快照记录的序号超过数据库（数据库被替换或回退）：不使用快照
+        FamilyGraphStore rebuilt = new FamilyGraphStore(memberRepository, relationshipRepository, new ChangeLogRepository());
+        assertFalse(rebuilt.restore(snapshotOf(checkpoint, checkpoint.getChangeSeq() + 100, checkpoint.getRebuildSeq())));
+        assertEquals(3, rebuilt.current().size());
+    }
+
+    @Test
+    public void testRestoreRejectsSnapshotOfDifferentData() throws Exception {
+        MemberRepository memberRepository = new MemberRepository();
+        RelationshipRepository relationshipRepository = new RelationshipRepository(memberRepository);
+        FamilyGraphStore writer = new FamilyGraphStore(memberRepository, relationshipRepository, new ChangeLogRepository());
+        int father = addMember(writer, memberRepository, "Father", 1);
+        int son = addMember(writer, memberRepository, "Son", 2);
+        writer.write(delta -> relationshipRepository.addRelationship(son, father, 3));
+        FamilyGraphStore.Checkpoint checkpoint = writer.checkpoint();
+        GraphSnapshot snapshot = snapshotOf(checkpoint, checkpoint.getChangeSeq(), checkpoint.getRebuildSeq());
+
+        // 绕过触发器的改写：日志序号仍对得上，主键汇总对不上
+        try (Connection conn = DriverManager.getConnection(database.url());
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TRIGGER trg_changelog_members_insert");
+            stmt.execute("INSERT INTO Members (Name, Generation, Gender) VALUES ('Ghost', 2, 1)");
+        }
+        FamilyGraphStore restored = new FamilyGraphStore(memberRepository, relationshipRepository, new ChangeLogRepository());
+        assertFalse(restored.restore(snapshot));
+        assertEquals(3, restored.current().size());
+
+        // 整库重建后旧快照的重建序号不符；重建之后的快照可以使用
+        try (Connection conn = DriverManager.getConnection(database.url())) {
+            ChangeLogRepository.markRebuild(conn);
+        }
+        FamilyGraphStore stale = new FamilyGraphStore(memberRepository, relationshipRepository, new ChangeLogRepository());
+        assertFalse(stale.restore(snapshot));
+        assertTrue(writer.refresh());
+        FamilyGraphStore.Checkpoint rebuilt = writer.checkpoint();
+        assertTrue(rebuilt.getRebuildSeq() > checkpoint.getRebuildSeq());
+        FamilyGraphStore fresh = new FamilyGraphStore(memberRepository, relationshipRepository, new ChangeLogRepository());
+        assertTrue(fresh.restore(snapshotOf(rebuilt, rebuilt.getChangeSeq(), rebuilt.getRebuildSeq())));
+        assertEquals(3, fresh.current().size());
+    }
+
+    private static int addMember(FamilyGraphStore store, MemberRepository memberRepository, String name, int generation)
+            throws SQLException {
+        return store.write(delta -> {
+            Member member = memberRepository.addMember(name, generation, 0);
+            delta.upsertMember(member);
+            return member.getMemberID();
+        });
+    }
+
+    private static GraphSnapshot snapshotOf(FamilyGraphStore.Checkpoint checkpoint, long changeSeq, long rebuildSeq)
+            throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GraphSnapshot.write(checkpoint.getGraph(), 1, changeSeq, rebuildSeq, bytes);
+        return GraphSnapshot.read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package service;
+
+import model.Member;
+import model.Relationship;
+import org.junit.jupiter.api.Test;
+import repository.MemberRepository;
+import repository.RelationshipRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 内存关系图测试：快照构建与基于快照的远亲计算
+ */
+public class FamilyGraphTest {
+
+    // 祖父 1，父亲 2，伯父 3，本人 4，堂妹 5
+    static class MemberRepositoryStub extends MemberRepository {
+        int loads;
+
+        @Override
+        public List<Member> getAllMembers() {
+            loads++;
+            return Arrays.asList(
+                    new Member(1, "Grandpa", 1, 0),
+                    new Member(2, "Father", 2, 0),
+                    new Member(3, "Uncle", 2, 0),
+                    new Member(4, "Me", 3, 0),
+                    new Member(5, "Cousin", 3, 1));
+        }
+    }
+
+    static class RelationshipRepositoryStub extends RelationshipRepository {
+        final List<Relationship> relationships = new ArrayList<>(Arrays.asList(
+                new Relationship(1, 2, 1, 3),
+                new Relationship(2, 1, 2, 5),
+                new Relationship(3, 3, 1, 3),
+                new Relationship(4, 1, 3, 6),
+                new Relationship(5, 4, 2, 3),
+                new Relationship(6, 2, 4, 5),
+                new Relationship(7, 5, 3, 3),
+                new Relationship(8, 3, 5, 8)));
+
+        RelationshipRepositoryStub(MemberRepository memberRepository) {
+            super(memberRepository);
+        }
+
+        @Override
+        public List<Relationship> getAllRelationships() throws SQLException {
+            return new ArrayList<>(relationships);
+        }
+
+        @Override
+        public List<Relationship> getRelationshipsAfter(int relationID) throws SQLException {
+            List<Relationship> result = new ArrayList<>();
+            for (Relationship r : relationships) {
+                if (r.getRelationID() > relationID) result.add(r);
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void testBuildIndexesMembersAndEdges() {
+        FamilyGraph graph = FamilyGraph.build(
+                Arrays.asList(new Member(10, "A", 1, 0), new Member(20, "B", 2, 1)),
+                Arrays.asList(new Relationship(2, 20, 10, 4), new Relationship(1, 10, 20, 8), new Relationship(3, 20, 99, 3)));
+
+        assertEquals(3, graph.size());
+        assertEquals(1, graph.indexOf(20));
+        assertEquals(-1, graph.indexOf(30));
+        assertFalse(graph.isPresent(graph.indexOf(99)));
+        assertNull(graph.member(graph.indexOf(99)));
+        assertEquals("B", graph.member(1).getName());
+
+        int b = graph.indexOf(20);
+        assertEquals(2, graph.outDegree(b));
+        assertEquals(2, graph.edgeRelationId(graph.outEdge(b, 0)));
+        int edge = graph.findOutEdge(graph.indexOf(10), b);
+        assertEquals(8, graph.edgeRelation(edge));
+        assertEquals(graph.indexOf(10), graph.edgeSource(edge));
+        assertEquals(3, graph.adjDegree(b));
+        assertEquals(3, graph.maxRelationId());
+    }
+
+    @Test
+    public void testUnknownRelationTypeSortsLast() {
+        // 类型 0、99 无对应优先级（导入或历史数据），应排在父子边之后
+        FamilyGraph graph = FamilyGraph.build(
+                Arrays.asList(new Member(1, "A", 1, 0), new Member(2, "B", 2, 0), new Member(3, "C", 2, 0), new Member(4, "D", 2, 0)),
+                Arrays.asList(new Relationship(1, 1, 2, 0), new Relationship(2, 1, 4, 99), new Relationship(3, 1, 3, 5)));
+
+        int a = graph.indexOf(1);
+        assertEquals(3, graph.adjDegree(a));
+        assertEquals(5, graph.adjRelation(a, 0));
+        assertEquals(graph.indexOf(3), graph.adjTarget(a, 0));
+        assertEquals(graph.indexOf(2), graph.adjTarget(a, 1));
+        assertEquals(graph.indexOf(4), graph.adjTarget(a, 2));
+    }
+
+    @Test
+    public void testDistantRelativeOnSnapshot() {
+        MemberRepositoryStub memberRepo = new MemberRepositoryStub();
+        FamilyGraphStore store = new FamilyGraphStore(memberRepo, new RelationshipRepositoryStub(memberRepo));
+        FamilyRelationshipCalculator calculator = new FamilyRelationshipCalculator(store);
+
+        FamilyRelationshipCalculator.DistantRelativeResult direct = calculator.findDistantRelative(4, 2);
+        assertEquals("直接关系：父亲", direct.getDescription());
+
+        FamilyRelationshipCalculator.DistantRelativeResult cousin = calculator.findDistantRelative(4, 5);
+        assertTrue(cousin.isDistantRelative());
+        assertEquals("堂兄弟/堂姐妹", cousin.getDescription());
+        assertEquals(1, cousin.getClosestCommonAncestorID());
+        assertEquals(1, cousin.getCommonAncestorCount());
+        List<Integer> path = new ArrayList<>();
+        for (FamilyRelationshipCalculator.PathNode node : cousin.getPathNodes()) {
+            path.add(node.getId());
+        }
+        assertEquals(Arrays.asList(4, 2, 1, 3, 5), path);
+        assertEquals("次子", cousin.getPathEdges().get(2).getDescription());
+
+        assertFalse(calculator.findDistantRelative(4, 42).isDistantRelative());
+        assertEquals(1, memberRepo.loads);
+    }
+
+    @Test
+    public void testClosestCommonAncestorCountsGenerationsNotShortcuts() {
+        // 曾祖 1，祖父 2，父亲 3，伯父 4，本人 5，堂兄 6；没有“曾祖父”类型，旧数据以“爷爷”(19) 直连曾祖
+        FamilyGraph graph = FamilyGraph.build(
+                Arrays.asList(new Member(1, "Great-grandpa", 1, 0), new Member(2, "Grandpa", 2, 0),
+                        new Member(3, "Father", 3, 0), new Member(4, "Uncle", 3, 0),
+                        new Member(5, "Me", 4, 0), new Member(6, "Cousin", 4, 0)),
+                Arrays.asList(new Relationship(1, 2, 1, 3), new Relationship(2, 3, 2, 3), new Relationship(3, 4, 2, 3),
+                        new Relationship(4, 5, 3, 3), new Relationship(5, 6, 4, 3),
+                        new Relationship(6, 5, 1, 19), new Relationship(7, 6, 1, 19)));
+
+        // 按任意边的跳数，曾祖（1 + 1）比祖父（2 + 2）近；按父母关系的代数，祖父（2 + 2）比曾祖（3 + 3）近
+        CommonAncestors ancestors = CommonAncestors.find(graph, graph.indexOf(5), graph.indexOf(6));
+        assertEquals(2, ancestors.count);
+        assertEquals(2, graph.memberId(ancestors.closest));
+        assertEquals(2, ancestors.distance1);
+        assertEquals(2, ancestors.distance2);
+    }
+
+    @Test
+    public void testAllRelativesMatchPairwiseQueries() throws SQLException {
+        MemberRepositoryStub memberRepo = new MemberRepositoryStub();
+        FamilyGraphStore store = new FamilyGraphStore(memberRepo, new RelationshipRepositoryStub(memberRepo));
+        FamilyRelationshipCalculator calculator = new FamilyRelationshipCalculator(store);
+
+        FamilyRelationshipCalculator.RelativesResult relatives = calculator.findAllRelatives(4);
+        assertEquals("Me", relatives.getName());
+        List<Integer> ids = new ArrayList<>();
+        for (FamilyRelationshipCalculator.RelativeEntry entry : relatives) {
+            ids.add(entry.getMemberID());
+            FamilyRelationshipCalculator.DistantRelativeResult expected = calculator.findDistantRelative(4, entry.getMemberID());
+            assertEquals(expected.getDescription(), entry.getResult().getDescription());
+            assertEquals(expected.getClosestCommonAncestorID(), entry.getResult().getClosestCommonAncestorID());
+            assertEquals(expected.getPathEdges().size(), entry.getResult().getPathEdges().size());
+        }
+        // 按距离由近到远：父亲、祖父、伯父、堂妹
+        assertEquals(Arrays.asList(2, 1, 3, 5), ids);
+        assertNull(calculator.findAllRelatives(42));
+    }
+
+    @Test
+    public void testBatchMatchesPairwiseQueries() throws SQLException {
+        MemberRepositoryStub memberRepo = new MemberRepositoryStub();
+        FamilyGraphStore store = new FamilyGraphStore(memberRepo, new RelationshipRepositoryStub(memberRepo));
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            FamilyRelationshipCalculator calculator = new FamilyRelationshipCalculator(store, pool);
+            List<int[]> pairs = Arrays.asList(new int[]{4, 5}, new int[]{4, 1}, new int[]{5, 4}, new int[]{4, 5}, new int[]{3, 42});
+
+            List<FamilyRelationshipCalculator.DistantRelativeResult> results = calculator.findDistantRelatives(pairs);
+
+            assertEquals(pairs.size(), results.size());
+            for (int i = 0; i < pairs.size(); i++) {
+                FamilyRelationshipCalculator.DistantRelativeResult expected = calculator.findDistantRelative(pairs.get(i)[0], pairs.get(i)[1]);
+                assertEquals(expected.getDescription(), results.get(i).getDescription());
+                assertEquals(expected.getClosestCommonAncestorID(), results.get(i).getClosestCommonAncestorID());
+                assertEquals(expected.getPathNodes().size(), results.get(i).getPathNodes().size());
+            }
+            assertSame(results.get(0), results.get(3));
+            assertEquals("成员不存在", results.get(4).getDescription());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWritePublishesNewVersion() throws SQLException {
+        MemberRepositoryStub memberRepo = new MemberRepositoryStub();
+        RelationshipRepositoryStub relationRepo = new RelationshipRepositoryStub(memberRepo);
+        FamilyGraphStore store = new FamilyGraphStore(memberRepo, relationRepo);
+
+        FamilyGraph before = store.current();
+        assertSame(before, store.current());
+        assertEquals(1, before.version());
+
+        boolean added = store.write(delta -> relationRepo.relationships.add(new Relationship(9, 4, 5, 15)));
+        FamilyGraph after = store.current();
+
+        assertTrue(added);
+        assertEquals(2, after.version());
+        assertEquals(2, store.version());
+        assertTrue(after.findOutEdge(after.indexOf(4), after.indexOf(5)) >= 0);
+        // 旧快照保持不变，正在进行的读取不受影响
+        assertEquals(-1, before.findOutEdge(before.indexOf(4), before.indexOf(5)));
+    }
+
+    @Test
+    public void testWriteBeforeFirstReadDoesNotLoad() throws SQLException {
+        MemberRepositoryStub memberRepo = new MemberRepositoryStub();
+        FamilyGraphStore store = new FamilyGraphStore(memberRepo, new RelationshipRepositoryStub(memberRepo));
+
+        store.write(delta -> null);
+
+        assertEquals(0, memberRepo.loads);
+        assertEquals(0, store.version());
+        assertEquals(1, store.current().version());
+    }
+
+    @Test
+    public void testApplyDeltaMatchesFullBuild() {
+        MemberRepositoryStub memberRepo = new MemberRepositoryStub();
+        List<Member> members = new ArrayList<>(memberRepo.getAllMembers());
+        List<Relationship> relationships = new ArrayList<>(new RelationshipRepositoryStub(memberRepo).relationships);
+        FamilyGraph base = FamilyGraph.build(members, relationships, 1);
+
+        GraphDelta delta = new GraphDelta();
+        Member son = new Member(6, "Son", 4, 0);
+        delta.upsertMember(son);
+        delta.upsertMember(new Member(3, "Uncle Renamed", 2, 0));
+        delta.removeMember(5);
+        delta.removeEdge(4);
+        delta.addEdge(new Relationship(10, 6, 4, 3));
+        delta.addEdge(new Relationship(11, 4, 6, 5));
+        delta.addEdge(new Relationship(12, 6, 7, 15));
+
+        FamilyGraph next = base.apply(delta, 2);
+        assertNotNull(next);
+        assertEquals(2, next.version());
+
+        members.add(son);
+        members.set(2, new Member(3, "Uncle Renamed", 2, 0));
+        members.remove(4);
+        relationships.remove(3);
+        relationships.addAll(delta.getAddedEdges());
+        assertSameGraph(FamilyGraph.build(members, relationships, 2), next);
+
+        // 旧快照不受影响，重复应用同一增量结果不变
+        assertEquals("Uncle", base.name(base.indexOf(3)));
+        assertEquals(8, base.relationshipCount());
+        assertSameGraph(next, next.apply(delta, 3));
+    }
+
+    @Test
+    public void testApplyUnknownRelationTypeMatchesFullBuild() {
+        List<Member> members = new ArrayList<>(Arrays.asList(
+                new Member(1, "A", 1, 0), new Member(2, "B", 2, 0), new Member(3, "C", 2, 1)));
+        List<Relationship> relationships = new ArrayList<>(Arrays.asList(
+                new Relationship(1, 1, 2, 99), new Relationship(2, 1, 3, 5)));
+        FamilyGraph base = FamilyGraph.build(members, relationships, 1);
+
+        GraphDelta delta = new GraphDelta();
+        delta.upsertMember(new Member(4, "D", 2, 0));
+        delta.addEdge(new Relationship(3, 1, 4, 0));
+        delta.addEdge(new Relationship(4, 4, 1, 3));
+        delta.addEdge(new Relationship(5, 2, 1, 120));
+        FamilyGraph applied = base.apply(delta, 2);
+        assertNotNull(applied);
+
+        members.add(new Member(4, "D", 2, 0));
+        relationships.addAll(delta.getAddedEdges());
+        assertSameGraph(FamilyGraph.build(members, relationships, 2), applied);
+        int a = applied.indexOf(1);
+        assertEquals(5, applied.adjRelation(a, 0));
+        assertEquals(0, applied.adjRelation(a, applied.adjDegree(a) - 1));
+    }
+
+    @Test
+    public void testDiffAgainstDatabaseRows() {
+        MemberRepositoryStub memberRepo = new MemberRepositoryStub();
+        List<Member> members = new ArrayList<>(memberRepo.getAllMembers());
+        List<Relationship> relationships = new ArrayList<>(new RelationshipRepositoryStub(memberRepo).relationships);
+        FamilyGraph base = FamilyGraph.build(members, relationships, 1);
+        assertTrue(base.diff(members, relationships).isEmpty());
+
+        // 其他进程改名、删成员、删关系行并新增成员与关系
+        members.set(2, new Member(3, "Uncle", 2, 0, "remark"));
+        members.remove(4);
+        members.add(new Member(6, "Son", 4, 0));
+        relationships.remove(6);
+        relationships.add(new Relationship(9, 6, 4, 3));
+        GraphDelta delta = base.diff(members, relationships);
+        assertFalse(delta.isFullReload());
+        assertEquals(2, delta.getUpsertedMembers().size());
+        assertEquals(Set.of(5), delta.getRemovedMembers());
+        assertEquals(Set.of(7), delta.getRemovedEdges());
+        assertSameGraph(FamilyGraph.build(members, relationships, 2), base.apply(delta, 2));
+
+        // 已有 RelationID 的行内容变化时只能全量重建
+        relationships.set(0, new Relationship(1, 2, 1, 4));
+        assertTrue(base.diff(members, relationships).isFullReload());
+    }
+
+    @Test
+    public void testApplyRejectsOutOfOrderIds() {
+        FamilyGraph base = FamilyGraph.build(
+                Arrays.asList(new Member(10, "A", 1, 0), new Member(20, "B", 2, 1)),
+                Arrays.asList(new Relationship(5, 10, 20, 2)));
+
+        GraphDelta lowerMember = new GraphDelta();
+        lowerMember.upsertMember(new Member(15, "C", 1, 0));
+        assertNull(base.apply(lowerMember, 1));
+
+        GraphDelta lowerRelation = new GraphDelta();
+        lowerRelation.addEdge(new Relationship(3, 20, 10, 1));
+        assertNull(base.apply(lowerRelation, 1));
+    }
+
+    @Test
+    public void testCommonAncestorsBeyondTenGenerationsAndThroughMother() {
+        // 1..15 为一条父系直线；16 与 17 分别是 15 的儿子与女儿；18 为 17 的儿子，19 为 16 的儿子
+        List<Member> members = new ArrayList<>();
+        List<Relationship> relationships = new ArrayList<>();
+        for (int id = 1; id <= 19; id++) {
+            members.add(new Member(id, "M" + id, id, id == 17 ? 1 : 0));
+        }
+        int relationId = 1;
+        for (int id = 2; id <= 15; id++) {
+            relationships.add(new Relationship(relationId++, id, id - 1, 3));
+        }
+        relationships.add(new Relationship(relationId++, 16, 15, 3));
+        relationships.add(new Relationship(relationId++, 17, 15, 3));
+        relationships.add(new Relationship(relationId++, 18, 17, 4));
+        relationships.add(new Relationship(relationId, 19, 16, 3));
+        FamilyGraph graph = FamilyGraph.build(members, relationships);
+
+        CommonAncestors result = CommonAncestors.find(graph, graph.indexOf(18), graph.indexOf(19));
+        assertEquals(15, graph.memberId(result.closest));
+        assertEquals(2, result.distance1);
+        assertEquals(2, result.distance2);
+        assertEquals(15, result.count);
+
+        CommonAncestors none = CommonAncestors.find(graph, graph.indexOf(1), graph.indexOf(19));
+        assertEquals(-1, none.closest);
+        assertEquals(0, none.count);
+    }
+
+    @Test
+    public void testBidirectionalPathMatchesOneSidedSearch() {
+        Random random = new Random(3);
+        List<Member> members = new ArrayList<>();
+        for (int id = 1; id <= 60; id++) {
+            members.add(new Member(id, "M" + id, 1, id % 2));
+        }
+        List<Relationship> relationships = new ArrayList<>();
+        for (int relationId = 1; relationId <= 150; relationId++) {
+            relationships.add(new Relationship(relationId, 1 + random.nextInt(60), 1 + random.nextInt(60), 1 + random.nextInt(32)));
+        }
+        FamilyGraph graph = FamilyGraph.build(members, relationships);
+
+        for (int from = 0; from < graph.size(); from += 3) {
+            for (int to = 0; to < graph.size(); to += 2) {
+                ShortestPathSearch search = ShortestPathSearch.find(graph, from, to);
+                int[] expected = oneSidedPath(graph, from, to);
+                if (expected == null) {
+                    assertNull(search);
+                } else {
+                    assertArrayEquals(expected, search.nodes, "path " + from + " -> " + to);
+                    assertTrue(search.expanded <= graph.size() * 2);
+                }
+            }
+        }
+    }
+
+    /** 原先的单向 Dijkstra，作为路径与并列取舍的参照 */
+    private static int[] oneSidedPath(FamilyGraph graph, int from, int to) {
+        int[] dist = new int[graph.size()];
+        int[] prev = new int[graph.size()];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        PriorityQueue<long[]> queue = new PriorityQueue<>((x, y) -> x[0] != y[0] ? Long.compare(x[0], y[0]) : Long.compare(x[1], y[1]));
+        dist[from] = 0;
+        queue.add(new long[]{0, from});
+        while (!queue.isEmpty()) {
+            long[] top = queue.poll();
+            int cur = (int) top[1];
+            if (top[0] != dist[cur]) continue;
+            if (cur == to) break;
+            for (int i = 0; i < graph.adjDegree(cur); i++) {
+                int next = graph.adjTarget(cur, i);
+                int nextDist = dist[cur] + ShortestPathSearch.weight(graph.adjRelation(cur, i));
+                if (nextDist < dist[next]) {
+                    dist[next] = nextDist;
+                    prev[next] = cur;
+                    queue.add(new long[]{nextDist, next});
+                }
+            }
+        }
+        if (dist[to] == Integer.MAX_VALUE) {
+            return null;
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int cur = to; cur != from; cur = prev[cur]) {
+            order.add(0, cur);
+        }
+        order.add(0, from);
+        return order.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void assertSameGraph(FamilyGraph expected, FamilyGraph actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.relationshipCount(), actual.relationshipCount());
+        assertEquals(expected.maxRelationId(), actual.maxRelationId());
+        for (int idx = 0; idx < expected.size(); idx++) {
+            assertEquals(expected.memberId(idx), actual.memberId(idx));
+            assertEquals(expected.name(idx), actual.name(idx));
+            assertEquals(expected.gender(idx), actual.gender(idx));
+            assertEquals(expected.generation(idx), actual.generation(idx));
+            assertEquals(describeOut(expected, idx), describeOut(actual, idx));
+            assertEquals(describeAdjacency(expected, idx), describeAdjacency(actual, idx));
+        }
+    }
+
+    private static List<String> describeOut(FamilyGraph graph, int idx) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < graph.outDegree(idx); i++) {
+            int e = graph.outEdge(idx, i);
+            result.add(graph.edgeRelationId(e) + ":" + graph.memberId(graph.edgeTarget(e)) + ":" + graph.edgeRelation(e));
+        }
+        return result;
+    }
+
+    private static List<String> describeAdjacency(FamilyGraph graph, int idx) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < graph.adjDegree(idx); i++) {
+            result.add(graph.edgeRelationId(graph.adjEdge(idx, i)) + ":" + graph.memberId(graph.adjTarget(idx, i))
+                    + ":" + graph.adjRelation(idx, i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,363 @@
+package controller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import service.ChangeService;
+import service.DataVersion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * /events 的变更广播：数据版本递增时由单个 change-feed 线程从变更日志读取新条目，每批只编码一次为 SSE 消息，
+ * 同一份字节放入每个订阅者的有界队列。每个订阅者有自己的发送线程，不占用 HTTP 工作线程；
+ * 慢速客户端只会填满自己的队列，队列满时立即断开并释放其缓冲与订阅名额，客户端重连后按 Last-Event-ID 续传。
+ * 消息 id 是变更序号：新订阅者从给定序号补发，差距超过队列容量或序号无效时发送 reset，客户端应全量重新加载。
+ */
+public class ChangeFeed implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ChangeFeed.class);
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLOSED = new byte[0];
+
+    private final ChangeService changeService;
+    private final DataVersion dataVersion;
+    private final int bufferEvents;
+    private final long heartbeatMillis;
+    private final int maxSubscribers;
+    private final BlockingQueue<Boolean> wakeups = new ArrayBlockingQueue<>(1);
+    private final Runnable wakeup = () -> wakeups.offer(Boolean.TRUE);
+    private final Queue<Subscription> pending = new ConcurrentLinkedQueue<>();
+    private final Set<Subscription> subscribers = ConcurrentHashMap.newKeySet();
+    /** 已占用的订阅名额，发送线程退出后才归还 */
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong resetCount = new AtomicLong();
+    private Thread feedThread;
+    private volatile boolean closed;
+    /** 已广播到的变更序号，只由 publish 修改；尚未读到日志时为 -1 */
+    private volatile long seq = -1;
+
+    public ChangeFeed(ChangeService changeService, DataVersion dataVersion, int bufferEvents, long heartbeatMillis,
+                      int maxSubscribers) {
+        if (bufferEvents < 2 || heartbeatMillis <= 0 || maxSubscribers <= 0) {
+            throw new IllegalArgumentException("Event buffer must hold at least 2 messages, heartbeat and subscriber limit must be positive");
+        }
+        this.changeService = changeService;
+        this.dataVersion = dataVersion;
+        this.bufferEvents = bufferEvents;
+        this.heartbeatMillis = heartbeatMillis;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    /** 启动广播线程：每次数据版本递增时唤醒，另外每个心跳间隔检查一次 */
+    public synchronized void start() {
+        if (feedThread != null) {
+            return;
+        }
+        dataVersion.addListener(wakeup);
+        feedThread = new Thread(this::run, "change-feed");
+        feedThread.setDaemon(true);
+        feedThread.start();
+        logger.info("Change feed started: buffer {} messages per subscriber, heartbeat {} ms, at most {} subscribers",
+                bufferEvents, heartbeatMillis, maxSubscribers);
+    }
+
+    /**
+     * 占用一个订阅名额；since 为客户端已收到的最后序号，-1 表示从当前开始。名额用完时返回 null。
+     * 返回的订阅在 start 之后才开始接收消息。
+     */
+    public Subscription subscribe(long since) {
+        if (closed) {
+            return null;
+        }
+        while (true) {
+            int current = connections.get();
+            if (current >= maxSubscribers) {
+                return null;
+            }
+            if (connections.compareAndSet(current, current + 1)) {
+                return new Subscription(since);
+            }
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                wakeups.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (!closed) {
+                    publish();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (SQLException | RuntimeException e) {
+                logger.warn("Change feed failed to read the change log: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 读取上次序号之后的变更并广播，再接纳等待中的订阅者。订阅者在两次广播之间加入，
+     * 补发与之后的广播之间不会漏掉变更；重复收到同一变更时数据是当前行，重复应用没有副作用。
+     */
+    synchronized void publish() throws SQLException {
+        if (seq < 0) {
+            seq = changeService.getLatestSeq();
+        } else {
+            while (true) {
+                ChangeService.ChangeSet changes = changeService.getChangesSince(seq, ChangeController.DEFAULT_LIMIT);
+                if (changes == null) {
+                    // 日志序号倒退（数据库被替换）或整库重建过，所有客户端都需要全量重新加载
+                    seq = changeService.getLatestSeq();
+                    byte[] reset = sequenceEvent("reset", seq);
+                    for (Subscription subscriber : subscribers) {
+                        resetCount.incrementAndGet();
+                        subscriber.offer(reset);
+                    }
+                    break;
+                }
+                if (changes.getNext() == seq) {
+                    break;
+                }
+                seq = changes.getNext();
+                if (!changes.getEntries().isEmpty()) {
+                    byte[] message = changesEvent(changes);
+                    for (Subscription subscriber : subscribers) {
+                        subscriber.offer(message);
+                    }
+                }
+                if (!changes.hasMore()) {
+                    break;
+                }
+            }
+        }
+        Subscription subscriber;
+        while ((subscriber = pending.poll()) != null) {
+            admit(subscriber);
+        }
+    }
+
+    /** 补发 since 之后的变更，最后发送 ready；补发超过队列容量或 since 无效时改为 reset */
+    private void admit(Subscription subscriber) throws SQLException {
+        if (!subscriber.open) {
+            return;
+        }
+        List<byte[]> replay = new ArrayList<>();
+        long from = subscriber.since;
+        boolean reset = from > seq;
+        while (!reset && from >= 0 && from < seq) {
+            ChangeService.ChangeSet changes = changeService.getChangesSince(from, ChangeController.DEFAULT_LIMIT);
+            if (changes == null || replay.size() == bufferEvents - 1) {
+                reset = true;
+                break;
+            }
+            if (!changes.getEntries().isEmpty()) {
+                replay.add(changesEvent(changes));
+            }
+            if (!changes.hasMore() || changes.getNext() == from) {
+                break;
+            }
+            from = changes.getNext();
+        }
+        if (reset) {
+            resetCount.incrementAndGet();
+            subscriber.offer(sequenceEvent("reset", seq));
+        } else {
+            for (byte[] message : replay) {
+                subscriber.offer(message);
+            }
+            subscriber.offer(sequenceEvent("ready", seq));
+        }
+        subscribers.add(subscriber);
+        // 入队时订阅者可能已断开，此时不再保留
+        if (!subscriber.open) {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    public EventStats getStats() {
+        return new EventStats(seq, subscribers.size(), connections.get(), maxSubscribers, bufferEvents,
+                messageCount.get(), droppedCount.get(), resetCount.get());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dataVersion.removeListener(wakeup);
+        synchronized (this) {
+            if (feedThread != null) {
+                feedThread.interrupt();
+                feedThread = null;
+            }
+        }
+        for (Subscription subscriber : pending) {
+            subscriber.close();
+        }
+        for (Subscription subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    private static byte[] changesEvent(ChangeService.ChangeSet changes) {
+        return event("changes", changes.getNext(), json -> ChangeController.writeChanges(json, changes));
+    }
+
+    private static byte[] sequenceEvent(String name, long seq) {
+        return event(name, seq, json -> json.beginObject().field("next", seq).endObject());
+    }
+
+    /** 一条 SSE 消息：id 为变更序号，data 为单行 JSON */
+    private static byte[] event(String name, long id, JsonStreamWriter.Body body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            bytes.write(("id: " + id + "\nevent: " + name + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+            JsonStreamWriter json = new JsonStreamWriter(bytes);
+            body.writeTo(json);
+            json.flush();
+            bytes.write('\n');
+            bytes.write('\n');
+        } catch (IOException | SQLException e) {
+            throw new IllegalStateException("Failed to encode event", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** 一个 /events 连接：有界消息队列与独立的发送线程 */
+    public final class Subscription {
+        private final long since;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(bufferEvents);
+        private volatile boolean open = true;
+        private Thread sender;
+
+        private Subscription(long since) {
+            this.since = since;
+        }
+
+        /** 开始向 out 发送消息，等待下一次广播时补发并加入 */
+        public synchronized void start(OutputStream out) {
+            if (!open || sender != null) {
+                return;
+            }
+            sender = new Thread(() -> send(out), "sse-" + threadCounter.incrementAndGet());
+            sender.setDaemon(true);
+            sender.start();
+            pending.add(this);
+            wakeup.run();
+        }
+
+        /** 放入一条消息，队列已满时断开该订阅者 */
+        private void offer(byte[] message) {
+            if (!open) {
+                return;
+            }
+            if (queue.offer(message)) {
+                messageCount.incrementAndGet();
+                return;
+            }
+            droppedCount.incrementAndGet();
+            logger.warn("Dropping slow event subscriber {} with {} undelivered messages", sender.getName(), queue.size());
+            close();
+        }
+
+        /**
+         * 断开并释放缓冲。发送线程可能阻塞在写出上（客户端不再读取，HttpServer 没有写超时），
+         * 关闭 exchange 或输出流都无法让它返回；套接字通道可被中断，中断发送线程会关闭连接使写出立即失败。
+         */
+        public void close() {
+            if (!open) {
+                return;
+            }
+            open = false;
+            subscribers.remove(this);
+            queue.clear();
+            queue.offer(CLOSED);
+            synchronized (this) {
+                if (sender == null) {
+                    connections.decrementAndGet();
+                } else if (sender != Thread.currentThread()) {
+                    sender.interrupt();
+                }
+            }
+        }
+
+        private void send(OutputStream out) {
+            try {
+                while (open) {
+                    byte[] message = queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                    if (message == CLOSED || !open) {
+                        break;
+                    }
+                    out.write(message != null ? message : HEARTBEAT);
+                    // 积压的消息一起写出，只刷新一次
+                    while ((message = queue.poll()) != null && message != CLOSED) {
+                        out.write(message);
+                    }
+                    out.flush();
+                    if (message == CLOSED) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                logger.debug("Event subscriber {} disconnected: {}", Thread.currentThread().getName(), e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+                connections.decrementAndGet();
+            }
+        }
+    }
+
+    public static class EventStats {
+        private final long seq;
+        private final int subscribers;
+        private final int connections;
+        private final int maxSubscribers;
+        private final int bufferEvents;
+        private final long messageCount;
+        private final long droppedCount;
+        private final long resetCount;
+
+        public EventStats(long seq, int subscribers, int connections, int maxSubscribers, int bufferEvents,
+                          long messageCount, long droppedCount, long resetCount) {
+            this.seq = seq;
+            this.subscribers = subscribers;
+            this.connections = connections;
+            this.maxSubscribers = maxSubscribers;
+            this.bufferEvents = bufferEvents;
+            this.messageCount = messageCount;
+            this.droppedCount = droppedCount;
+            this.resetCount = resetCount;
+        }
+
+        public long getSeq() { return seq; }
+        public int getSubscribers() { return subscribers; }
+        public int getConnections() { return connections; }
+        public int getMaxSubscribers() { return maxSubscribers; }
+        public int getBufferEvents() { return bufferEvents; }
+        public long getMessageCount() { return messageCount; }
+        public long getDroppedCount() { return droppedCount; }
+        public long getResetCount() { return resetCount; }
+    }
+}
@@ -0,0 +1,233 @@
+package controller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 固定容量的 SQLite 连接池：启动时预热全部连接，close() 归还而非关闭物理连接 */
+public class ConnectionPool {
+    private static final Logger logger = LogManager.getLogger(ConnectionPool.class);
+
+    private final String url;
+    private final Properties connectionProperties;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final BlockingQueue<Connection> idle;
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, int maxSize, long acquireTimeoutMillis) throws SQLException {
+        this(url, new Properties(), maxSize, acquireTimeoutMillis);
+    }
+
+    /** connectionProperties 在打开每个物理连接时传给驱动，如 busy_timeout、transaction_mode */
+    public ConnectionPool(String url, Properties connectionProperties, int maxSize, long acquireTimeoutMillis) throws SQLException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        this.url = url;
+        this.connectionProperties = connectionProperties;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+        for (int i = 0; i < maxSize; i++) {
+            idle.add(openPhysical());
+        }
+    }
+
+    /** 借出一个连接；池空时最多等待 acquireTimeoutMillis */
+    public Connection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        acquireCount.incrementAndGet();
+        Connection physical = idle.poll();
+        if (physical == null) {
+            physical = tryGrow();
+        }
+        if (physical == null) {
+            waitCount.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                physical = idle.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            }
+            long waited = System.nanoTime() - start;
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            if (physical == null) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Timed out after " + acquireTimeoutMillis + " ms waiting for a database connection");
+            }
+        }
+        active.incrementAndGet();
+        return wrap(physical);
+    }
+
+    public PoolStats getStats() {
+        return new PoolStats(maxSize, created.get(), active.get(), idle.size(), acquireCount.get(), waitCount.get(),
+                timeoutCount.get(), TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get()),
+                TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()));
+    }
+
+    public void close() {
+        closed = true;
+        Connection physical;
+        while ((physical = idle.poll()) != null) {
+            closeQuietly(physical);
+        }
+    }
+
+    private Connection tryGrow() throws SQLException {
+        while (true) {
+            int current = created.get();
+            if (current >= maxSize) {
+                return null;
+            }
+            if (created.compareAndSet(current, current + 1)) {
+                try {
+                    return DriverManager.getConnection(url, connectionProperties);
+                } catch (SQLException e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection conn = DriverManager.getConnection(url, connectionProperties);
+        created.incrementAndGet();
+        return conn;
+    }
+
+    private void release(Connection physical) {
+        active.decrementAndGet();
+        try {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.warn("Discarding broken pooled connection: {}", e.getMessage());
+            discard(physical);
+            return;
+        }
+        if (closed || !idle.offer(physical)) {
+            discard(physical);
+        }
+    }
+
+    private void discard(Connection physical) {
+        created.decrementAndGet();
+        closeQuietly(physical);
+    }
+
+    private static void closeQuietly(Connection physical) {
+        try {
+            physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private Connection wrap(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new PooledConnectionHandler(physical));
+    }
+
+    /** 代理借出的连接：close() 归还到池，重复 close 无副作用 */
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection physical;
+        private boolean returned;
+
+        private PooledConnectionHandler(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    if (returned) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    /** 连接池运行指标快照 */
+    public static class PoolStats {
+        private final int maxSize;
+        private final int total;
+        private final int active;
+        private final int idle;
+        private final long acquireCount;
+        private final long waitCount;
+        private final long timeoutCount;
+        private final long totalWaitMicros;
+        private final long maxWaitMicros;
+
+        public PoolStats(int maxSize, int total, int active, int idle, long acquireCount, long waitCount,
+                         long timeoutCount, long totalWaitMicros, long maxWaitMicros) {
+            this.maxSize = maxSize;
+            this.total = total;
+            this.active = active;
+            this.idle = idle;
+            this.acquireCount = acquireCount;
+            this.waitCount = waitCount;
+            this.timeoutCount = timeoutCount;
+            this.totalWaitMicros = totalWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+        }
+
+        public int getMaxSize() { return maxSize; }
+        public int getTotal() { return total; }
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public long getAcquireCount() { return acquireCount; }
+        public long getWaitCount() { return waitCount; }
+        public long getTimeoutCount() { return timeoutCount; }
+        public long getTotalWaitMicros() { return totalWaitMicros; }
+        public long getMaxWaitMicros() { return maxWaitMicros; }
+    }
+}
@@ -3,6 +3,7 @@ package controller;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import model.Relationship;
+import service.DataVersion;
 import service.FamilyRelationshipCalculator;
 import service.RelationshipService;
 import org.json.JSONArray;
@@ -11,20 +12,38 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class RelationshipController implements HttpHandler {
     private static final Logger logger = LogManager.getLogger(RelationshipController.class);
+    private static final String BATCH_PATH = "/relationship/distant-relative/batch";
+    private static final String ADD_BATCH_PATH = "/relationship/batch";
+    /** 列表可投影的字段，顺序即输出顺序；除 relationID 与 description 外与 RelationshipRepository.PAGE_COLUMNS 同名 */
+    private static final List<String> RELATIONSHIP_FIELDS = List.of("relationID", "member1", "member1Name", "member2",
+            "member2Name", "relation", "description");
     private RelationshipService relationshipService;
+    private final DataVersion dataVersion;
+    private final ResponseCache responseCache;
     private final int maxBodyBytes;
     private final int maxQueryLength;
+    private final int maxBatchSize;
 
-    public RelationshipController(RelationshipService relationshipService, int maxBodyBytes, int maxQueryLength) {
+    public RelationshipController(RelationshipService relationshipService, DataVersion dataVersion, ResponseCache responseCache,
+                                  int maxBodyBytes, int maxQueryLength, int maxBatchSize) {
         this.relationshipService = relationshipService;
+        this.dataVersion = dataVersion;
+        this.responseCache = responseCache;
         this.maxBodyBytes = maxBodyBytes;
         this.maxQueryLength = maxQueryLength;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
@@ -36,7 +55,13 @@ public class RelationshipController implements HttpHandler {
                     handleGet(exchange);
                     break;
                 case "POST":
-                    handlePost(exchange);
+                    if (BATCH_PATH.equals(exchange.getRequestURI().getPath())) {
+                        handleDistantRelativeBatch(exchange);
+                    } else if (ADD_BATCH_PATH.equals(exchange.getRequestURI().getPath())) {
+                        handleAddBatch(exchange);
+                    } else {
+                        handlePost(exchange);
+                    }
                     break;
                 default:
                     sendResponse(exchange, 405, createErrorResponse("Method Not Allowed"), "no-store");
@@ -70,64 +95,270 @@ public class RelationshipController implements HttpHandler {
                 return;
             }
 
-            // 验证必需字段存在
-            if (!json.has("member1ID") || !json.has("member2ID") || !json.has("relationType")) {
-                sendResponse(exchange, 400, createErrorResponse("Missing required fields: member1ID, member2ID, and relationType are required"), "no-store");
+            int[] item;
+            try {
+                item = parseRelationship(json);
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, 400, createErrorResponse(e.getMessage()), "no-store");
                 return;
             }
 
-            // 验证字段类型和值
-            int member1ID, member2ID, relationType;
+            // 尝试添加关系
+            boolean success = relationshipService.addRelationship(item[0], item[1], item[2]);
+            if (success) {
+                sendResponse(exchange, 201, createSuccessResponse("Relationship added successfully"), "no-store");
+            } else {
+                sendResponse(exchange, 400, createErrorResponse("Failed to add relationship. Please check if members exist and the relationship is valid."), "no-store");
+            }
+        } catch (Exception e) {
+            logger.error("Error in handlePost: {}", e.getMessage());
+            sendResponse(exchange, 500, createErrorResponse("Internal Server Error"), "no-store");
+        }
+    }
+
+    /** 校验单条关系的字段，返回 {member1ID, member2ID, relationType}；不合法时抛出带错误信息的 IllegalArgumentException */
+    private int[] parseRelationship(JSONObject json) {
+        // 验证必需字段存在
+        if (!json.has("member1ID") || !json.has("member2ID") || !json.has("relationType")) {
+            throw new IllegalArgumentException("Missing required fields: member1ID, member2ID, and relationType are required");
+        }
+
+        // 验证字段类型和值
+        int member1ID, member2ID, relationType;
+        try {
+            member1ID = json.getInt("member1ID");
+            member2ID = json.getInt("member2ID");
+            relationType = json.getInt("relationType");
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid field type: member1ID, member2ID, and relationType must be integers");
+        }
+
+        // 验证字段值的有效性
+        if (member1ID <= 0) {
+            throw new IllegalArgumentException("member1ID must be positive");
+        }
+        if (member2ID <= 0) {
+            throw new IllegalArgumentException("member2ID must be positive");
+        }
+        if (relationType < 1 || relationType > 32) {
+            throw new IllegalArgumentException("relationType must be between 1 and 32");
+        }
+
+        // 验证成员不能是同一个人
+        if (member1ID == member2ID) {
+            throw new IllegalArgumentException("member1ID and member2ID cannot be the same");
+        }
+        return new int[]{member1ID, member2ID, relationType};
+    }
+
+    /**
+     * 批量添加关系：请求体为 {"relationships":[{"member1ID":1,"member2ID":2,"relationType":5}, ...]}。
+     * 先校验全部条目，任一无效时返回 400 与各条目的结果且不写入；全部有效时在一个事务内按顺序添加并推导，返回 201。
+     */
+    private void handleAddBatch(HttpExchange exchange) throws IOException {
+        try {
+            String requestBody = readRequestBody(exchange);
+            if (requestBody == null) {
+                sendResponse(exchange, 413, createErrorResponse("Request body too large"), "no-store");
+                return;
+            }
+            JSONArray itemsJson;
             try {
-                member1ID = json.getInt("member1ID");
-                member2ID = json.getInt("member2ID");
-                relationType = json.getInt("relationType");
+                itemsJson = new JSONObject(requestBody).getJSONArray("relationships");
             } catch (Exception e) {
-                sendResponse(exchange, 400, createErrorResponse("Invalid field type: member1ID, member2ID, and relationType must be integers"), "no-store");
+                sendResponse(exchange, 400, createErrorResponse("Request body must be {\"relationships\": [...]}"), "no-store");
+                return;
+            }
+            if (itemsJson.isEmpty()) {
+                sendResponse(exchange, 400, createErrorResponse("relationships cannot be empty"), "no-store");
+                return;
+            }
+            if (itemsJson.length() > maxBatchSize) {
+                sendResponse(exchange, 400, createErrorResponse("At most " + maxBatchSize + " relationships per batch"), "no-store");
                 return;
             }
 
-            // 验证字段值的有效性
-            if (member1ID <= 0) {
-                sendResponse(exchange, 400, createErrorResponse("member1ID must be positive"), "no-store");
+            List<int[]> items = new ArrayList<>(itemsJson.length());
+            List<String> errors = new ArrayList<>(itemsJson.length());
+            for (int i = 0; i < itemsJson.length(); i++) {
+                try {
+                    JSONObject itemJson = itemsJson.optJSONObject(i);
+                    if (itemJson == null) {
+                        throw new IllegalArgumentException("Each item must be an object");
+                    }
+                    items.add(parseRelationship(itemJson));
+                    errors.add(null);
+                } catch (IllegalArgumentException e) {
+                    items.add(null);
+                    errors.add(e.getMessage());
+                }
+            }
+            if (errors.stream().allMatch(Objects::isNull)) {
+                errors = relationshipService.addRelationships(items);
+            }
+
+            boolean valid = errors.stream().allMatch(Objects::isNull);
+            JSONArray results = new JSONArray();
+            for (int i = 0; i < items.size(); i++) {
+                JSONObject result = new JSONObject();
+                result.put("index", i);
+                if (items.get(i) != null) {
+                    result.put("member1ID", items.get(i)[0]);
+                    result.put("member2ID", items.get(i)[1]);
+                    result.put("relationType", items.get(i)[2]);
+                }
+                if (errors.get(i) != null) {
+                    result.put("error", errors.get(i));
+                } else {
+                    result.put("status", valid ? "added" : "valid");
+                }
+                results.put(result);
+            }
+            JSONObject response = new JSONObject();
+            response.put("results", results);
+            response.put("count", results.length());
+            if (!valid) {
+                response.put("error", "Batch rejected, nothing was written");
+            }
+            sendResponse(exchange, valid ? 201 : 400, response.toString(), "no-store");
+        } catch (Exception e) {
+            logger.error("Error in handleAddBatch: {}", e.getMessage());
+            sendResponse(exchange, 500, createErrorResponse("Internal Server Error"), "no-store");
+        }
+    }
+
+    /**
+     * 批量远亲查询：请求体为 {"pairs":[{"member1ID":1,"member2ID":2}, ...]}，
+     * 返回 {"results":[...],"count":n}，每项与单次查询的响应相同并附带两名成员的 ID。
+     */
+    private void handleDistantRelativeBatch(HttpExchange exchange) throws IOException {
+        try {
+            String requestBody = readRequestBody(exchange);
+            if (requestBody == null) {
+                sendResponse(exchange, 413, createErrorResponse("Request body too large"), "no-store");
                 return;
             }
-            if (member2ID <= 0) {
-                sendResponse(exchange, 400, createErrorResponse("member2ID must be positive"), "no-store");
+            JSONArray pairsJson;
+            try {
+                pairsJson = new JSONObject(requestBody).getJSONArray("pairs");
+            } catch (Exception e) {
+                sendResponse(exchange, 400, createErrorResponse("Request body must be a JSON object with a pairs array"), "no-store");
                 return;
             }
-            if (relationType < 1 || relationType > 32) {
-                sendResponse(exchange, 400, createErrorResponse("relationType must be between 1 and 32"), "no-store");
+            if (pairsJson.length() == 0) {
+                sendResponse(exchange, 400, createErrorResponse("pairs cannot be empty"), "no-store");
                 return;
             }
-
-            // 验证成员不能是同一个人
-            if (member1ID == member2ID) {
-                sendResponse(exchange, 400, createErrorResponse("member1ID and member2ID cannot be the same"), "no-store");
+            if (pairsJson.length() > maxBatchSize) {
+                sendResponse(exchange, 413, createErrorResponse("Too many pairs, at most " + maxBatchSize + " per request"), "no-store");
                 return;
             }
 
-            // 尝试添加关系
-            boolean success = relationshipService.addRelationship(member1ID, member2ID, relationType);
-            if (success) {
-                sendResponse(exchange, 201, createSuccessResponse("Relationship added successfully"), "no-store");
-            } else {
-                sendResponse(exchange, 400, createErrorResponse("Failed to add relationship. Please check if members exist and the relationship is valid."), "no-store");
+            List<int[]> pairs = new ArrayList<>(pairsJson.length());
+            for (int i = 0; i < pairsJson.length(); i++) {
+                int member1ID, member2ID;
+                try {
+                    JSONObject pair = pairsJson.getJSONObject(i);
+                    member1ID = pair.getInt("member1ID");
+                    member2ID = pair.getInt("member2ID");
+                } catch (Exception e) {
+                    sendResponse(exchange, 400, createErrorResponse("pairs[" + i + "] must contain integer member1ID and member2ID"), "no-store");
+                    return;
+                }
+                if (member1ID <= 0 || member2ID <= 0) {
+                    sendResponse(exchange, 400, createErrorResponse("pairs[" + i + "]: member1ID and member2ID must be positive integers"), "no-store");
+                    return;
+                }
+                pairs.add(new int[]{member1ID, member2ID});
+            }
+
+            List<FamilyRelationshipCalculator.DistantRelativeResult> results = relationshipService.findDistantRelatives(pairs);
+            JSONArray resultsJson = new JSONArray();
+            for (int i = 0; i < pairs.size(); i++) {
+                JSONObject json = distantRelativeResultToJson(results.get(i));
+                json.put("member1ID", pairs.get(i)[0]);
+                json.put("member2ID", pairs.get(i)[1]);
+                resultsJson.put(json);
             }
+            JSONObject response = new JSONObject();
+            response.put("results", resultsJson);
+            response.put("count", resultsJson.length());
+            sendResponse(exchange, 200, response.toString(), "no-store");
         } catch (Exception e) {
-            logger.error("Error in handlePost: {}", e.getMessage());
+            logger.error("Error in handleDistantRelativeBatch: {}", e.getMessage());
             sendResponse(exchange, 500, createErrorResponse("Internal Server Error"), "no-store");
         }
     }
 
+    /**
+     * 分页列表：GET /relationship?limit=50&cursor=120&fields=relationID,member1,member2，可再加 relationType=N 过滤，
+     * 返回 {"items":[...],"nextCursor":"170"}。只有选了姓名字段才关联 Members 表，description 也只在选中时计算。
+     */
+    private void handlePage(HttpExchange exchange, String query, String etag) throws IOException, SQLException {
+        Map<String, String> params = PageRequest.parse(query);
+        PageRequest page;
+        try {
+            page = PageRequest.from(params, RELATIONSHIP_FIELDS);
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, createErrorResponse(e.getMessage()), "no-store");
+            return;
+        }
+        int relationType = 0;
+        String relationTypeStr = params.remove("relationType");
+        if (relationTypeStr != null) {
+            try {
+                relationType = Integer.parseInt(relationTypeStr.trim());
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, 400, createErrorResponse("Invalid relationType format"), "no-store");
+                return;
+            }
+            if (relationType < 1 || relationType > 32) {
+                sendResponse(exchange, 400, createErrorResponse("relationType must be between 1 and 32"), "no-store");
+                return;
+            }
+        }
+        if (!params.isEmpty()) {
+            sendResponse(exchange, 400, createErrorResponse("Invalid query parameter"), "no-store");
+            return;
+        }
+        Set<String> columns = new HashSet<>();
+        for (String field : page.fields()) {
+            if (field.equals("description")) {
+                columns.add("relation");
+            } else if (!field.equals("relationID")) {
+                columns.add(field);
+            }
+        }
+        int filter = relationType;
+        streamCacheable(exchange, etag, json -> {
+            json.beginObject().name("items").beginArray();
+            relationshipService.forEachRelationshipPage(page.after(), page.fetchSize(), filter, columns, relationship -> {
+                if (page.accept(relationship.getRelationID())) {
+                    writeRelationship(json, relationship, page.fields());
+                }
+            });
+            json.endArray()
+                    .field("nextCursor", page.nextCursor())
+                    .endObject();
+        });
+    }
+
     private void handleGet(HttpExchange exchange) throws IOException {
         try {
+            String etag = ConditionalGet.etag(dataVersion, exchange);
+            if (ConditionalGet.notModified(exchange, etag)) {
+                return;
+            }
             String query = exchange.getRequestURI().getQuery();
             if (query != null) {
                 if (query.length() > maxQueryLength) {
                     sendResponse(exchange, 400, createErrorResponse("Query is too long"), "no-store");
                     return;
                 }
+                if (PageRequest.isPaged(query)) {
+                    handlePage(exchange, query, etag);
+                    return;
+                }
                 if (query.startsWith("memberID=")) {
                     String memberIDStr = query.substring(9);
                     if (memberIDStr.trim().isEmpty()) {
@@ -140,8 +371,11 @@ public class RelationshipController implements HttpHandler {
                             sendResponse(exchange, 400, createErrorResponse("memberID must be positive"), "no-store");
                             return;
                         }
-                        List<Relationship> relationships = relationshipService.getRelationshipsForMember(memberID);
-                        sendResponse(exchange, 200, relationshipsToJson(relationships).toString(), "public, max-age=60");
+                        streamCacheable(exchange, etag, json -> {
+                            json.beginArray();
+                            relationshipService.forEachRelationshipForMember(memberID, relationship -> writeRelationship(json, relationship, RELATIONSHIP_FIELDS));
+                            json.endArray();
+                        });
                     } catch (NumberFormatException e) {
                         sendResponse(exchange, 400, createErrorResponse("Invalid memberID format"), "no-store");
                     }
@@ -159,7 +393,7 @@ public class RelationshipController implements HttpHandler {
                         }
                         Relationship relationship = relationshipService.getRelationshipByRelationID(relationID);
                         if (relationship != null) {
-                            sendResponse(exchange, 200, relationshipToJson(relationship).toString(), "public, max-age=60");
+                            sendCacheable(exchange, relationshipToJson(relationship).toString(), etag);
                         } else {
                             sendResponse(exchange, 404, createErrorResponse("Relationship not found"), "no-store");
                         }
@@ -178,11 +412,37 @@ public class RelationshipController implements HttpHandler {
                             sendResponse(exchange, 400, createErrorResponse("relationType must be between 1 and 32"), "no-store");
                             return;
                         }
-                        List<Relationship> relationships = relationshipService.getRelationshipsByRelationType(relationType);
-                        sendResponse(exchange, 200, relationshipsToJson(relationships).toString(), "public, max-age=60");
+                        serveCached(exchange, "/relationship?relationType=" + relationType, etag, json -> {
+                            json.beginArray();
+                            relationshipService.forEachRelationshipByRelationType(relationType, relationship -> writeRelationship(json, relationship, RELATIONSHIP_FIELDS));
+                            json.endArray();
+                        });
                     } catch (NumberFormatException e) {
                         sendResponse(exchange, 400, createErrorResponse("Invalid relationType format"), "no-store");
                     }
+                } else if (query.startsWith("relatives=")) {
+                    // 单源查询：该成员与所有可达成员的关系，流式输出
+                    int memberID = -1;
+                    for (String param : query.substring(10).split("&")) {
+                        if (param.startsWith("memberID=")) {
+                            try {
+                                memberID = Integer.parseInt(param.substring(9));
+                            } catch (NumberFormatException e) {
+                                sendResponse(exchange, 400, createErrorResponse("Invalid memberID format"), "no-store");
+                                return;
+                            }
+                        }
+                    }
+                    if (memberID <= 0) {
+                        sendResponse(exchange, 400, createErrorResponse("memberID must be a positive integer"), "no-store");
+                        return;
+                    }
+                    FamilyRelationshipCalculator.RelativesResult relatives = relationshipService.findAllRelatives(memberID);
+                    if (relatives == null) {
+                        sendResponse(exchange, 404, createErrorResponse("Member not found"), "no-store");
+                        return;
+                    }
+                    streamRelatives(exchange, relatives, etag);
                 } else if (query.startsWith("distantRelative=")) {
                     // 处理远亲关系查询
                     String[] params = query.substring(16).split("&");
@@ -212,13 +472,16 @@ public class RelationshipController implements HttpHandler {
                     }
                     
                     FamilyRelationshipCalculator.DistantRelativeResult result = relationshipService.findDistantRelative(member1ID, member2ID);
-                    sendResponse(exchange, 200, distantRelativeResultToJson(result).toString(), "public, max-age=60");
+                    sendCacheable(exchange, distantRelativeResultToJson(result).toString(), etag);
                 } else {
                     sendResponse(exchange, 400, createErrorResponse("Invalid query parameter"), "no-store");
                 }
             } else {
-                List<Relationship> relationships = relationshipService.getAllRelationships();
-                sendResponse(exchange, 200, relationshipsToJson(relationships).toString(), "public, max-age=60");
+                serveCached(exchange, "/relationship", etag, json -> {
+                    json.beginArray();
+                    relationshipService.forEachRelationship(relationship -> writeRelationship(json, relationship, RELATIONSHIP_FIELDS));
+                    json.endArray();
+                });
             }
         } catch (Exception e) {
             logger.error("Error in handleGet: {}", e.getMessage());
@@ -235,6 +498,7 @@ public class RelationshipController implements HttpHandler {
         }
         json.put("closestCommonAncestorID", result.getClosestCommonAncestorID());
         json.put("commonAncestorCount", result.getCommonAncestorCount());
+        json.put("nodesExpanded", result.getNodesExpanded());
         JSONArray nodesArr = new JSONArray();
         for (FamilyRelationshipCalculator.PathNode n : result.getPathNodes()) {
             JSONObject o = new JSONObject();
@@ -261,24 +525,99 @@ public class RelationshipController implements HttpHandler {
         return json;
     }
 
-    private void sendResponse(HttpExchange exchange, int statusCode, String response, String cacheControl) throws IOException {
+    /**
+     * 以分块传输逐条写出单源查询结果，每名成员的关系在写出前才计算，无需在内存中拼出整个响应。
+     */
+    private void streamRelatives(HttpExchange exchange, FamilyRelationshipCalculator.RelativesResult relatives,
+                                 String etag) throws IOException, SQLException {
+        streamCacheable(exchange, etag, json -> {
+            json.beginObject()
+                    .field("memberID", relatives.getMemberID())
+                    .field("name", relatives.getName())
+                    .field("version", relatives.getVersion())
+                    .name("relatives").beginArray();
+            int count = 0;
+            for (FamilyRelationshipCalculator.RelativeEntry entry : relatives) {
+                writeRelativeEntry(json, entry);
+                count++;
+            }
+            json.endArray()
+                    .field("count", count)
+                    .endObject();
+        });
+    }
+
+    private void writeRelativeEntry(JsonStreamWriter json, FamilyRelationshipCalculator.RelativeEntry entry) throws IOException {
+        FamilyRelationshipCalculator.DistantRelativeResult result = entry.getResult();
+        json.beginObject()
+                .field("memberID", entry.getMemberID())
+                .field("name", entry.getName())
+                .field("description", result.getDescription());
+        if (result.getPreciseKinshipTerm() != null && !result.getPreciseKinshipTerm().isEmpty()) {
+            json.field("preciseKinshipTerm", result.getPreciseKinshipTerm());
+        }
+        json.field("pathLength", result.getPathEdges().size())
+                .field("closestCommonAncestorID", result.getClosestCommonAncestorID())
+                .field("commonAncestorCount", result.getCommonAncestorCount())
+                .endObject();
+    }
+
+    private void serveCached(HttpExchange exchange, String cacheKey, String etag, JsonStreamWriter.Body body)
+            throws IOException, SQLException {
+        exchange.getResponseHeaders().add("ETag", etag);
+        addResponseHeaders(exchange, ConditionalGet.CACHE_CONTROL);
+        responseCache.serve(exchange, cacheKey, body);
+    }
+
+    private void streamCacheable(HttpExchange exchange, String etag, JsonStreamWriter.Body body) throws IOException, SQLException {
+        exchange.getResponseHeaders().add("ETag", etag);
+        addResponseHeaders(exchange, ConditionalGet.CACHE_CONTROL);
+        ResponseWriter.stream(exchange, 200, body);
+    }
+
+    private void addResponseHeaders(HttpExchange exchange, String cacheControl) {
         exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
         exchange.getResponseHeaders().add("X-Content-Type-Options", "nosniff");
         exchange.getResponseHeaders().add("X-Frame-Options", "DENY");
         exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+    }
+
+    private void sendCacheable(HttpExchange exchange, String response, String etag) throws IOException {
+        exchange.getResponseHeaders().add("ETag", etag);
+        sendResponse(exchange, 200, response, ConditionalGet.CACHE_CONTROL);
+    }
+
+    private void sendResponse(HttpExchange exchange, int statusCode, String response, String cacheControl) throws IOException {
+        addResponseHeaders(exchange, cacheControl);
         byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, responseBytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(responseBytes);
-        }
+        ResponseWriter.send(exchange, statusCode, responseBytes);
     }
 
-    private JSONArray relationshipsToJson(List<Relationship> relationships) {
-        JSONArray jsonArray = new JSONArray();
-        for (Relationship relationship : relationships) {
-            jsonArray.put(relationshipToJson(relationship));
+    /** 只写出 fields 中的字段；全部字段时与 relationshipToJson 相同，姓名为 null 时同样省略 */
+    private void writeRelationship(JsonStreamWriter json, Relationship relationship, Collection<String> fields) throws IOException {
+        json.beginObject();
+        if (fields.contains("relationID")) {
+            json.field("relationID", relationship.getRelationID());
+        }
+        if (fields.contains("member1")) {
+            json.field("member1", relationship.getMember1());
+        }
+        if (fields.contains("member1Name")) {
+            json.field("member1Name", relationship.getMember1Name());
+        }
+        if (fields.contains("member2")) {
+            json.field("member2", relationship.getMember2());
+        }
+        if (fields.contains("member2Name")) {
+            json.field("member2Name", relationship.getMember2Name());
+        }
+        if (fields.contains("relation")) {
+            json.field("relation", relationship.getRelation());
+        }
+        if (fields.contains("description")) {
+            json.field("description", relationship.getRelationshipDescription());
         }
-        return jsonArray;
+        json.endObject();
     }
 
     private JSONObject relationshipToJson(Relationship relationship) {
@@ -0,0 +1,148 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import service.DataVersion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点列表端点的响应缓存：按请求键保存序列化好的 UTF-8 字节，达到压缩阈值的响应同时保存压缩数据，
+ * 之后的请求无论协商到 gzip 还是 deflate 都不再重复压缩。
+ * 每个条目记录生成时的数据版本，任何写入递增版本后旧条目即失效，下次访问时重新生成。
+ * 只用于无参数或取值有限的查询（如 relationType=N），条目数有上限；上限为 0 时不缓存，响应直接流式输出。
+ */
+public class ResponseCache {
+    private final DataVersion dataVersion;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public ResponseCache(DataVersion dataVersion, int maxEntries) {
+        this.dataVersion = dataVersion;
+        this.maxEntries = maxEntries;
+    }
+
+    /** 当前数据版本；须在读取数据之前取得并传给 put，保证条目不会比数据更新 */
+    public long version() {
+        return dataVersion.current();
+    }
+
+    /** 命中且未失效时返回条目，否则返回 null 并移除失效条目 */
+    public Entry get(String key, long version) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version == version) {
+            hitCount.incrementAndGet();
+            return entry;
+        }
+        if (entry != null) {
+            entries.remove(key, entry);
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 命中时直接写出缓存；未命中时由 body 生成响应体，先完整写入内存再缓存并发送。
+     * 关闭缓存时由 body 边生成边分块输出。调用前须已设置其余响应头。
+     */
+    public void serve(HttpExchange exchange, String key, JsonStreamWriter.Body body) throws IOException, SQLException {
+        long version = version();
+        Entry cached = get(key, version);
+        if (cached == null && maxEntries <= 0) {
+            ResponseWriter.stream(exchange, 200, body);
+            return;
+        }
+        if (cached == null) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+            try (JsonStreamWriter json = new JsonStreamWriter(buffer)) {
+                body.writeTo(json);
+            }
+            cached = put(key, version, buffer.toByteArray());
+        }
+        cached.writeTo(exchange);
+    }
+
+    /** 生成条目；数据已被更新或缓存已满时只返回条目而不保存 */
+    public Entry put(String key, long version, String body) {
+        return put(key, version, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Entry put(String key, long version, byte[] bytes) {
+        Entry entry = new Entry(version, bytes, ResponseWriter.isCompressible(bytes) ? ResponseWriter.compress(bytes) : null);
+        if (version == dataVersion.current() && (entries.size() < maxEntries || entries.containsKey(key))) {
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    public CacheStats getStats() {
+        long bytes = 0;
+        long compressedBytes = 0;
+        int size = 0;
+        for (Entry entry : entries.values()) {
+            size++;
+            bytes += entry.body.length;
+            compressedBytes += entry.compressed != null ? entry.compressed.size() : 0;
+        }
+        return new CacheStats(maxEntries, size, hitCount.get(), missCount.get(), bytes, compressedBytes);
+    }
+
+    /** 缓存的一份响应体，内容不可变 */
+    public static class Entry {
+        private final long version;
+        private final byte[] body;
+        private final ResponseWriter.Compressed compressed;
+
+        Entry(long version, byte[] body, ResponseWriter.Compressed compressed) {
+            this.version = version;
+            this.body = body;
+            this.compressed = compressed;
+        }
+
+        byte[] body() {
+            return body;
+        }
+
+        /** 响应体未达到压缩阈值时为 null */
+        ResponseWriter.Compressed compressed() {
+            return compressed;
+        }
+
+        /** 以 200 写出，调用前须已设置其余响应头 */
+        void writeTo(HttpExchange exchange) throws IOException {
+            ResponseWriter.send(exchange, 200, body, compressed);
+        }
+    }
+
+    /** 响应缓存运行指标快照 */
+    public static class CacheStats {
+        private final int maxEntries;
+        private final int entries;
+        private final long hitCount;
+        private final long missCount;
+        private final long bytes;
+        private final long compressedBytes;
+
+        public CacheStats(int maxEntries, int entries, long hitCount, long missCount, long bytes, long compressedBytes) {
+            this.maxEntries = maxEntries;
+            this.entries = entries;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.bytes = bytes;
+            this.compressedBytes = compressedBytes;
+        }
+
+        public int getMaxEntries() { return maxEntries; }
+        public int getEntries() { return entries; }
+        public long getHitCount() { return hitCount; }
+        public long getMissCount() { return missCount; }
+        public long getBytes() { return bytes; }
+        public long getCompressedBytes() { return compressedBytes; }
+    }
+}
@@ -38,6 +38,11 @@ public class Relationship {
     public void setMember2Name(String member2Name) { this.member2Name = member2Name; }
 
     public String getRelationshipDescription() {
+        return describe(relation);
+    }
+
+    /** 关系类型编码对应的称谓 */
+    public static String describe(int relation) {
         switch (relation) {
             case 1: return "丈夫";
             case 2: return "妻子";
@@ -0,0 +1,145 @@
+package repository;
+
+import model.IdSummary;
+import model.Member;
+import service.FamilyGraph;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 只读副本的成员仓储：从关系图快照读取，不访问 SQLite。结果与数据库查询一致（成员按 MemberID 升序），
+ * 每次调用读取一次当前快照，调用过程中快照被替换不影响本次结果。写方法抛出 SQLException。
+ */
+public class SnapshotMemberRepository extends MemberRepository {
+    private final Supplier<FamilyGraph> snapshot;
+
+    public SnapshotMemberRepository(Supplier<FamilyGraph> snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public Member addMember(String name, int generation, int gender, String remark) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public Member findMemberById(int memberId) {
+        FamilyGraph graph = snapshot.get();
+        return graph.member(graph.indexOf(memberId));
+    }
+
+    @Override
+    public Map<Integer, Member> findMembersByIds(Collection<Integer> memberIds) {
+        FamilyGraph graph = snapshot.get();
+        Map<Integer, Member> members = new HashMap<>();
+        for (int memberId : memberIds) {
+            Member member = graph.member(graph.indexOf(memberId));
+            if (member != null) {
+                members.put(memberId, member);
+            }
+        }
+        return members;
+    }
+
+    /** 与 Name LIKE '%name%' 相同：% 与 _ 为通配符，只忽略 ASCII 字母的大小写 */
+    @Override
+    public Member findMemberByName(String name) {
+        Pattern pattern = likePattern("%" + name + "%");
+        FamilyGraph graph = snapshot.get();
+        for (int idx = 0; idx < graph.size(); idx++) {
+            if (graph.isPresent(idx) && graph.name(idx) != null && pattern.matcher(graph.name(idx)).matches()) {
+                return graph.member(idx);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public IdSummary getIdSummary() {
+        return snapshot.get().memberIdSummary();
+    }
+
+    @Override
+    public void forEachMember(RowHandler<Member> handler) throws IOException {
+        FamilyGraph graph = snapshot.get();
+        for (int idx = 0; idx < graph.size(); idx++) {
+            if (graph.isPresent(idx)) {
+                handler.handle(graph.member(idx));
+            }
+        }
+    }
+
+    @Override
+    public void forEachMemberPage(int afterID, int limit, Set<String> columns, RowHandler<Member> handler) throws IOException {
+        if (!PAGE_COLUMNS.containsAll(columns)) {
+            throw new IllegalArgumentException("Unknown member column in " + columns);
+        }
+        FamilyGraph graph = snapshot.get();
+        int count = 0;
+        for (int idx = firstIndexAfter(graph, afterID); idx < graph.size() && count < limit; idx++) {
+            if (!graph.isPresent(idx)) {
+                continue;
+            }
+            handler.handle(new Member(
+                    graph.memberId(idx),
+                    columns.contains("Name") ? graph.name(idx) : null,
+                    columns.contains("Generation") ? graph.generation(idx) : 0,
+                    columns.contains("Gender") ? graph.gender(idx) : 0,
+                    columns.contains("Remark") ? graph.remark(idx) : null
+            ));
+            count++;
+        }
+    }
+
+    @Override
+    public boolean updateMember(int memberId, String name, int gender, String remark) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean deleteMember(int memberId) throws SQLException {
+        throw readOnly();
+    }
+
+    /** MemberID 大于 memberId 的第一个下标 */
+    private static int firstIndexAfter(FamilyGraph graph, int memberId) {
+        int lo = 0, hi = graph.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (graph.memberId(mid) <= memberId) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static Pattern likePattern(String like) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : like.toCharArray()) {
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    }
+
+    static SQLException readOnly() {
+        return new SQLException("Snapshot replica is read-only");
+    }
+}
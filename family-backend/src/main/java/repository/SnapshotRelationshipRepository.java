@@ -0,0 +1,246 @@
+package repository;
+
+import model.IdSummary;
+import model.Relationship;
+import service.FamilyGraph;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 只读副本的关系仓储：从关系图快照读取，不访问 SQLite。各查询的返回顺序与数据库上同一查询的执行计划一致
+ * （member1 条件走唯一索引，按 member2、relation 排序；其余按 RelationID），双方姓名取自快照中的成员。
+ */
+public class SnapshotRelationshipRepository extends RelationshipRepository {
+    private final Supplier<FamilyGraph> snapshot;
+
+    public SnapshotRelationshipRepository(MemberRepository memberRepository, Supplier<FamilyGraph> snapshot) {
+        super(memberRepository);
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public boolean addRelationship(int member1, int member2, int relation) throws SQLException {
+        throw SnapshotMemberRepository.readOnly();
+    }
+
+    @Override
+    public void forEachRelationshipForMember(int member1ID, RowHandler<Relationship> handler) throws IOException {
+        FamilyGraph graph = snapshot.get();
+        for (int e : outEdgesByTarget(graph, graph.indexOf(member1ID))) {
+            handler.handle(toRelationship(graph, e));
+        }
+    }
+
+    @Override
+    public List<Relationship> getChildRelationships(int parentID) {
+        FamilyGraph graph = snapshot.get();
+        int idx = graph.indexOf(parentID);
+        List<Integer> edges = new ArrayList<>();
+        for (int i = 0; idx >= 0 && i < graph.outDegree(idx); i++) {
+            int e = graph.outEdge(idx, i);
+            if (graph.edgeRelation(e) >= 5 && graph.edgeRelation(e) <= 10) {
+                edges.add(e);
+            }
+        }
+        // 出边已按 RelationID 升序，稳定排序后即为 (relation, RelationID)
+        edges.sort((a, b) -> Integer.compare(graph.edgeRelation(a), graph.edgeRelation(b)));
+        List<Relationship> relationships = new ArrayList<>(edges.size());
+        for (int e : edges) {
+            relationships.add(toRelationship(graph, e));
+        }
+        return relationships;
+    }
+
+    /** 先列出作为 member1 的关系，再按 RelationID 列出只作为 member2 的关系，与数据库的 OR 查询顺序相同 */
+    @Override
+    public List<Relationship> getRelationshipsInvolvingMember(int memberID) {
+        FamilyGraph graph = snapshot.get();
+        int idx = graph.indexOf(memberID);
+        List<Relationship> relationships = new ArrayList<>();
+        if (idx < 0) {
+            return relationships;
+        }
+        for (int e : outEdgesByTarget(graph, idx)) {
+            relationships.add(toRelationship(graph, e));
+        }
+        int[] incoming = new int[graph.adjDegree(idx)];
+        int count = 0;
+        for (int i = 0; i < graph.adjDegree(idx); i++) {
+            int e = graph.adjEdge(idx, i);
+            if (graph.edgeSource(e) != idx) {
+                incoming[count++] = e;
+            }
+        }
+        Arrays.sort(incoming, 0, count);
+        for (int i = 0; i < count; i++) {
+            relationships.add(toRelationship(graph, incoming[i]));
+        }
+        return relationships;
+    }
+
+    @Override
+    public Relationship getRelationshipByMembers(int member1ID, int member2ID) {
+        FamilyGraph graph = snapshot.get();
+        int from = graph.indexOf(member1ID);
+        int to = graph.indexOf(member2ID);
+        if (from < 0 || to < 0) {
+            return null;
+        }
+        int[] edges = outEdgesByTarget(graph, from);
+        for (int e : edges) {
+            if (graph.edgeTarget(e) == to) {
+                return toRelationship(graph, e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void forEachRelationship(RowHandler<Relationship> handler) throws IOException {
+        FamilyGraph graph = snapshot.get();
+        for (int e = 0; e < graph.edgeSlotCount(); e++) {
+            if (graph.isEdgeLive(e)) {
+                handler.handle(toRelationship(graph, e));
+            }
+        }
+    }
+
+    @Override
+    public void forEachRelationshipPage(int afterID, int limit, int relationType, Set<String> columns,
+                                        RowHandler<Relationship> handler) throws IOException {
+        if (!PAGE_COLUMNS.containsAll(columns)) {
+            throw new IllegalArgumentException("Unknown relationship column in " + columns);
+        }
+        FamilyGraph graph = snapshot.get();
+        int count = 0;
+        for (int e = firstSlotAfter(graph, afterID); e < graph.edgeSlotCount() && count < limit; e++) {
+            if (!graph.isEdgeLive(e) || (relationType > 0 && graph.edgeRelation(e) != relationType)) {
+                continue;
+            }
+            int source = graph.edgeSource(e);
+            int target = graph.edgeTarget(e);
+            handler.handle(new Relationship(
+                    graph.edgeRelationId(e),
+                    columns.contains("member1") ? graph.memberId(source) : 0,
+                    columns.contains("member2") ? graph.memberId(target) : 0,
+                    columns.contains("relation") ? graph.edgeRelation(e) : 0,
+                    columns.contains("member1Name") ? graph.name(source) : null,
+                    columns.contains("member2Name") ? graph.name(target) : null
+            ));
+            count++;
+        }
+    }
+
+    @Override
+    public IdSummary getIdSummary() {
+        return snapshot.get().relationIdSummary();
+    }
+
+    @Override
+    public List<Relationship> getRelationshipsAfter(int relationID) {
+        List<Relationship> relationships = new ArrayList<>();
+        FamilyGraph graph = snapshot.get();
+        for (int e = firstSlotAfter(graph, relationID); e < graph.edgeSlotCount(); e++) {
+            if (graph.isEdgeLive(e)) {
+                relationships.add(toRelationship(graph, e));
+            }
+        }
+        return relationships;
+    }
+
+    @Override
+    public Map<Integer, Relationship> findRelationshipsByIds(Collection<Integer> relationIDs) {
+        FamilyGraph graph = snapshot.get();
+        Map<Integer, Relationship> relationships = new HashMap<>();
+        for (int relationID : relationIDs) {
+            Relationship relationship = findLive(graph, relationID);
+            if (relationship != null) {
+                relationships.put(relationID, relationship);
+            }
+        }
+        return relationships;
+    }
+
+    @Override
+    public Relationship getRelationshipByRelationID(int relationID) {
+        return findLive(snapshot.get(), relationID);
+    }
+
+    @Override
+    public void forEachRelationshipByRelationType(int relationType, RowHandler<Relationship> handler) throws IOException {
+        FamilyGraph graph = snapshot.get();
+        for (int e = 0; e < graph.edgeSlotCount(); e++) {
+            if (graph.isEdgeLive(e) && graph.edgeRelation(e) == relationType) {
+                handler.handle(toRelationship(graph, e));
+            }
+        }
+    }
+
+    @Override
+    public int getMember2ByMember1AndRelation(int member1ID, int relationType) {
+        FamilyGraph graph = snapshot.get();
+        for (int e : outEdgesByTarget(graph, graph.indexOf(member1ID))) {
+            if (graph.edgeRelation(e) == relationType) {
+                return graph.memberId(graph.edgeTarget(e));
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void removeDuplicateRelationships() throws SQLException {
+        throw SnapshotMemberRepository.readOnly();
+    }
+
+    /** 成员的出边按 (member2, relation) 排序，即唯一索引 (member1, member2, relation) 的顺序 */
+    private static int[] outEdgesByTarget(FamilyGraph graph, int idx) {
+        if (idx < 0) {
+            return new int[0];
+        }
+        Integer[] edges = new Integer[graph.outDegree(idx)];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = graph.outEdge(idx, i);
+        }
+        // 下标与 MemberID 同序
+        Arrays.sort(edges, (a, b) -> graph.edgeTarget(a) != graph.edgeTarget(b)
+                ? Integer.compare(graph.edgeTarget(a), graph.edgeTarget(b))
+                : Integer.compare(graph.edgeRelation(a), graph.edgeRelation(b)));
+        int[] sorted = new int[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            sorted[i] = edges[i];
+        }
+        return sorted;
+    }
+
+    /** RelationID 大于 relationID 的第一个边槽位 */
+    private static int firstSlotAfter(FamilyGraph graph, int relationID) {
+        int lo = 0, hi = graph.edgeSlotCount();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (graph.edgeRelationId(mid) <= relationID) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static Relationship findLive(FamilyGraph graph, int relationID) {
+        int e = graph.findEdgeSlot(relationID);
+        return e >= 0 && graph.isEdgeLive(e) ? toRelationship(graph, e) : null;
+    }
+
+    private static Relationship toRelationship(FamilyGraph graph, int e) {
+        int source = graph.edgeSource(e);
+        int target = graph.edgeTarget(e);
+        return new Relationship(graph.edgeRelationId(e), graph.memberId(source), graph.memberId(target),
+                graph.edgeRelation(e), graph.name(source), graph.name(target));
+    }
+}
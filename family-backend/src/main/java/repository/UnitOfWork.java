@@ -0,0 +1,176 @@
+package repository;
+
+import controller.DatabaseConnection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一次业务写入的工作单元：期间本线程经 DatabaseConnection.getConnection() 的仓储调用共用同一连接和同一事务，
+ * 结束时只提交一次（一次 fsync），失败时整体回滚，不会留下只写了一半的推导关系。
+ * 连接在首次访问数据库时才借出，没有访问数据库的工作单元不占用连接。提交成功后按登记顺序执行 afterCommit 回调。
+ */
+public final class UnitOfWork {
+    private static final Logger logger = LogManager.getLogger(UnitOfWork.class);
+    private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
+
+    private Connection connection;
+    private Connection view;
+    private final List<Runnable> afterCommit = new ArrayList<>();
+
+    private UnitOfWork() {
+    }
+
+    /** 在工作单元内执行 work：正常返回时提交，抛出异常时回滚；已在工作单元中时直接加入外层 */
+    public static <T> T run(Work<T> work) throws SQLException {
+        if (current.get() != null) {
+            return work.run();
+        }
+        UnitOfWork unit = new UnitOfWork();
+        current.set(unit);
+        T result;
+        try {
+            result = work.run();
+            unit.commit();
+        } catch (Throwable e) {
+            unit.rollback(e);
+            throw e;
+        } finally {
+            current.remove();
+            unit.release();
+        }
+        unit.runAfterCommit();
+        return result;
+    }
+
+    /** 当前线程所在的工作单元，不在工作单元内时为 null */
+    public static UnitOfWork current() {
+        return current.get();
+    }
+
+    /** 登记提交成功后执行的回调；不在工作单元内时立即执行 */
+    public static void afterCommit(Runnable hook) {
+        UnitOfWork unit = current.get();
+        if (unit == null) {
+            hook.run();
+        } else {
+            unit.afterCommit.add(hook);
+        }
+    }
+
+    /** 工作单元的连接，首次调用时从写连接池借出并开启事务；仓储照常 close() 即可，连接在工作单元结束时归还 */
+    public Connection connection() throws SQLException {
+        if (connection == null) {
+            Connection pooled = DatabaseConnection.acquireWriter();
+            try {
+                pooled.setAutoCommit(false);
+            } catch (SQLException e) {
+                pooled.close();
+                throw e;
+            }
+            connection = pooled;
+            view = unclosable(pooled);
+        }
+        return view;
+    }
+
+    /**
+     * 在本工作单元内以一个保存点执行 work：抛出异常时只回滚到保存点（连同其间登记的 afterCommit 回调）并重新抛出，
+     * 工作单元中此前的写入保留，仍可继续执行并提交。
+     */
+    public <T> T savepoint(Work<T> work) throws SQLException {
+        Savepoint savepoint = connection().setSavepoint();
+        int hooks = afterCommit.size();
+        T result;
+        try {
+            result = work.run();
+        } catch (Throwable e) {
+            try {
+                connection.rollback(savepoint);
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            afterCommit.subList(hooks, afterCommit.size()).clear();
+            throw e;
+        }
+        connection.releaseSavepoint(savepoint);
+        return result;
+    }
+
+    private void commit() throws SQLException {
+        if (connection != null) {
+            connection.commit();
+        }
+    }
+
+    private void rollback(Throwable cause) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void release() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            logger.warn("Failed to reset auto-commit on unit of work connection: {}", e.getMessage());
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to return unit of work connection: {}", e.getMessage());
+        }
+    }
+
+    /** 数据已提交，单个回调失败只记录日志，不影响其余回调 */
+    private void runAfterCommit() {
+        for (Runnable hook : afterCommit) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                logger.error("After-commit hook failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private static Connection unclosable(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(UnitOfWork.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            return null;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            try {
+                                return method.invoke(conn, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+
+    /** 在工作单元内执行的一组数据库操作 */
+    @FunctionalInterface
+    public interface Work<T> {
+        T run() throws SQLException;
+    }
+}
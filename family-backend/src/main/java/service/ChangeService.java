@@ -0,0 +1,163 @@
+package service;
+
+import model.Change;
+import model.Member;
+import model.Relationship;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import repository.ChangeLogRepository;
+import repository.MemberRepository;
+import repository.RelationshipRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 增量同步：把变更日志中某个序号之后的变更整理成客户端可直接应用的列表，代价与变更数成正比而与家族规模无关。
+ * 同一实体在窗口内的多次变更合并为一条，按其最后一次变更的序号排列，并附上该实体当前的数据。
+ */
+public class ChangeService {
+    private static final Logger logger = LogManager.getLogger(ChangeService.class);
+    private final ChangeLogRepository changeLogRepository;
+    private final MemberRepository memberRepository;
+    private final RelationshipRepository relationshipRepository;
+
+    public ChangeService(ChangeLogRepository changeLogRepository, MemberRepository memberRepository,
+                         RelationshipRepository relationshipRepository) {
+        this.changeLogRepository = changeLogRepository;
+        this.memberRepository = memberRepository;
+        this.relationshipRepository = relationshipRepository;
+    }
+
+    public long getLatestSeq() throws SQLException {
+        return changeLogRepository.getLatestSeq();
+    }
+
+    /**
+     * since 之后最多 limit 条日志合并后的变更；since 超过最新序号（如数据库被整库替换）或早于最近一次整库重建时返回 null，
+     * 客户端应全量重新加载。
+     * 窗口内先插入后删除的实体客户端从未见过，直接省略；仍存在的实体以当前数据返回，窗口之后才删除的按删除返回，
+     * 下一个窗口会再次给出同一删除，重复应用没有副作用。
+     */
+    public ChangeSet getChangesSince(long since, int limit) throws SQLException {
+        long latest = changeLogRepository.getLatestSeq();
+        if (since > latest) {
+            logger.warn("Change sequence {} is ahead of the change log ({}), client must reload", since, latest);
+            return null;
+        }
+        long rebuild = changeLogRepository.getRebuildSeq();
+        if (since < rebuild) {
+            logger.warn("Change sequence {} predates the database rebuild at {}, client must reload", since, rebuild);
+            return null;
+        }
+        List<Change> changes = changeLogRepository.getChanges(since, latest, limit);
+        long next = changes.isEmpty() ? since : changes.get(changes.size() - 1).getSeq();
+
+        // 按实体合并，重新放入使顺序按最后一次变更
+        Map<Long, MergedChange> merged = new LinkedHashMap<>();
+        for (Change change : changes) {
+            long key = ((long) change.getEntity() << 32) | (change.getEntityID() & 0xFFFFFFFFL);
+            MergedChange state = merged.remove(key);
+            if (state == null) {
+                state = new MergedChange(change);
+            }
+            state.lastOp = change.getOp();
+            state.seq = change.getSeq();
+            merged.put(key, state);
+        }
+
+        Set<Integer> memberIds = new HashSet<>();
+        Set<Integer> relationIds = new HashSet<>();
+        for (MergedChange state : merged.values()) {
+            if (state.lastOp != Change.OP_DELETE) {
+                (state.entity == Change.ENTITY_MEMBER ? memberIds : relationIds).add(state.id);
+            }
+        }
+        Map<Integer, Member> members = memberRepository.findMembersByIds(memberIds);
+        Map<Integer, Relationship> relationships = relationshipRepository.findRelationshipsByIds(relationIds);
+
+        List<ChangeEntry> entries = new ArrayList<>(merged.size());
+        for (MergedChange state : merged.values()) {
+            Member member = state.entity == Change.ENTITY_MEMBER ? members.get(state.id) : null;
+            Relationship relationship = state.entity == Change.ENTITY_RELATIONSHIP ? relationships.get(state.id) : null;
+            int op;
+            if (member == null && relationship == null) {
+                if (state.firstOp == Change.OP_INSERT) {
+                    continue;
+                }
+                op = Change.OP_DELETE;
+            } else {
+                op = state.firstOp == Change.OP_INSERT ? Change.OP_INSERT : Change.OP_UPDATE;
+            }
+            entries.add(new ChangeEntry(state.seq, state.entity, state.id, op, member, relationship));
+        }
+        return new ChangeSet(since, next, next < latest, entries);
+    }
+
+    /** 窗口内同一实体的首次与最后一次操作 */
+    private static final class MergedChange {
+        private final int entity;
+        private final int id;
+        private final int firstOp;
+        private int lastOp;
+        private long seq;
+
+        private MergedChange(Change first) {
+            this.entity = first.getEntity();
+            this.id = first.getEntityID();
+            this.firstOp = first.getOp();
+        }
+    }
+
+    /** 一次增量同步的结果；next 作为下一次请求的 since */
+    public static class ChangeSet {
+        private final long since;
+        private final long next;
+        private final boolean hasMore;
+        private final List<ChangeEntry> entries;
+
+        public ChangeSet(long since, long next, boolean hasMore, List<ChangeEntry> entries) {
+            this.since = since;
+            this.next = next;
+            this.hasMore = hasMore;
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        public long getSince() { return since; }
+        public long getNext() { return next; }
+        public boolean hasMore() { return hasMore; }
+        public List<ChangeEntry> getEntries() { return entries; }
+    }
+
+    /** 合并后的一条变更；删除时 member 与 relationship 均为 null */
+    public static class ChangeEntry {
+        private final long seq;
+        private final int entity;
+        private final int id;
+        private final int op;
+        private final Member member;
+        private final Relationship relationship;
+
+        public ChangeEntry(long seq, int entity, int id, int op, Member member, Relationship relationship) {
+            this.seq = seq;
+            this.entity = entity;
+            this.id = id;
+            this.op = op;
+            this.member = member;
+            this.relationship = relationship;
+        }
+
+        public long getSeq() { return seq; }
+        public int getEntity() { return entity; }
+        public int getId() { return id; }
+        public int getOp() { return op; }
+        public Member getMember() { return member; }
+        public Relationship getRelationship() { return relationship; }
+    }
+}
@@ -9,101 +9,216 @@ import org.apache.logging.log4j.Logger;
 
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-/** 工具类：用于计算家族成员之间的远亲关系 */
+/** 工具类：用于计算家族成员之间的远亲关系，全部遍历在内存中的 FamilyGraph 快照上进行 */
 public class FamilyRelationshipCalculator {
     private static final Logger logger = LogManager.getLogger(FamilyRelationshipCalculator.class);
-    private static final int MAX_ANCESTOR_GENERATIONS = 10;
 
-    private final MemberRepository memberRepository;
-    private final RelationshipRepository relationshipRepository;
+    private final FamilyGraphStore graphStore;
+    /** 批量查询的有界线程池，为 null 时在调用线程上依次计算 */
+    private final ExecutorService batchExecutor;
+    private final SingleFlight<FlightKey, DistantRelativeResult> pairFlights = new SingleFlight<>();
+    private final SingleFlight<FlightKey, ShortestPathTree> treeFlights = new SingleFlight<>();
 
     public FamilyRelationshipCalculator(MemberRepository memberRepository, RelationshipRepository relationshipRepository) {
-        this.memberRepository = memberRepository;
-        this.relationshipRepository = relationshipRepository;
+        this(new FamilyGraphStore(memberRepository, relationshipRepository));
+    }
+
+    public FamilyRelationshipCalculator(FamilyGraphStore graphStore) {
+        this(graphStore, null);
+    }
+
+    public FamilyRelationshipCalculator(FamilyGraphStore graphStore, ExecutorService batchExecutor) {
+        this.graphStore = graphStore;
+        this.batchExecutor = batchExecutor;
     }
 
 /** 查找两个成员之间的关系 */
     public DistantRelativeResult findDistantRelative(int member1ID, int member2ID) {
         try {
-            Member member1 = memberRepository.findMemberById(member1ID);
-            Member member2 = memberRepository.findMemberById(member2ID);
+            return findDistantRelative(graphStore.current(), member1ID, member2ID);
+        } catch (SQLException e) {
+            logger.error("查找远亲关系时出错: {}", e.getMessage());
+            return new DistantRelativeResult(false, "查询失败: " + e.getMessage(), -1, 0, null, null, null);
+        }
+    }
 
-            if (member1 == null || member2 == null) {
-                return new DistantRelativeResult(false, "成员不存在", -1, 0, null, null);
-            }
+    /** 同一快照上正在进行的相同查询只计算一次 */
+    private DistantRelativeResult findDistantRelative(FamilyGraph graph, int member1ID, int member2ID) {
+        int a = graph.indexOf(member1ID);
+        int b = graph.indexOf(member2ID);
+        if (graph.member(a) == null || graph.member(b) == null) {
+            return new DistantRelativeResult(false, "成员不存在", -1, 0, null, null);
+        }
+        return pairFlights.execute(new FlightKey(graph.version(), a, b), () -> describeRelationship(graph, a, b, null));
+    }
 
-            // 1. 先检查是否存在直接关系（一条边相连）
-            Relationship directRel = findDirectRelationship(member1ID, member2ID);
-            if (directRel != null) {
-                Map<Integer, Member> memberMap = new HashMap<>();
-                if (member1 != null) memberMap.put(member1ID, member1);
-                if (member2 != null) memberMap.put(member2ID, member2);
-                Relationship directDirectional = relationshipRepository.getRelationshipByMembers(member1ID, member2ID);
-                String edgeDesc = directDirectional != null
-                        ? directDirectional.getRelationshipDescription()
-                        : edgeDescriptionForDirection(directRel, member1ID, member2ID, memberMap);
-                String desc = "直接关系：" + edgeDesc;
-                List<PathNode> nodes = Arrays.asList(
-                        new PathNode(member1ID, member1.getName()),
-                        new PathNode(member2ID, member2.getName())
-                );
-                int relationType = directDirectional != null ? directDirectional.getRelation() : directRel.getRelation();
-                List<PathEdge> edges = Arrays.asList(new PathEdge(member1ID, member2ID, edgeDesc, relationType));
-                String preciseTerm = edgeDesc; // 直接关系即精确称谓
-                return new DistantRelativeResult(true, desc, -1, 1, nodes, edges, preciseTerm);
+    /**
+     * 批量查询多对成员的关系，结果按请求顺序返回，全部基于同一快照。
+     * 按 member1 分组：同一源有多个目标时只建一棵最短路径树，只有一个目标时做双向搜索；
+     * 各组在有界线程池上并行计算，重复的成员对只算一次。
+     */
+    public List<DistantRelativeResult> findDistantRelatives(List<int[]> pairs) throws SQLException {
+        FamilyGraph graph = graphStore.current();
+        Map<Integer, Set<Integer>> groups = new LinkedHashMap<>();
+        for (int[] pair : pairs) {
+            groups.computeIfAbsent(pair[0], k -> new LinkedHashSet<>()).add(pair[1]);
+        }
+
+        Map<Long, DistantRelativeResult> results = new HashMap<>();
+        if (batchExecutor == null || groups.size() == 1) {
+            for (Map.Entry<Integer, Set<Integer>> group : groups.entrySet()) {
+                evaluateGroup(graph, group.getKey(), group.getValue(), results);
             }
-
-            // 2. 获取双方祖先（扩大为多代），找共同祖先并计算关系类型
-            Set<Integer> ancestors1 = getAncestorsUpToGenerations(member1ID, MAX_ANCESTOR_GENERATIONS);
-            Set<Integer> ancestors2 = getAncestorsUpToGenerations(member2ID, MAX_ANCESTOR_GENERATIONS);
-            Set<Integer> commonAncestors = new HashSet<>(ancestors1);
-            commonAncestors.retainAll(ancestors2);
-
-            if (!commonAncestors.isEmpty()) {
-                int closestCommonAncestor = findClosestCommonAncestor(member1ID, member2ID, commonAncestors);
-                String relationshipType = calculateDistantRelationshipType(member1, member2, closestCommonAncestor);
-                
-                // 获取路径并确保使用正确的成员信息
-                PathResult pathResult = findShortestPath(member1ID, member2ID);
-                List<PathEdge> edges = pathResult != null ? pathResult.edges : null;
-                
-                // 使用完整的成员信息计算精确称谓
-                String preciseTerm = computePreciseKinshipTerm(edges, member1, member2);
-                if (preciseTerm != null && !preciseTerm.isEmpty()) {
-                    relationshipType = preciseTerm;
-                }
-                
-                return new DistantRelativeResult(true, relationshipType, closestCommonAncestor, commonAncestors.size(),
-                        pathResult != null ? pathResult.nodes : null, edges, preciseTerm);
+        } else {
+            List<Future<Map<Long, DistantRelativeResult>>> futures = new ArrayList<>(groups.size());
+            for (Map.Entry<Integer, Set<Integer>> group : groups.entrySet()) {
+                futures.add(batchExecutor.submit(() -> {
+                    Map<Long, DistantRelativeResult> groupResults = new HashMap<>();
+                    evaluateGroup(graph, group.getKey(), group.getValue(), groupResults);
+                    return groupResults;
+                }));
             }
+            for (Future<Map<Long, DistantRelativeResult>> future : futures) {
+                results.putAll(await(future));
+            }
+        }
 
-            // 3. 无共同祖先时，检查图中是否存在任意路径（姻亲、远房等）
-            PathResult pathResult = findShortestPath(member1ID, member2ID);
-            if (pathResult != null) {
-                String preciseTerm = computePreciseKinshipTerm(pathResult.edges, member1, member2);
-                String desc = (preciseTerm != null && !preciseTerm.isEmpty()) ? preciseTerm : "存在亲属关系（通过若干代或姻亲相连）";
-                return new DistantRelativeResult(true, desc, -1, 0, pathResult.nodes, pathResult.edges, preciseTerm);
+        List<DistantRelativeResult> ordered = new ArrayList<>(pairs.size());
+        for (int[] pair : pairs) {
+            ordered.add(results.get(pairKey(pair[0], pair[1])));
+        }
+        logger.debug("Batch of {} pairs in {} source groups evaluated on graph v{}", pairs.size(), groups.size(), graph.version());
+        return ordered;
+    }
+
+    private void evaluateGroup(FamilyGraph graph, int sourceID, Set<Integer> targetIDs, Map<Long, DistantRelativeResult> results) {
+        int a = graph.indexOf(sourceID);
+        if (targetIDs.size() == 1 || graph.member(a) == null) {
+            for (int targetID : targetIDs) {
+                results.put(pairKey(sourceID, targetID), findDistantRelative(graph, sourceID, targetID));
             }
+            return;
+        }
+        ShortestPathTree tree = treeFlights.execute(new FlightKey(graph.version(), a, -1), () -> ShortestPathTree.build(graph, a));
+        for (int targetID : targetIDs) {
+            int b = graph.indexOf(targetID);
+            DistantRelativeResult result = graph.member(b) == null
+                    ? new DistantRelativeResult(false, "成员不存在", -1, 0, null, null)
+                    : describeRelationship(graph, a, b, tree);
+            results.put(pairKey(sourceID, targetID), result);
+        }
+    }
 
-            return new DistantRelativeResult(false, "无亲属关系", -1, 0, null, null, null);
-        } catch (SQLException e) {
-            logger.error("查找远亲关系时出错: {}", e.getMessage());
-            return new DistantRelativeResult(false, "查询失败: " + e.getMessage(), -1, 0, null, null, null);
+    private static long pairKey(int member1ID, int member2ID) {
+        return ((long) member1ID << 32) | (member2ID & 0xFFFFFFFFL);
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for batch results", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
         }
     }
 
-    /** 库存关系 (member1, member2, type) 表示 member1 是 member2 的 [type]。边 from→to 的展示为「to 是 from 的 ???」 */
-    private String edgeDescriptionForDirection(Relationship rel, int fromId, int toId, Map<Integer, Member> memberMap) {
-        if (rel.getMember1() == fromId && rel.getMember2() == toId)
-            return rel.getRelationshipDescription();
-        if (rel.getMember1() == toId && rel.getMember2() == fromId)
-            return getReverseRelationshipDescription(rel.getRelation(), fromId, toId, memberMap);
-        
-        return getCorrectRelationshipDescription(rel.getRelation(), fromId, toId, null);
+    /** 被合并（未重复计算）的查询次数 */
+    public long getCoalescedCount() {
+        return pairFlights.getCoalesced() + treeFlights.getCoalesced();
     }
 
-    
+    /**
+     * 单源查询：从该成员做一次加权搜索得到到所有可达成员的最短路径树，
+     * 返回按距离由近到远遍历的结果，每名成员的称谓与共同祖先在遍历时才计算；成员不存在时返回 null。
+     */
+    public RelativesResult findAllRelatives(int memberID) throws SQLException {
+        FamilyGraph graph = graphStore.current();
+        int source = graph.indexOf(memberID);
+        if (graph.member(source) == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        ShortestPathTree tree = treeFlights.execute(new FlightKey(graph.version(), source, -1),
+                () -> ShortestPathTree.build(graph, source));
+        logger.debug("Shortest path tree from {} reached {} members in {} us",
+                memberID, tree.order.length, (System.nanoTime() - start) / 1_000);
+        return new RelativesResult(graph, tree);
+    }
+
+    /** 计算 a 与 b 的关系；tree 为以 a 为源的最短路径树时路径直接取自其中，为 null 时单独做一次双向搜索 */
+    private DistantRelativeResult describeRelationship(FamilyGraph graph, int a, int b, ShortestPathTree tree) {
+        int member1ID = graph.memberId(a);
+        int member2ID = graph.memberId(b);
+        Member member1 = graph.member(a);
+        Member member2 = graph.member(b);
+
+        // 1. 先检查是否存在直接关系（一条边相连）
+        int directEdge = findDirectRelationship(graph, a, b);
+        if (directEdge >= 0) {
+            int directional = graph.findOutEdge(a, b);
+            String edgeDesc;
+            int relationType;
+            if (directional >= 0) {
+                relationType = graph.edgeRelation(directional);
+                edgeDesc = Relationship.describe(relationType);
+            } else {
+                relationType = graph.edgeRelation(directEdge);
+                edgeDesc = getReverseRelationshipDescription(relationType, graph.gender(a));
+            }
+            String desc = "直接关系：" + edgeDesc;
+            List<PathNode> nodes = Arrays.asList(
+                    new PathNode(member1ID, member1.getName()),
+                    new PathNode(member2ID, member2.getName())
+            );
+            List<PathEdge> edges = Arrays.asList(new PathEdge(member1ID, member2ID, edgeDesc, relationType));
+            String preciseTerm = edgeDesc; // 直接关系即精确称谓
+            return new DistantRelativeResult(true, desc, -1, 1, nodes, edges, preciseTerm);
+        }
+
+        // 2. 沿父母关系向上查找共同祖先（不限代数）并计算关系类型
+        CommonAncestors commonAncestors = CommonAncestors.find(graph, a, b);
+
+        if (commonAncestors.count > 0) {
+            int closestCommonAncestor = commonAncestors.closest;
+            String relationshipType = calculateDistantRelationshipType(graph, member1, member2, closestCommonAncestor);
+
+            // 获取路径并确保使用正确的成员信息
+            PathResult pathResult = findShortestPath(graph, a, b, tree);
+            List<PathEdge> edges = pathResult != null ? pathResult.edges : null;
+
+            // 使用完整的成员信息计算精确称谓
+            String preciseTerm = computePreciseKinshipTerm(edges, member1, member2);
+            if (preciseTerm != null && !preciseTerm.isEmpty()) {
+                relationshipType = preciseTerm;
+            }
+
+            int closestId = closestCommonAncestor >= 0 ? graph.memberId(closestCommonAncestor) : -1;
+            return new DistantRelativeResult(true, relationshipType, closestId, commonAncestors.count,
+                    pathResult != null ? pathResult.nodes : null, edges, preciseTerm,
+                    pathResult != null ? pathResult.nodesExpanded : 0);
+        }
+
+        // 3. 无共同祖先时，检查图中是否存在任意路径（姻亲、远房等）
+        PathResult pathResult = findShortestPath(graph, a, b, tree);
+        if (pathResult != null) {
+            String preciseTerm = computePreciseKinshipTerm(pathResult.edges, member1, member2);
+            String desc = (preciseTerm != null && !preciseTerm.isEmpty()) ? preciseTerm : "存在亲属关系（通过若干代或姻亲相连）";
+            return new DistantRelativeResult(true, desc, -1, 0, pathResult.nodes, pathResult.edges, preciseTerm,
+                    pathResult.nodesExpanded);
+        }
+
+        return new DistantRelativeResult(false, "无亲属关系", -1, 0, null, null, null);
+    }
 
     /** 关系类型的反向称谓（member2 对 member1 的称呼） */
     private static String reverseRelationshipDescription(int relationType) {
@@ -124,160 +239,45 @@ public class FamilyRelationshipCalculator {
         }
     }
 
-    /** BFS 求最短路径，返回路径上的节点与边（从 member1 到 member2） */
-    private PathResult findShortestPath(int member1ID, int member2ID) throws SQLException {
-        if (member1ID == member2ID) {
-            Member m = memberRepository.findMemberById(member1ID);
-            return new PathResult(Collections.singletonList(new PathNode(member1ID, m != null ? m.getName() : "")), Collections.emptyList());
-        }
-        Map<Integer, int[]> prevNode = new HashMap<>();
-        Map<Integer, Relationship> prevRel = new HashMap<>();
-        Map<Integer, Integer> dist = new HashMap<>();
-        PriorityQueue<int[]> queue = new PriorityQueue<>(Comparator.comparingInt(a -> a[1]));
-        dist.put(member1ID, 0);
-        queue.offer(new int[]{member1ID, 0});
-        prevNode.put(member1ID, new int[]{-1});
-        
-        // 获取成员信息用于关系判断
-        Map<Integer, Member> memberMap = new HashMap<>();
-        Member startMember = memberRepository.findMemberById(member1ID);
-        if (startMember != null) {
-            memberMap.put(member1ID, startMember);
+    /** 加权最短路径（边权 10 + 关系优先级），返回路径上的节点与边（从 member1 到 member2）；无最短路径树时做双向搜索 */
+    private PathResult findShortestPath(FamilyGraph graph, int from, int to, ShortestPathTree tree) {
+        if (tree != null) {
+            ShortestPathSearch path = tree.pathTo(to);
+            return path != null ? buildPath(graph, path) : null;
         }
-        
-        while (!queue.isEmpty()) {
-            int[] curItem = queue.poll();
-            int cur = curItem[0];
-            int curDist = curItem[1];
-            Integer known = dist.get(cur);
-            if (known == null || curDist != known) {
-                continue;
-            }
-            if (cur == member2ID) {
-                break;
-            }
-            List<Relationship> list = relationshipRepository.getRelationshipsInvolvingMember(cur);
-            list.sort((a, b) -> {
-                int pa = relationPriority(a.getRelation());
-                int pb = relationPriority(b.getRelation());
-                if (pa != pb) return Integer.compare(pa, pb);
-                int na = a.getMember1() == cur ? a.getMember2() : a.getMember1();
-                int nb = b.getMember1() == cur ? b.getMember2() : b.getMember1();
-                return Integer.compare(na, nb);
-            });
-            for (Relationship rel : list) {
-                int next = rel.getMember1() == cur ? rel.getMember2() : rel.getMember1();
-                
-                // 获取成员信息
-                if (!memberMap.containsKey(next)) {
-                    Member nextMember = memberRepository.findMemberById(next);
-                    if (nextMember != null) {
-                        memberMap.put(next, nextMember);
-                    }
-                }
-                
-                int edgeWeight = 10 + relationPriority(rel.getRelation());
-                int nextDist = curDist + edgeWeight;
-                Integer best = dist.get(next);
-                if (best == null || nextDist < best) {
-                    dist.put(next, nextDist);
-                    prevNode.put(next, new int[]{cur});
-                    prevRel.put(next, rel);
-                    queue.offer(new int[]{next, nextDist});
-                }
-            }
-        }
-        if (!dist.containsKey(member2ID)) {
+        ShortestPathSearch search = ShortestPathSearch.find(graph, from, to);
+        if (search == null) {
             return null;
         }
-        return buildPathFromBacktrack(member1ID, member2ID, prevNode, prevRel, memberMap);
+        logger.debug("Shortest path {} -> {} expanded {} members", graph.memberId(from), graph.memberId(to), search.expanded);
+        return buildPath(graph, search);
     }
 
-    private int relationPriority(int relationType) {
-        switch (relationType) {
-            case 3: case 4: case 5: case 6: case 7: case 8: case 9: case 10:
-                return 1;
-            case 11: case 12: case 13: case 14:
-                return 2;
-            case 19: case 20: case 21: case 22: case 23: case 24: case 25: case 26:
-                return 3;
-            case 15: case 16: case 17: case 18:
-                return 4;
-            case 1: case 2:
-                return 5;
-            case 27: case 28: case 29: case 30: case 31: case 32:
-                return 6;
-            default:
-                return 9;
-        }
-    }
-
-    private PathResult buildPathFromBacktrack(int fromID, int toID, Map<Integer, int[]> prevNode, Map<Integer, Relationship> prevRel, Map<Integer, Member> memberMap) throws SQLException {
-        List<Integer> idOrder = new ArrayList<>();
-        int cur = toID;
-        while (cur != -1 && cur != fromID) {
-            idOrder.add(cur);
-            int[] p = prevNode.get(cur);
-            cur = p != null && p.length > 0 ? p[0] : -1;
-        }
-        idOrder.add(fromID);
-        Collections.reverse(idOrder);
-        
-        // 确保成员信息完整
-        for (int id : idOrder) {
-            if (!memberMap.containsKey(id)) {
-                Member m = memberRepository.findMemberById(id);
-                if (m != null) {
-                    memberMap.put(id, m);
-                }
-            }
-        }
-        
-        List<PathNode> nodes = new ArrayList<>();
-        List<PathEdge> edges = new ArrayList<>();
-        for (int id : idOrder) {
-            Member m = memberMap.get(id);
-            nodes.add(new PathNode(id, m != null ? m.getName() : ""));
-        }
-        
-        // 构建边，确保使用正确的关系方向和称呼
-        for (int i = 0; i < idOrder.size() - 1; i++) {
-            int a = idOrder.get(i), b = idOrder.get(i + 1);
-            Relationship dirRel = relationshipRepository.getRelationshipByMembers(a, b);
-            if (dirRel != null) {
-                edges.add(new PathEdge(a, b, dirRel.getRelationshipDescription(), dirRel.getRelation()));
-                continue;
-            }
-            Relationship r = prevRel.get(b);
-            if (r != null) {
-                String edgeDesc = getEdgeDescriptionForMember1(r, a, b, memberMap);
-                edges.add(new PathEdge(a, b, edgeDesc, r.getRelation()));
+    /** 组装路径的节点与边；a→b 方向存在库存关系时直接用它，否则用连接两人的那条边取反向称谓 */
+    private PathResult buildPath(FamilyGraph graph, ShortestPathSearch search) {
+        int[] order = search.nodes;
+        List<PathNode> nodes = new ArrayList<>(order.length);
+        List<PathEdge> edges = new ArrayList<>(order.length - 1);
+        for (int idx : order) {
+            nodes.add(new PathNode(graph.memberId(idx), nameOf(graph, idx)));
+        }
+        for (int i = 0; i < order.length - 1; i++) {
+            int a = order[i], b = order[i + 1];
+            int aId = graph.memberId(a), bId = graph.memberId(b);
+            int directional = graph.findOutEdge(a, b);
+            if (directional >= 0) {
+                int relation = graph.edgeRelation(directional);
+                edges.add(new PathEdge(aId, bId, Relationship.describe(relation), relation));
             } else {
-                edges.add(new PathEdge(a, b, "", -1));
+                int relation = graph.edgeRelation(search.edges[i]);
+                edges.add(new PathEdge(aId, bId, getReverseRelationshipDescription(relation, graph.gender(a)), relation));
             }
         }
-        return new PathResult(nodes, edges);
-    }
-
-/** 获取成员1的关系描述，确保使用正确的关系称呼 */
-    private String getEdgeDescriptionForMember1(Relationship rel, int member1Id, int member2Id, Map<Integer, Member> memberMap) {
-        // 检查关系方向
-        if (rel.getMember1() == member1Id && rel.getMember2() == member2Id) {
-            return rel.getRelationshipDescription();
-        } else if (rel.getMember1() == member2Id && rel.getMember2() == member1Id) {
-            // 如果关系方向相反，需要返回反向的关系描述
-            return getReverseRelationshipDescription(rel.getRelation(), member1Id, member2Id, memberMap);
-        }
-        
-        // 如果关系方向不匹配，使用正确的关系类型
-        return getCorrectRelationshipDescription(rel.getRelation(), member1Id, member2Id, memberMap);
+        return new PathResult(nodes, edges, search.expanded);
     }
 
-    /** 根据关系类型、成员ID和成员信息获取正确的关系称呼 */
-    private String getCorrectRelationshipDescription(int relationType, int member1Id, int member2Id, Map<Integer, Member> memberMap) {
-        Relationship rel = new Relationship(0, member1Id, member2Id, relationType);
-        String desc = rel.getRelationshipDescription();
-        return "未知关系".equals(desc) ? "亲属" : desc;
+    private static String nameOf(FamilyGraph graph, int idx) {
+        return graph.isPresent(idx) ? graph.name(idx) : "";
     }
 
     /** 根据路径上的边（方向已修正为 起点→终点）计算精确称谓；同辈时做对称归一（避免 A→B 表兄弟、B→A 表侄） */
@@ -285,22 +285,8 @@ public class FamilyRelationshipCalculator {
         if (pathEdges == null || pathEdges.isEmpty()) return null;
         List<String> steps = new ArrayList<>();
         for (PathEdge e : pathEdges) steps.add(e.getDescription());
-        
-        // 获取成员信息用于关系判断
-        Map<Integer, Member> memberMap = new HashMap<>();
-        for (PathEdge edge : pathEdges) {
-            try {
-                Member m1 = memberRepository.findMemberById(edge.getFromId());
-                Member m2 = memberRepository.findMemberById(edge.getToId());
-                if (m1 != null) memberMap.put(edge.getFromId(), m1);
-                if (m2 != null) memberMap.put(edge.getToId(), m2);
-            } catch (SQLException e) {
-                logger.error("Error fetching member information: " + e.getMessage());
-                // 如果无法获取成员信息，继续处理其他边
-            }
-        }
-        
-        String term = preciseKinshipFromSteps(steps, memberMap);
+
+        String term = preciseKinshipFromSteps(steps);
         term = refineLinealTerm(term, steps, member2);
         boolean sameGenerationByMember = member1 != null && member2 != null && member1.getGeneration() == member2.getGeneration();
         boolean sameGenerationByPath = isSameGenerationFromSteps(steps);
@@ -352,12 +338,7 @@ public class FamilyRelationshipCalculator {
     }
 
     /** 获取反向关系描述 */
-    private static String getReverseRelationshipDescription(int relationType, int fromId, int toId, Map<Integer, Member> memberMap) {
-        int fromGender = -1;
-        if (memberMap != null) {
-            Member from = memberMap.get(fromId);
-            if (from != null) fromGender = from.getGender();
-        }
+    private static String getReverseRelationshipDescription(int relationType, int fromGender) {
         String parentTerm = fromGender == 0 ? "父亲" : fromGender == 1 ? "母亲" : "父母";
         String childTerm = fromGender == 0 ? "孙子" : fromGender == 1 ? "孙女" : "孙辈";
         String maternalGrandchild = fromGender == 0 ? "外孙" : fromGender == 1 ? "外孙女" : "外孙辈";
@@ -406,7 +387,7 @@ public class FamilyRelationshipCalculator {
     }
 
     /** 从路径步骤序列解析精确称谓（堂伯、堂侄、表兄弟、再从、三从等）；每步为 起点→终点 的称谓 */
-    private static String preciseKinshipFromSteps(List<String> steps, Map<Integer, Member> memberMap) {
+    private static String preciseKinshipFromSteps(List<String> steps) {
         if (steps.isEmpty()) return null;
         if (steps.size() == 1) {
             String s = steps.get(0);
@@ -593,87 +574,26 @@ public class FamilyRelationshipCalculator {
     private static class PathResult {
         final List<PathNode> nodes;
         final List<PathEdge> edges;
-        PathResult(List<PathNode> nodes, List<PathEdge> edges) { this.nodes = nodes; this.edges = edges; }
-    }
-
-    /** 若两人存在直接关系，返回该关系，否则返回 null */
-    private Relationship findDirectRelationship(int member1ID, int member2ID) throws SQLException {
-        List<Relationship> list = relationshipRepository.getRelationshipsInvolvingMember(member1ID);
-        for (Relationship rel : list) {
-            int other = rel.getMember1() == member1ID ? rel.getMember2() : rel.getMember1();
-            if (other == member2ID) return rel;
+        final int nodesExpanded;
+        PathResult(List<PathNode> nodes, List<PathEdge> edges, int nodesExpanded) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.nodesExpanded = nodesExpanded;
         }
-        return null;
-    }
-
-    /** 获取指定成员向上 maxGenerations 代内的所有祖先 */
-    private Set<Integer> getAncestorsUpToGenerations(int memberID, int maxGenerations) throws SQLException {
-        Set<Integer> ancestors = new HashSet<>();
-        List<Relationship> parentRels = relationshipRepository.getRelationshipsByRelationType(3);
-        parentRels.addAll(relationshipRepository.getRelationshipsByRelationType(4));
-        Set<Integer> currentLevel = new HashSet<>();
-        currentLevel.add(memberID);
-        for (int gen = 0; gen < maxGenerations && !currentLevel.isEmpty(); gen++) {
-            Set<Integer> nextLevel = new HashSet<>();
-            for (Relationship rel : parentRels) {
-                if (currentLevel.contains(rel.getMember1())) {
-                    nextLevel.add(rel.getMember2());
-                }
-            }
-            ancestors.addAll(nextLevel);
-            currentLevel = nextLevel;
-        }
-        return ancestors;
     }
 
-/** 查找最近的共同祖先 */
-    private int findClosestCommonAncestor(int member1ID, int member2ID, Set<Integer> commonAncestors) throws SQLException {
-        int minDistance = Integer.MAX_VALUE;
-        int closestAncestor = -1;
-        
-        for (int ancestorID : commonAncestors) {
-            int distance1 = getGenerationDistance(member1ID, ancestorID);
-            int distance2 = getGenerationDistance(member2ID, ancestorID);
-            
-            if (distance1 > 0 && distance2 > 0) {
-                int totalDistance = distance1 + distance2;
-                if (totalDistance < minDistance) {
-                    minDistance = totalDistance;
-                    closestAncestor = ancestorID;
-                }
-            }
-        }
-        
-        return closestAncestor;
-    }
-
-    /** 在关系图上计算两成员间最短路径步数（沿任意关系边双向） */
-    private int getGenerationDistance(int fromMemberID, int toMemberID) throws SQLException {
-        if (fromMemberID == toMemberID) return 0;
-        Queue<int[]> queue = new LinkedList<>();
-        Set<Integer> visited = new HashSet<>();
-        queue.offer(new int[]{fromMemberID, 0});
-        visited.add(fromMemberID);
-        while (!queue.isEmpty()) {
-            int[] cur = queue.poll();
-            int curID = cur[0], dist = cur[1];
-            List<Relationship> list = relationshipRepository.getRelationshipsInvolvingMember(curID);
-            for (Relationship rel : list) {
-                int nextID = rel.getMember1() == curID ? rel.getMember2() : rel.getMember1();
-                if (nextID == toMemberID) return dist + 1;
-                if (!visited.contains(nextID)) {
-                    visited.add(nextID);
-                    queue.offer(new int[]{nextID, dist + 1});
-                }
-            }
+    /** 若两人存在直接关系（任一方向），返回该关系的边槽位，否则返回 -1 */
+    private static int findDirectRelationship(FamilyGraph graph, int a, int b) {
+        for (int i = 0, degree = graph.adjDegree(a); i < degree; i++) {
+            if (graph.adjTarget(a, i) == b) return graph.adjEdge(a, i);
         }
         return -1;
     }
 
-/** 在关系图上计算两成员间最短路径步数 */
-    private String calculateDistantRelationshipType(Member member1, Member member2, int commonAncestorID) throws SQLException {
+    /** 根据与共同祖先的代际差给出粗略关系类型 */
+    private static String calculateDistantRelationshipType(FamilyGraph graph, Member member1, Member member2, int commonAncestor) {
         // 获取共同祖先
-        Member ancestor = memberRepository.findMemberById(commonAncestorID);
+        Member ancestor = graph.member(commonAncestor);
         if (ancestor == null) {
             return "未知关系";
         }
@@ -743,6 +663,93 @@ public class FamilyRelationshipCalculator {
         public int getRelationType() { return relationType; }
     }
 
+    /** 合并在途查询的键：快照版本与两端成员下标（单源树的目标为 -1） */
+    private static final class FlightKey {
+        private final long version;
+        private final int from;
+        private final int to;
+
+        FlightKey(long version, int from, int to) {
+            this.version = version;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FlightKey)) return false;
+            FlightKey other = (FlightKey) o;
+            return version == other.version && from == other.from && to == other.to;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, from, to);
+        }
+    }
+
+    /** 单源查询结果：按距离由近到远遍历源成员之外的所有可达成员，遍历时逐个计算关系 */
+    public class RelativesResult implements Iterable<RelativeEntry> {
+        private final FamilyGraph graph;
+        private final ShortestPathTree tree;
+
+        RelativesResult(FamilyGraph graph, ShortestPathTree tree) {
+            this.graph = graph;
+            this.tree = tree;
+        }
+
+        public int getMemberID() { return graph.memberId(tree.source); }
+        public String getName() { return graph.name(tree.source); }
+        /** 快照版本，同一版本下结果不变 */
+        public long getVersion() { return graph.version(); }
+
+        @Override
+        public Iterator<RelativeEntry> iterator() {
+            return new Iterator<RelativeEntry>() {
+                private int next = advance(1);
+
+                private int advance(int from) {
+                    while (from < tree.order.length && !graph.isPresent(tree.order[from])) {
+                        from++;
+                    }
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < tree.order.length;
+                }
+
+                @Override
+                public RelativeEntry next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int target = tree.order[next];
+                    next = advance(next + 1);
+                    return new RelativeEntry(graph.memberId(target), graph.name(target),
+                            describeRelationship(graph, tree.source, target, tree));
+                }
+            };
+        }
+    }
+
+    /** 单源查询中的一名可达成员 */
+    public static class RelativeEntry {
+        private final int memberID;
+        private final String name;
+        private final DistantRelativeResult result;
+        public RelativeEntry(int memberID, String name, DistantRelativeResult result) {
+            this.memberID = memberID;
+            this.name = name;
+            this.result = result;
+        }
+        public int getMemberID() { return memberID; }
+        public String getName() { return name; }
+        public DistantRelativeResult getResult() { return result; }
+    }
+
 /** 远亲关系结果类 */
     public static class DistantRelativeResult {
         private final boolean isDistantRelative;
@@ -752,6 +759,7 @@ public class FamilyRelationshipCalculator {
         private final List<PathNode> pathNodes;
         private final List<PathEdge> pathEdges;
         private final String preciseKinshipTerm;
+        private final int nodesExpanded;
 
         public DistantRelativeResult(boolean isDistantRelative, String description) {
             this(isDistantRelative, description, -1, 0, null, null, null);
@@ -768,6 +776,11 @@ public class FamilyRelationshipCalculator {
 
         public DistantRelativeResult(boolean isDistantRelative, String description, int closestCommonAncestorID, int commonAncestorCount,
                                      List<PathNode> pathNodes, List<PathEdge> pathEdges, String preciseKinshipTerm) {
+            this(isDistantRelative, description, closestCommonAncestorID, commonAncestorCount, pathNodes, pathEdges, preciseKinshipTerm, 0);
+        }
+
+        public DistantRelativeResult(boolean isDistantRelative, String description, int closestCommonAncestorID, int commonAncestorCount,
+                                     List<PathNode> pathNodes, List<PathEdge> pathEdges, String preciseKinshipTerm, int nodesExpanded) {
             this.isDistantRelative = isDistantRelative;
             this.description = description;
             this.closestCommonAncestorID = closestCommonAncestorID;
@@ -775,6 +788,7 @@ public class FamilyRelationshipCalculator {
             this.pathNodes = pathNodes != null ? pathNodes : Collections.emptyList();
             this.pathEdges = pathEdges != null ? pathEdges : Collections.emptyList();
             this.preciseKinshipTerm = preciseKinshipTerm;
+            this.nodesExpanded = nodesExpanded;
         }
 
         public boolean isDistantRelative() { return isDistantRelative; }
@@ -784,5 +798,7 @@ public class FamilyRelationshipCalculator {
         public List<PathNode> getPathNodes() { return pathNodes; }
         public List<PathEdge> getPathEdges() { return pathEdges; }
         public String getPreciseKinshipTerm() { return preciseKinshipTerm; }
+        /** 路径搜索两端共扩展的成员数 */
+        public int getNodesExpanded() { return nodesExpanded; }
     }
 }
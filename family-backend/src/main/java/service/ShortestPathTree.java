@@ -0,0 +1,84 @@
+package service;
+
+import java.util.Arrays;
+
+/**
+ * 以一名成员为源的加权最短路径树（边权 10 + 关系优先级），一次单向 Dijkstra 覆盖所有可达成员。
+ * 出队顺序与并列取舍同 ShortestPathSearch，因此到任一成员的路径与逐对查询的结果一致。
+ */
+final class ShortestPathTree {
+    final int source;
+    /** 按出队顺序（距离由近到远，相同时下标小者在前）排列的可达成员，首个为源本身 */
+    final int[] order;
+    private final int[] dist;
+    private final int[] prev;
+    private final int[] prevEdge;
+
+    private ShortestPathTree(int source, int[] order, int[] dist, int[] prev, int[] prevEdge) {
+        this.source = source;
+        this.order = order;
+        this.dist = dist;
+        this.prev = prev;
+        this.prevEdge = prevEdge;
+    }
+
+    static ShortestPathTree build(FamilyGraph graph, int source) {
+        int n = graph.size();
+        int[] dist = new int[n];
+        int[] prev = new int[n];
+        int[] prevEdge = new int[n];
+        int[] order = new int[n];
+        boolean[] settled = new boolean[n];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        DistanceHeap heap = new DistanceHeap();
+        dist[source] = 0;
+        prev[source] = -1;
+        heap.push(0, source);
+        int count = 0;
+        while (!heap.isEmpty()) {
+            long top = heap.pop();
+            int cur = DistanceHeap.node(top);
+            if (settled[cur] || DistanceHeap.distance(top) != dist[cur]) {
+                continue;
+            }
+            settled[cur] = true;
+            order[count++] = cur;
+            for (int i = 0, degree = graph.adjDegree(cur); i < degree; i++) {
+                int next = graph.adjTarget(cur, i);
+                int nextDist = dist[cur] + ShortestPathSearch.weight(graph.adjRelation(cur, i));
+                if (nextDist < dist[next]) {
+                    dist[next] = nextDist;
+                    prev[next] = cur;
+                    prevEdge[next] = graph.adjEdge(cur, i);
+                    heap.push(nextDist, next);
+                }
+            }
+        }
+        return new ShortestPathTree(source, Arrays.copyOf(order, count), dist, prev, prevEdge);
+    }
+
+    boolean isReachable(int target) {
+        return dist[target] != Integer.MAX_VALUE;
+    }
+
+    /** 源到目标的路径，不可达时返回 null */
+    ShortestPathSearch pathTo(int target) {
+        if (!isReachable(target)) {
+            return null;
+        }
+        int length = 0;
+        for (int cur = target; cur != source; cur = prev[cur]) {
+            length++;
+        }
+        int[] nodes = new int[length + 1];
+        int[] edges = new int[length];
+        int cur = target;
+        for (int k = length; k > 0; k--) {
+            nodes[k] = cur;
+            edges[k - 1] = prevEdge[cur];
+            cur = prev[cur];
+        }
+        nodes[0] = source;
+        return new ShortestPathSearch(nodes, edges, 0);
+    }
+}
@@ -0,0 +1,111 @@
+import controller.DatabaseConnection;
+import controller.TemporaryDatabase;
+import model.Change;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import repository.ChangeLogRepository;
+import repository.MemberRepository;
+import repository.RelationshipRepository;
+import service.ChangeService;
+import service.FamilyGraph;
+import service.FamilyGraphStore;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 导入工具测试：整库重建后旧的变更序号失效，触发器仍在，新关系不复用旧 RelationID，关系图随之全量重建
+ */
+public class DataExportImportTest {
+    @RegisterExtension
+    final TemporaryDatabase database = new TemporaryDatabase("family-import");
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("family-import");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    public void testRebuildInvalidatesChangeLogConsumers() throws Exception {
+        MemberRepository memberRepository = new MemberRepository();
+        RelationshipRepository relationshipRepository = new RelationshipRepository(memberRepository);
+        ChangeLogRepository changeLogRepository = new ChangeLogRepository();
+        ChangeService changeService = new ChangeService(changeLogRepository, memberRepository, relationshipRepository);
+        FamilyGraphStore store = new FamilyGraphStore(memberRepository, relationshipRepository, changeLogRepository);
+        DatabaseConnection.initialize();
+        execute("INSERT INTO Members (MemberID, Name, Generation, Gender) VALUES (1, 'Father', 1, 0), (2, 'Son', 2, 0)",
+                "INSERT INTO Relationships (member1, member2, relation) VALUES (1, 2, 5), (2, 1, 3)");
+        assertEquals(2, store.current().size());
+        long since = changeService.getLatestSeq();
+        int maxRelationId = queryInt("SELECT MAX(RelationID) FROM Relationships");
+
+        Path members = directory.resolve("members.json");
+        Path relationships = directory.resolve("base_relationships.json");
+        Files.writeString(members, "[{\"id\":1,\"name\":\"Father\",\"generation\":1,\"gender\":0},"
+                + "{\"id\":3,\"name\":\"Daughter\",\"generation\":2,\"gender\":1,\"remark\":\"imported\"}]", StandardCharsets.UTF_8);
+        Files.writeString(relationships, "[{\"member1\":1,\"member2\":3,\"relation\":8}]", StandardCharsets.UTF_8);
+        DataExportImport.main(new String[]{"rebuild", database.file().getAbsolutePath(), members.toString(), relationships.toString()});
+
+        // 旧序号失效，重建之后的改写照常记录
+        assertNull(changeService.getChangesSince(since, 100));
+        long rebuild = changeLogRepository.getRebuildSeq();
+        assertTrue(rebuild > since);
+        Map<Integer, ChangeService.ChangeEntry> memberChanges = new HashMap<>();
+        for (ChangeService.ChangeEntry entry : changeService.getChangesSince(rebuild, 100).getEntries()) {
+            if (entry.getEntity() == Change.ENTITY_MEMBER) {
+                memberChanges.put(entry.getId(), entry);
+            }
+        }
+        assertEquals(Change.OP_DELETE, memberChanges.get(2).getOp());
+        assertEquals("imported", memberChanges.get(3).getMember().getRemark());
+        assertEquals(6, queryInt("SELECT COUNT(*) FROM sqlite_master WHERE type = 'trigger' AND name LIKE 'trg_changelog_%'"));
+        assertTrue(queryInt("SELECT MIN(RelationID) FROM Relationships") > maxRelationId);
+
+        assertTrue(store.refresh());
+        FamilyGraph graph = store.current();
+        assertEquals(2, graph.size());
+        assertTrue(graph.indexOf(2) < 0);
+        assertTrue(graph.findOutEdge(graph.indexOf(1), graph.indexOf(3)) >= 0);
+        assertEquals(queryInt("SELECT COUNT(*) FROM Relationships"), graph.relationshipCount());
+    }
+
+    private void execute(String... statements) throws Exception {
+        try (Connection conn = DriverManager.getConnection(database.url());
+             Statement stmt = conn.createStatement()) {
+            for (String sql : statements) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    private int queryInt(String sql) throws Exception {
+        try (Connection conn = DriverManager.getConnection(database.url());
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 连接池测试：借还、超时与未提交事务的回滚
+ */
+public class ConnectionPoolTest {
+    private File dbFile;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dbFile = Files.createTempFile("family-pool", ".db").toFile();
+        pool = new ConnectionPool("jdbc:sqlite:" + dbFile.getAbsolutePath(), 2, 100);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.close();
+        dbFile.delete();
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws SQLException {
+        assertEquals(2, pool.getStats().getIdle());
+        Connection conn = pool.acquire();
+        assertEquals(1, pool.getStats().getActive());
+        assertEquals(1, pool.getStats().getIdle());
+        conn.close();
+        conn.close();
+        assertTrue(conn.isClosed());
+        assertEquals(0, pool.getStats().getActive());
+        assertEquals(2, pool.getStats().getIdle());
+        assertEquals(2, pool.getStats().getTotal());
+    }
+
+    @Test
+    public void testAcquireTimesOutWhenExhausted() throws SQLException {
+        Connection c1 = pool.acquire();
+        Connection c2 = pool.acquire();
+        assertThrows(SQLException.class, () -> pool.acquire());
+        assertEquals(1, pool.getStats().getTimeoutCount());
+        assertEquals(1, pool.getStats().getWaitCount());
+        c1.close();
+        c2.close();
+    }
+
+    @Test
+    public void testUncommittedWorkIsRolledBackOnRelease() throws SQLException {
+        try (Connection conn = pool.acquire(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE T (id INTEGER)");
+        }
+        Connection conn = pool.acquire();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO T VALUES (1)");
+        }
+        conn.close();
+
+        try (Connection check = pool.acquire();
+             Statement stmt = check.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM T")) {
+            assertTrue(check.getAutoCommit());
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+}
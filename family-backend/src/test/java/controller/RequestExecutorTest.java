@@ -0,0 +1,162 @@
+package controller;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 请求执行器准入与拒绝测试
+ */
+public class RequestExecutorTest {
+
+    @Test
+    public void testRequestsBeyondQueueCapacityAreShed() throws Exception {
+        RequestExecutor executor = new RequestExecutor("pool", 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch queuedDone = new CountDownLatch(1);
+        CountDownLatch shedDone = new CountDownLatch(1);
+        AtomicBoolean queuedShedding = new AtomicBoolean(true);
+        AtomicBoolean shedShedding = new AtomicBoolean(false);
+        try {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            executor.execute(() -> {
+                queuedShedding.set(RequestExecutor.isShedding());
+                queuedDone.countDown();
+            });
+            executor.execute(() -> {
+                shedShedding.set(RequestExecutor.isShedding());
+                shedDone.countDown();
+            });
+
+            // 第三个请求超出 1 个运行 + 1 个排队的容量，立即在拒绝线程上执行
+            assertTrue(shedDone.await(5, TimeUnit.SECONDS));
+            assertTrue(shedShedding.get());
+            RequestExecutor.ExecutorStats stats = executor.getStats();
+            assertEquals(1, stats.getActive());
+            assertEquals(1, stats.getQueued());
+            assertEquals(1, stats.getRejectedCount());
+
+            release.countDown();
+            assertTrue(queuedDone.await(5, TimeUnit.SECONDS));
+            assertFalse(queuedShedding.get());
+            assertFalse(RequestExecutor.isShedding());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFloodBeyondCapacityIsAllAnsweredWith503() throws Exception {
+        RequestExecutor executor = new RequestExecutor("pool", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            if (RequestExecutor.isShedding()) {
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                await(release);
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+        });
+        server.setExecutor(executor);
+        server.start();
+        int port = server.getAddress().getPort();
+        ExecutorService clients = Executors.newFixedThreadPool(32);
+        List<Socket> stalled = new ArrayList<>();
+        try {
+            List<Future<Integer>> admitted = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                admitted.add(clients.submit(() -> get(port)));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (executor.getStats().getActive() + executor.getStats().getQueued() < 2
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // 只发出半个请求头的慢客户端，数量超过旧实现的拒绝队列
+            for (int i = 0; i < 80; i++) {
+                Socket socket = new Socket("127.0.0.1", port);
+                socket.getOutputStream().write("GET / HTTP/1.1\r\nHost: x\r\n".getBytes(StandardCharsets.US_ASCII));
+                stalled.add(socket);
+            }
+            List<Future<Integer>> flood = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                flood.add(clients.submit(() -> get(port)));
+            }
+            for (Future<Integer> status : flood) {
+                assertEquals(503, status.get(10, TimeUnit.SECONDS));
+            }
+            assertTrue(executor.getStats().getRejectedCount() >= 280);
+
+            release.countDown();
+            for (Future<Integer> status : admitted) {
+                assertEquals(200, status.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            release.countDown();
+            for (Socket socket : stalled) {
+                socket.close();
+            }
+            clients.shutdownNow();
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualModeFallsBackWhenUnavailable() throws Exception {
+        RequestExecutor executor = new RequestExecutor("virtual", 2, 4);
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            executor.execute(done::countDown);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(Runtime.version().feature() >= 21
+                    ? "virtual".equals(executor.getStats().getMode())
+                    : "pool".equals(executor.getStats().getMode()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static int get(int port) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/").openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(10000);
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
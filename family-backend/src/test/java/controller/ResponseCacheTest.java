@@ -0,0 +1,65 @@
+package controller;
+
+import org.junit.jupiter.api.Test;
+import service.DataVersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 响应缓存的命中、失效与压缩测试
+ */
+public class ResponseCacheTest {
+
+    @Test
+    public void testEntryIsInvalidatedByWrite() {
+        DataVersion dataVersion = new DataVersion();
+        ResponseCache cache = new ResponseCache(dataVersion, 8);
+        long version = cache.version();
+        assertNull(cache.get("/member", version));
+        ResponseCache.Entry entry = cache.put("/member", version, "[]");
+        assertSame(entry, cache.get("/member", cache.version()));
+
+        dataVersion.increment();
+        assertNull(cache.get("/member", cache.version()));
+        ResponseCache.CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(0, stats.getEntries());
+    }
+
+    @Test
+    public void testEntryBuiltFromStaleDataIsNotStored() {
+        DataVersion dataVersion = new DataVersion();
+        ResponseCache cache = new ResponseCache(dataVersion, 8);
+        long version = cache.version();
+        // 读取数据期间发生写入：本次响应照常返回，但不进入缓存
+        dataVersion.increment();
+        assertNotNull(cache.put("/member", version, "[]"));
+        assertNull(cache.put("/member", version, "[]").compressed());
+        assertEquals(0, cache.getStats().getEntries());
+    }
+
+    @Test
+    public void testLargeBodiesAreCompressedOnceAndEntriesAreCapped() throws Exception {
+        ResponseCache cache = new ResponseCache(new DataVersion(), 1);
+        String body = "[" + "{\"id\":1,\"name\":\"张三\"},".repeat(100) + "{}]";
+        cache.put("/relationship", cache.version(), body);
+        cache.put("/relationship?relationType=1", cache.version(), "[]");
+        ResponseCache.CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getEntries());
+        assertEquals(body.getBytes(StandardCharsets.UTF_8).length, stats.getBytes());
+        assertTrue(stats.getCompressedBytes() > 0 && stats.getCompressedBytes() < stats.getBytes());
+
+        ResponseCache.Entry entry = cache.get("/relationship", cache.version());
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        entry.compressed().writeTo(gzipped, ResponseWriter.Encoding.GZIP);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.toByteArray()))) {
+            assertEquals(body, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package service;
+
+import controller.TemporaryDatabase;
+import model.Change;
+import model.Member;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import repository.ChangeLogRepository;
+import repository.MemberRepository;
+import repository.RelationshipRepository;
+import repository.UnitOfWork;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 变更日志测试：触发器在同一事务内记录增删改，按实体合并后只返回当前状态，支持分批拉取
+ */
+public class ChangeServiceTest {
+    @RegisterExtension
+    final TemporaryDatabase database = new TemporaryDatabase("family-changes");
+    private MemberRepository memberRepository;
+    private RelationshipRepository relationshipRepository;
+    private ChangeService changeService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        memberRepository = new MemberRepository();
+        relationshipRepository = new RelationshipRepository(memberRepository);
+        changeService = new ChangeService(new ChangeLogRepository(), memberRepository, relationshipRepository);
+    }
+
+    @Test
+    public void testChangesAreCoalescedPerEntity() throws SQLException {
+        assertEquals(0, changeService.getLatestSeq());
+        Member father = UnitOfWork.run(() -> memberRepository.addMember("Father", 1, 0));
+        Member son = UnitOfWork.run(() -> memberRepository.addMember("Son", 2, 0));
+        long since = changeService.getLatestSeq();
+        assertEquals(2, since);
+
+        UnitOfWork.run(() -> memberRepository.updateMember(son.getMemberID(), "Son2", 0, "renamed"));
+        UnitOfWork.run(() -> memberRepository.updateMember(son.getMemberID(), "Son3", 0, null));
+        UnitOfWork.run(() -> {
+            Member temp = memberRepository.addMember("Temp", 2, 1);
+            return memberRepository.deleteMember(temp.getMemberID());
+        });
+        UnitOfWork.run(() -> relationshipRepository.addRelationship(son.getMemberID(), father.getMemberID(), 3));
+        UnitOfWork.run(() -> memberRepository.deleteMember(father.getMemberID()));
+
+        ChangeService.ChangeSet changes = changeService.getChangesSince(since, 100);
+        assertEquals(changeService.getLatestSeq(), changes.getNext());
+        assertFalse(changes.hasMore());
+        List<ChangeService.ChangeEntry> entries = changes.getEntries();
+        // 两次修改合并为一条，Temp 窗口内插入又删除不返回
+        assertEquals(3, entries.size());
+
+        ChangeService.ChangeEntry updated = entries.get(0);
+        assertEquals(Change.ENTITY_MEMBER, updated.getEntity());
+        assertEquals(son.getMemberID(), updated.getId());
+        assertEquals(Change.OP_UPDATE, updated.getOp());
+        assertEquals("Son3", updated.getMember().getName());
+
+        ChangeService.ChangeEntry added = entries.get(1);
+        assertEquals(Change.ENTITY_RELATIONSHIP, added.getEntity());
+        assertEquals(Change.OP_INSERT, added.getOp());
+        assertEquals(father.getMemberID(), added.getRelationship().getMember2());
+
+        ChangeService.ChangeEntry deleted = entries.get(2);
+        assertEquals(father.getMemberID(), deleted.getId());
+        assertEquals(Change.OP_DELETE, deleted.getOp());
+        assertNull(deleted.getMember());
+
+        assertTrue(changeService.getChangesSince(changes.getNext(), 100).getEntries().isEmpty());
+    }
+
+    @Test
+    public void testLimitAndSequenceAheadOfLog() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            String name = "M" + i;
+            UnitOfWork.run(() -> memberRepository.addMember(name, 1, 0));
+        }
+        ChangeService.ChangeSet first = changeService.getChangesSince(0, 3);
+        assertEquals(3, first.getEntries().size());
+        assertEquals(3, first.getNext());
+        assertTrue(first.hasMore());
+
+        ChangeService.ChangeSet rest = changeService.getChangesSince(first.getNext(), 3);
+        assertEquals(2, rest.getEntries().size());
+        assertEquals(5, rest.getNext());
+        assertFalse(rest.hasMore());
+
+        assertNull(changeService.getChangesSince(6, 3));
+    }
+}
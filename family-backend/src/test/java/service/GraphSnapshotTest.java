@@ -0,0 +1,250 @@
+package service;
+
+import model.Member;
+import model.Relationship;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import repository.MemberRepository;
+import repository.RelationshipRepository;
+import repository.SnapshotMemberRepository;
+import repository.SnapshotRelationshipRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 关系图快照测试：序列化往返一致（含关联边顺序），损坏、截断或格式版本不符的文件被拒绝，发布的快照被只读副本加载并热替换
+ */
+public class GraphSnapshotTest {
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("family-snapshots");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        FamilyGraph graph = sampleGraph(7);
+        GraphSnapshot snapshot = GraphSnapshot.read(ByteBuffer.wrap(toBytes(graph, 3)));
+
+        assertEquals(3, snapshot.getSeq());
+        assertEquals(7, snapshot.getSourceVersion());
+        assertEquals(11, snapshot.getChangeSeq());
+        assertEquals(5, snapshot.getRebuildSeq());
+        FamilyGraph copy = snapshot.getGraph();
+        assertEquals(3, copy.version());
+        assertEquals(graph.size(), copy.size());
+        assertEquals(graph.relationshipCount(), copy.relationshipCount());
+        for (int idx = 0; idx < graph.size(); idx++) {
+            assertEquals(graph.memberId(idx), copy.memberId(idx));
+            assertEquals(graph.isPresent(idx), copy.isPresent(idx));
+            assertEquals(graph.name(idx), copy.name(idx));
+            assertEquals(graph.remark(idx), copy.remark(idx));
+            assertEquals(graph.generation(idx), copy.generation(idx));
+            assertEquals(graph.gender(idx), copy.gender(idx));
+            assertEquals(graph.outDegree(idx), copy.outDegree(idx));
+            assertEquals(graph.adjDegree(idx), copy.adjDegree(idx));
+            for (int i = 0; i < graph.adjDegree(idx); i++) {
+                assertEquals(graph.adjTarget(idx, i), copy.adjTarget(idx, i));
+                assertEquals(graph.adjRelation(idx, i), copy.adjRelation(idx, i));
+                assertEquals(graph.edgeRelationId(graph.adjEdge(idx, i)), copy.edgeRelationId(copy.adjEdge(idx, i)));
+            }
+        }
+        // 关系引用的已删除成员 4 仍以缺失成员出现
+        int missing = copy.indexOf(4);
+        assertTrue(missing >= 0);
+        assertFalse(copy.isPresent(missing));
+        assertEquals("长子：张三", copy.remark(copy.indexOf(2)));
+        assertNull(copy.remark(copy.indexOf(1)));
+    }
+
+    @Test
+    public void testRoundTripSkipsRemovedEdges() throws IOException {
+        GraphDelta delta = new GraphDelta();
+        delta.removeEdge(2);
+        FamilyGraph graph = sampleGraph(1).apply(delta, 2);
+        FamilyGraph copy = GraphSnapshot.read(ByteBuffer.wrap(toBytes(graph, 1))).getGraph();
+
+        assertEquals(3, copy.relationshipCount());
+        assertEquals(3, copy.edgeSlotCount());
+        int father = copy.indexOf(1);
+        assertEquals(graph.adjDegree(graph.indexOf(1)), copy.adjDegree(father));
+        for (int i = 0; i < copy.adjDegree(father); i++) {
+            assertTrue(copy.isEdgeLive(copy.adjEdge(father, i)));
+        }
+        assertEquals(-1, copy.findOutEdge(father, copy.indexOf(2)));
+    }
+
+    @Test
+    public void testCorruptSnapshotIsRejected() throws IOException {
+        byte[] bytes = toBytes(sampleGraph(1), 1);
+
+        byte[] badMagic = bytes.clone();
+        badMagic[0] = 'X';
+        assertThrows(IOException.class, () -> GraphSnapshot.read(ByteBuffer.wrap(badMagic)));
+        byte[] newerFormat = bytes.clone();
+        newerFormat[11]++;
+        assertThrows(IOException.class, () -> GraphSnapshot.read(ByteBuffer.wrap(newerFormat)));
+        byte[] flipped = bytes.clone();
+        flipped[GraphSnapshot.HEADER_BYTES + 5] ^= 0x10;
+        IOException e = assertThrows(IOException.class, () -> GraphSnapshot.read(ByteBuffer.wrap(flipped)));
+        assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+        assertThrows(IOException.class, () -> GraphSnapshot.read(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 3))));
+        assertThrows(IOException.class, () -> GraphSnapshot.read(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length + 1))));
+        assertThrows(IOException.class, () -> GraphSnapshot.read(ByteBuffer.wrap(Arrays.copyOf(bytes, 10))));
+    }
+
+    @Test
+    public void testReplicaHotSwapsPublishedSnapshots() throws Exception {
+        List<Member> members = new ArrayList<>(List.of(new Member(1, "Father", 1, 0, null)));
+        List<Relationship> relationships = new ArrayList<>();
+        FamilyGraphStore source = new FamilyGraphStore(listMembers(members), listRelationships(members, relationships));
+        SnapshotPublisher publisher = new SnapshotPublisher(source, directory, 0, 2);
+        assertTrue(publisher.publish());
+        assertFalse(publisher.publish());
+
+        try (SnapshotReplica replica = new SnapshotReplica(directory, 1000)) {
+            assertTrue(replica.loadLatest());
+            MemberRepository memberRepository = new SnapshotMemberRepository(replica::graph);
+            FamilyGraphStore store = new FamilyGraphStore(memberRepository,
+                    new SnapshotRelationshipRepository(memberRepository, replica::graph));
+            assertEquals("Father", memberRepository.findMemberById(1).getName());
+            assertEquals(1, store.current().size());
+
+            // 源端变化后发布新快照，副本加载后对账
+            members.add(new Member(2, "Son", 2, 0, null));
+            relationships.add(new Relationship(1, 2, 1, 3));
+            assertTrue(source.refresh());
+            assertTrue(publisher.publish());
+            long version = store.getDataVersion().current();
+            assertTrue(replica.loadLatest());
+            assertTrue(store.refresh());
+            assertEquals(2, replica.getSnapshot().getSeq());
+            assertEquals(version + 1, store.getDataVersion().current());
+            FamilyGraph graph = store.current();
+            assertEquals(2, graph.size());
+            assertTrue(graph.findOutEdge(graph.indexOf(2), graph.indexOf(1)) >= 0);
+
+            // 只保留最新两个；损坏的最新文件被跳过，改用次新的快照，且只尝试一次
+            members.add(new Member(3, "Daughter", 2, 1, null));
+            assertTrue(source.refresh());
+            assertTrue(publisher.publish());
+            assertEquals(2, GraphSnapshot.listFiles(directory).size());
+            Files.write(directory.resolve(GraphSnapshot.fileName(9)), new byte[]{1, 2, 3});
+            assertTrue(replica.loadLatest());
+            assertEquals(3, replica.getSnapshot().getSeq());
+            assertEquals(1, replica.getFailureCount());
+
+            // 没有比当前更新的可用快照时报告失败，继续使用当前快照
+            Files.write(directory.resolve(GraphSnapshot.fileName(10)), new byte[]{4, 5, 6});
+            assertThrows(IOException.class, replica::loadLatest);
+            assertFalse(replica.loadLatest());
+            assertEquals(3, replica.getSnapshot().getSeq());
+            assertEquals(2, replica.getFailureCount());
+        }
+    }
+
+    @Test
+    public void testPublisherContinuesSequenceInExistingDirectory() throws Exception {
+        Files.write(directory.resolve(GraphSnapshot.fileName(41)), toBytes(sampleGraph(1), 41));
+        List<Member> members = List.of(new Member(1, "Father", 1, 0, null));
+        FamilyGraphStore source = new FamilyGraphStore(listMembers(members), listRelationships(members, List.of()));
+        SnapshotPublisher publisher = new SnapshotPublisher(source, directory, 0, 3);
+        assertTrue(publisher.publish());
+        assertEquals(42, publisher.getSeq());
+        assertTrue(Files.exists(directory.resolve(GraphSnapshot.fileName(42))));
+    }
+
+    @Test
+    public void testReplicaStartsFromOlderSnapshotWhenNewestIsDamaged() throws Exception {
+        Files.write(directory.resolve(GraphSnapshot.fileName(4)), toBytes(sampleGraph(1), 4));
+        byte[] newest = toBytes(sampleGraph(2), 5);
+        Files.write(directory.resolve(GraphSnapshot.fileName(5)), Arrays.copyOf(newest, newest.length - 7));
+        byte[] flipped = toBytes(sampleGraph(3), 6);
+        flipped[GraphSnapshot.HEADER_BYTES + 5] ^= 0x10;
+        Files.write(directory.resolve(GraphSnapshot.fileName(6)), flipped);
+
+        try (SnapshotReplica replica = new SnapshotReplica(directory, 1000)) {
+            assertTrue(replica.loadLatest());
+            assertEquals(4, replica.getSnapshot().getSeq());
+            assertEquals(4, replica.graph().size());
+            assertEquals(2, replica.getFailureCount());
+            assertFalse(replica.loadLatest());
+            assertEquals(2, replica.getFailureCount());
+        }
+
+        Files.delete(directory.resolve(GraphSnapshot.fileName(4)));
+        SnapshotReplica broken = new SnapshotReplica(directory, 1000);
+        assertThrows(IOException.class, broken::loadLatest);
+        assertThrows(IllegalStateException.class, broken::graph);
+    }
+
+    @Test
+    public void testReplicaWithoutSnapshotFailsToStart() {
+        SnapshotReplica replica = new SnapshotReplica(directory, 1000);
+        assertThrows(IOException.class, replica::loadLatest);
+        assertThrows(IllegalStateException.class, replica::graph);
+    }
+
+    private static FamilyGraph sampleGraph(long version) {
+        List<Member> members = List.of(
+                new Member(1, "Father", 1, 0, null),
+                new Member(2, "Son", 2, 0, "长子：张三"),
+                new Member(3, "Daughter", 2, 1, ""));
+        List<Relationship> relationships = List.of(
+                new Relationship(1, 2, 1, 3),
+                new Relationship(2, 1, 2, 5),
+                new Relationship(3, 3, 1, 3),
+                new Relationship(5, 4, 1, 3));
+        return FamilyGraph.build(members, relationships, version);
+    }
+
+    private static byte[] toBytes(FamilyGraph graph, long seq) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = bytes) {
+            GraphSnapshot.write(graph, seq, 11, 5, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** 以内存列表代替数据库的仓储，模拟 admin 端 */
+    private static MemberRepository listMembers(List<Member> members) {
+        return new MemberRepository() {
+            @Override
+            public List<Member> getAllMembers() {
+                return new ArrayList<>(members);
+            }
+        };
+    }
+
+    private static RelationshipRepository listRelationships(List<Member> members, List<Relationship> relationships) {
+        return new RelationshipRepository(listMembers(members)) {
+            @Override
+            public List<Relationship> getAllRelationships() {
+                return new ArrayList<>(relationships);
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 在途请求合并测试
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsShareOneComputation() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<Integer> owner = pool.submit(() -> flight.execute("k", () -> {
+                computations.incrementAndGet();
+                started.countDown();
+                await(release);
+                return 42;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Integer> waiter1 = pool.submit(() -> flight.execute("k", () -> computations.incrementAndGet()));
+            Future<Integer> waiter2 = pool.submit(() -> flight.execute("k", () -> computations.incrementAndGet()));
+            while (flight.getCoalesced() < 2) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals(42, owner.get(5, TimeUnit.SECONDS));
+            assertEquals(42, waiter1.get(5, TimeUnit.SECONDS));
+            assertEquals(42, waiter2.get(5, TimeUnit.SECONDS));
+            assertEquals(1, computations.get());
+            assertEquals(1, flight.getExecuted());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // 完成后不缓存，下一次调用重新计算
+        assertEquals(7, flight.execute("k", () -> 7));
+    }
+
+    @Test
+    public void testFailureIsSharedAndNotRetained() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        assertThrows(IllegalArgumentException.class, () -> flight.execute("k", () -> {
+            throw new IllegalArgumentException("boom");
+        }));
+        assertEquals(1, flight.execute("k", () -> 1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}